@@ -225,6 +225,17 @@ public interface FlippingConfig extends Config
 		return true;
 	}
 
+	@ConfigItem(
+			keyName = "compressDataFiles",
+			name = "Compress saved data",
+			description = "Compress trade data files and their backups on disk. Files saved either way can always be loaded",
+			section = autoSaveSection,
+			position = 4
+	)
+	default boolean compressDataFiles() {
+		return true;
+	}
+
 	@ConfigSection(
 			name = "Custom Recipes",
 			description = "Settings for custom recipe search",
@@ -0,0 +1,142 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.OfferEvent;
+
+import java.util.*;
+
+/**
+ * The account wide trade list, kept from one view to the next instead of being rebuilt from clones of every item
+ * of every account. Each account wide item is made with FlippingItem.mergeSharingOffers from the items of the same
+ * type in each account's trade list, and new offers are applied to it as they come in.
+ * <p>
+ * Anything else that changes an item's history (offers being deleted, an account being reloaded from disk, an item
+ * being added to a trade list...) is noticed the next time the list is asked for, and only the account wide items
+ * of the items that changed are made again.
+ */
+class AccountWideItemList {
+    private final Map<Integer, AccountWideItem> accountWideItems = new HashMap<>();
+    private List<FlippingItem> items;
+
+    synchronized List<FlippingItem> getItems(Collection<AccountData> allAccountData) {
+        Map<Integer, List<FlippingItem>> groupedItems = new HashMap<>();
+        for (AccountData accountData : allAccountData) {
+            for (FlippingItem item : accountData.getTrades()) {
+                groupedItems.computeIfAbsent(item.getItemId(), k -> new ArrayList<>()).add(item);
+            }
+        }
+
+        boolean changed = accountWideItems.keySet().retainAll(groupedItems.keySet());
+        for (Map.Entry<Integer, List<FlippingItem>> group : groupedItems.entrySet()) {
+            AccountWideItem accountWideItem = accountWideItems.get(group.getKey());
+            if (accountWideItem == null || !accountWideItem.isMadeFrom(group.getValue())) {
+                accountWideItems.put(group.getKey(), new AccountWideItem(group.getValue()));
+                changed = true;
+            }
+        }
+
+        if (changed || items == null) {
+            items = new ArrayList<>(accountWideItems.size());
+            for (AccountWideItem accountWideItem : accountWideItems.values()) {
+                items.add(accountWideItem.mergedItem);
+            }
+            items.sort(Collections.reverseOrder(Comparator.comparing(FlippingItem::getLatestActivityTime)));
+        }
+        return items;
+    }
+
+    /**
+     * Should be called after a new offer was added to one of the account's items with FlippingItem.updateHistory.
+     *
+     * @param replacedOffers the offers updateHistory returned
+     */
+    synchronized void offerAdded(FlippingItem item, OfferEvent newOffer, List<OfferEvent> replacedOffers) {
+        AccountWideItem accountWideItem = accountWideItems.get(item.getItemId());
+        if (accountWideItem != null && !accountWideItem.offerAdded(item, newOffer, replacedOffers)) {
+            accountWideItems.remove(item.getItemId());
+        }
+        //the item's latest activity time changed, so the list has to be put in order again
+        items = null;
+    }
+
+    /**
+     * Should be called when properties of the account's items other than their histories, such as whether they are
+     * shown on the flipping panel, were changed.
+     */
+    synchronized void itemPropertiesChanged() {
+        for (AccountWideItem accountWideItem : accountWideItems.values()) {
+            accountWideItem.mergedItem.updateMergedProperties(accountWideItem.sourceItems);
+        }
+        items = null;
+    }
+
+    private static class AccountWideItem {
+        private final List<FlippingItem> sourceItems;
+        private final HistoryState[] sourceHistories;
+        private final FlippingItem mergedItem;
+
+        AccountWideItem(List<FlippingItem> sourceItems) {
+            this.sourceItems = sourceItems;
+            this.sourceHistories = new HistoryState[sourceItems.size()];
+            for (int i = 0; i < sourceItems.size(); i++) {
+                sourceHistories[i] = new HistoryState(sourceItems.get(i));
+            }
+            this.mergedItem = FlippingItem.mergeSharingOffers(sourceItems);
+        }
+
+        /**
+         * @return whether the merged item was made from the given items and none of their histories were changed
+         * since, apart from the changes it was told about
+         */
+        boolean isMadeFrom(List<FlippingItem> items) {
+            if (items.size() != sourceItems.size()) {
+                return false;
+            }
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i) != sourceItems.get(i) || !sourceHistories[i].isSameAs(items.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean offerAdded(FlippingItem item, OfferEvent newOffer, List<OfferEvent> replacedOffers) {
+            int i = sourceItems.indexOf(item);
+            if (i == -1) {
+                return false;
+            }
+            //if the history was changed in some other way since it was last looked at, the merged history can't be
+            //brought up to date from the new offer alone
+            List<OfferEvent> offers = item.getHistory().getCompressedOfferEvents();
+            if (offers != sourceHistories[i].offers || offers.size() != sourceHistories[i].size - replacedOffers.size() + 1) {
+                return false;
+            }
+            if (!mergedItem.mirrorUpdate(sourceItems, newOffer, replacedOffers)) {
+                return false;
+            }
+            sourceHistories[i] = new HistoryState(item);
+            return true;
+        }
+    }
+
+    /**
+     * What an item's history looked like when it was last merged, enough to tell whether it has changed since.
+     */
+    private static class HistoryState {
+        private final List<OfferEvent> offers;
+        private final int size;
+        private final OfferEvent lastOffer;
+
+        HistoryState(FlippingItem item) {
+            offers = item.getHistory().getCompressedOfferEvents();
+            size = offers.size();
+            lastOffer = size == 0 ? null : offers.get(size - 1);
+        }
+
+        boolean isSameAs(FlippingItem item) {
+            List<OfferEvent> currentOffers = item.getHistory().getCompressedOfferEvents();
+            return currentOffers == offers && currentOffers.size() == size && (size == 0 || currentOffers.get(size - 1) == lastOffer);
+        }
+    }
+}
@@ -28,12 +28,27 @@ package com.flippingutilities.controller;
 
 import com.flippingutilities.db.TradePersister;
 import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.AccountHeader;
+import com.flippingutilities.model.AccountHeaders;
 import com.flippingutilities.model.AccountWideData;
 import com.flippingutilities.model.BackupCheckpoints;
+import com.flippingutilities.model.JournalRecord;
+import com.flippingutilities.model.OfferEvent;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * Responsible for loading data from disk, handling any operations to access/change data during the plugin's life, and storing
@@ -41,16 +56,45 @@ import java.util.*;
  */
 @Slf4j
 public class DataHandler {
+    //once this many records have been journaled for an account, the next save writes a full snapshot instead
+    private static final int JOURNAL_CHECKPOINT_THRESHOLD = 500;
+    //how many idle accounts are kept fully loaded. The logged in account, the viewed account and accounts with
+    //unsaved changes are always kept loaded and don't count towards this.
+    private static final int MAX_IDLE_RESIDENT_ACCOUNTS = 2;
+    //changes made within this window of the first unsaved change are saved together
+    private static final long STORE_COALESCE_WINDOW_SECONDS = 30;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_SECONDS = 5;
+    //how long loading an account off the client thread waits for the client thread to prepare its item data
+    private static final long ITEM_DATA_TIMEOUT_SECONDS = 10;
+
     FlippingPlugin plugin;
     private AccountWideData accountWideData;
     private BackupCheckpoints backupCheckpoints;
-    private Map<String, AccountData> accountSpecificData = new HashMap<>();
-    private boolean accountWideDataChanged = false;
-    private Set<String> accountsWithUnsavedChanges = new HashSet<>();
+    //only holds the accounts that are fully loaded, every account (loaded or not) has a header in accountHeaders
+    //read by the persistence worker and the swing thread as well as the client thread
+    private Map<String, AccountData> accountSpecificData = new ConcurrentHashMap<>();
+    private AccountHeaders accountHeaders = new AccountHeaders();
+    private volatile boolean accountHeadersChanged = false;
+    //the fully loaded accounts, least recently used first
+    private Set<String> residentAccountsByRecentUse = new LinkedHashSet<>();
+    private volatile boolean accountWideDataChanged = false;
+    private Set<String> accountsWithUnsavedChanges = ConcurrentHashMap.newKeySet();
+    //accounts whose only changes since the last save are the ones that are kept in their journal
+    private Set<String> accountsWithJournaledChanges = ConcurrentHashMap.newKeySet();
     public String thisClientLastStored;
+    //all writes to disk happen on this thread so that the threads asking for a save never wait on disk io
+    private final ScheduledThreadPoolExecutor persistenceWorker;
+    private final AtomicBoolean coalescedStorePending = new AtomicBoolean(false);
 
     public DataHandler(FlippingPlugin plugin) {
         this.plugin = plugin;
+        this.persistenceWorker = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "flipping-utilities-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //shutdown flushes everything itself, so a pending coalesced save doesn't need to run after it
+        this.persistenceWorker.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
     }
 
     public AccountWideData viewAccountWideData() {
@@ -59,28 +103,40 @@ public class DataHandler {
 
     public AccountWideData getAccountWideData() {
         accountWideDataChanged = true;
+        scheduleCoalescedStore();
         return accountWideData;
     }
 
-    public void addAccount(String displayName) {
+    public synchronized void addAccount(String displayName) {
         log.info("adding {} to data handler", displayName);
         AccountData accountData = new AccountData();
         accountData.prepareForUse(plugin);
-        accountSpecificData.put(displayName, accountData);
+        putResidentAccount(displayName, accountData);
     }
 
-    public void deleteAccount(String displayName) {
+    public synchronized void deleteAccount(String displayName) {
         log.info("deleting account: {}", displayName);
         accountSpecificData.remove(displayName);
-        TradePersister.deleteFile(displayName + ".json");
+        residentAccountsByRecentUse.remove(displayName);
+        accountHeaders.getAccountToHeader().remove(displayName);
+        accountHeadersChanged = true;
+        TradePersister.deleteAccountFile(displayName);
+        TradePersister.deleteFile(displayName + TradePersister.JOURNAL_SUFFIX);
+        TradePersister.deleteFile(displayName + TradePersister.ROLLUPS_SUFFIX);
+        TradePersister.deleteSegments(displayName);
     }
 
+    //loads every account, so only use this when all of them are actually needed (such as for the account wide view)
     public Collection<AccountData> getAllAccountData() {
+        loadAllAccountData();
         accountsWithUnsavedChanges.addAll(accountSpecificData.keySet());
+        scheduleCoalescedStore();
         return accountSpecificData.values();
     }
 
+    //loads every account, so only use this when all of them are actually needed (such as for the account wide view)
     public Collection<AccountData> viewAllAccountData() {
+        loadAllAccountData();
         return accountSpecificData.values();
     }
 
@@ -90,16 +146,29 @@ public class DataHandler {
     //calls it if data is going to be updated,
     public AccountData getAccountData(String displayName) {
         accountsWithUnsavedChanges.add(displayName);
-        return accountSpecificData.get(displayName);
+        scheduleCoalescedStore();
+        return residentAccountData(displayName);
     }
 
     //is called if account data just needs to be viewed, not updated
     public AccountData viewAccountData(String displayName) {
-        return accountSpecificData.get(displayName);
+        return residentAccountData(displayName);
     }
 
     public Set<String> getCurrentAccounts() {
-        return accountSpecificData.keySet();
+        return accountHeaders.getAccountToHeader().keySet();
+    }
+
+    /**
+     * Whether an account could have the item in its trade list. Unlike looking through the account's trades, this
+     * doesn't load the account if it isn't loaded already.
+     */
+    public synchronized boolean mayHaveItem(String displayName, int itemId) {
+        if (accountSpecificData.containsKey(displayName)) {
+            return true;
+        }
+        AccountHeader header = accountHeaders.getAccountToHeader().get(displayName);
+        return header == null || header.getItemIds().contains(itemId);
     }
 
     public void markDataAsHavingChanged(String displayName) {
@@ -109,21 +178,155 @@ public class DataHandler {
         else {
             accountsWithUnsavedChanges.add(displayName);
         }
+        scheduleCoalescedStore();
     }
 
-    public void storeData() {
-        log.debug("storing data");
-        if (accountsWithUnsavedChanges.size() > 0) {
-            log.debug("accounts with unsaved changes are {}. Saving them.", accountsWithUnsavedChanges);
-            accountsWithUnsavedChanges.forEach(accountName -> storeAccountData(accountName));
-            accountsWithUnsavedChanges.clear();
+    /**
+     * Appends an offer that made it through the offer pipeline to the account's journal. Unlike getAccountData, this
+     * doesn't mark the account as needing a full snapshot, so saving an account that only received offers is
+     * proportional to the amount of new offers rather than to the account's entire history.
+     */
+    public void journalOfferEvent(String displayName, OfferEvent offer) {
+        AccountData accountData = residentAccountData(displayName);
+        if (accountData == null) {
+            return;
+        }
+        try {
+            plugin.tradePersister.appendToJournal(displayName, JournalRecord.offer(accountData.nextJournalSeq(), offer));
+            accountsWithJournaledChanges.add(displayName);
+        }
+        catch (Exception e) {
+            log.warn("couldn't journal offer for {}, will write a full snapshot instead. error = {}", displayName, e);
+            accountsWithUnsavedChanges.add(displayName);
+        }
+    }
+
+    /**
+     * Marks the last offers, slot timers, or session time of an account as changed. These are written to the account's
+     * journal on the next save instead of causing a full snapshot.
+     */
+    public void markSessionStateAsHavingChanged(String displayName) {
+        if (displayName != null) {
+            accountsWithJournaledChanges.add(displayName);
+        }
+    }
+
+    /**
+     * Asks the persistence worker to save everything that has changed. The accounts are changed on the client
+     * thread, so what is saved is copied there first, see takePendingSave, and only the copies are handed to the
+     * worker. This doesn't wait for the save, the returned future can be used for that.
+     */
+    public Future<?> storeData() {
+        CompletableFuture<Void> stored = new CompletableFuture<>();
+        Runnable takeAndWrite = () -> {
+            PendingSave pendingSave = takePendingSave();
+            Runnable write = () -> {
+                try {
+                    writePendingSave(pendingSave);
+                }
+                finally {
+                    stored.complete(null);
+                }
+            };
+            try {
+                persistenceWorker.execute(write);
+            }
+            catch (RejectedExecutionException e) {
+                //the worker was shut down, so the plugin is shutting down and this is the last save
+                write.run();
+            }
+        };
+        if (plugin.getClient().isClientThread()) {
+            takeAndWrite.run();
+        }
+        else {
+            plugin.getClientThread().invokeLater(takeAndWrite);
+        }
+        return stored;
+    }
+
+    /**
+     * Saves anything that is still unsaved and stops the persistence worker. Waits for the save for at most
+     * SHUTDOWN_FLUSH_TIMEOUT_SECONDS so that a slow disk can't hang the client.
+     */
+    public void shutdown() {
+        Future<?> flush = storeData();
+        try {
+            flush.get(SHUTDOWN_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException | TimeoutException e) {
+            log.warn("couldn't finish saving data on shutdown", e);
+        }
+        finally {
+            //a save that is still waiting for the client thread is written on the client thread once it gets to it
+            persistenceWorker.shutdown();
+        }
+    }
+
+    /**
+     * Called whenever something is marked as changed. The first change schedules a save after
+     * STORE_COALESCE_WINDOW_SECONDS and any changes made before it runs are picked up by that same save, so a burst
+     * of changes results in one write per account rather than one per change.
+     */
+    private void scheduleCoalescedStore() {
+        if (!plugin.getConfig().autoSaveEnabled() || persistenceWorker.isShutdown()) {
+            return;
         }
+        if (coalescedStorePending.compareAndSet(false, true)) {
+            persistenceWorker.schedule(() -> {
+                coalescedStorePending.set(false);
+                storeData();
+            }, STORE_COALESCE_WINDOW_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Copies what has changed since the last save. Runs on the client thread, which is what changes the accounts.
+     */
+    private PendingSave takePendingSave() {
+        PendingSave pendingSave = new PendingSave();
+        Set<String> accountsToStore = drain(accountsWithUnsavedChanges);
+        if (accountsToStore.size() > 0) {
+            log.debug("accounts with unsaved changes are {}. Saving them.", accountsToStore);
+            accountsToStore.forEach(accountName -> snapshotAccountData(accountName, false, pendingSave));
+            accountsWithJournaledChanges.removeAll(accountsToStore);
+        }
+
+        Set<String> journaledAccountsToStore = drain(accountsWithJournaledChanges);
+        if (journaledAccountsToStore.size() > 0) {
+            log.debug("accounts with journaled changes are {}. Saving them.", journaledAccountsToStore);
+            journaledAccountsToStore.forEach(accountName -> takeJournaledAccountData(accountName, pendingSave));
+        }
+        return pendingSave;
+    }
+
+    /**
+     * Writes what takePendingSave copied. Runs on the persistence worker, unless it was shut down.
+     */
+    private void writePendingSave(PendingSave pendingSave) {
+        log.debug("storing data");
+        pendingSave.snapshots.forEach(this::writeAccountSnapshot);
+        pendingSave.sessionStateRecords.forEach(this::writeSessionStateRecord);
 
         if (accountWideDataChanged) {
             log.debug("accountwide data changed, saving it.");
             storeData("accountwide", accountWideData);
             accountWideDataChanged = false;
         }
+
+        //accounts can only be evicted once their changes are on disk
+        evictIdleAccounts();
+        storeAccountHeadersIfChanged();
+    }
+
+    //takes the accounts out of a dirty set, anything marked while they're being saved goes into the next save
+    private static Set<String> drain(Set<String> dirtyAccounts) {
+        Set<String> drained = new HashSet<>(dirtyAccounts);
+        dirtyAccounts.removeAll(drained);
+        return drained;
     }
 
     public void loadData() {
@@ -135,7 +338,8 @@ public class DataHandler {
             log.warn("Couldn't set up flipping folder, setting defaults", e);
             accountWideData = new AccountWideData();
             accountWideData.setDefaults();
-            accountSpecificData = new HashMap<>();
+            accountSpecificData = new ConcurrentHashMap<>();
+            accountHeaders = new AccountHeaders();
             accountWideDataChanged = true;
             plugin.getRecipeHandler().setLocalRecipes(accountWideData.getLocalRecipes());
             return;
@@ -144,8 +348,10 @@ public class DataHandler {
         backupCheckpoints = plugin.tradePersister.fetchBackupCheckpoints();
         accountWideData = fetchAccountWideData();
         plugin.getRecipeHandler().setLocalRecipes(accountWideData.getLocalRecipes());
-        accountSpecificData = fetchAndPrepareAllAccountData();
+        accountHeaders = plugin.tradePersister.fetchAccountHeaders();
+        accountSpecificData = new ConcurrentHashMap<>(fetchAndPrepareAllAccountData());
         backupAllAccountData();
+        storeAccountHeadersIfChanged();
     }
     
     private void backupAllAccountData() {
@@ -160,7 +366,7 @@ public class DataHandler {
 
             if (!accountData.getTrades().isEmpty() && backupCheckpoints.shouldBackup(displayName, accountData.getLastStoredAt())) {
                 try { 
-                    plugin.tradePersister.writeToFile(displayName + ".backup", accountData);
+                    plugin.tradePersister.backupAccount(displayName, accountData, backupCheckpoints);
                     backupCheckpoints.getAccountToBackupTime().put(displayName, accountData.getLastStoredAt());
                     backupCheckpointsChanged = true;
                 }
@@ -172,6 +378,26 @@ public class DataHandler {
                 log.debug("Not backing up data for {} as it's empty or it hasn't changed since last backup", displayName);
             }
         }
+        //accounts that weren't loaded have an up to date header, meaning their file is exactly their data, so it can
+        //be copied as is.
+        for (Map.Entry<String, AccountHeader> entry : accountHeaders.getAccountToHeader().entrySet()) {
+            String displayName = entry.getKey();
+            AccountHeader header = entry.getValue();
+            if (accountSpecificData.containsKey(displayName) || header.getItemIds().isEmpty()
+                || !backupCheckpoints.shouldBackup(displayName, header.getLastStoredAt())) {
+                continue;
+            }
+            try {
+                plugin.tradePersister.copyToBackup(displayName);
+                //the item checksums of the previous backup don't describe the copy, so the next backup is a full one
+                backupCheckpoints.getAccountToItemChecksums().remove(displayName);
+                backupCheckpoints.getAccountToBackupTime().put(displayName, header.getLastStoredAt());
+                backupCheckpointsChanged = true;
+            }
+            catch (Exception e) {
+                log.warn("Couldn't backup account data for {} due to {}", displayName, e);
+            }
+        }
         if (backupCheckpointsChanged) {
             storeData("backupCheckpoints.special", backupCheckpoints);
         }
@@ -194,30 +420,59 @@ public class DataHandler {
         }
     }
 
+    /**
+     * Only loads the accounts whose header is missing or out of date (the file was written by another client, or
+     * there are journaled changes that aren't in the file yet). The rest are loaded when they are first needed.
+     */
     private Map<String, AccountData> fetchAndPrepareAllAccountData()
     {
-        Map<String, AccountData> accounts = fetchAllAccountData();
+        Set<String> displayNames = fetchAccountNames();
+        if (accountHeaders.getAccountToHeader().keySet().retainAll(displayNames)) {
+            accountHeadersChanged = true;
+        }
+
+        List<String> accountsToLoad = new ArrayList<>();
+        for (String displayName : displayNames) {
+            AccountHeader header = accountHeaders.getAccountToHeader().get(displayName);
+            if (header == null || !header.isUpToDate(TradePersister.accountLastModified(displayName), TradePersister.hasJournal(displayName))) {
+                accountsToLoad.add(displayName);
+            }
+        }
+        log.debug("loading {} of {} accounts, the rest will be loaded when needed", accountsToLoad.size(), displayNames.size());
+
+        Map<String, AccountData> accounts = fetchAccountsData(accountsToLoad);
         prepareAllAccountData(accounts);
+        accounts.forEach((displayName, accountData) -> {
+            updateHeader(displayName, accountData, TradePersister.accountLastModified(displayName));
+            residentAccountsByRecentUse.add(displayName);
+        });
         return accounts;
     }
 
     private void prepareAllAccountData(Map<String, AccountData> allAccountData) {
+        //hydrating offers doesn't use the item manager, so it is done for all the accounts at once. Only the item
+        //manager lookups are left for the single pass below, which runs on the client thread like loadData.
+        Set<String> failedAccounts = ConcurrentHashMap.newKeySet();
+        allAccountData.entrySet().parallelStream().forEach(entry -> {
+            try {
+                entry.getValue().startNewSession();
+                entry.getValue().prepareOffers(plugin);
+            }
+            catch (Exception e) {
+                log.warn("Couldn't prepare offers for {} due to {}", entry.getKey(), e);
+                failedAccounts.add(entry.getKey());
+            }
+        });
+
         for (String displayName : allAccountData.keySet()) {
             AccountData accountData = allAccountData.get(displayName);
             try {
-                accountData.startNewSession();
-                accountData.prepareForUse(plugin);
-                
-                // Check if migration is needed and save immediately
-                if (accountData.needsMigration()) {
-                    log.info("Migrating account data for {} (version={}, trades={}, recipeFlips={})", 
-                        displayName, accountData.getVersion(), accountData.getTrades().size(), accountData.getRecipeFlipGroups().size());
-                    TradePersister.createPreMigrationBackup(displayName);
-                    accountData.markMigrated();
-                    plugin.tradePersister.writeToFile(displayName, accountData);
-                    TradePersister.deletePreMigrationBackup(displayName);
-                    log.info("Migration complete for {}", displayName);
+                if (failedAccounts.contains(displayName)) {
+                    throw new IllegalStateException("offers couldn't be prepared");
                 }
+                accountData.prepareItemData(plugin);
+                
+                migrateIfNeeded(displayName, accountData);
             }
             catch (Exception e) {
                 log.warn("Couldn't prepare account data for {} due to {}, setting default", displayName, e);
@@ -229,12 +484,22 @@ public class DataHandler {
         }
     }
 
-    private Map<String, AccountData> fetchAllAccountData() {
+    private Set<String> fetchAccountNames() {
         try {
-            return plugin.tradePersister.loadAllAccounts();
+            return plugin.tradePersister.listAccountNames();
         }
         catch (Exception e) {
-            log.warn("error propagated from tradePersister.loadAllAccounts() when fetching all account data, returning empty hashmap", e);
+            log.warn("error propagated from tradePersister.listAccountNames(), returning no accounts", e);
+            return new HashSet<>();
+        }
+    }
+
+    private Map<String, AccountData> fetchAccountsData(Collection<String> displayNames) {
+        try {
+            return plugin.tradePersister.loadAccounts(displayNames);
+        }
+        catch (Exception e) {
+            log.warn("error propagated from tradePersister.loadAccounts() when fetching account data, returning empty hashmap", e);
             return new HashMap<>();
         }
     }
@@ -246,9 +511,180 @@ public class DataHandler {
     }
     
     // Used by other components to set account data on DataHandler
-    public void loadAccountData(String displayName) {
+    public synchronized void loadAccountData(String displayName) {
         log.info("loading data for {}", displayName);
-        accountSpecificData.put(displayName, fetchAccountData(displayName));
+        AccountData accountData = fetchAccountData(displayName);
+        putResidentAccount(displayName, accountData);
+        updateHeader(displayName, accountData, TradePersister.accountLastModified(displayName));
+    }
+
+    /**
+     * Returns an account's data, loading it first if it was evicted or was never loaded. The lock isn't held while
+     * the account is loaded, as loading it off the client thread waits for the client thread, which could be
+     * waiting for the lock itself.
+     */
+    private AccountData residentAccountData(String displayName) {
+        synchronized (this) {
+            AccountData accountData = accountSpecificData.get(displayName);
+            if (accountData != null) {
+                residentAccountsByRecentUse.remove(displayName);
+                residentAccountsByRecentUse.add(displayName);
+                return accountData;
+            }
+            if (!accountHeaders.getAccountToHeader().containsKey(displayName)) {
+                return null;
+            }
+        }
+
+        AccountData loadedAccountData = loadEvictedAccountData(displayName);
+        synchronized (this) {
+            if (!accountHeaders.getAccountToHeader().containsKey(displayName)) {
+                //the account was deleted while it was being loaded
+                return loadedAccountData;
+            }
+            //another thread could have loaded the account in the meantime and already changed it, so that one is kept
+            AccountData accountData = accountSpecificData.putIfAbsent(displayName, loadedAccountData);
+            residentAccountsByRecentUse.remove(displayName);
+            residentAccountsByRecentUse.add(displayName);
+            return accountData == null ? loadedAccountData : accountData;
+        }
+    }
+
+    private void loadAllAccountData() {
+        List<String> displayNames;
+        synchronized (this) {
+            displayNames = new ArrayList<>(accountHeaders.getAccountToHeader().keySet());
+        }
+        for (String displayName : displayNames) {
+            residentAccountData(displayName);
+        }
+    }
+
+    private void putResidentAccount(String displayName, AccountData accountData) {
+        accountSpecificData.put(displayName, accountData);
+        residentAccountsByRecentUse.remove(displayName);
+        residentAccountsByRecentUse.add(displayName);
+        if (!accountHeaders.getAccountToHeader().containsKey(displayName)) {
+            updateHeader(displayName, accountData, 0);
+        }
+    }
+
+    /**
+     * Loads an account that isn't in memory. This can be called from the swing thread (changeView for example), so
+     * the item manager work is handed off to the client thread instead of being done here. The account is only
+     * returned once that is done, as the items aren't usable before it.
+     */
+    private AccountData loadEvictedAccountData(String displayName) {
+        log.debug("loading data for {} as it is needed", displayName);
+        try {
+            AccountData accountData = plugin.tradePersister.loadAccount(displayName);
+            accountData.startNewSession();
+            accountData.prepareOffers(plugin);
+            if (plugin.getClient().isClientThread()) {
+                accountData.prepareItemData(plugin);
+                migrateIfNeeded(displayName, accountData);
+            }
+            else {
+                CompletableFuture<Void> itemDataPrepared = new CompletableFuture<>();
+                plugin.getClientThread().invokeLater(() -> {
+                    try {
+                        accountData.prepareItemData(plugin);
+                    }
+                    finally {
+                        itemDataPrepared.complete(null);
+                    }
+                    try {
+                        migrateIfNeeded(displayName, accountData);
+                    }
+                    catch (Exception e) {
+                        log.warn("couldn't migrate data for {} due to {}", displayName, e);
+                    }
+                });
+                awaitItemData(displayName, itemDataPrepared);
+            }
+            return accountData;
+        }
+        catch (Exception e) {
+            log.warn("couldn't load trades for {}, e = " + e, displayName);
+            AccountData accountData = new AccountData();
+            accountData.prepareForUse(plugin);
+            return accountData;
+        }
+    }
+
+    private static void awaitItemData(String displayName, CompletableFuture<Void> itemDataPrepared) {
+        try {
+            itemDataPrepared.get(ITEM_DATA_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while waiting for the item data of {} to be prepared", displayName);
+        }
+        catch (ExecutionException | TimeoutException e) {
+            //the client thread will still get to it, until then the items are missing their ge limits and names
+            log.warn("item data for {} wasn't prepared in time, the account is used without it for now", displayName);
+        }
+    }
+
+    /**
+     * Drops the least recently used accounts from memory, keeping only their header. Accounts that are being looked
+     * at, are logged in, or have changes that haven't been saved yet are never evicted.
+     */
+    private synchronized void evictIdleAccounts() {
+        if (FlippingPlugin.ACCOUNT_WIDE.equals(plugin.getAccountCurrentlyViewed())) {
+            return;
+        }
+        Set<String> accountsInUse = new HashSet<>(accountsWithUnsavedChanges);
+        accountsInUse.addAll(accountsWithJournaledChanges);
+        accountsInUse.add(plugin.getAccountCurrentlyViewed());
+        accountsInUse.add(plugin.getCurrentlyLoggedInAccount());
+
+        List<String> idleAccounts = residentAccountsByRecentUse.stream()
+            .filter(displayName -> !accountsInUse.contains(displayName))
+            .collect(Collectors.toList());
+        for (int i = 0; i < idleAccounts.size() - MAX_IDLE_RESIDENT_ACCOUNTS; i++) {
+            String displayName = idleAccounts.get(i);
+            log.debug("evicting data for {} from memory", displayName);
+            AccountData accountData = accountSpecificData.remove(displayName);
+            residentAccountsByRecentUse.remove(displayName);
+            AccountHeader header = accountHeaders.getAccountToHeader().get(displayName);
+            //the file hasn't been written since the header was made, so its last modified time still holds
+            updateHeader(displayName, accountData, header == null ? 0 : header.getFileLastModified());
+        }
+    }
+
+    private synchronized void updateHeader(String displayName, AccountData accountData, long fileLastModified) {
+        if (accountData == null) {
+            return;
+        }
+        accountHeaders.getAccountToHeader().put(displayName, AccountHeader.of(accountData, fileLastModified));
+        accountHeadersChanged = true;
+    }
+
+    private void storeAccountHeadersIfChanged() {
+        if (accountHeadersChanged) {
+            storeData("accountheaders.special", accountHeaders);
+            accountHeadersChanged = false;
+        }
+    }
+
+    private void migrateIfNeeded(String displayName, AccountData accountData) throws IOException {
+        if (accountData.needsMigration()) {
+            log.info("Migrating account data for {} (version={}, trades={}, recipeFlips={})", 
+                displayName, accountData.getVersion(), accountData.getTrades().size(), accountData.getRecipeFlipGroups().size());
+            plugin.tradePersister.createPreMigrationBackup(displayName);
+            accountData.markMigrated();
+            AccountData snapshot = accountData.snapshot();
+            try {
+                writeSnapshot(displayName, snapshot);
+            }
+            catch (IOException e) {
+                accountData.restoreChangedItemIds(snapshot.drainChangedItemIds());
+                throw e;
+            }
+            TradePersister.deletePreMigrationBackup(displayName);
+            log.info("Migration complete for {}", displayName);
+        }
     }
 
     private AccountData fetchAccountData(String displayName)
@@ -256,18 +692,7 @@ public class DataHandler {
         try {
             AccountData accountData = plugin.tradePersister.loadAccount(displayName);
             accountData.prepareForUse(plugin);
-            
-            // Check if migration is needed and save immediately
-            if (accountData.needsMigration()) {
-                log.info("Migrating account data for {} (version={}, trades={}, recipeFlips={})", 
-                    displayName, accountData.getVersion(), accountData.getTrades().size(), accountData.getRecipeFlipGroups().size());
-                TradePersister.createPreMigrationBackup(displayName);
-                accountData.markMigrated();
-                plugin.tradePersister.writeToFile(displayName, accountData);
-                TradePersister.deletePreMigrationBackup(displayName);
-                log.info("Migration complete for {}", displayName);
-            }
-            
+            migrateIfNeeded(displayName, accountData);
             return accountData;
         }
         catch (Exception e)
@@ -277,20 +702,38 @@ public class DataHandler {
         }
     }
 
-    private void storeAccountData(String displayName)
+    /**
+     * Copies an account into the pending save.
+     *
+     * @param onlyTrackedItemsChanged whether the only item changes are the ones tracked through
+     *                                AccountData.markItemChanged. Otherwise (the account was changed through
+     *                                getAccountData for example) any item could have changed.
+     */
+    private void snapshotAccountData(String displayName, boolean onlyTrackedItemsChanged, PendingSave pendingSave)
     {
         try
         {
             AccountData data = accountSpecificData.get(displayName);
+            if (data == null && accountHeaders.getAccountToHeader().containsKey(displayName))
+            {
+                log.debug("{} isn't loaded, so there is nothing in memory to store", displayName);
+                return;
+            }
             if (data == null)
             {
                 log.debug("for an unknown reason the data associated with {} has been set to null. Storing" +
                         "an empty AccountData object instead.", displayName);
                 data = new AccountData();
             }
+            if (!onlyTrackedItemsChanged)
+            {
+                data.markAllItemsChanged();
+            }
             thisClientLastStored = displayName;
             data.setLastStoredAt(Instant.now());
-            plugin.tradePersister.writeToFile(displayName, data);
+            AccountData snapshot = data.snapshot();
+            plugin.tradePersister.rememberSessionState(displayName, snapshot);
+            pendingSave.snapshots.put(displayName, new AccountSnapshot(data, snapshot));
         }
         catch (Exception e)
         {
@@ -298,6 +741,75 @@ public class DataHandler {
         }
     }
 
+    /**
+     * Adds an account whose changes are all in its journal already, apart from its session state, to the pending
+     * save. Its session state is journaled if it changed. If the journal has grown large, a full snapshot is
+     * written instead so that replaying it on load stays cheap.
+     */
+    private void takeJournaledAccountData(String displayName, PendingSave pendingSave)
+    {
+        AccountData data = accountSpecificData.get(displayName);
+        if (data == null)
+        {
+            return;
+        }
+
+        if (data.getJournalRecordsSinceCheckpoint() >= JOURNAL_CHECKPOINT_THRESHOLD)
+        {
+            log.debug("journal for {} has reached the checkpoint threshold, writing a full snapshot", displayName);
+            snapshotAccountData(displayName, true, pendingSave);
+            return;
+        }
+
+        JournalRecord sessionStateRecord = plugin.tradePersister.sessionStateRecord(displayName, data);
+        if (sessionStateRecord != null)
+        {
+            pendingSave.sessionStateRecords.put(displayName, sessionStateRecord);
+        }
+    }
+
+    private void writeSessionStateRecord(String displayName, JournalRecord sessionStateRecord)
+    {
+        try
+        {
+            plugin.tradePersister.appendToJournal(displayName, sessionStateRecord);
+        }
+        catch (Exception e)
+        {
+            log.warn("couldn't journal session state for {}, writing a full snapshot on the next save instead. error = {}", displayName, e);
+            plugin.tradePersister.forgetSessionState(displayName);
+            accountsWithUnsavedChanges.add(displayName);
+            scheduleCoalescedStore();
+        }
+    }
+
+    private void writeAccountSnapshot(String displayName, AccountSnapshot accountSnapshot)
+    {
+        try
+        {
+            writeSnapshot(displayName, accountSnapshot.snapshot);
+        }
+        catch (Exception e)
+        {
+            log.warn("couldn't store trades, error = " + e);
+            //the snapshot's changed items are the account's again, so that the next save writes them
+            accountSnapshot.accountData.restoreChangedItemIds(accountSnapshot.snapshot.drainChangedItemIds());
+            plugin.tradePersister.forgetSessionState(displayName);
+        }
+    }
+
+    /**
+     * Writes a full snapshot of an account and drops the journal records it now contains.
+     *
+     * @param snapshot made by AccountData.snapshot, which marks the journal checkpoint the snapshot is at
+     */
+    private void writeSnapshot(String displayName, AccountData snapshot) throws IOException
+    {
+        plugin.tradePersister.writeAccountSnapshot(displayName, snapshot);
+        plugin.tradePersister.truncateJournal(displayName, snapshot.getJournalCheckpoint());
+        updateHeader(displayName, snapshot, TradePersister.accountLastModified(displayName));
+    }
+
     private void storeData(String fileName, Object data) {
         try {
             plugin.tradePersister.writeToFile(fileName, data);
@@ -306,4 +818,23 @@ public class DataHandler {
             log.warn("couldn't store data to {} bc of {}",fileName, e);
         }
     }
+
+    /**
+     * What a save writes, copied on the client thread so that the persistence worker never reads an account while it
+     * is being changed.
+     */
+    private static class PendingSave {
+        private final Map<String, AccountSnapshot> snapshots = new HashMap<>();
+        private final Map<String, JournalRecord> sessionStateRecords = new HashMap<>();
+    }
+
+    private static class AccountSnapshot {
+        private final AccountData accountData;
+        private final AccountData snapshot;
+
+        private AccountSnapshot(AccountData accountData, AccountData snapshot) {
+            this.accountData = accountData;
+            this.snapshot = snapshot;
+        }
+    }
 }
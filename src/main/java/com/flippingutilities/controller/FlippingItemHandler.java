@@ -3,16 +3,19 @@ package com.flippingutilities.controller;
 import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.FlippingItem;
 import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferTotals;
 import com.flippingutilities.model.PartialOffer;
 import com.flippingutilities.utilities.SORT;
+import lombok.AllArgsConstructor;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 public class FlippingItemHandler {
     FlippingPlugin plugin;
+    private final AccountWideItemList accountWideItemList = new AccountWideItemList();
 
     FlippingItemHandler(FlippingPlugin plugin) {
         this.plugin = plugin;
@@ -20,71 +23,109 @@ public class FlippingItemHandler {
 
     public List<FlippingItem> sortItems(List<FlippingItem> items, SORT selectedSort, Instant startOfInterval)
     {
-        List<FlippingItem> result = new ArrayList<>(items);
+        return sortItems(items, selectedSort, startOfInterval, items.size());
+    }
 
-        if (selectedSort == null || result.isEmpty()) {
-            return result;
+    /**
+     * Sorts the items by the selected sort, highest first, with items that are tied in the reverse of the order they
+     * were given in.
+     *
+     * @param limit how many items from the top are needed, only those are put in order and returned. The stats
+     *              panel only needs the items up to the end of the page it is on.
+     */
+    public List<FlippingItem> sortItems(List<FlippingItem> items, SORT selectedSort, Instant startOfInterval, int limit)
+    {
+        if (selectedSort == null || items.isEmpty()) {
+            return new ArrayList<>(items);
         }
 
         switch (selectedSort) {
             case TIME:
-                result.sort(Comparator.comparing(FlippingItem::getLatestActivityTime));
-                break;
+                return sortByKey(items, FlippingItem::getLatestActivityTime, limit);
 
             case TOTAL_PROFIT:
-                result.sort(Comparator.comparing(item -> {
-                    Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                    ArrayList<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                    List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-                    return FlippingItem.getProfit(adjustedOffers);
-                }));
-                break;
+                return sortByKey(items, item -> getIntervalTotals(item, startOfInterval).getProfit(), limit);
 
             case PROFIT_EACH:
-                result.sort(Comparator.comparing(item -> {
-                    Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                    ArrayList<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                    List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-                    long quantity = FlippingItem.countFlipQuantity(adjustedOffers);
+                return sortByKey(items, item -> {
+                    OfferTotals totals = getIntervalTotals(item, startOfInterval);
+                    long quantity = totals.getFlipQuantity();
                     if (quantity == 0) {
                         return Long.MIN_VALUE;
                     }
 
-                    long profit = FlippingItem.getProfit(adjustedOffers);
-                    return profit / quantity;
-                }));
-                break;
+                    return totals.getProfit() / quantity;
+                }, limit);
             case ROI:
-                result.sort(Comparator.comparing(item -> {
-                    Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                    List<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                    List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-
-                    long profit = FlippingItem.getProfit(adjustedOffers);
-                    long expense = FlippingItem.getValueOfMatchedOffers(adjustedOffers, true);
+                return sortByKey(items, item -> {
+                    OfferTotals totals = getIntervalTotals(item, startOfInterval);
+                    long expense = totals.getExpense();
                     if (expense == 0) {
                         return Float.MIN_VALUE;
                     }
 
-                    return (float) profit / expense * 100;
-                }));
-                break;
+                    return (float) totals.getProfit() / expense * 100;
+                }, limit);
             case FLIP_COUNT:
-                result.sort(Comparator.comparing(
-                    item -> {
-                        Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                        List<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                        List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-                        return FlippingItem.countFlipQuantity(adjustedOffers);
-                    }));
-                break;
+                return sortByKey(items, item -> getIntervalTotals(item, startOfInterval).getFlipQuantity(), limit);
+        }
+        return new ArrayList<>(items);
+    }
+
+    /**
+     * Working out a key can mean going through the item's history, so each item's key is worked out once up front
+     * rather than every time the item is compared. When fewer items are needed than there are, the top ones are
+     * picked with a heap of that size instead of sorting all of them.
+     */
+    private <K extends Comparable<? super K>> List<FlippingItem> sortByKey(List<FlippingItem> items, Function<FlippingItem, K> keyExtractor, int limit) {
+        List<SortKey<K>> keys = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            FlippingItem item = items.get(i);
+            keys.add(new SortKey<>(item, keyExtractor.apply(item), i));
+        }
+
+        //highest key first, and for equal keys the item that came later first
+        Comparator<SortKey<K>> order = Comparator.<SortKey<K>, K>comparing(key -> key.key).thenComparingInt(key -> key.index).reversed();
+
+        List<SortKey<K>> sortedKeys;
+        if (limit >= keys.size()) {
+            sortedKeys = keys;
+            sortedKeys.sort(order);
+        }
+        else {
+            //the head of the heap is the lowest of the top items found so far
+            PriorityQueue<SortKey<K>> topKeys = new PriorityQueue<>(limit + 1, order.reversed());
+            for (SortKey<K> key : keys) {
+                topKeys.add(key);
+                if (topKeys.size() > limit) {
+                    topKeys.poll();
+                }
+            }
+            sortedKeys = new ArrayList<>(topKeys);
+            sortedKeys.sort(order);
+        }
+
+        List<FlippingItem> result = new ArrayList<>(sortedKeys.size());
+        for (SortKey<K> key : sortedKeys) {
+            result.add(key.item);
         }
-        Collections.reverse(result);
         return result;
     }
 
-    public void deleteRemovedItems(List<FlippingItem> currItems) {
-        currItems.removeIf((item) ->
+    @AllArgsConstructor
+    private static class SortKey<K> {
+        private final FlippingItem item;
+        private final K key;
+        private final int index;
+    }
+
+    private OfferTotals getIntervalTotals(FlippingItem item, Instant startOfInterval) {
+        Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
+        return item.getIntervalTotals(startOfInterval, offerIdToPartialOffer);
+    }
+
+    public void deleteRemovedItems(AccountData accountData) {
+        accountData.removeItems((item) ->
         {
             if (item.getGeLimitResetTime() != null) {
                 Instant startOfRefresh = item.getGeLimitResetTime().minus(4, ChronoUnit.HOURS);
@@ -99,23 +140,27 @@ public class FlippingItemHandler {
     /**
      * creates a view of an "account wide tradelist". An account wide tradelist is just a reflection of the flipping
      * items currently in each of the account's tradelists. It does this by merging the flipping items of the same type
-     * from each account's trade list into one flipping item.
+     * from each account's trade list into one flipping item. The merged items are kept between calls and only the
+     * ones whose items changed are merged again, see AccountWideItemList.
      */
     List<FlippingItem> createAccountWideFlippingItemList(Collection<AccountData> allAccountData) {
-        //take all flipping items from the account cache, regardless of account, and segregate them based on item name.
-        Map<Integer, List<FlippingItem>> groupedItems = allAccountData.stream().
-            flatMap(accountData -> accountData.getTrades().stream()).
-            map(FlippingItem::clone).
-            collect(Collectors.groupingBy(FlippingItem::getItemId));
-
-        //take every list containing flipping items of the same type and reduce it to one merged flipping item and put that
-        //item in a final merged list
-        List<FlippingItem> mergedItems = groupedItems.values().stream().
-            map(list -> list.stream().reduce(FlippingItem::merge)).filter(Optional::isPresent).map(Optional::get).
-            collect(Collectors.toList());
+        return accountWideItemList.getItems(allAccountData);
+    }
 
-        mergedItems.sort(Collections.reverseOrder(Comparator.comparing(FlippingItem::getLatestActivityTime)));
+    /**
+     * Applies an offer that was just added to one of the account's items to the account wide tradelist.
+     *
+     * @param replacedOffers the offers FlippingItem.updateHistory returned
+     */
+    void offerAdded(FlippingItem item, OfferEvent newOffer, List<OfferEvent> replacedOffers) {
+        accountWideItemList.offerAdded(item, newOffer, replacedOffers);
+    }
 
-        return mergedItems;
+    /**
+     * Should be called when properties of the account's items other than their histories were changed, so that the
+     * account wide tradelist reflects them.
+     */
+    void itemPropertiesChanged() {
+        accountWideItemList.itemPropertiesChanged();
     }
 }
@@ -179,13 +179,11 @@ public class FlippingPlugin extends Plugin {
     @Getter
     private List<OfferEvent> eventsReceivedBeforeFullLogin = new ArrayList<>();
 
-    //building the account wide trade list is an expensive operation so we store it in this variable and only recompute
-    //it if we have gotten an update since the last account wide trade list build.
+    //building the account wide recipe flip group list is an expensive operation so we store it in this variable and
+    //only recompute it if we have gotten an update since the last build. The account wide trade list is kept up to
+    //date by the flipping item handler instead.
     @Setter
-    boolean updateSinceLastItemAccountWideBuild = true;
-    @Setter
-    boolean updateSinceLastRecipeFlipGroupAccountWideBuild = true;
-    List<FlippingItem> prevBuiltAccountWideItemList;
+    volatile boolean updateSinceLastRecipeFlipGroupAccountWideBuild = true;
     List<RecipeFlipGroup> prevBuildAccountWideRecipeFlipGroup;
 
     //updates the cache by monitoring the directory and loading a file's contents into the cache if it has been changed
@@ -237,6 +235,7 @@ public class FlippingPlugin extends Plugin {
         accountCurrentlyViewed = ACCOUNT_WIDE;
 
         tradePersister = new TradePersister(gson);
+        tradePersister.setCompressFiles(config.compressDataFiles());
         recipeHandler = new RecipeHandler(gson, httpClient, null);
         flippingItemHandler = new FlippingItemHandler(this);
 
@@ -309,6 +308,8 @@ public class FlippingPlugin extends Plugin {
             autoSaveTask.cancel(true);
             autoSaveTask = null;
         }
+        dataHandler.shutdown();
+        statPanel.shutdown();
         masterPanel.dispose();
 
         clientToolbar.removeNavigation(navButton);
@@ -324,7 +325,8 @@ public class FlippingPlugin extends Plugin {
             slotTimersTask.cancel(true);
             slotTimersTask = null;
         }
-        dataHandler.storeData();
+        //the client waits (for a bounded amount of time) on these futures before it exits
+        clientShutdownEvent.waitFor(dataHandler.storeData());
         if (cacheUpdaterJob != null) cacheUpdaterJob.stop();
         if (wikiDataFetcherJob != null) wikiDataFetcherJob.stop();
         if (slotStateSenderJob != null) slotStateSenderJob.stop();
@@ -426,7 +428,7 @@ public class FlippingPlugin extends Plugin {
     public void handleLogout() {
         log.debug("{} is logging out", currentlyLoggedInAccount);
 
-        dataHandler.getAccountData(currentlyLoggedInAccount).setLastSessionTimeUpdate(null);
+        dataHandler.viewAccountData(currentlyLoggedInAccount).setLastSessionTimeUpdate(null);
         dataHandler.storeData();
 
         if (slotTimersTask != null && !slotTimersTask.isCancelled()) {
@@ -518,9 +520,9 @@ public class FlippingPlugin extends Plugin {
 
     public void truncateTradeList() {
         if (accountCurrentlyViewed.equals(ACCOUNT_WIDE)) {
-            dataHandler.getAllAccountData().forEach(accountData -> flippingItemHandler.deleteRemovedItems(accountData.getTrades()));
+            dataHandler.getAllAccountData().forEach(flippingItemHandler::deleteRemovedItems);
         } else {
-            flippingItemHandler.deleteRemovedItems(getItemsForCurrentView());
+            flippingItemHandler.deleteRemovedItems(dataHandler.getAccountData(accountCurrentlyViewed));
         }
     }
 
@@ -574,21 +576,21 @@ public class FlippingPlugin extends Plugin {
      * @param fileName name of the file which was modified.
      */
     public void onDirectoryUpdate(String fileName) {
-        if (!fileName.contains(".json") || fileName.contains(".backup.json") || fileName.contains(".special.json")) {
+        if (fileName.equals("accountwide.json")) {
+            executor.schedule(() -> {
+                dataHandler.loadAccountWideData();
+            }, 1000, TimeUnit.MILLISECONDS);
             return;
         }
-        String displayNameOfChangedAcc = fileName.split("\\.")[0];
 
-        if (displayNameOfChangedAcc.equals(dataHandler.thisClientLastStored)) {
-            log.debug("not reloading data for {} into the cache as this client was the last one to store it", displayNameOfChangedAcc);
-            dataHandler.thisClientLastStored = null;
+        String displayNameOfChangedAcc = TradePersister.displayNameOfAccountFile(fileName);
+        if (displayNameOfChangedAcc == null) {
             return;
         }
 
-        if (fileName.equals("accountwide.json")) {
-            executor.schedule(() -> {
-                dataHandler.loadAccountWideData();
-            }, 1000, TimeUnit.MILLISECONDS);
+        if (displayNameOfChangedAcc.equals(dataHandler.thisClientLastStored)) {
+            log.debug("not reloading data for {} into the cache as this client was the last one to store it", displayNameOfChangedAcc);
+            dataHandler.thisClientLastStored = null;
             return;
         }
 
@@ -606,8 +608,6 @@ public class FlippingPlugin extends Plugin {
                     masterPanel.getAccountSelector().setVisible(true);
                 }
 
-                updateSinceLastItemAccountWideBuild = true;
-
                 //rebuildItemsDisplay if you are currently looking at the account who's cache just got updated or the account wide view.
                 if (accountCurrentlyViewed.equals(ACCOUNT_WIDE) || accountCurrentlyViewed.equals(displayNameOfChangedAcc)) {
                     List<FlippingItem> tradesForCurrentView = viewItemsForCurrentView();
@@ -621,7 +621,8 @@ public class FlippingPlugin extends Plugin {
 
     //TODO this caching logic can be generalized and put into another component. There are also a bunch of
     //other places where I want to cache things.
-    private List<RecipeFlipGroup> createAccountWideRecipeFlipGroupList() {
+    //synchronized as the stats are worked out on the stats pipeline's thread as well as the EDT
+    private synchronized List<RecipeFlipGroup> createAccountWideRecipeFlipGroupList() {
         if (!updateSinceLastRecipeFlipGroupAccountWideBuild) {
             return prevBuildAccountWideRecipeFlipGroup;
         }
@@ -634,25 +635,32 @@ public class FlippingPlugin extends Plugin {
     }
 
     private List<FlippingItem> createAccountWideFlippingItemList() {
-        //since this is an expensive operation, cache its results and only recompute it if there has been an update
-        //to one of the account's tradelists, (updateSinceLastAccountWideBuild is set in onGrandExchangeOfferChanged)
-        if (!updateSinceLastItemAccountWideBuild) {
-            return prevBuiltAccountWideItemList;
-        }
-
         if (dataHandler.getCurrentAccounts().size() == 0) {
             return new ArrayList<>();
         }
 
-        updateSinceLastItemAccountWideBuild = false;
-        prevBuiltAccountWideItemList = flippingItemHandler.createAccountWideFlippingItemList(dataHandler.viewAllAccountData());;
-        return prevBuiltAccountWideItemList;
+        //the handler keeps the account wide items between calls and only merges the ones that changed again
+        return flippingItemHandler.createAccountWideFlippingItemList(dataHandler.viewAllAccountData());
+    }
+
+    /**
+     * Should be called after a new offer was added to the history of one of the account's items, so that it is
+     * applied to the account wide trade list.
+     *
+     * @param replacedOffers the offers FlippingItem.updateHistory returned
+     */
+    void onOfferAddedToItem(FlippingItem item, OfferEvent newOffer, List<OfferEvent> replacedOffers) {
+        flippingItemHandler.offerAdded(item, newOffer, replacedOffers);
     }
 
     public List<FlippingItem> sortItems(List<FlippingItem> items, SORT sort, Instant startOfInterval) {
         return flippingItemHandler.sortItems(items, sort, startOfInterval);
     }
 
+    public List<FlippingItem> sortItems(List<FlippingItem> items, SORT sort, Instant startOfInterval, int limit) {
+        return flippingItemHandler.sortItems(items, sort, startOfInterval, limit);
+    }
+
     public List<RecipeFlipGroup> sortRecipeFlipGroups(List<RecipeFlipGroup> recipeFlipGroups, SORT sort, Instant startOfInterval) {
         return recipeHandler.sortRecipeFlipGroups(recipeFlipGroups, sort, startOfInterval);
     }
@@ -689,7 +697,7 @@ public class FlippingPlugin extends Plugin {
         if (currentlyLoggedInAccount == null) {
             return;
         }
-        dataHandler.getAccountData(currentlyLoggedInAccount).setLastSessionTimeUpdate(null);
+        dataHandler.viewAccountData(currentlyLoggedInAccount).setLastSessionTimeUpdate(null);
     }
 
     private void updateActiveFlippingSessionTime() {
@@ -703,8 +711,9 @@ public class FlippingPlugin extends Plugin {
         long additionalTime = Duration.between(lastUpdate, Instant.now()).toMillis();
         long newTotalTime = account.getAccumulatedSessionTimeMillis() + additionalTime;
 
-        dataHandler.getAccountData(currentlyLoggedInAccount).setAccumulatedSessionTimeMillis(newTotalTime);
-        dataHandler.getAccountData(currentlyLoggedInAccount).setLastSessionTimeUpdate(Instant.now());
+        account.setAccumulatedSessionTimeMillis(newTotalTime);
+        account.setLastSessionTimeUpdate(Instant.now());
+        dataHandler.markSessionStateAsHavingChanged(currentlyLoggedInAccount);
 
         if (shouldUpdateSessionTimeDisplay()) {
             statPanel.updateSessionTimeDisplay(viewAccumulatedTimeForCurrentView());
@@ -766,31 +775,29 @@ public class FlippingPlugin extends Plugin {
 
     public void setFavoriteOnAllAccounts(FlippingItem item, boolean favoriteStatus) {
         for (String accountName : dataHandler.getCurrentAccounts()) {
-            AccountData account = dataHandler.viewAccountData(accountName);
-            account.
-                    getTrades().
-                    stream().
-                    filter(accountItem -> accountItem.getItemId() == item.getItemId()).
-                    findFirst().
-                    ifPresent(accountItem -> {
-                        accountItem.setFavorite(favoriteStatus);
-                        markAccountTradesAsHavingChanged(accountName);
-                    });
+            //avoids loading accounts that never traded the item
+            if (!dataHandler.mayHaveItem(accountName, item.getItemId())) {
+                continue;
+            }
+            FlippingItem accountItem = dataHandler.viewAccountData(accountName).getItem(item.getItemId());
+            if (accountItem != null) {
+                accountItem.setFavorite(favoriteStatus);
+                markAccountTradesAsHavingChanged(accountName);
+            }
         }
     }
 
     public void setFavoriteCodeOnAllAccounts(FlippingItem item, String favoriteCode) {
         for (String accountName : dataHandler.getCurrentAccounts()) {
-            AccountData account = dataHandler.viewAccountData(accountName);
-            account.
-                    getTrades().
-                    stream().
-                    filter(accountItem -> accountItem.getItemId() == item.getItemId()).
-                    findFirst().
-                    ifPresent(accountItem -> {
-                        accountItem.setFavoriteCode(favoriteCode);
-                        markAccountTradesAsHavingChanged(accountName);
-                    });
+            //avoids loading accounts that never traded the item
+            if (!dataHandler.mayHaveItem(accountName, item.getItemId())) {
+                continue;
+            }
+            FlippingItem accountItem = dataHandler.viewAccountData(accountName).getItem(item.getItemId());
+            if (accountItem != null) {
+                accountItem.setFavoriteCode(favoriteCode);
+                markAccountTradesAsHavingChanged(accountName);
+            }
         }
     }
 
@@ -811,19 +818,20 @@ public class FlippingPlugin extends Plugin {
         if (currentlyLoggedInAccount == null) {
             return;
         }
-        Optional<FlippingItem> flippingItem = dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().stream().filter(item -> item.getItemId() == selectedOffer.getItemId()).findFirst();
-        if (flippingItem.isPresent()) {
-            flippingItem.get().updateHistory(selectedOffer);
-            flippingItem.get().updateLatestProperties(selectedOffer);
+        AccountData accountData = dataHandler.getAccountData(currentlyLoggedInAccount);
+        FlippingItem flippingItem = accountData.getItem(selectedOffer.getItemId());
+        if (flippingItem != null) {
+            flippingItem.updateHistory(selectedOffer);
+            flippingItem.updateLatestProperties(selectedOffer);
             //incase it was set to false before
-            flippingItem.get().setValidFlippingPanelItem(true);
+            flippingItem.setValidFlippingPanelItem(true);
         } else {
             int tradeItemId = selectedOffer.getItemId();
             FlippingItem item = new FlippingItem(tradeItemId, "", -1, currentlyLoggedInAccount);
             item.setValidFlippingPanelItem(true);
             item.updateLatestProperties(selectedOffer);
             item.updateHistory(selectedOffer);
-            dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().add(0, item);
+            accountData.addItem(item);
 
             //itemmanager can only be used on the client thread.
             //i can't put everything in the runnable given to the client thread cause then it executes async and if there
@@ -855,11 +863,11 @@ public class FlippingPlugin extends Plugin {
     }
 
     public List<OfferEvent> findOfferMatches(OfferEvent offerEvent, int limit) {
-        Optional<FlippingItem> flippingItem = dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().stream().filter(item -> item.getItemId() == offerEvent.getItemId()).findFirst();
-        if (!flippingItem.isPresent()) {
+        FlippingItem flippingItem = dataHandler.getAccountData(currentlyLoggedInAccount).getItem(offerEvent.getItemId());
+        if (flippingItem == null) {
             return new ArrayList<>();
         }
-        return flippingItem.get().getOfferMatches(offerEvent, limit);
+        return flippingItem.getOfferMatches(offerEvent, limit);
     }
 
     public Font getFont() {
@@ -873,16 +881,15 @@ public class FlippingPlugin extends Plugin {
         if (accountCurrentlyViewed.equals(ACCOUNT_WIDE)) {
             for (AccountData accountData : dataHandler.getAllAccountData()) {
                 accountData.getTrades().forEach(item -> {
-                    deleteOffers(item.getIntervalHistory(startOfInterval), item);
+                    deleteOffers(new ArrayList<>(item.getIntervalHistory(startOfInterval)), item);
                 });
             }
         } else {
             getItemsForCurrentView().forEach(item -> {
-                deleteOffers(item.getIntervalHistory(startOfInterval), item);
+                deleteOffers(new ArrayList<>(item.getIntervalHistory(startOfInterval)), item);
             });
         }
 
-        updateSinceLastItemAccountWideBuild = true;
         updateSinceLastRecipeFlipGroupAccountWideBuild = true;
         truncateTradeList();
     }
@@ -895,7 +902,6 @@ public class FlippingPlugin extends Plugin {
         item.deleteOffers(offers);
         recipeHandler.deleteInvalidRecipeFlips(offers, recipeFlipGroups);
         markAccountTradesAsHavingChanged(accountCurrentlyViewed);
-        updateSinceLastItemAccountWideBuild = true;
         updateSinceLastRecipeFlipGroupAccountWideBuild = true;
     }
 
@@ -911,7 +917,7 @@ public class FlippingPlugin extends Plugin {
         } else {
             getItemsForCurrentView().forEach(flippingItem -> flippingItem.setValidFlippingPanelItem(false));
         }
-        updateSinceLastItemAccountWideBuild = true;
+        flippingItemHandler.itemPropertiesChanged();
         truncateTradeList();
     }
 
@@ -927,7 +933,7 @@ public class FlippingPlugin extends Plugin {
                 continue;
             }
             FlippingItem itemWithOnlySelectedIntervalHistory = new FlippingItem(item.getItemId(), item.getItemName(), item.getTotalGELimit(), item.getFlippedBy());
-            itemWithOnlySelectedIntervalHistory.getHistory().setCompressedOfferEvents(offersInInterval);
+            itemWithOnlySelectedIntervalHistory.getHistory().setCompressedOfferEvents(new ArrayList<>(offersInInterval));
             items.add(itemWithOnlySelectedIntervalHistory);
         }
 
@@ -1051,6 +1057,18 @@ public class FlippingPlugin extends Plugin {
         recipeHandler.addRecipeFlip(account.getRecipeFlipGroups(), recipeFlip, recipe);
         updateSinceLastRecipeFlipGroupAccountWideBuild = true;
     }
+    //see RecipeHandler.deleteRecipeFlip
+    public void deleteRecipeFlip(RecipeFlipGroup recipeFlipGroup, RecipeFlip recipeFlip) {
+        recipeHandler.deleteRecipeFlip(viewRecipeFlipGroupsForCurrentView(), recipeFlipGroup, recipeFlip);
+        updateSinceLastRecipeFlipGroupAccountWideBuild = true;
+        markAccountTradesAsHavingChanged(accountCurrentlyViewed);
+    }
+    //see RecipeHandler.deleteRecipeFlips
+    public void deleteRecipeFlips(RecipeFlipGroup recipeFlipGroup, Instant startOfInterval) {
+        recipeHandler.deleteRecipeFlips(viewRecipeFlipGroupsForCurrentView(), recipeFlipGroup, startOfInterval);
+        updateSinceLastRecipeFlipGroupAccountWideBuild = true;
+        markAccountTradesAsHavingChanged(accountCurrentlyViewed);
+    }
 
     /**
      * Adds the dummy item that was favorited to the trades list. Dummy items are created for display purposes
@@ -1069,16 +1087,15 @@ public class FlippingPlugin extends Plugin {
     }
 
     private void addFavoritedItem(FlippingItem flippingItem, String accountName) {
-        List<FlippingItem> items = dataHandler.getAccountData(accountName).getTrades();
-        Optional<FlippingItem> existingItem = items.stream().filter(item -> item.getItemId() == flippingItem.getItemId()).findFirst();
-        if (existingItem.isPresent()) {
-            existingItem.get().setFavorite(true);
+        AccountData accountData = dataHandler.getAccountData(accountName);
+        FlippingItem existingItem = accountData.getItem(flippingItem.getItemId());
+        if (existingItem != null) {
+            existingItem.setFavorite(true);
         }
         else {
             flippingItem.setFlippedBy(accountName);
-            items.add(0, flippingItem);
+            accountData.addItem(flippingItem);
             markAccountTradesAsHavingChanged(accountName);
-            updateSinceLastItemAccountWideBuild = true;
         }
     }
 
@@ -1124,8 +1141,12 @@ public class FlippingPlugin extends Plugin {
 
         handleSlotTimersConfigChange(event);
         handleAutoSaveConfigChange(event);
+        if (event.getKey().equals("compressDataFiles")) {
+            tradePersister.setCompressFiles(config.compressDataFiles());
+        }
 
         statPanel.rebuildItemsDisplay(viewItemsForCurrentView());
+        flippingPanel.discardItemPanels();
         flippingPanel.rebuild(viewItemsForCurrentView());
     }
 
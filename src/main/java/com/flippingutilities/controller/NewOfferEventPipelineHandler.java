@@ -1,8 +1,10 @@
 package com.flippingutilities.controller;
 
+import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.FlippingItem;
 import com.flippingutilities.model.OfferEvent;
 import com.flippingutilities.ui.widgets.SlotActivityTimer;
+import com.flippingutilities.utilities.CanonicalNames;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.WorldType;
 import net.runelite.api.events.GrandExchangeOfferChanged;
@@ -56,7 +58,7 @@ public class NewOfferEventPipelineHandler {
     public void onNewOfferEvent(OfferEvent newOfferEvent) {
         String currentlyLoggedInAccount = plugin.getCurrentlyLoggedInAccount();
         if (currentlyLoggedInAccount != null) {
-            newOfferEvent.setMadeBy(currentlyLoggedInAccount);
+            newOfferEvent.setMadeBy(CanonicalNames.of(currentlyLoggedInAccount));
         }
 
         Optional<OfferEvent> screenedOfferEvent = screenOfferEvent(newOfferEvent);
@@ -67,13 +69,15 @@ public class NewOfferEventPipelineHandler {
 
         OfferEvent finalizedOfferEvent = screenedOfferEvent.get();
         
-        List<FlippingItem> currentlyLoggedInAccountsTrades = plugin.getDataHandler().getAccountData(currentlyLoggedInAccount).getTrades();
+        //not using getAccountData here as the offer is persisted through the account's journal rather than by
+        //rewriting the whole account
+        AccountData currentlyLoggedInAccountData = plugin.getDataHandler().viewAccountData(currentlyLoggedInAccount);
 
-        Optional<FlippingItem> flippingItem = currentlyLoggedInAccountsTrades.stream().filter(item -> item.getItemId() == finalizedOfferEvent.getItemId()).findFirst();
-
-        updateTradesList(currentlyLoggedInAccountsTrades, flippingItem, finalizedOfferEvent.clone());
-
-        plugin.setUpdateSinceLastItemAccountWideBuild(true);
+        OfferEvent offerForHistory = finalizedOfferEvent.clone();
+        updateTradesList(currentlyLoggedInAccountData, offerForHistory);
+        //only the segment holding this item has to be rewritten on the account's next snapshot
+        currentlyLoggedInAccountData.markItemChanged(offerForHistory.getItemId());
+        plugin.getDataHandler().journalOfferEvent(currentlyLoggedInAccount, offerForHistory);
 
         rebuildDisplayAfterOfferEvent(finalizedOfferEvent);
     }
@@ -115,8 +119,9 @@ public class NewOfferEventPipelineHandler {
     public Optional<OfferEvent> screenOfferEvent(OfferEvent newOfferEvent) {
         plugin.getSlotsPanel().update(newOfferEvent);
 
-        Map<Integer, OfferEvent> lastOfferEventForEachSlot = plugin.getDataHandler().getAccountData(plugin.getCurrentlyLoggedInAccount()).getLastOffers();
-        List<SlotActivityTimer> slotActivityTimers = plugin.getDataHandler().getAccountData(plugin.getCurrentlyLoggedInAccount()).getSlotTimers();
+        Map<Integer, OfferEvent> lastOfferEventForEachSlot = plugin.getDataHandler().viewAccountData(plugin.getCurrentlyLoggedInAccount()).getLastOffers();
+        List<SlotActivityTimer> slotActivityTimers = plugin.getDataHandler().viewAccountData(plugin.getCurrentlyLoggedInAccount()).getSlotTimers();
+        plugin.getDataHandler().markSessionStateAsHavingChanged(plugin.getCurrentlyLoggedInAccount());
         OfferEvent lastOfferEvent = lastOfferEventForEachSlot.get(newOfferEvent.getSlot());
 
         //completely useless updates
@@ -174,30 +179,31 @@ public class NewOfferEventPipelineHandler {
     private OfferEvent createOfferEvent(GrandExchangeOfferChanged newOfferEvent) {
         OfferEvent offer = OfferEvent.fromGrandExchangeEvent(newOfferEvent);
         offer.setTickArrivedAt(plugin.getClient().getTickCount());
-        offer.setMadeBy(plugin.getCurrentlyLoggedInAccount());
+        offer.setMadeBy(CanonicalNames.of(plugin.getCurrentlyLoggedInAccount()));
         return offer;
     }
 
     /**
-     * This method updates the given trade list in response to an OfferEvent
+     * This method updates the given account's trade list in response to an OfferEvent
      *
-     * @param trades       the trades list to update
-     * @param flippingItem the flipping item to be updated in the tradeslist, if it even exists
-     * @param newOffer     new offer that just came in
+     * @param accountData the account whose trades list is updated
+     * @param newOffer    new offer that just came in
      */
-    private void updateTradesList(List<FlippingItem> trades, Optional<FlippingItem> flippingItem, OfferEvent newOffer) {
-        if (flippingItem.isPresent()) {
-            FlippingItem item = flippingItem.get();
+    private void updateTradesList(AccountData accountData, OfferEvent newOffer) {
+        //looked up by id rather than by going through every item the account has traded
+        FlippingItem item = accountData.getItem(newOffer.getItemId());
+        if (item != null) {
 
             //if a user buys/sells an item they previously deleted from the flipping panel, show the panel again.
             if (!item.getValidFlippingPanelItem()) {
                 item.setValidFlippingPanelItem(true);
             }
 
-            item.updateHistory(newOffer);
+            List<OfferEvent> replacedOffers = item.updateHistory(newOffer);
             item.updateLatestProperties(newOffer);
+            plugin.onOfferAddedToItem(item, newOffer, replacedOffers);
         } else {
-            addToTradesList(trades, newOffer);
+            addToTradesList(accountData, newOffer);
         }
     }
 
@@ -206,10 +212,10 @@ public class NewOfferEventPipelineHandler {
      * adds it to the given trades list. This method is invoked when we receive an offer event for an item that isn't
      * currently present in the trades list.
      *
-     * @param tradesList the trades list to be updated
-     * @param newOffer   the offer to update the trade list with
+     * @param accountData the account whose trades list is updated
+     * @param newOffer    the offer to update the trade list with
      */
-    private void addToTradesList(List<FlippingItem> tradesList, OfferEvent newOffer) {
+    private void addToTradesList(AccountData accountData, OfferEvent newOffer) {
         int tradeItemId = newOffer.getItemId();
         String itemName = plugin.getItemManager().getItemComposition(tradeItemId).getName();
 
@@ -221,6 +227,6 @@ public class NewOfferEventPipelineHandler {
         flippingItem.updateHistory(newOffer);
         flippingItem.updateLatestProperties(newOffer);
 
-        tradesList.add(0, flippingItem);
+        accountData.addItem(flippingItem);
     }
 }
@@ -25,6 +25,7 @@ import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.FlippingItem;
 import com.flippingutilities.model.OfferEvent;
 import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.model.PartialOfferIndex;
 import com.flippingutilities.model.RecipeFlip;
 import com.flippingutilities.model.RecipeFlipGroup;
 import com.flippingutilities.utilities.MathUtils;
@@ -58,6 +59,8 @@ public class RecipeHandler {
     private OkHttpClient httpClient;
     private List<Recipe> localRecipes;
     private Optional<List<Recipe>> apiRecipes;
+    //the partial offers of the recipe flip groups getOfferIdToPartialOffer was last called with
+    private PartialOfferIndex partialOfferIndex;
 
     public RecipeHandler(Gson gson, OkHttpClient httpClient, List<Recipe> localRecipes) {
         this.gson = gson;
@@ -76,10 +79,6 @@ public class RecipeHandler {
         return recipeFlipGroups.stream().filter(group -> group.getRecipe().equals(recipe)).findFirst();
     }
 
-    // TODO this is pretty inefficient, i don't think it really matters, but might
-    // be worth looking into.
-    // TODO We could either cache it in the plugin or make the lookups faster
-    // somehow.
     /**
      * Gets a map of offer id to partial offer. Since an offer can be referenced by
      * multiple partial offers (each
@@ -88,25 +87,36 @@ public class RecipeHandler {
      * consumed by each of the partial offers referencing that one offer to get the
      * final partial offer corresponding
      * to that offer id.
+     * <p>
+     * This is called for every item whenever the stats are worked out, so the
+     * cumulative partial offers are looked up from an index of the groups'
+     * partial offers. The index is only built again when it is asked about
+     * different groups, changes made to the groups through this class are
+     * applied to it.
      */
-    public Map<String, PartialOffer> getOfferIdToPartialOffer(List<RecipeFlipGroup> recipeFlipGroups, int itemId) {
-        Map<String, PartialOffer> offerIdToPartialOffer = new HashMap<>();
-        for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups) {
-            if (!recipeFlipGroup.isInGroup(itemId)) {
-                continue;
-            }
-            recipeFlipGroup.getOfferIdToPartialOffer(itemId).forEach((offerId, partialOffer) -> {
-                if (offerIdToPartialOffer.containsKey(offerId)) {
-                    PartialOffer otherPartialOffer = offerIdToPartialOffer.get(offerId);
-                    PartialOffer cumulativePartialOffer = otherPartialOffer.clone();
-                    cumulativePartialOffer.amountConsumed += partialOffer.amountConsumed;
-                    offerIdToPartialOffer.put(offerId, cumulativePartialOffer);
-                } else {
-                    offerIdToPartialOffer.put(offerId, partialOffer);
-                }
-            });
+    public synchronized Map<String, PartialOffer> getOfferIdToPartialOffer(List<RecipeFlipGroup> recipeFlipGroups, int itemId) {
+        return getPartialOfferIndex(recipeFlipGroups).getOfferIdToPartialOffer(itemId);
+    }
+
+    private PartialOfferIndex getPartialOfferIndex(List<RecipeFlipGroup> recipeFlipGroups) {
+        if (partialOfferIndex == null || !partialOfferIndex.isFor(recipeFlipGroups)) {
+            partialOfferIndex = new PartialOfferIndex(recipeFlipGroups);
         }
-        return offerIdToPartialOffer;
+        return partialOfferIndex;
+    }
+
+    /**
+     * Tells the partial offer index about recipe flips that were deleted from
+     * one of the groups, if it was the index of the groups before they changed.
+     */
+    private void recipeFlipsDeleted(boolean indexInSync, List<RecipeFlip> deletedFlips) {
+        if (indexInSync) {
+            deletedFlips.forEach(partialOfferIndex::recipeFlipRemoved);
+        }
+    }
+
+    private boolean isPartialOfferIndexFor(List<RecipeFlipGroup> recipeFlipGroups) {
+        return partialOfferIndex != null && partialOfferIndex.isFor(recipeFlipGroups);
     }
 
     public List<RecipeFlipGroup> createAccountWideRecipeFlipGroupList(Collection<AccountData> allAccountData) {
@@ -498,7 +508,15 @@ public class RecipeHandler {
         }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    public void addRecipeFlip(List<RecipeFlipGroup> recipeFlipGroups, RecipeFlip recipeFlip, Recipe recipe) {
+    public synchronized void addRecipeFlip(List<RecipeFlipGroup> recipeFlipGroups, RecipeFlip recipeFlip, Recipe recipe) {
+        boolean indexInSync = isPartialOfferIndexFor(recipeFlipGroups);
+        addRecipeFlipToGroup(recipeFlipGroups, recipeFlip, recipe);
+        if (indexInSync) {
+            partialOfferIndex.recipeFlipAdded(recipeFlip);
+        }
+    }
+
+    private void addRecipeFlipToGroup(List<RecipeFlipGroup> recipeFlipGroups, RecipeFlip recipeFlip, Recipe recipe) {
         for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups) {
             if (recipe.equals(recipeFlipGroup.getRecipe())) {
                 recipeFlipGroup.addRecipeFlip(recipeFlip);
@@ -510,6 +528,22 @@ public class RecipeHandler {
         recipeFlipGroups.add(recipeFlipGroup);
     }
 
+    /**
+     * Deletes the recipe flip from the group, which is one of the given groups.
+     */
+    public synchronized void deleteRecipeFlip(List<RecipeFlipGroup> recipeFlipGroups, RecipeFlipGroup recipeFlipGroup, RecipeFlip recipeFlip) {
+        boolean indexInSync = isPartialOfferIndexFor(recipeFlipGroups);
+        recipeFlipsDeleted(indexInSync, recipeFlipGroup.deleteFlip(recipeFlip));
+    }
+
+    /**
+     * Deletes the group's recipe flips made after the start of the interval. The group is one of the given groups.
+     */
+    public synchronized void deleteRecipeFlips(List<RecipeFlipGroup> recipeFlipGroups, RecipeFlipGroup recipeFlipGroup, Instant startOfInterval) {
+        boolean indexInSync = isPartialOfferIndexFor(recipeFlipGroups);
+        recipeFlipsDeleted(indexInSync, recipeFlipGroup.deleteFlips(startOfInterval));
+    }
+
     public List<RecipeFlipGroup> sortRecipeFlipGroups(List<RecipeFlipGroup> items, SORT selectedSort,
             Instant startOfInterval) {
         List<RecipeFlipGroup> result = new ArrayList<>(items);
@@ -556,15 +590,21 @@ public class RecipeHandler {
         return result;
     }
 
-    public void deleteInvalidRecipeFlips(List<OfferEvent> offers, List<RecipeFlipGroup> recipeFlipGroups) {
+    public synchronized void deleteInvalidRecipeFlips(List<OfferEvent> offers, List<RecipeFlipGroup> recipeFlipGroups) {
         if (offers.isEmpty()) {
             return;
         }
+        boolean indexInSync = isPartialOfferIndexFor(recipeFlipGroups);
+        // most offers aren't part of any recipe flip, if none of them are there is
+        // nothing to delete
+        if (indexInSync && offers.stream().noneMatch(partialOfferIndex::isReferenced)) {
+            return;
+        }
         int itemId = offers.get(0).getItemId();
         // get all the rfgs containing recipe flips that the offers could possibly be
         // referenced in
         recipeFlipGroups.stream().filter(rfg -> rfg.isInGroup(itemId))
-                .forEach(rfg -> rfg.deleteFlipsWithDeletedOffers(offers));
+                .forEach(rfg -> recipeFlipsDeleted(indexInSync, rfg.deleteFlipsWithDeletedOffers(offers)));
     }
 
     private Optional<List<PotionGroup>> loadPotionGroups() {
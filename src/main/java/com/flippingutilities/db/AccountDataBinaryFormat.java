@@ -0,0 +1,722 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.utilities.CanonicalNames;
+import com.google.gson.Gson;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Versioned binary format for AccountData. The trade history, which is by far the largest part of an account, is
+ * stored per item as primitive columns (uuids as two longs, times as delta encoded epoch millis, prices, quantities,
+ * etc as varints) instead of as json objects with string uuids, iso instants and enum names for every offer. Everything
+ * else in AccountData (last offers, slot timers, recipe flips...) is small and is stored as an embedded json section so
+ * that it doesn't have to be kept in sync with this format.
+ * <p>
+ * Accounts are sharded: the items are split into buckets by item id and each bucket is stored in its own segment
+ * file in a directory named after the account file, so saving an account only has to rewrite the buckets that
+ * changed. The account file itself only holds the json section and a manifest of the segments.
+ * <p>
+ * Layout of the account file: magic, format version, json section, then the manifest (generation, the order of the
+ * items in the trade list, and the file name and checksum of each bucket's segment).
+ * <p>
+ * Layout of a segment: segment magic, segment version, state dictionary, then for each item its properties followed
+ * by its offer columns.
+ */
+class AccountDataBinaryFormat
+{
+	static final byte[] MAGIC = {'F', 'U', 'A', 'D'};
+	static final byte[] SEGMENT_MAGIC = {'F', 'U', 'S', 'G'};
+	static final int FORMAT_VERSION = 1;
+	static final int SEGMENT_FORMAT_VERSION = 1;
+	//item ids are spread over this many segments
+	static final int SEGMENT_COUNT = 128;
+
+	private static final int BUY = 1;
+	private static final int BEFORE_LOGIN = 1 << 1;
+	private static final int HAS_TIME = 1 << 2;
+	private static final int HAS_TRADE_STARTED_AT = 1 << 3;
+	private static final int HAS_STATE = 1 << 4;
+
+	private static final byte UUIDS_AS_LONGS = 0;
+	private static final byte UUIDS_AS_STRINGS = 1;
+
+	private final Gson gson;
+	//excludes AccountData.trades as the trades are written as columns
+	private final Gson metadataGson;
+
+	AccountDataBinaryFormat(Gson gson, Gson metadataGson)
+	{
+		this.gson = gson;
+		this.metadataGson = metadataGson;
+	}
+
+	/**
+	 * Opens a segment file of the account that is being read.
+	 */
+	interface SegmentSource
+	{
+		InputStream open(String segmentFileName) throws IOException;
+	}
+
+	/**
+	 * A segment as listed in an account's manifest. Segment files are never overwritten, each write of a segment
+	 * gets a new file name, so a manifest always describes the exact files it lists.
+	 */
+	static final class SegmentEntry
+	{
+		final int bucket;
+		final String fileName;
+		final long checksum;
+
+		SegmentEntry(int bucket, String fileName, long checksum)
+		{
+			this.bucket = bucket;
+			this.fileName = fileName;
+			this.checksum = checksum;
+		}
+	}
+
+	static final class Manifest
+	{
+		final long generation;
+		final List<Integer> itemOrder;
+		final Map<Integer, SegmentEntry> segments;
+
+		Manifest(long generation, List<Integer> itemOrder, Map<Integer, SegmentEntry> segments)
+		{
+			this.generation = generation;
+			this.itemOrder = itemOrder;
+			this.segments = segments;
+		}
+	}
+
+	static int bucketOf(int itemId)
+	{
+		return Math.floorMod(itemId, SEGMENT_COUNT);
+	}
+
+	/**
+	 * Checks whether the stream starts with this format's magic bytes, without consuming them.
+	 */
+	static boolean isBinaryFormat(InputStream in) throws IOException
+	{
+		in.mark(MAGIC.length);
+		byte[] header = new byte[MAGIC.length];
+		int read = 0;
+		while (read < header.length)
+		{
+			int n = in.read(header, read, header.length - read);
+			if (n == -1)
+			{
+				break;
+			}
+			read += n;
+		}
+		in.reset();
+		if (read != MAGIC.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			if (header[i] != MAGIC[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void write(AccountData data, Manifest manifest, OutputStream out) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.write(MAGIC);
+		dos.writeInt(FORMAT_VERSION);
+		writeString(dos, metadataGson.toJson(data, AccountData.class));
+
+		dos.writeLong(manifest.generation);
+		writeVarInt(dos, manifest.itemOrder.size());
+		for (int itemId : manifest.itemOrder)
+		{
+			writeVarInt(dos, itemId);
+		}
+		writeVarInt(dos, manifest.segments.size());
+		for (SegmentEntry segment : manifest.segments.values())
+		{
+			writeVarInt(dos, segment.bucket);
+			writeString(dos, segment.fileName);
+			dos.writeLong(segment.checksum);
+		}
+		dos.flush();
+	}
+
+	byte[] encodeSegment(List<FlippingItem> items) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		dos.write(SEGMENT_MAGIC);
+		dos.writeInt(SEGMENT_FORMAT_VERSION);
+		writeStateDictionary(dos);
+		writeVarInt(dos, items.size());
+		for (FlippingItem item : items)
+		{
+			writeItem(dos, item);
+		}
+		dos.flush();
+		return bytes.toByteArray();
+	}
+
+	AccountData read(InputStream in, SegmentSource segmentSource) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(in);
+		readFormatVersion(dis);
+
+		AccountData accountData = gson.fromJson(readString(dis), AccountData.class);
+		if (accountData == null)
+		{
+			return null;
+		}
+
+		Manifest manifest = readManifest(dis);
+		Map<Integer, FlippingItem> itemsById = new LinkedHashMap<>();
+		for (SegmentEntry segment : manifest.segments.values())
+		{
+			try (InputStream segmentIn = segmentSource.open(segment.fileName))
+			{
+				for (FlippingItem item : readSegmentItems(segmentIn))
+				{
+					itemsById.put(item.getItemId(), item);
+				}
+			}
+		}
+
+		List<FlippingItem> trades = new ArrayList<>(itemsById.size());
+		for (int itemId : manifest.itemOrder)
+		{
+			FlippingItem item = itemsById.remove(itemId);
+			if (item != null)
+			{
+				trades.add(item);
+			}
+		}
+		trades.addAll(itemsById.values());
+		accountData.setTrades(trades);
+		//everything in memory is exactly what is in the segments
+		accountData.drainChangedItemIds();
+		return accountData;
+	}
+
+	/**
+	 * Reads just the manifest of an account file, skipping over the json section.
+	 *
+	 * @return the manifest, or null if the file isn't in this format (a json account that hasn't been migrated yet)
+	 */
+	Manifest readManifestOnly(InputStream in) throws IOException
+	{
+		if (!isBinaryFormat(in))
+		{
+			return null;
+		}
+		DataInputStream dis = new DataInputStream(in);
+		readFormatVersion(dis);
+		int metadataLength = readVarInt(dis);
+		if (metadataLength > 0)
+		{
+			skipFully(dis, metadataLength - 1);
+		}
+		return readManifest(dis);
+	}
+
+	/**
+	 * Skips exactly the given amount of bytes. skipBytes can skip fewer bytes than asked for, and a truncated file
+	 * must fail here rather than have its manifest read from the wrong offset.
+	 */
+	private static void skipFully(DataInputStream dis, int n) throws IOException
+	{
+		while (n > 0)
+		{
+			int skipped = dis.skipBytes(n);
+			if (skipped <= 0)
+			{
+				//skipBytes doesn't tell the end of the stream apart from a stream that can't skip right now
+				if (dis.read() == -1)
+				{
+					throw new EOFException("account file ended " + n + " bytes before the end of its json section");
+				}
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static void readFormatVersion(DataInputStream dis) throws IOException
+	{
+		byte[] magic = new byte[MAGIC.length];
+		dis.readFully(magic);
+		int formatVersion = dis.readInt();
+		if (formatVersion > FORMAT_VERSION)
+		{
+			throw new IOException("account data was written in binary format version " + formatVersion +
+				" which is newer than the supported version " + FORMAT_VERSION);
+		}
+		if (formatVersion < 1)
+		{
+			throw new IOException("account data has an invalid binary format version " + formatVersion);
+		}
+	}
+
+	private Manifest readManifest(DataInputStream dis) throws IOException
+	{
+		long generation = dis.readLong();
+		int itemCount = readVarInt(dis);
+		List<Integer> itemOrder = new ArrayList<>(itemCount);
+		for (int i = 0; i < itemCount; i++)
+		{
+			itemOrder.add(readVarInt(dis));
+		}
+		int segmentCount = readVarInt(dis);
+		Map<Integer, SegmentEntry> segments = new TreeMap<>();
+		for (int i = 0; i < segmentCount; i++)
+		{
+			int bucket = readVarInt(dis);
+			String fileName = readString(dis);
+			long checksum = dis.readLong();
+			segments.put(bucket, new SegmentEntry(bucket, fileName, checksum));
+		}
+		return new Manifest(generation, itemOrder, segments);
+	}
+
+	List<FlippingItem> readSegmentItems(InputStream in) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(in);
+		byte[] magic = new byte[SEGMENT_MAGIC.length];
+		dis.readFully(magic);
+		for (int i = 0; i < SEGMENT_MAGIC.length; i++)
+		{
+			if (magic[i] != SEGMENT_MAGIC[i])
+			{
+				throw new IOException("not a segment file");
+			}
+		}
+		int segmentVersion = dis.readInt();
+		if (segmentVersion > SEGMENT_FORMAT_VERSION)
+		{
+			throw new IOException("segment was written in version " + segmentVersion +
+				" which is newer than the supported version " + SEGMENT_FORMAT_VERSION);
+		}
+
+		GrandExchangeOfferState[] states = readStateDictionary(dis);
+		int itemCount = readVarInt(dis);
+		List<FlippingItem> items = new ArrayList<>(itemCount);
+		for (int i = 0; i < itemCount; i++)
+		{
+			items.add(readItem(dis, states));
+		}
+		return items;
+	}
+
+	private static void writeStateDictionary(DataOutputStream dos) throws IOException
+	{
+		//states are written as indexes into this dictionary rather than as ordinals, so that a reordering of the
+		//enum in runelite doesn't corrupt stored offers.
+		GrandExchangeOfferState[] states = GrandExchangeOfferState.values();
+		writeVarInt(dos, states.length);
+		for (GrandExchangeOfferState state : states)
+		{
+			writeString(dos, state.name());
+		}
+	}
+
+	private static GrandExchangeOfferState[] readStateDictionary(DataInputStream dis) throws IOException
+	{
+		int stateCount = readVarInt(dis);
+		GrandExchangeOfferState[] states = new GrandExchangeOfferState[stateCount];
+		for (int i = 0; i < stateCount; i++)
+		{
+			states[i] = toState(readString(dis));
+		}
+		return states;
+	}
+
+	private void writeItem(DataOutputStream dos, FlippingItem item) throws IOException
+	{
+		writeVarInt(dos, item.getItemId());
+		writeString(dos, item.getItemName());
+		writeZigZag(dos, item.getTotalGELimit());
+		writeString(dos, item.getFlippedBy());
+		Boolean validFlippingPanelItem = item.getValidFlippingPanelItem();
+		dos.writeByte(validFlippingPanelItem == null ? 0 : validFlippingPanelItem ? 2 : 1);
+		dos.writeBoolean(item.isFavorite());
+		writeString(dos, item.getFavoriteCode());
+
+		HistoryManager history = item.getHistory() == null ? new HistoryManager() : item.getHistory();
+		Instant nextGeLimitRefresh = history.getNextGeLimitRefresh();
+		dos.writeBoolean(nextGeLimitRefresh != null);
+		if (nextGeLimitRefresh != null)
+		{
+			dos.writeLong(nextGeLimitRefresh.toEpochMilli());
+		}
+		writeZigZag(dos, history.getItemsBoughtThisLimitWindow());
+		writeZigZag(dos, history.getItemsBoughtThroughCompleteOffers());
+		writeOffers(dos, item.getItemId(), history.getCompressedOfferEvents());
+	}
+
+	private FlippingItem readItem(DataInputStream dis, GrandExchangeOfferState[] states) throws IOException
+	{
+		int itemId = readVarInt(dis);
+		String itemName = CanonicalNames.of(readString(dis));
+		int totalGeLimit = readZigZag(dis);
+		String flippedBy = CanonicalNames.of(readString(dis));
+		byte validFlippingPanelItem = dis.readByte();
+		boolean favorite = dis.readBoolean();
+		String favoriteCode = readString(dis);
+
+		Instant nextGeLimitRefresh = dis.readBoolean() ? Instant.ofEpochMilli(dis.readLong()) : null;
+		int itemsBoughtThisLimitWindow = readZigZag(dis);
+		int itemsBoughtThroughCompleteOffers = readZigZag(dis);
+		List<OfferEvent> offers = readOffers(dis, itemId, states);
+
+		HistoryManager history = new HistoryManager(offers, nextGeLimitRefresh, itemsBoughtThisLimitWindow, itemsBoughtThroughCompleteOffers);
+		//the non persisted fields are left null, the same as when gson deserializes an item. They are set when
+		//the item is hydrated.
+		return new FlippingItem(
+			itemId,
+			itemName,
+			totalGeLimit,
+			history,
+			flippedBy,
+			validFlippingPanelItem == 0 ? null : validFlippingPanelItem == 2,
+			favorite,
+			favoriteCode,
+			null,
+			null,
+			null,
+			null,
+			null,
+			null);
+	}
+
+	private void writeOffers(DataOutputStream dos, int itemId, List<OfferEvent> offers) throws IOException
+	{
+		int n = offers.size();
+		writeVarInt(dos, n);
+		if (n == 0)
+		{
+			return;
+		}
+
+		boolean uuidsAsLongs = true;
+		for (OfferEvent o : offers)
+		{
+			uuidsAsLongs &= o.hasUuidAsLongs();
+		}
+
+		if (uuidsAsLongs)
+		{
+			dos.writeByte(UUIDS_AS_LONGS);
+			for (OfferEvent o : offers)
+			{
+				dos.writeLong(o.getUuidMostSignificantBits());
+			}
+			for (OfferEvent o : offers)
+			{
+				dos.writeLong(o.getUuidLeastSignificantBits());
+			}
+		}
+		else
+		{
+			dos.writeByte(UUIDS_AS_STRINGS);
+			for (OfferEvent o : offers)
+			{
+				writeString(dos, o.getUuid());
+			}
+		}
+
+		for (OfferEvent o : offers)
+		{
+			int flags = 0;
+			flags |= o.isBuy() ? BUY : 0;
+			flags |= o.isBeforeLogin() ? BEFORE_LOGIN : 0;
+			flags |= o.getTime() != null ? HAS_TIME : 0;
+			flags |= o.getTradeStartedAt() != null ? HAS_TRADE_STARTED_AT : 0;
+			flags |= o.getState() != null ? HAS_STATE : 0;
+			dos.writeByte(flags);
+		}
+		for (OfferEvent o : offers)
+		{
+			if (o.getState() != null)
+			{
+				writeVarInt(dos, o.getState().ordinal());
+			}
+		}
+		long previousTime = 0;
+		for (OfferEvent o : offers)
+		{
+			if (o.getTime() != null)
+			{
+				long time = o.getTime().toEpochMilli();
+				writeZigZag(dos, time - previousTime);
+				previousTime = time;
+			}
+		}
+		for (OfferEvent o : offers)
+		{
+			//the pre tax price is what is stored, getPrice applies the ge tax to sells
+			writeZigZag(dos, o.getPreTaxPrice());
+		}
+		for (OfferEvent o : offers)
+		{
+			writeZigZag(dos, o.getCurrentQuantityInTrade());
+		}
+		for (OfferEvent o : offers)
+		{
+			writeZigZag(dos, o.getTotalQuantityInTrade());
+		}
+		for (OfferEvent o : offers)
+		{
+			writeZigZag(dos, o.getSlot());
+		}
+		for (OfferEvent o : offers)
+		{
+			writeZigZag(dos, o.getTickArrivedAt());
+		}
+		for (OfferEvent o : offers)
+		{
+			writeZigZag(dos, o.getTicksSinceFirstOffer());
+		}
+		for (OfferEvent o : offers)
+		{
+			//practically always the same as the item's id
+			writeZigZag(dos, o.getItemId() - itemId);
+		}
+		for (OfferEvent o : offers)
+		{
+			if (o.getTradeStartedAt() != null)
+			{
+				long base = o.getTime() == null ? 0 : o.getTime().toEpochMilli();
+				writeZigZag(dos, o.getTradeStartedAt().toEpochMilli() - base);
+			}
+		}
+	}
+
+	private List<OfferEvent> readOffers(DataInputStream dis, int itemId, GrandExchangeOfferState[] states) throws IOException
+	{
+		int n = readVarInt(dis);
+		List<OfferEvent> offers = new ArrayList<>(n);
+		if (n == 0)
+		{
+			return offers;
+		}
+
+		String[] uuids = null;
+		long[] mostSignificantBits = null;
+		long[] leastSignificantBits = null;
+		byte uuidEncoding = dis.readByte();
+		if (uuidEncoding == UUIDS_AS_LONGS)
+		{
+			mostSignificantBits = new long[n];
+			leastSignificantBits = new long[n];
+			for (int i = 0; i < n; i++)
+			{
+				mostSignificantBits[i] = dis.readLong();
+			}
+			for (int i = 0; i < n; i++)
+			{
+				leastSignificantBits[i] = dis.readLong();
+			}
+		}
+		else
+		{
+			uuids = new String[n];
+			for (int i = 0; i < n; i++)
+			{
+				uuids[i] = readString(dis);
+			}
+		}
+
+		int[] flags = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			flags[i] = dis.readUnsignedByte();
+		}
+		GrandExchangeOfferState[] offerStates = new GrandExchangeOfferState[n];
+		for (int i = 0; i < n; i++)
+		{
+			if ((flags[i] & HAS_STATE) != 0)
+			{
+				int stateIdx = readVarInt(dis);
+				offerStates[i] = stateIdx < states.length ? states[stateIdx] : null;
+			}
+		}
+		Instant[] times = new Instant[n];
+		long previousTime = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if ((flags[i] & HAS_TIME) != 0)
+			{
+				previousTime += readZigZagLong(dis);
+				times[i] = Instant.ofEpochMilli(previousTime);
+			}
+		}
+		int[] prices = readZigZagColumn(dis, n);
+		int[] currentQuantities = readZigZagColumn(dis, n);
+		int[] totalQuantities = readZigZagColumn(dis, n);
+		int[] slots = readZigZagColumn(dis, n);
+		int[] ticksArrivedAt = readZigZagColumn(dis, n);
+		int[] ticksSinceFirstOffer = readZigZagColumn(dis, n);
+		int[] itemIdDeltas = readZigZagColumn(dis, n);
+		Instant[] tradesStartedAt = new Instant[n];
+		for (int i = 0; i < n; i++)
+		{
+			if ((flags[i] & HAS_TRADE_STARTED_AT) != 0)
+			{
+				long base = times[i] == null ? 0 : times[i].toEpochMilli();
+				tradesStartedAt[i] = Instant.ofEpochMilli(base + readZigZagLong(dis));
+			}
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			OfferEvent offer = new OfferEvent(
+				uuids == null ? null : uuids[i],
+				(flags[i] & BUY) != 0,
+				itemId + itemIdDeltas[i],
+				currentQuantities[i],
+				prices[i],
+				times[i],
+				slots[i],
+				offerStates[i],
+				ticksArrivedAt[i],
+				ticksSinceFirstOffer[i],
+				totalQuantities[i],
+				tradesStartedAt[i],
+				(flags[i] & BEFORE_LOGIN) != 0,
+				null,
+				null,
+				0,
+				0);
+			if (uuids == null)
+			{
+				offer.setUuid(mostSignificantBits[i], leastSignificantBits[i]);
+			}
+			offers.add(offer);
+		}
+		return offers;
+	}
+
+	private static GrandExchangeOfferState toState(String name)
+	{
+		try
+		{
+			return GrandExchangeOfferState.valueOf(name);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	//nullable, length prefixed utf-8 string. A length of 0 means null, otherwise the length is the byte count + 1.
+	private static void writeString(DataOutputStream dos, String s) throws IOException
+	{
+		if (s == null)
+		{
+			writeVarInt(dos, 0);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(dos, bytes.length + 1);
+		dos.write(bytes);
+	}
+
+	private static String readString(DataInputStream dis) throws IOException
+	{
+		int length = readVarInt(dis);
+		if (length == 0)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		dis.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int[] readZigZagColumn(DataInputStream dis, int n) throws IOException
+	{
+		int[] column = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			column[i] = readZigZag(dis);
+		}
+		return column;
+	}
+
+	private static void writeVarInt(DataOutputStream dos, int value) throws IOException
+	{
+		writeVarLong(dos, value & 0xFFFFFFFFL);
+	}
+
+	private static int readVarInt(DataInputStream dis) throws IOException
+	{
+		return (int) readVarLong(dis);
+	}
+
+	private static void writeZigZag(DataOutputStream dos, long value) throws IOException
+	{
+		writeVarLong(dos, (value << 1) ^ (value >> 63));
+	}
+
+	private static int readZigZag(DataInputStream dis) throws IOException
+	{
+		return (int) readZigZagLong(dis);
+	}
+
+	private static long readZigZagLong(DataInputStream dis) throws IOException
+	{
+		long raw = readVarLong(dis);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	private static void writeVarLong(DataOutputStream dos, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			dos.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		dos.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream dis) throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = dis.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+}
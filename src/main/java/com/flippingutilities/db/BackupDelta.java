@@ -0,0 +1,49 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.FlippingItem;
+import com.google.gson.JsonElement;
+import com.google.gson.annotations.SerializedName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes made to an account between two backups. A backup is a full copy of the account (the base) followed by
+ * a chain of these, which are applied in order when the backup is loaded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class BackupDelta
+{
+	//everything in AccountData apart from the trades
+	@SerializedName("a")
+	private JsonElement account;
+	//the item ids of the trade list, in order
+	@SerializedName("o")
+	private List<Integer> itemOrder = new ArrayList<>();
+	@SerializedName("c")
+	private List<ItemDelta> changedItems = new ArrayList<>();
+	@SerializedName("r")
+	private List<Integer> removedItemIds = new ArrayList<>();
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	static class ItemDelta
+	{
+		//the item's properties, with only the offers added since the previous backup in its history (or all of them
+		//if replace is set)
+		@SerializedName("i")
+		private FlippingItem item;
+		@SerializedName("rO")
+		private List<String> removedOfferUuids = new ArrayList<>();
+		//set when the item wasn't in the previous backup, or its history can't be expressed as offers being removed
+		//and appended, in which case the item replaces the backed up one as is.
+		@SerializedName("f")
+		private boolean replace;
+	}
+}
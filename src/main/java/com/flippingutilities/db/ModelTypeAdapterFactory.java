@@ -0,0 +1,415 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.utilities.CanonicalNames;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Field by field type adapters for the model classes that make up an account's trade history. Histories can hold
+ * hundreds of thousands of offers, and reading and writing them through gson's reflective adapter (and the
+ * exclusion strategy of TradePersister's writeGson) is a large part of the time it takes to load and save them.
+ * <p>
+ * The adapters read and write the same keys as the reflective adapter (the @SerializedName of each field, or the
+ * field name if it has none) and skip the same transient fields, so the files they produce are unchanged. Instants
+ * and offer states are left to whatever adapters the gson they are registered with has for them.
+ */
+class ModelTypeAdapterFactory implements TypeAdapterFactory
+{
+	//whether fields marked with @Expose(serialize = false) are left out when writing, like writeGson does
+	private final boolean skipNonSerializedFields;
+
+	ModelTypeAdapterFactory(boolean skipNonSerializedFields)
+	{
+		this.skipNonSerializedFields = skipNonSerializedFields;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+	{
+		Class<? super T> rawType = type.getRawType();
+		if (rawType == OfferEvent.class)
+		{
+			return (TypeAdapter<T>) new OfferEventAdapter(gson.getAdapter(Instant.class).nullSafe(), gson.getAdapter(GrandExchangeOfferState.class).nullSafe()).nullSafe();
+		}
+		if (rawType == HistoryManager.class)
+		{
+			return (TypeAdapter<T>) new HistoryManagerAdapter(gson.getAdapter(OfferEvent.class), gson.getAdapter(Instant.class).nullSafe()).nullSafe();
+		}
+		if (rawType == FlippingItem.class)
+		{
+			return (TypeAdapter<T>) new FlippingItemAdapter(gson.getAdapter(HistoryManager.class)).nullSafe();
+		}
+		if (rawType == PartialOffer.class)
+		{
+			return (TypeAdapter<T>) new PartialOfferAdapter(gson.getAdapter(OfferEvent.class), skipNonSerializedFields).nullSafe();
+		}
+		return null;
+	}
+
+	private static final class OfferEventAdapter extends TypeAdapter<OfferEvent>
+	{
+		private final TypeAdapter<Instant> instantAdapter;
+		private final TypeAdapter<GrandExchangeOfferState> stateAdapter;
+
+		OfferEventAdapter(TypeAdapter<Instant> instantAdapter, TypeAdapter<GrandExchangeOfferState> stateAdapter)
+		{
+			this.instantAdapter = instantAdapter;
+			this.stateAdapter = stateAdapter;
+		}
+
+		@Override
+		public void write(JsonWriter out, OfferEvent o) throws IOException
+		{
+			out.beginObject();
+			out.name("uuid").value(o.getUuid());
+			out.name("b").value(o.isBuy());
+			out.name("id").value(o.getItemId());
+			out.name("cQIT").value(o.getCurrentQuantityInTrade());
+			out.name("p").value(o.getPreTaxPrice());
+			out.name("t");
+			instantAdapter.write(out, o.getTime());
+			out.name("s").value(o.getSlot());
+			out.name("st");
+			stateAdapter.write(out, o.getState());
+			out.name("tAA").value(o.getTickArrivedAt());
+			out.name("tSFO").value(o.getTicksSinceFirstOffer());
+			out.name("tQIT").value(o.getTotalQuantityInTrade());
+			out.name("tradeStartedAt");
+			instantAdapter.write(out, o.getTradeStartedAt());
+			out.name("beforeLogin").value(o.isBeforeLogin());
+			out.endObject();
+		}
+
+		@Override
+		public OfferEvent read(JsonReader in) throws IOException
+		{
+			String uuid = null;
+			boolean buy = false;
+			int itemId = 0;
+			int currentQuantityInTrade = 0;
+			int price = 0;
+			Instant time = null;
+			int slot = 0;
+			GrandExchangeOfferState state = null;
+			int tickArrivedAt = 0;
+			int ticksSinceFirstOffer = 0;
+			int totalQuantityInTrade = 0;
+			Instant tradeStartedAt = null;
+			boolean beforeLogin = false;
+
+			in.beginObject();
+			while (in.hasNext())
+			{
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL)
+				{
+					in.nextNull();
+					continue;
+				}
+				switch (name)
+				{
+					case "uuid":
+						uuid = in.nextString();
+						break;
+					case "b":
+						buy = in.nextBoolean();
+						break;
+					case "id":
+						itemId = in.nextInt();
+						break;
+					case "cQIT":
+						currentQuantityInTrade = in.nextInt();
+						break;
+					case "p":
+						price = in.nextInt();
+						break;
+					case "t":
+						time = instantAdapter.read(in);
+						break;
+					case "s":
+						slot = in.nextInt();
+						break;
+					case "st":
+						state = stateAdapter.read(in);
+						break;
+					case "tAA":
+						tickArrivedAt = in.nextInt();
+						break;
+					case "tSFO":
+						ticksSinceFirstOffer = in.nextInt();
+						break;
+					case "tQIT":
+						totalQuantityInTrade = in.nextInt();
+						break;
+					case "tradeStartedAt":
+						tradeStartedAt = instantAdapter.read(in);
+						break;
+					case "beforeLogin":
+						beforeLogin = in.nextBoolean();
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+
+			return new OfferEvent(uuid, buy, itemId, currentQuantityInTrade, price, time, slot, state, tickArrivedAt,
+				ticksSinceFirstOffer, totalQuantityInTrade, tradeStartedAt, beforeLogin, null, null, 0, 0);
+		}
+	}
+
+	private static final class HistoryManagerAdapter extends TypeAdapter<HistoryManager>
+	{
+		private final TypeAdapter<OfferEvent> offerAdapter;
+		private final TypeAdapter<Instant> instantAdapter;
+
+		HistoryManagerAdapter(TypeAdapter<OfferEvent> offerAdapter, TypeAdapter<Instant> instantAdapter)
+		{
+			this.offerAdapter = offerAdapter;
+			this.instantAdapter = instantAdapter;
+		}
+
+		@Override
+		public void write(JsonWriter out, HistoryManager history) throws IOException
+		{
+			out.beginObject();
+			out.name("sO");
+			List<OfferEvent> offers = history.getCompressedOfferEvents();
+			if (offers == null)
+			{
+				out.nullValue();
+			}
+			else
+			{
+				out.beginArray();
+				for (OfferEvent o : offers)
+				{
+					offerAdapter.write(out, o);
+				}
+				out.endArray();
+			}
+			out.name("nGLR");
+			instantAdapter.write(out, history.getNextGeLimitRefresh());
+			out.name("iBTLW").value(history.getItemsBoughtThisLimitWindow());
+			out.name("pIB").value(history.getItemsBoughtThroughCompleteOffers());
+			out.endObject();
+		}
+
+		@Override
+		public HistoryManager read(JsonReader in) throws IOException
+		{
+			List<OfferEvent> offers = new ArrayList<>();
+			Instant nextGeLimitRefresh = null;
+			int itemsBoughtThisLimitWindow = 0;
+			int itemsBoughtThroughCompleteOffers = 0;
+
+			in.beginObject();
+			while (in.hasNext())
+			{
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL)
+				{
+					in.nextNull();
+					if (name.equals("sO"))
+					{
+						offers = null;
+					}
+					continue;
+				}
+				switch (name)
+				{
+					case "sO":
+						offers = new ArrayList<>();
+						in.beginArray();
+						while (in.hasNext())
+						{
+							offers.add(offerAdapter.read(in));
+						}
+						in.endArray();
+						break;
+					case "nGLR":
+						nextGeLimitRefresh = instantAdapter.read(in);
+						break;
+					case "iBTLW":
+						itemsBoughtThisLimitWindow = in.nextInt();
+						break;
+					case "pIB":
+						itemsBoughtThroughCompleteOffers = in.nextInt();
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+
+			return new HistoryManager(offers, nextGeLimitRefresh, itemsBoughtThisLimitWindow, itemsBoughtThroughCompleteOffers);
+		}
+	}
+
+	private static final class FlippingItemAdapter extends TypeAdapter<FlippingItem>
+	{
+		private final TypeAdapter<HistoryManager> historyAdapter;
+
+		FlippingItemAdapter(TypeAdapter<HistoryManager> historyAdapter)
+		{
+			this.historyAdapter = historyAdapter;
+		}
+
+		@Override
+		public void write(JsonWriter out, FlippingItem item) throws IOException
+		{
+			out.beginObject();
+			out.name("id").value(item.getItemId());
+			out.name("name").value(item.getItemName());
+			out.name("tGL").value(item.getTotalGELimit());
+			out.name("h");
+			historyAdapter.write(out, item.getHistory());
+			out.name("fB").value(item.getFlippedBy());
+			out.name("vFPI").value(item.getValidFlippingPanelItem());
+			out.name("favorite").value(item.isFavorite());
+			out.name("favoriteCode").value(item.getFavoriteCode());
+			out.endObject();
+		}
+
+		@Override
+		public FlippingItem read(JsonReader in) throws IOException
+		{
+			int itemId = 0;
+			String itemName = null;
+			int totalGELimit = 0;
+			HistoryManager history = new HistoryManager();
+			String flippedBy = null;
+			Boolean validFlippingPanelItem = null;
+			boolean favorite = false;
+			String favoriteCode = "1";
+
+			in.beginObject();
+			while (in.hasNext())
+			{
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL)
+				{
+					in.nextNull();
+					switch (name)
+					{
+						case "h":
+							history = null;
+							break;
+						case "favoriteCode":
+							favoriteCode = null;
+							break;
+					}
+					continue;
+				}
+				switch (name)
+				{
+					case "id":
+						itemId = in.nextInt();
+						break;
+					case "name":
+						itemName = CanonicalNames.of(in.nextString());
+						break;
+					case "tGL":
+						totalGELimit = in.nextInt();
+						break;
+					case "h":
+						history = historyAdapter.read(in);
+						break;
+					case "fB":
+						flippedBy = CanonicalNames.of(in.nextString());
+						break;
+					case "vFPI":
+						validFlippingPanelItem = in.nextBoolean();
+						break;
+					case "favorite":
+						favorite = in.nextBoolean();
+						break;
+					case "favoriteCode":
+						favoriteCode = in.nextString();
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+
+			//the non persisted fields are left null, the same as when gson deserializes an item reflectively
+			return new FlippingItem(itemId, itemName, totalGELimit, history, flippedBy, validFlippingPanelItem, favorite,
+				favoriteCode, null, null, null, null, null, null);
+		}
+	}
+
+	private static final class PartialOfferAdapter extends TypeAdapter<PartialOffer>
+	{
+		private final TypeAdapter<OfferEvent> offerAdapter;
+		private final boolean skipOffer;
+
+		PartialOfferAdapter(TypeAdapter<OfferEvent> offerAdapter, boolean skipOffer)
+		{
+			this.offerAdapter = offerAdapter;
+			this.skipOffer = skipOffer;
+		}
+
+		@Override
+		public void write(JsonWriter out, PartialOffer partialOffer) throws IOException
+		{
+			out.beginObject();
+			out.name("offerUuid").value(partialOffer.getOfferUuid());
+			if (!skipOffer)
+			{
+				out.name("offer");
+				offerAdapter.write(out, partialOffer.getOffer());
+			}
+			out.name("amountConsumed").value(partialOffer.getAmountConsumed());
+			out.endObject();
+		}
+
+		@Override
+		public PartialOffer read(JsonReader in) throws IOException
+		{
+			PartialOffer partialOffer = new PartialOffer();
+			in.beginObject();
+			while (in.hasNext())
+			{
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL)
+				{
+					in.nextNull();
+					continue;
+				}
+				switch (name)
+				{
+					case "offerUuid":
+						partialOffer.setOfferUuid(in.nextString());
+						break;
+					case "offer":
+						partialOffer.setOffer(offerAdapter.read(in));
+						break;
+					case "amountConsumed":
+						partialOffer.setAmountConsumed(in.nextInt());
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+			return partialOffer;
+		}
+	}
+}
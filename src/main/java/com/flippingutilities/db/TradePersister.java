@@ -31,6 +31,7 @@ import com.flippingutilities.ui.uiutilities.TimeFormatters;
 import com.google.gson.Gson;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
+import com.google.gson.JsonParseException;
 import com.google.gson.annotations.Expose;
 import com.google.gson.stream.JsonWriter;
 import com.google.gson.reflect.TypeToken;
@@ -39,16 +40,43 @@ import net.runelite.client.RuneLite;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This class is responsible for handling all the IO related tasks for persisting trades. This class should contain
@@ -64,10 +92,33 @@ public class TradePersister
 	/** Gson for serialization (excludes fields with @Expose(serialize=false)) */
 	private final Gson writeGson;
 
+	/** Used for AccountData files, which are stored in a binary format rather than as json */
+	private final AccountDataBinaryFormat binaryFormat;
+
+	/** Serializes AccountData without its trades */
+	private final Gson metadataGson;
+
+	/** Whether account files (and their segments and backups) are gzipped when written */
+	private volatile boolean compressFiles = true;
+
+	/** The session state of each account as of its last session state record or snapshot, as json */
+	private final Map<String, String> lastJournaledSessionStates = new ConcurrentHashMap<>();
+
+	/** Where the account files are kept, the flipping directory everywhere but in tests */
+	private final File directory;
+
 	public TradePersister(Gson gson) {
-		this.gson = gson;
+		this(gson, PARENT_DIRECTORY);
+	}
+
+	TradePersister(Gson gson, File directory) {
+		this.directory = directory;
+		this.gson = gson.newBuilder()
+			.registerTypeAdapterFactory(new ModelTypeAdapterFactory(false))
+			.create();
 		// Create a Gson for writing that excludes fields marked with @Expose(serialize=false)
 		this.writeGson = gson.newBuilder()
+			.registerTypeAdapterFactory(new ModelTypeAdapterFactory(true))
 			.setExclusionStrategies(new ExclusionStrategy() {
 				@Override
 				public boolean shouldSkipField(FieldAttributes f) {
@@ -81,11 +132,42 @@ public class TradePersister
 				}
 			})
 			.create();
+		this.metadataGson = writeGson.newBuilder()
+			.addSerializationExclusionStrategy(new ExclusionStrategy() {
+				@Override
+				public boolean shouldSkipField(FieldAttributes f) {
+					return f.getDeclaringClass() == AccountData.class && f.getName().equals("trades");
+				}
+
+				@Override
+				public boolean shouldSkipClass(Class<?> clazz) {
+					return false;
+				}
+			})
+			.create();
+		this.binaryFormat = new AccountDataBinaryFormat(this.gson, metadataGson);
+	}
+
+	public void setCompressFiles(boolean compressFiles)
+	{
+		this.compressFiles = compressFiles;
 	}
 
 	//this is in {user's home directory}/.runelite/flipping
 	public static final File PARENT_DIRECTORY = new File(RuneLite.RUNELITE_DIR, "flipping");
 	public static final File OLD_FILE = new File(PARENT_DIRECTORY, "trades.json");
+	public static final String JOURNAL_SUFFIX = ".journal";
+	public static final String ROLLUPS_SUFFIX = ".rollups";
+	//accounts are written in the binary format, see AccountDataBinaryFormat, under their own extension. Accounts that
+	//haven't been written since then are still in {displayName}.json, which is only read to migrate them.
+	public static final String ACCOUNT_SUFFIX = ".account";
+	public static final String LEGACY_ACCOUNT_SUFFIX = ".json";
+	private static final String BACKUP_NAME_SUFFIX = ".backup";
+	private static final String BACKUP_DELTA_PREFIX = "delta.";
+	//once a backup has this many deltas, the next backup is a full one
+	static final int MAX_BACKUP_DELTAS = 8;
+	private static final int COMPRESSION_BUFFER_SIZE = 8192;
+	private static final String SEGMENT_SUFFIX = ".seg";
 
 	/**
 	 * Creates flipping directory if it doesn't exist and partitions trades.json into individual files
@@ -116,44 +198,114 @@ public class TradePersister
 
 	/**
 	 * loads each account's data from the parent directory located at {user's home directory}/.runelite/flipping/
-	 * Each account's data is stored in separate file in that directory and is named {displayName}.json
-	 *
-	 * Why not use loadAccount(displayName) in this method? Here we have access to the files first so we can call
-	 * loadFromFile directly. rather than getting the display name from the file and then calling
-	 * loadAccount
+	 * Each account's data is stored in separate file in that directory and is named {displayName}.account
 	 *
 	 * @return a map of display name to that account's data
 	 * @throws IOException handled in FlippingPlugin
 	 */
 	public Map<String, AccountData> loadAllAccounts()
 	{
-		Map<String, AccountData> accountsData = new HashMap<>();
-		for (File f : PARENT_DIRECTORY.listFiles())
+		return loadAccounts(listAccountNames());
+	}
+
+	/**
+	 * @return the display names of every account that has data in the parent directory
+	 */
+	public Set<String> listAccountNames()
+	{
+		//an account that was added since the last snapshot only has a journal, so it has to be picked up from that
+		Set<String> displayNames = new LinkedHashSet<>();
+		for (File f : directory.listFiles())
 		{
-			if (f.getName().equals("accountwide.json") || !f.getName().contains(".json") || f.getName().contains(".backup.json") || f.getName().contains(".special.json")) {
+			if (f.getName().endsWith(JOURNAL_SUFFIX)) {
+				displayNames.add(f.getName().substring(0, f.getName().length() - JOURNAL_SUFFIX.length()));
 				continue;
 			}
-			String displayName = f.getName().split("\\.")[0];
-			AccountData accountData  = loadAccount(displayName);
-			accountsData.put(displayName, accountData);
+			String displayName = displayNameOfAccountFile(f.getName());
+			if (displayName != null) {
+				displayNames.add(displayName);
+			}
+		}
+		return displayNames;
+	}
+
+	/**
+	 * Loads the data of the given accounts, see loadAccount.
+	 *
+	 * @return a map of display name to that account's data
+	 */
+	public Map<String, AccountData> loadAccounts(Collection<String> displayNames)
+	{
+		Map<String, AccountData> accountsData = new HashMap<>();
+		if (displayNames.isEmpty())
+		{
+			return accountsData;
+		}
+
+		//accounts are parsed concurrently so that startup takes as long as the largest account rather than as long
+		//as all of them combined.
+		int threads = Math.min(displayNames.size(), Math.max(1, Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try
+		{
+			Map<String, Future<AccountData>> pendingAccounts = new HashMap<>();
+			for (String displayName : displayNames)
+			{
+				pendingAccounts.put(displayName, pool.submit(() -> loadAccount(displayName)));
+			}
+			for (Map.Entry<String, Future<AccountData>> pendingAccount : pendingAccounts.entrySet())
+			{
+				accountsData.put(pendingAccount.getKey(), awaitAccount(pendingAccount.getKey(), pendingAccount.getValue()));
+			}
+		}
+		finally
+		{
+			pool.shutdown();
 		}
 
 		return accountsData;
 	}
 
+	private AccountData awaitAccount(String displayName, Future<AccountData> pendingAccount)
+	{
+		try
+		{
+			AccountData accountData = pendingAccount.get();
+			return accountData == null ? new AccountData() : accountData;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			log.warn("interrupted while loading data for {}, returning empty AccountData", displayName);
+			return new AccountData();
+		}
+		catch (ExecutionException e)
+		{
+			log.warn("couldn't load data for {} due to {}, returning empty AccountData", displayName, e.getCause());
+			return new AccountData();
+		}
+	}
+
 	//anything that wants to load an account's data MUST go through this method as it handles various cases such as
 	//loading from backups
 	public AccountData loadAccount(String displayName)
 	{
 		log.debug("loading data for {}", displayName);
+		//another client may have changed the session state on disk
+		lastJournaledSessionStates.remove(displayName);
 		try {
-			File accountFile = new File(PARENT_DIRECTORY, displayName + ".json");
+			File accountFile = accountFileOf(directory, displayName);
 			AccountData accountData = loadFromFile(accountFile);
 			if (accountData == null)
 			{
 				log.warn("data for {} is null for some reason. Will try loading from backup", displayName);
 				accountData = loadAccountFromBackup(displayName);
 			}
+			else
+			{
+				attachRollups(displayName, accountData);
+			}
+			replayJournal(displayName, accountData);
 			return accountData;
 		}
     catch (OutOfMemoryError e) {
@@ -162,14 +314,73 @@ public class TradePersister
     }
     catch (Exception e) {
         log.warn("Got exception {} while loading data for {}. Will try loading from backup", e, displayName);
-        return loadAccountFromBackup(displayName);
+        AccountData accountData = loadAccountFromBackup(displayName);
+        replayJournal(displayName, accountData);
+        return accountData;
     }
 	}
 
+	/**
+	 * Applies the records in {displayName}.journal that aren't in the loaded snapshot yet.
+	 */
+	private void replayJournal(String displayName, AccountData accountData)
+	{
+		try
+		{
+			List<JournalRecord> records = loadJournal(displayName);
+			if (records.isEmpty())
+			{
+				return;
+			}
+			int applied = accountData.replayJournal(records, displayName);
+			log.debug("replayed {} of {} journal records for {}", applied, records.size(), displayName);
+		}
+		catch (Exception e)
+		{
+			log.warn("couldn't replay journal for {} due to {}", displayName, e);
+		}
+	}
+
+	/**
+	 * Attaches the rollups in {displayName}.rollups to the histories of the loaded snapshot that they were made from.
+	 * This is done before the journal is replayed, so that the offers it adds are rolled up like any other new offer.
+	 */
+	private void attachRollups(String displayName, AccountData accountData)
+	{
+		File rollupsFile = new File(directory, displayName + ROLLUPS_SUFFIX);
+		if (!rollupsFile.exists())
+		{
+			return;
+		}
+		try (Reader reader = new InputStreamReader(openForReading(rollupsFile), StandardCharsets.UTF_8))
+		{
+			Type type = new TypeToken<Map<Integer, OfferRollups>>(){}.getType();
+			Map<Integer, OfferRollups> itemIdToRollups = gson.fromJson(reader, type);
+			if (itemIdToRollups == null)
+			{
+				return;
+			}
+			int attached = 0;
+			for (FlippingItem item : accountData.getTrades())
+			{
+				OfferRollups rollups = itemIdToRollups.get(item.getItemId());
+				if (rollups != null && item.getHistory().attachOfferRollups(rollups))
+				{
+					attached++;
+				}
+			}
+			log.debug("attached the rollups of {} of {} items for {}", attached, accountData.getTrades().size(), displayName);
+		}
+		catch (Exception e)
+		{
+			log.warn("couldn't load the rollups for {} due to {}, they will be made from the histories", displayName, e);
+		}
+	}
+
 	private AccountData loadAccountFromBackup(String displayName) {
 		log.debug("loading data for {} from backup", displayName);
 		try {
-			File accountFile = new File(PARENT_DIRECTORY, displayName + ".backup.json");
+			File accountFile = accountFileOf(directory, displayName + BACKUP_NAME_SUFFIX);
 			if (!accountFile.exists()) {
 				log.debug("backup for {} does not exist, returning empty AccountData", displayName);
 				return new AccountData();
@@ -179,6 +390,9 @@ public class TradePersister
 				log.debug("data loaded from backup for {} is null for some reason, returning an empty AccountData object", displayName);
 				accountData = new AccountData();
 			}
+			accountData = applyBackupDeltas(displayName, accountData);
+			//the account's own segments can't be relied on as they are what failed to load
+			accountData.markAllItemsChanged();
 			return accountData;
 		}
 		catch (Exception e) {
@@ -187,18 +401,29 @@ public class TradePersister
 		}
 	}
 
+	/**
+	 * Loads an account file, which can either be in the binary format or in the json format that was used before it
+	 * (version 1 and older), and can be gzipped or not. Json files are rewritten in the binary format when they are
+	 * migrated in the DataHandler.
+	 */
 	private AccountData loadFromFile(File f) throws IOException
 	{
-		try (java.io.BufferedReader bufferedReader = Files.newBufferedReader(f.toPath(), java.nio.charset.StandardCharsets.UTF_8);
-			com.google.gson.stream.JsonReader jsonReader = new com.google.gson.stream.JsonReader(bufferedReader))
+		File segmentDirectory = segmentDirectoryOf(f);
+		try (InputStream in = openForReading(f))
 		{
+			if (AccountDataBinaryFormat.isBinaryFormat(in))
+			{
+				return binaryFormat.read(in, segmentFileName -> openForReading(new File(segmentDirectory, segmentFileName)));
+			}
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			com.google.gson.stream.JsonReader jsonReader = new com.google.gson.stream.JsonReader(reader);
 			return gson.fromJson(jsonReader, AccountData.class);
 		}
 	}
 
 
 	public AccountWideData loadAccountWideData() throws IOException {
-		File accountFile = new File(PARENT_DIRECTORY, "accountwide.json");
+		File accountFile = new File(directory, "accountwide.json");
 		if (accountFile.exists()){
 			String accountWideDataJson = new String(Files.readAllBytes(accountFile.toPath()));
 			Type type = new TypeToken<AccountWideData>(){}.getType();
@@ -212,7 +437,7 @@ public class TradePersister
 	public BackupCheckpoints fetchBackupCheckpoints() {
 		try {
 			log.debug("Fetching backup checkpoints");
-			File backupCheckpointsFile = new File(PARENT_DIRECTORY, "backupcheckpoints.special.json");
+			File backupCheckpointsFile = new File(directory, "backupcheckpoints.special.json");
 			if (backupCheckpointsFile.exists()){
 				String backupCheckpointsJson = new String(Files.readAllBytes(backupCheckpointsFile.toPath()));
 				Type type = new TypeToken<BackupCheckpoints>(){}.getType();
@@ -227,6 +452,396 @@ public class TradePersister
 		}
 	}
 
+	/**
+	 * Backs up an account to {displayName}.backup.account. If there is already a backup, only what changed since it
+	 * (offers added and removed, item properties, and the rest of the account data) is written as a delta next to
+	 * it, unless the backup already has MAX_BACKUP_DELTAS deltas, in which case the backup is compacted into a new
+	 * full one.
+	 *
+	 * @param checkpoints where the checksum of every backed up item is kept, which is used to tell which items
+	 *                    changed without reading the backup
+	 */
+	public synchronized void backupAccount(String displayName, AccountData data, BackupCheckpoints checkpoints) throws IOException
+	{
+		String backupName = displayName + BACKUP_NAME_SUFFIX;
+		File backupDirectory = new File(directory, backupName);
+		AccountDataBinaryFormat.Manifest baseManifest = readManifest(new File(directory, backupName + ACCOUNT_SUFFIX));
+		Map<Integer, Long> backedUpChecksums = checkpoints.getAccountToItemChecksums().get(displayName);
+		Map<Integer, Long> checksums = itemChecksums(data);
+
+		List<Integer> deltaIndexes = baseManifest == null ? new ArrayList<>() : backupDeltaIndexes(backupDirectory, baseManifest.generation);
+		if (baseManifest == null || backedUpChecksums == null || deltaIndexes.size() >= MAX_BACKUP_DELTAS)
+		{
+			log.debug("writing a full backup for {}", displayName);
+			writeFullBackup(displayName, data, checkpoints, checksums);
+			return;
+		}
+
+		Set<Integer> changedItemIds = new HashSet<>();
+		checksums.forEach((itemId, checksum) -> {
+			if (!checksum.equals(backedUpChecksums.get(itemId)))
+			{
+				changedItemIds.add(itemId);
+			}
+		});
+		if (changedItemIds.size() * 2 > checksums.size())
+		{
+			//most of the account changed, so a delta wouldn't be much smaller than a full backup
+			log.debug("writing a full backup for {} as {} of {} items changed", displayName, changedItemIds.size(), checksums.size());
+			writeFullBackup(displayName, data, checkpoints, checksums);
+			return;
+		}
+		List<Integer> removedItemIds = new ArrayList<>();
+		for (Integer itemId : backedUpChecksums.keySet())
+		{
+			if (!checksums.containsKey(itemId))
+			{
+				removedItemIds.add(itemId);
+			}
+		}
+
+		Map<Integer, FlippingItem> backedUpItems = loadBackedUpItems(displayName, baseManifest, changedItemIds);
+		List<Integer> itemOrder = new ArrayList<>(data.getTrades().size());
+		List<BackupDelta.ItemDelta> changedItems = new ArrayList<>();
+		for (FlippingItem item : data.getTrades())
+		{
+			itemOrder.add(item.getItemId());
+			if (changedItemIds.contains(item.getItemId()))
+			{
+				changedItems.add(diffItem(backedUpItems.get(item.getItemId()), item));
+			}
+		}
+
+		BackupDelta delta = new BackupDelta(metadataGson.toJsonTree(data, AccountData.class), itemOrder, changedItems, removedItemIds);
+		int deltaIndex = deltaIndexes.isEmpty() ? 1 : deltaIndexes.get(deltaIndexes.size() - 1) + 1;
+		Files.createDirectories(backupDirectory.toPath());
+		File deltaFile = new File(backupDirectory, BACKUP_DELTA_PREFIX + baseManifest.generation + "." + deltaIndex);
+		writeAtomically(deltaFile, out -> {
+			OutputStream deltaOut = compressFiles ? new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE) : out;
+			Writer writer = new OutputStreamWriter(deltaOut, StandardCharsets.UTF_8);
+			writeGson.toJson(delta, BackupDelta.class, writer);
+			writer.flush();
+			if (deltaOut instanceof GZIPOutputStream)
+			{
+				((GZIPOutputStream) deltaOut).finish();
+			}
+		});
+		log.debug("backed up {} changed and {} removed items for {} as delta {}", changedItems.size(), removedItemIds.size(), displayName, deltaIndex);
+		checkpoints.getAccountToItemChecksums().put(displayName, checksums);
+	}
+
+	private void writeFullBackup(String displayName, AccountData data, BackupCheckpoints checkpoints, Map<Integer, Long> checksums) throws IOException
+	{
+		writeAccount(displayName + ".backup", data, null);
+		deleteBackupDeltas(new File(directory, displayName + ".backup"));
+		checkpoints.getAccountToItemChecksums().put(displayName, checksums);
+	}
+
+	/**
+	 * Works out the offers that were added to and removed from an item since it was backed up. Offers are only ever
+	 * appended to an item's history or removed from it, so the current history should be the backed up one minus the
+	 * removed offers followed by the added ones. If it isn't, the whole item is stored instead.
+	 */
+	private static BackupDelta.ItemDelta diffItem(FlippingItem backedUpItem, FlippingItem item)
+	{
+		if (backedUpItem == null)
+		{
+			return new BackupDelta.ItemDelta(item, new ArrayList<>(), true);
+		}
+
+		List<OfferEvent> backedUpOffers = backedUpItem.getHistory().getCompressedOfferEvents();
+		List<OfferEvent> offers = item.getHistory().getCompressedOfferEvents();
+		//uuids are compared by key, only the uuids of the removed offers are rendered as they are what is stored
+		Set<Object> backedUpUuids = new HashSet<>();
+		backedUpOffers.forEach(o -> backedUpUuids.add(o.getUuidKey()));
+		Set<Object> uuids = new HashSet<>();
+		offers.forEach(o -> uuids.add(o.getUuidKey()));
+
+		List<String> removedOfferUuids = new ArrayList<>();
+		List<OfferEvent> expectedOrder = new ArrayList<>(offers.size());
+		for (OfferEvent o : backedUpOffers)
+		{
+			if (uuids.contains(o.getUuidKey()))
+			{
+				expectedOrder.add(o);
+			}
+			else
+			{
+				removedOfferUuids.add(o.getUuid());
+			}
+		}
+		List<OfferEvent> addedOffers = new ArrayList<>();
+		for (OfferEvent o : offers)
+		{
+			if (!backedUpUuids.contains(o.getUuidKey()))
+			{
+				addedOffers.add(o);
+				expectedOrder.add(o);
+			}
+		}
+
+		if (expectedOrder.size() != offers.size())
+		{
+			return new BackupDelta.ItemDelta(item, new ArrayList<>(), true);
+		}
+		for (int i = 0; i < offers.size(); i++)
+		{
+			if (!offers.get(i).hasSameUuid(expectedOrder.get(i)))
+			{
+				return new BackupDelta.ItemDelta(item, new ArrayList<>(), true);
+			}
+		}
+
+		HistoryManager history = item.getHistory();
+		FlippingItem itemWithAddedOffers = new FlippingItem(
+			item.getItemId(),
+			item.getItemName(),
+			item.getTotalGELimit(),
+			new HistoryManager(addedOffers, history.getNextGeLimitRefresh(), history.getItemsBoughtThisLimitWindow(), history.getItemsBoughtThroughCompleteOffers()),
+			item.getFlippedBy(),
+			item.getValidFlippingPanelItem(),
+			item.isFavorite(),
+			item.getFavoriteCode(),
+			null,
+			null,
+			null,
+			null,
+			null,
+			null);
+		return new BackupDelta.ItemDelta(itemWithAddedOffers, removedOfferUuids, false);
+	}
+
+	/**
+	 * Reads the given items as they are in the backup, reading only the segments they are in.
+	 */
+	private Map<Integer, FlippingItem> loadBackedUpItems(String displayName, AccountDataBinaryFormat.Manifest baseManifest, Set<Integer> itemIds) throws IOException
+	{
+		File backupDirectory = new File(directory, displayName + ".backup");
+		Set<Integer> buckets = new HashSet<>();
+		itemIds.forEach(itemId -> buckets.add(AccountDataBinaryFormat.bucketOf(itemId)));
+
+		Map<Integer, FlippingItem> items = new HashMap<>();
+		for (int bucket : buckets)
+		{
+			AccountDataBinaryFormat.SegmentEntry segment = baseManifest.segments.get(bucket);
+			if (segment == null)
+			{
+				continue;
+			}
+			try (InputStream in = openForReading(new File(backupDirectory, segment.fileName)))
+			{
+				for (FlippingItem item : binaryFormat.readSegmentItems(in))
+				{
+					if (itemIds.contains(item.getItemId()))
+					{
+						items.put(item.getItemId(), item);
+					}
+				}
+			}
+		}
+
+		for (BackupDelta delta : loadBackupDeltas(backupDirectory, baseManifest.generation))
+		{
+			applyItemChanges(items, delta, itemIds);
+		}
+		return items;
+	}
+
+	/**
+	 * Rebuilds an account from its backup by applying the deltas written since the backup's base.
+	 */
+	private AccountData applyBackupDeltas(String displayName, AccountData base) throws IOException
+	{
+		AccountDataBinaryFormat.Manifest baseManifest = readManifest(new File(directory, displayName + BACKUP_NAME_SUFFIX + ACCOUNT_SUFFIX));
+		if (baseManifest == null)
+		{
+			return base;
+		}
+		List<BackupDelta> deltas = loadBackupDeltas(new File(directory, displayName + ".backup"), baseManifest.generation);
+		if (deltas.isEmpty())
+		{
+			return base;
+		}
+
+		Map<Integer, FlippingItem> items = new LinkedHashMap<>();
+		base.getTrades().forEach(item -> items.put(item.getItemId(), item));
+		AccountData accountData = base;
+		for (BackupDelta delta : deltas)
+		{
+			applyItemChanges(items, delta, null);
+			AccountData deltaAccountData = gson.fromJson(delta.getAccount(), AccountData.class);
+			if (deltaAccountData != null)
+			{
+				accountData = deltaAccountData;
+			}
+			List<FlippingItem> trades = new ArrayList<>(items.size());
+			Map<Integer, FlippingItem> unordered = new LinkedHashMap<>(items);
+			for (Integer itemId : delta.getItemOrder())
+			{
+				FlippingItem item = unordered.remove(itemId);
+				if (item != null)
+				{
+					trades.add(item);
+				}
+			}
+			trades.addAll(unordered.values());
+			items.clear();
+			trades.forEach(item -> items.put(item.getItemId(), item));
+		}
+		accountData.setTrades(new ArrayList<>(items.values()));
+		log.debug("applied {} backup deltas for {}", deltas.size(), displayName);
+		return accountData;
+	}
+
+	/**
+	 * @param onlyItemIds if not null, changes to other items are ignored
+	 */
+	private static void applyItemChanges(Map<Integer, FlippingItem> items, BackupDelta delta, Set<Integer> onlyItemIds)
+	{
+		for (Integer itemId : delta.getRemovedItemIds())
+		{
+			items.remove(itemId);
+		}
+		for (BackupDelta.ItemDelta itemDelta : delta.getChangedItems())
+		{
+			FlippingItem changedItem = itemDelta.getItem();
+			if (changedItem == null || (onlyItemIds != null && !onlyItemIds.contains(changedItem.getItemId())))
+			{
+				continue;
+			}
+			FlippingItem backedUpItem = items.get(changedItem.getItemId());
+			if (itemDelta.isReplace() || backedUpItem == null)
+			{
+				items.put(changedItem.getItemId(), changedItem);
+				continue;
+			}
+
+			Set<Object> removedOfferUuids = new HashSet<>();
+			itemDelta.getRemovedOfferUuids().forEach(uuid -> removedOfferUuids.add(OfferEvent.uuidKeyOf(uuid)));
+			List<OfferEvent> offers = new ArrayList<>();
+			Set<Object> uuids = new HashSet<>();
+			for (OfferEvent o : backedUpItem.getHistory().getCompressedOfferEvents())
+			{
+				Object uuid = o.getUuidKey();
+				if (!removedOfferUuids.contains(uuid))
+				{
+					offers.add(o);
+					uuids.add(uuid);
+				}
+			}
+			for (OfferEvent o : changedItem.getHistory().getCompressedOfferEvents())
+			{
+				if (uuids.add(o.getUuidKey()))
+				{
+					offers.add(o);
+				}
+			}
+			changedItem.getHistory().setCompressedOfferEvents(offers);
+			items.put(changedItem.getItemId(), changedItem);
+		}
+	}
+
+	private List<BackupDelta> loadBackupDeltas(File backupDirectory, long generation) throws IOException
+	{
+		List<BackupDelta> deltas = new ArrayList<>();
+		for (int deltaIndex : backupDeltaIndexes(backupDirectory, generation))
+		{
+			File deltaFile = new File(backupDirectory, BACKUP_DELTA_PREFIX + generation + "." + deltaIndex);
+			try (Reader reader = new InputStreamReader(openForReading(deltaFile), StandardCharsets.UTF_8))
+			{
+				BackupDelta delta = gson.fromJson(reader, BackupDelta.class);
+				if (delta != null)
+				{
+					deltas.add(delta);
+				}
+			}
+		}
+		return deltas;
+	}
+
+	/**
+	 * @return the indexes of the deltas written on top of the backup base with the given generation, in order. Deltas
+	 * of older bases (left behind if a compaction was interrupted) are ignored.
+	 */
+	private static List<Integer> backupDeltaIndexes(File backupDirectory, long generation)
+	{
+		List<Integer> indexes = new ArrayList<>();
+		String prefix = BACKUP_DELTA_PREFIX + generation + ".";
+		File[] files = backupDirectory.listFiles();
+		if (files == null)
+		{
+			return indexes;
+		}
+		for (File f : files)
+		{
+			if (!f.getName().startsWith(prefix) || f.getName().endsWith(".tmp"))
+			{
+				continue;
+			}
+			try
+			{
+				indexes.add(Integer.parseInt(f.getName().substring(prefix.length())));
+			}
+			catch (NumberFormatException e)
+			{
+				log.debug("ignoring unexpected file {} in {}", f.getName(), backupDirectory.getName());
+			}
+		}
+		indexes.sort(null);
+		return indexes;
+	}
+
+	private static void deleteBackupDeltas(File backupDirectory)
+	{
+		File[] files = backupDirectory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File f : files)
+		{
+			if (f.getName().startsWith(BACKUP_DELTA_PREFIX) && !f.delete())
+			{
+				log.debug("unable to delete backup delta {}", f.getName());
+			}
+		}
+	}
+
+	/**
+	 * A checksum of each item's encoded form, so that items that changed since they were backed up can be found
+	 * without reading the backup.
+	 */
+	private Map<Integer, Long> itemChecksums(AccountData data) throws IOException
+	{
+		Map<Integer, Long> checksums = new HashMap<>();
+		for (FlippingItem item : data.getTrades())
+		{
+			CRC32 crc = new CRC32();
+			crc.update(binaryFormat.encodeSegment(Collections.singletonList(item)));
+			checksums.put(item.getItemId(), crc.getValue());
+		}
+		return checksums;
+	}
+
+	public AccountHeaders fetchAccountHeaders() {
+		try {
+			log.debug("Fetching account headers");
+			File accountHeadersFile = new File(directory, "accountheaders.special.json");
+			if (accountHeadersFile.exists()){
+				String accountHeadersJson = new String(Files.readAllBytes(accountHeadersFile.toPath()));
+				Type type = new TypeToken<AccountHeaders>(){}.getType();
+				AccountHeaders accountHeaders = gson.fromJson(accountHeadersJson, type);
+				return accountHeaders == null ? new AccountHeaders() : accountHeaders;
+			}
+			else {
+				return new AccountHeaders();
+			}
+		}
+		catch (Exception e) {
+			return new AccountHeaders();
+		}
+	}
+
 	/**
 	 * stores trades for an account in {user's home directory}/.runelite/flipping/{account's display name}.json
 	 *
@@ -236,22 +851,264 @@ public class TradePersister
 	 */
 	public void writeToFile(String displayName, Object data) throws IOException {
 		log.debug("Writing to file for {}", displayName);
-		File accountFile = new File(PARENT_DIRECTORY, displayName + ".json");
-		File tempFile = new File(PARENT_DIRECTORY, displayName + ".json.tmp");
+		if (data instanceof AccountData)
+		{
+			writeAccount(displayName, (AccountData) data, null);
+			writeRollups(displayName, (AccountData) data);
+			return;
+		}
+		writeAtomically(new File(directory, displayName + ".json"), out -> writeJson(data, out));
+	}
+
+	/**
+	 * Writes a snapshot of an account, only rewriting the segments holding items that changed since its last
+	 * snapshot.
+	 */
+	public void writeAccountSnapshot(String displayName, AccountData data) throws IOException {
+		Set<Integer> changedItemIds = data.drainChangedItemIds();
+		try
+		{
+			writeAccount(displayName, data, changedItemIds);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			data.restoreChangedItemIds(changedItemIds);
+			throw e;
+		}
+		writeRollups(displayName, data);
+	}
+
+	/**
+	 * Writes the rollups of the account's histories to {displayName}.rollups, next to the account file. Only the
+	 * histories whose rollups were made (or loaded) are in it, the others are rolled up when they are first needed.
+	 * The file is only an optimization, the rollups are checked against the histories when they are loaded, so
+	 * failing to write it isn't an error. It is deleted instead, so that it doesn't get further behind.
+	 */
+	private synchronized void writeRollups(String displayName, AccountData data)
+	{
+		File rollupsFile = new File(directory, displayName + ROLLUPS_SUFFIX);
+		Map<Integer, OfferRollups> itemIdToRollups = new HashMap<>();
+		for (FlippingItem item : data.getTrades())
+		{
+			OfferRollups rollups = item.getHistory().copyOfferRollups();
+			if (rollups != null)
+			{
+				itemIdToRollups.put(item.getItemId(), rollups);
+			}
+		}
+		try
+		{
+			if (itemIdToRollups.isEmpty())
+			{
+				Files.deleteIfExists(rollupsFile.toPath());
+				return;
+			}
+			writeAtomically(rollupsFile, out -> {
+				OutputStream rollupsOut = compressFiles ? new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE) : out;
+				writeJson(itemIdToRollups, rollupsOut);
+				if (rollupsOut instanceof GZIPOutputStream)
+				{
+					((GZIPOutputStream) rollupsOut).finish();
+				}
+			});
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("couldn't write the rollups for {} due to {}", displayName, e);
+			if (!rollupsFile.delete())
+			{
+				log.debug("unable to delete the rollups for {}", displayName);
+			}
+		}
+	}
+
+	/**
+	 * Writes an account as {fileName}.account, which holds everything but the trades, and segment files in the
+	 * {fileName} directory, which hold the trades bucketed by item id. Segments are written under new file names and
+	 * the old ones are only deleted once the account file referencing the new ones is in place, so a crash mid write
+	 * leaves the previous snapshot intact.
+	 *
+	 * @param changedItemIds the items that changed since the last write, or null if that isn't known. Segments with
+	 *                       no changed items are kept as is, while all segments are re-encoded when it isn't known
+	 *                       and only the ones whose checksum differs are written.
+	 */
+	private synchronized void writeAccount(String fileName, AccountData data, Set<Integer> changedItemIds) throws IOException {
+		File accountFile = new File(directory, fileName + ACCOUNT_SUFFIX);
+		File segmentDirectory = new File(directory, fileName);
+		Files.createDirectories(segmentDirectory.toPath());
+
+		//an account that was written to its json file before it got its own extension is picked up from there
+		AccountDataBinaryFormat.Manifest previousManifest = readManifest(accountFileOf(directory, fileName));
+		long generation = previousManifest == null ? 1 : previousManifest.generation + 1;
+
+		List<Integer> itemOrder = new ArrayList<>(data.getTrades().size());
+		Map<Integer, List<FlippingItem>> itemsByBucket = new TreeMap<>();
+		for (FlippingItem item : data.getTrades())
+		{
+			itemOrder.add(item.getItemId());
+			itemsByBucket.computeIfAbsent(AccountDataBinaryFormat.bucketOf(item.getItemId()), b -> new ArrayList<>()).add(item);
+		}
+
+		Set<Integer> changedBuckets = null;
+		if (changedItemIds != null)
+		{
+			changedBuckets = new HashSet<>();
+			for (int itemId : changedItemIds)
+			{
+				changedBuckets.add(AccountDataBinaryFormat.bucketOf(itemId));
+			}
+		}
+
+		Map<Integer, AccountDataBinaryFormat.SegmentEntry> segments = new TreeMap<>();
+		int segmentsWritten = 0;
+		for (Map.Entry<Integer, List<FlippingItem>> bucket : itemsByBucket.entrySet())
+		{
+			AccountDataBinaryFormat.SegmentEntry previousSegment = previousManifest == null ? null : previousManifest.segments.get(bucket.getKey());
+			boolean previousSegmentExists = previousSegment != null && new File(segmentDirectory, previousSegment.fileName).exists();
+			if (changedBuckets != null && !changedBuckets.contains(bucket.getKey()) && previousSegmentExists)
+			{
+				segments.put(bucket.getKey(), previousSegment);
+				continue;
+			}
+
+			byte[] segmentBytes = binaryFormat.encodeSegment(bucket.getValue());
+			CRC32 crc = new CRC32();
+			crc.update(segmentBytes);
+			if (previousSegmentExists && previousSegment.checksum == crc.getValue())
+			{
+				segments.put(bucket.getKey(), previousSegment);
+				continue;
+			}
+
+			String segmentFileName = bucket.getKey() + "." + generation + SEGMENT_SUFFIX;
+			//the checksum is of the uncompressed bytes, so it doesn't change when compression is turned on or off
+			try (OutputStream out = openForWriting(new File(segmentDirectory, segmentFileName)))
+			{
+				out.write(segmentBytes);
+			}
+			segments.put(bucket.getKey(), new AccountDataBinaryFormat.SegmentEntry(bucket.getKey(), segmentFileName, crc.getValue()));
+			segmentsWritten++;
+		}
+
+		AccountDataBinaryFormat.Manifest manifest = new AccountDataBinaryFormat.Manifest(generation, itemOrder, segments);
+		writeAtomically(accountFile, out -> {
+			OutputStream accountOut = compressFiles ? new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE) : out;
+			binaryFormat.write(data, manifest, accountOut);
+			if (accountOut instanceof GZIPOutputStream)
+			{
+				((GZIPOutputStream) accountOut).finish();
+			}
+		});
+		log.debug("wrote {} of {} segments for {}", segmentsWritten, segments.size(), fileName);
+
+		deleteUnreferencedSegments(segmentDirectory, manifest);
+		//the account is migrated now, its json file would only be loaded in its place if it was left around
+		deleteFile(directory, fileName + LEGACY_ACCOUNT_SUFFIX);
+	}
+
+	private AccountDataBinaryFormat.Manifest readManifest(File accountFile)
+	{
+		if (!accountFile.exists())
+		{
+			return null;
+		}
+		try (InputStream in = openForReading(accountFile))
+		{
+			return binaryFormat.readManifestOnly(in);
+		}
+		catch (Exception e)
+		{
+			log.debug("couldn't read the manifest of {}, rewriting all of its segments. error = {}", accountFile.getName(), e);
+			return null;
+		}
+	}
+
+	private static void deleteUnreferencedSegments(File segmentDirectory, AccountDataBinaryFormat.Manifest manifest)
+	{
+		Set<String> referencedSegments = new HashSet<>();
+		manifest.segments.values().forEach(segment -> referencedSegments.add(segment.fileName));
+		File[] files = segmentDirectory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File f : files)
+		{
+			if (f.getName().endsWith(SEGMENT_SUFFIX) && !referencedSegments.contains(f.getName()) && !f.delete())
+			{
+				log.debug("unable to delete unreferenced segment {}", f.getName());
+			}
+		}
+	}
+
+	private static File segmentDirectoryOf(File accountFile)
+	{
+		String name = accountFile.getName();
+		for (String suffix : new String[]{ACCOUNT_SUFFIX, LEGACY_ACCOUNT_SUFFIX})
+		{
+			if (name.endsWith(suffix))
+			{
+				return new File(accountFile.getParentFile(), name.substring(0, name.length() - suffix.length()));
+			}
+		}
+		return new File(accountFile.getParentFile(), name);
+	}
+
+	/**
+	 * Opens a file that may or may not be gzipped, telling the two apart by the gzip magic bytes so that files written
+	 * before compression was turned on (or while it was off) still load. The returned stream supports mark/reset.
+	 */
+	private static InputStream openForReading(File f) throws IOException
+	{
+		InputStream in = new BufferedInputStream(Files.newInputStream(f.toPath()));
+		try
+		{
+			in.mark(2);
+			int first = in.read();
+			int second = in.read();
+			in.reset();
+			if (first == (GZIPInputStream.GZIP_MAGIC & 0xFF) && second == (GZIPInputStream.GZIP_MAGIC >>> 8))
+			{
+				return new BufferedInputStream(new GZIPInputStream(in, COMPRESSION_BUFFER_SIZE));
+			}
+			return in;
+		}
+		catch (IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	private OutputStream openForWriting(File f) throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(Files.newOutputStream(f.toPath()));
+		return compressFiles ? new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE) : out;
+	}
+
+	private interface StreamWriter
+	{
+		void write(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Writes to a temp file first and then moves it over the target so that the target is never partially written.
+	 */
+	private static void writeAtomically(File target, StreamWriter writer) throws IOException {
+		File tempFile = new File(target.getParentFile(), target.getName() + ".tmp");
 		
-		try (BufferedWriter bufferedWriter = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8);
-			JsonWriter jsonWriter = new JsonWriter(bufferedWriter)) {
-			writeGson.toJson(data, data.getClass(), jsonWriter);
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+			writer.write(out);
 		} catch (IOException e) {
 			try { Files.deleteIfExists(tempFile.toPath()); } catch (IOException ignored) {}
 			throw e;
 		}
 		
 		try {
-				Files.move(tempFile.toPath(), accountFile.toPath(),
+				Files.move(tempFile.toPath(), target.toPath(),
 						java.nio.file.StandardCopyOption.ATOMIC_MOVE, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
 		} catch (java.nio.file.AtomicMoveNotSupportedException ame) {
-				Files.move(tempFile.toPath(), accountFile.toPath(),
+				Files.move(tempFile.toPath(), target.toPath(),
 						java.nio.file.StandardCopyOption.REPLACE_EXISTING);
 		} catch (IOException e) {
 				try { Files.deleteIfExists(tempFile.toPath()); } catch (IOException ignored) {}
@@ -259,14 +1116,243 @@ public class TradePersister
 		}
 	}
 
+	/**
+	 * Appends a record to {user's home directory}/.runelite/flipping/{account's display name}.journal. Each record is
+	 * a single line of json, so a record that was only partially written (client crashed mid write) just fails
+	 * to parse on replay and is skipped.
+	 *
+	 * @param displayName display name of the account the record is associated with
+	 * @param record      the record to append
+	 * @throws IOException
+	 */
+	public synchronized void appendToJournal(String displayName, JournalRecord record) throws IOException
+	{
+		File journalFile = new File(directory, displayName + JOURNAL_SUFFIX);
+		//a partially written record has no line break after it, and this record would be unreadable if it was
+		//appended to the same line
+		boolean endsWithPartialRecord = endsWithPartialLine(journalFile);
+		try (BufferedWriter bufferedWriter = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+		{
+			if (endsWithPartialRecord)
+			{
+				bufferedWriter.newLine();
+			}
+			bufferedWriter.write(writeGson.toJson(record, JournalRecord.class));
+			bufferedWriter.newLine();
+		}
+	}
+
+	private static boolean endsWithPartialLine(File f) throws IOException
+	{
+		if (f.length() == 0)
+		{
+			return false;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(f, "r"))
+		{
+			file.seek(file.length() - 1);
+			int lastByte = file.read();
+			return lastByte != '\n' && lastByte != '\r';
+		}
+	}
+
+	/**
+	 * Makes a session state record for the account's journal, unless the session state is the same as it was in the
+	 * last record (or snapshot). The session state is marked as changed every time the slots are sent for example,
+	 * whether anything in it changed or not, so journaling it every time would grow the journal on every save. Has
+	 * to be called on the client thread, like JournalRecord.sessionState.
+	 *
+	 * @return the record, or null if the session state didn't change
+	 */
+	public JournalRecord sessionStateRecord(String displayName, AccountData data)
+	{
+		JournalRecord record = JournalRecord.sessionState(0, data);
+		String sessionState = writeGson.toJson(record, JournalRecord.class);
+		if (sessionState.equals(lastJournaledSessionStates.put(displayName, sessionState)))
+		{
+			return null;
+		}
+		record.setSeq(data.nextJournalSeq());
+		return record;
+	}
+
+	/**
+	 * Remembers the session state of a snapshot that is about to be written, so that it isn't journaled again.
+	 */
+	public void rememberSessionState(String displayName, AccountData snapshot)
+	{
+		lastJournaledSessionStates.put(displayName, writeGson.toJson(JournalRecord.sessionState(0, snapshot), JournalRecord.class));
+	}
+
+	/**
+	 * Should be called when a session state record or snapshot couldn't be written, so that the session state is
+	 * journaled the next time even if it doesn't change.
+	 */
+	public void forgetSessionState(String displayName)
+	{
+		lastJournaledSessionStates.remove(displayName);
+	}
+
+	public synchronized List<JournalRecord> loadJournal(String displayName) throws IOException
+	{
+		List<JournalRecord> records = new ArrayList<>();
+		File journalFile = new File(directory, displayName + JOURNAL_SUFFIX);
+		if (!journalFile.exists())
+		{
+			return records;
+		}
+
+		try (BufferedReader bufferedReader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8))
+		{
+			String line;
+			while ((line = bufferedReader.readLine()) != null)
+			{
+				if (line.trim().isEmpty())
+				{
+					continue;
+				}
+				try
+				{
+					JournalRecord record = gson.fromJson(line, JournalRecord.class);
+					if (record != null)
+					{
+						records.add(record);
+					}
+				}
+				catch (JsonParseException e)
+				{
+					log.warn("skipping unreadable journal record for {}", displayName);
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Drops the journal records that a snapshot now contains. Records appended after the checkpoint was taken (an
+	 * offer can come in while the snapshot is being written) are kept.
+	 *
+	 * @param displayName display name of the account the journal belongs to
+	 * @param checkpoint  the sequence number of the last record contained in the snapshot
+	 */
+	public synchronized void truncateJournal(String displayName, long checkpoint) throws IOException
+	{
+		File journalFile = new File(directory, displayName + JOURNAL_SUFFIX);
+		if (!journalFile.exists())
+		{
+			return;
+		}
+
+		List<JournalRecord> remaining = new ArrayList<>();
+		for (JournalRecord record : loadJournal(displayName))
+		{
+			if (record.getSeq() > checkpoint)
+			{
+				remaining.add(record);
+			}
+		}
+
+		if (remaining.isEmpty())
+		{
+			Files.deleteIfExists(journalFile.toPath());
+			return;
+		}
+
+		try (BufferedWriter bufferedWriter = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8))
+		{
+			for (JournalRecord record : remaining)
+			{
+				bufferedWriter.write(writeGson.toJson(record, JournalRecord.class));
+				bufferedWriter.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Used for everything but AccountData (accountwide data, backup checkpoints...), which is written by writeAccount.
+	 */
+	private void writeJson(Object data, OutputStream out) throws IOException
+	{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		JsonWriter jsonWriter = new JsonWriter(writer);
+		writeGson.toJson(data, data.getClass(), jsonWriter);
+		jsonWriter.flush();
+	}
+
+	public static boolean hasJournal(String displayName)
+	{
+		return new File(PARENT_DIRECTORY, displayName + JOURNAL_SUFFIX).exists();
+	}
+
 	public static long lastModified(String fileName)
 	{
 		return new File(PARENT_DIRECTORY, fileName).lastModified();
 	}
 
+	/**
+	 * @return when the account's file was last written, whether it has been migrated to the binary format yet or not
+	 */
+	public static long accountLastModified(String displayName)
+	{
+		return accountFileOf(PARENT_DIRECTORY, displayName).lastModified();
+	}
+
+	/**
+	 * Deletes an account's file, along with the json file it was migrated from if that is still around.
+	 */
+	public static void deleteAccountFile(String displayName)
+	{
+		deleteFile(displayName + ACCOUNT_SUFFIX);
+		deleteFile(displayName + LEGACY_ACCOUNT_SUFFIX);
+	}
+
+	/**
+	 * @return the account's file, which is the json file it was last written to before the binary format if it hasn't
+	 * been written since
+	 */
+	private static File accountFileOf(File directory, String fileName)
+	{
+		File accountFile = new File(directory, fileName + ACCOUNT_SUFFIX);
+		if (accountFile.exists())
+		{
+			return accountFile;
+		}
+		File legacyAccountFile = new File(directory, fileName + LEGACY_ACCOUNT_SUFFIX);
+		return legacyAccountFile.exists() ? legacyAccountFile : accountFile;
+	}
+
+	/**
+	 * @return the display name of the account the file is for, or null if it isn't an account file (such as a backup,
+	 * the account wide data or one of the special files)
+	 */
+	public static String displayNameOfAccountFile(String fileName)
+	{
+		String suffix;
+		if (fileName.endsWith(ACCOUNT_SUFFIX))
+		{
+			suffix = ACCOUNT_SUFFIX;
+		}
+		else if (fileName.endsWith(LEGACY_ACCOUNT_SUFFIX) && !fileName.equals("accountwide.json") && !fileName.endsWith(".special.json"))
+		{
+			suffix = LEGACY_ACCOUNT_SUFFIX;
+		}
+		else
+		{
+			return null;
+		}
+		String displayName = fileName.substring(0, fileName.length() - suffix.length());
+		return displayName.endsWith(BACKUP_NAME_SUFFIX) ? null : displayName;
+	}
+
 	public static void deleteFile(String fileName)
 	{
-		File accountFile = new File(PARENT_DIRECTORY, fileName);
+		deleteFile(PARENT_DIRECTORY, fileName);
+	}
+
+	private static void deleteFile(File directory, String fileName)
+	{
+		File accountFile = new File(directory, fileName);
 		if (accountFile.exists())
 		{
 			if (accountFile.delete()) {
@@ -277,15 +1363,77 @@ public class TradePersister
 		}
 	}
 
+	/**
+	 * Backs up an account by copying its file as is, for when the file is known to hold all of the account's data.
+	 */
+	public synchronized void copyToBackup(String displayName) throws IOException {
+		File accountFile = accountFileOf(directory, displayName);
+		File backupFile = new File(directory, displayName + BACKUP_NAME_SUFFIX + ACCOUNT_SUFFIX);
+		File segmentDirectory = new File(directory, displayName);
+		File backupSegmentDirectory = new File(directory, displayName + BACKUP_NAME_SUFFIX);
+		//null for an account that is still in its json file, which has no segments
+		AccountDataBinaryFormat.Manifest manifest = readManifest(accountFile);
+		//the copy is a new base, the deltas of the previous one don't apply to it
+		deleteBackupDeltas(backupSegmentDirectory);
+		//the segments go first so that the backup's account file never references segments that aren't there
+		if (manifest != null)
+		{
+			Files.createDirectories(backupSegmentDirectory.toPath());
+			for (AccountDataBinaryFormat.SegmentEntry segment : manifest.segments.values())
+			{
+				Files.copy(new File(segmentDirectory, segment.fileName).toPath(), new File(backupSegmentDirectory, segment.fileName).toPath(),
+					java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.copy(accountFile.toPath(), backupFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		if (manifest != null)
+		{
+			//the segments of the previous backup that the copy doesn't use would otherwise never be deleted
+			deleteUnreferencedSegments(backupSegmentDirectory, manifest);
+		}
+	}
+
+	/**
+	 * Deletes the directory holding an account's segment files.
+	 */
+	public static void deleteSegments(String fileName)
+	{
+		File segmentDirectory = new File(PARENT_DIRECTORY, fileName);
+		File[] segmentFiles = segmentDirectory.listFiles();
+		if (segmentFiles == null)
+		{
+			return;
+		}
+		for (File segmentFile : segmentFiles)
+		{
+			if (!segmentFile.delete())
+			{
+				log.debug("unable to delete {}", segmentFile.getName());
+			}
+		}
+		if (!segmentDirectory.delete())
+		{
+			log.debug("unable to delete segment directory for {}", fileName);
+		}
+	}
+
 	/**
 	 * Creates a pre-migration backup file for an account before migration.
 	 * This should only be called when migration is actually needed.
 	 */
-	public static void createPreMigrationBackup(String displayName) throws IOException {
-		File accountFile = new File(PARENT_DIRECTORY, displayName + ".json");
-		File backupFile = new File(PARENT_DIRECTORY, displayName + ".json.pre-migration");
+	public void createPreMigrationBackup(String displayName) throws IOException {
+		File accountFile = accountFileOf(directory, displayName);
+		File backupFile = new File(directory, displayName + ".json.pre-migration");
 		if (!backupFile.exists() && accountFile.exists()) {
-			Files.copy(accountFile.toPath(), backupFile.toPath());
+			//pre migration files are old json or version 1 files, which compress very well. They still load as an
+			//account file if they are renamed back as compression is detected when reading.
+			try (InputStream in = openForReading(accountFile); OutputStream out = openForWriting(backupFile)) {
+				byte[] buffer = new byte[COMPRESSION_BUFFER_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			}
 			log.info("Created pre-migration backup: {}", backupFile.getName());
 		}
 	}
@@ -325,7 +1473,7 @@ public class TradePersister
 						offer.getState()
 				);
 			}
-			csvWriter.printComment(String.format("Total profit: %d", FlippingItem.getProfit(item.getHistory().getCompressedOfferEvents())));
+			csvWriter.printComment(String.format("Total profit: %d", item.getHistory().getProfit()));
 			csvWriter.println();
 		}
 		csvWriter.close();
@@ -95,8 +95,9 @@ public class SlotSenderJob {
      * as the offer from client.getGrandExchangeOffers() is missing that information.
      */
     private List<SlotState> getCurrentSlots() {
-        Map<Integer, OfferEvent> lastOfferEventForEachSlot = plugin.getDataHandler().getAccountData(plugin.getCurrentlyLoggedInAccount()).getLastOffers();
-        List<SlotActivityTimer> slotActivityTimers = plugin.getDataHandler().getAccountData(plugin.getCurrentlyLoggedInAccount()).getSlotTimers();
+        Map<Integer, OfferEvent> lastOfferEventForEachSlot = plugin.getDataHandler().viewAccountData(plugin.getCurrentlyLoggedInAccount()).getLastOffers();
+        List<SlotActivityTimer> slotActivityTimers = plugin.getDataHandler().viewAccountData(plugin.getCurrentlyLoggedInAccount()).getSlotTimers();
+        plugin.getDataHandler().markSessionStateAsHavingChanged(plugin.getCurrentlyLoggedInAccount());
         List<SlotState> slotStates = new ArrayList<>();
         for (int i = 0; i < 8; i++) {
             GrandExchangeOffer grandExchangeOffer = plugin.getClient().getGrandExchangeOffers()[i];
@@ -28,7 +28,10 @@ package com.flippingutilities.model;
 
 import com.flippingutilities.controller.FlippingPlugin;
 import com.flippingutilities.ui.widgets.SlotActivityTimer;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.game.ItemManager;
 import net.runelite.client.game.ItemStats;
@@ -36,8 +39,12 @@ import net.runelite.client.game.ItemStats;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 @Slf4j
 @Data
@@ -45,8 +52,10 @@ public class AccountData {
     /**
      * Current version of the AccountData format.
      * Increment this when making breaking changes to the data format.
+     * Version 2 moved account files from json to the binary format (see AccountDataBinaryFormat).
+     * Version 3 moved the trades into per item bucket segment files.
      */
-    public static final int CURRENT_VERSION = 1;
+    public static final int CURRENT_VERSION = 3;
     
     private Integer version;
     private Map<Integer, OfferEvent> lastOffers = new HashMap<>();
@@ -58,6 +67,30 @@ public class AccountData {
     private List<RecipeFlipGroup> recipeFlipGroups = new ArrayList<>();
     private Instant lastStoredAt = Instant.EPOCH;
     private Instant lastModifiedAt = Instant.now();
+    /**
+     * Sequence number of the last journal record that is already reflected in this snapshot. Journal records at or
+     * below it are skipped when the journal is replayed on load.
+     */
+    private long journalCheckpoint;
+    private transient long lastJournalSeq;
+    private transient int journalRecordsSinceCheckpoint;
+    //ids of the items that changed since the account was last written, so that only their segments are rewritten
+    private transient Set<Integer> changedItemIds = ConcurrentHashMap.newKeySet();
+    //set when it isn't known which items changed, such as when the account was loaded from an unsharded file
+    private transient volatile boolean allItemsChanged = true;
+    //not persisted, it is built from the trades the first time an item is looked up by id. The trades list can still
+    //be changed without going through addItem and removeItems (when it is replaced on load for example), so the index
+    //remembers which list it was built from and how big it was, and is rebuilt if that no longer holds.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Map<Integer, FlippingItem> itemsById;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient List<FlippingItem> indexedTrades;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient int indexedTradesSize;
+
     /**
      * Returns true if this AccountData needs to be migrated.
      * Old files don't have a version field (null), or have an older version.
@@ -92,6 +125,205 @@ public class AccountData {
         recipeFlipGroups.forEach(RecipeFlipGroup::cleanup);
     }
 
+    public void markItemChanged(int itemId) {
+        changedItemIds.add(itemId);
+    }
+
+    public void markAllItemsChanged() {
+        allItemsChanged = true;
+    }
+
+    /**
+     * Makes a copy of the account for the persistence worker to write while the client thread carries on changing
+     * the account, see DataHandler. It has to be made on the client thread. The items and their histories are
+     * copied, but the offers in the histories are shared as they aren't changed once they are in one. The same goes
+     * for the recipe flips in the recipe flip groups.
+     * <p>
+     * The journal checkpoint is marked before the copy is made, so the copy knows which journal records it already
+     * contains, and the items that changed since the last snapshot are handed over to it.
+     */
+    public synchronized AccountData snapshot() {
+        markJournalCheckpoint();
+        AccountData snapshot = new AccountData();
+        snapshot.version = version;
+        snapshot.lastOffers = new HashMap<>();
+        lastOffers.forEach((slot, offer) -> snapshot.lastOffers.put(slot, offer.clone()));
+        snapshot.trades = trades.stream().map(FlippingItem::snapshot).collect(Collectors.toCollection(ArrayList::new));
+        snapshot.sessionStartTime = sessionStartTime;
+        snapshot.accumulatedSessionTimeMillis = accumulatedSessionTimeMillis;
+        snapshot.lastSessionTimeUpdate = lastSessionTimeUpdate;
+        snapshot.slotTimers = slotTimers == null ? null : slotTimers.stream().map(SlotActivityTimer::snapshot).collect(Collectors.toList());
+        snapshot.recipeFlipGroups = recipeFlipGroups.stream().map(RecipeFlipGroup::snapshot).collect(Collectors.toCollection(ArrayList::new));
+        snapshot.lastStoredAt = lastStoredAt;
+        snapshot.lastModifiedAt = lastModifiedAt;
+        snapshot.journalCheckpoint = journalCheckpoint;
+        snapshot.lastJournalSeq = lastJournalSeq;
+        snapshot.allItemsChanged = false;
+        snapshot.restoreChangedItemIds(drainChangedItemIds());
+        return snapshot;
+    }
+
+    /**
+     * Takes the ids of the items that changed since the last write, resetting them.
+     *
+     * @return the changed item ids, or null if it isn't known which items changed
+     */
+    public Set<Integer> drainChangedItemIds() {
+        boolean wereAllItemsChanged = allItemsChanged;
+        allItemsChanged = false;
+        Set<Integer> drained = new HashSet<>(changedItemIds);
+        changedItemIds.removeAll(drained);
+        return wereAllItemsChanged ? null : drained;
+    }
+
+    /**
+     * Puts back changed item ids taken by drainChangedItemIds when the write they were taken for failed.
+     */
+    public void restoreChangedItemIds(Set<Integer> itemIds) {
+        if (itemIds == null) {
+            allItemsChanged = true;
+        }
+        else {
+            changedItemIds.addAll(itemIds);
+        }
+    }
+
+    /**
+     * @return the account's flipping item for the item, or null if the account hasn't traded it
+     */
+    public FlippingItem getItem(int itemId) {
+        if (!isItemIndexInSync()) {
+            itemsById = new HashMap<>(trades.size() * 2);
+            for (FlippingItem item : trades) {
+                itemsById.putIfAbsent(item.getItemId(), item);
+            }
+            indexedTrades = trades;
+            indexedTradesSize = trades.size();
+        }
+        return itemsById.get(itemId);
+    }
+
+    /**
+     * Adds a flipping item for an item the account doesn't have one for yet. It is added to the end of the trades
+     * rather than the front, the panels put the items in order by when they were last traded anyway.
+     */
+    public void addItem(FlippingItem item) {
+        boolean indexInSync = isItemIndexInSync();
+        trades.add(item);
+        if (indexInSync) {
+            itemsById.putIfAbsent(item.getItemId(), item);
+            indexedTradesSize++;
+        }
+    }
+
+    /**
+     * Removes the flipping items that match the predicate from the trades.
+     */
+    public void removeItems(Predicate<FlippingItem> shouldRemove) {
+        boolean indexInSync = isItemIndexInSync();
+        trades.removeIf(item -> {
+            if (!shouldRemove.test(item)) {
+                return false;
+            }
+            if (indexInSync) {
+                itemsById.remove(item.getItemId(), item);
+            }
+            return true;
+        });
+        if (indexInSync) {
+            indexedTradesSize = trades.size();
+        }
+    }
+
+    public synchronized long getJournalCheckpoint() {
+        return journalCheckpoint;
+    }
+
+    public synchronized int getJournalRecordsSinceCheckpoint() {
+        return journalRecordsSinceCheckpoint;
+    }
+
+    private boolean isItemIndexInSync() {
+        return itemsById != null && indexedTrades == trades && indexedTradesSize == trades.size();
+    }
+
+    /**
+     * Reserves the sequence number for the next record appended to this account's journal. Offer records are
+     * journaled from the client thread while session state records are journaled from the persistence worker, so
+     * the journal bookkeeping is synchronized.
+     */
+    public synchronized long nextJournalSeq() {
+        lastJournalSeq = Math.max(lastJournalSeq, journalCheckpoint) + 1;
+        journalRecordsSinceCheckpoint++;
+        return lastJournalSeq;
+    }
+
+    /**
+     * Called right before a full snapshot of this account is written so that the snapshot records which journal
+     * records it already contains.
+     */
+    public synchronized void markJournalCheckpoint() {
+        journalCheckpoint = Math.max(lastJournalSeq, journalCheckpoint);
+        journalRecordsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Applies the journal records that were appended after this snapshot was written. Offer records go through
+     * FlippingItem.updateHistory just like they did in the offer pipeline, so the trade compression and ge limit
+     * bookkeeping done there is reproduced exactly.
+     *
+     * @param records     the account's journal, in the order it was written
+     * @param displayName the account the journal belongs to
+     * @return the amount of records that were applied
+     */
+    public synchronized int replayJournal(List<JournalRecord> records, String displayName) {
+        int applied = 0;
+        for (JournalRecord record : records) {
+            if (record.getSeq() <= journalCheckpoint) {
+                continue;
+            }
+            if (record.isOfferRecord()) {
+                applyJournaledOffer(record, displayName);
+            }
+            else if (record.isSessionStateRecord()) {
+                if (record.getLastOffers() != null) {
+                    lastOffers = record.getLastOffers();
+                }
+                if (record.getSlotTimers() != null) {
+                    slotTimers = record.getSlotTimers();
+                }
+                accumulatedSessionTimeMillis = record.getAccumulatedSessionTimeMillis();
+            }
+            lastJournalSeq = Math.max(lastJournalSeq, record.getSeq());
+            applied++;
+        }
+        journalRecordsSinceCheckpoint = applied;
+        return applied;
+    }
+
+    private void applyJournaledOffer(JournalRecord record, String displayName) {
+        OfferEvent offer = record.getOffer();
+        FlippingItem item = getItem(offer.getItemId());
+        if (item != null) {
+            //the snapshot could have been written after this record was appended, in which case it already has it.
+            if (item.getHistory().hasOfferWithSameUuid(offer)) {
+                return;
+            }
+        }
+        else {
+            //ge limit is filled in when the account data is hydrated in prepareForUse
+            item = new FlippingItem(offer.getItemId(), record.getItemName(), -1, displayName);
+            addItem(item);
+        }
+
+        if (!Boolean.TRUE.equals(item.getValidFlippingPanelItem())) {
+            item.setValidFlippingPanelItem(true);
+        }
+        item.updateHistory(offer);
+        item.updateLatestProperties(offer);
+        markItemChanged(item.getItemId());
+    }
+
     /**
      * Resets all session related data associated with an account. This is called when the plugin first starts
      * as that's when a new session is "started" and when a user wants to start a new session for an account.
@@ -108,22 +340,39 @@ public class AccountData {
      * that the FlippingItems have their non persisted fields set from history.
      */
     public void prepareForUse(FlippingPlugin plugin) {
-        fixIncorrectItemNames(plugin.getItemManager());
+        prepareOffers(plugin);
+        prepareItemData(plugin);
+    }
 
-        Map<String, OfferEvent> hydratedOffers = new HashMap<>();
+    /**
+     * The part of prepareForUse that doesn't need the item manager. It only touches this account's own data, so it
+     * can be run off the client thread and for several accounts at once.
+     */
+    public void prepareOffers(FlippingPlugin plugin) {
+        //keyed by OfferEvent.getUuidKey, as rendering the uuid of every offer of the account would be a lot of garbage
+        Map<Object, OfferEvent> hydratedOffers = new HashMap<>();
 
         for (FlippingItem item : trades) {
-            //in case ge limits have been updated
-            int tradeItemId = item.getItemId();
-            ItemStats itemStats = plugin.getItemManager().getItemStats(tradeItemId);
-            int geLimit = itemStats != null ? itemStats.getGeLimit() : 0;
-
-            item.hydrate(geLimit);
-            item.getHistory().getCompressedOfferEvents().forEach(o -> hydratedOffers.put(o.getUuid(), o));
+            item.hydrate();
+            item.getHistory().getCompressedOfferEvents().forEach(o -> hydratedOffers.put(o.getUuidKey(), o));
         }
 
         hydrateRecipeFlipGroups(plugin);
         hydratePartialOffers(hydratedOffers);
+    }
+
+    /**
+     * The part of prepareForUse that uses the item manager, so it has to be run on the client thread.
+     */
+    public void prepareItemData(FlippingPlugin plugin) {
+        fixIncorrectItemNames(plugin.getItemManager());
+
+        for (FlippingItem item : trades) {
+            //in case ge limits have been updated
+            ItemStats itemStats = plugin.getItemManager().getItemStats(item.getItemId());
+            item.setTotalGELimit(itemStats != null ? itemStats.getGeLimit() : 0);
+        }
+
         hydrateSlotTimers(plugin);
     }
 
@@ -144,7 +393,7 @@ public class AccountData {
         }
     }
 
-    private void hydratePartialOffers(Map<String, OfferEvent> hydratedOffers) {
+    private void hydratePartialOffers(Map<Object, OfferEvent> hydratedOffers) {
         List<PartialOffer> partialOffers = recipeFlipGroups.stream()
             .flatMap(rfg -> rfg.getPartialOffers().stream())
             .collect(Collectors.toList());
@@ -154,7 +403,7 @@ public class AccountData {
                 log.warn("partial offer references deleted offer event with uuid: {}", po.getOfferUuid());
                 return;
             }
-            OfferEvent o = hydratedOffers.get(po.getOfferUuid());
+            OfferEvent o = hydratedOffers.get(OfferEvent.uuidKeyOf(po.getOfferUuid()));
             if (o != null) {
                 po.hydrateUnderlyingOfferEvent(o.getMadeBy(), o.getItemName());
             }
@@ -172,6 +421,7 @@ public class AccountData {
             if (item.getItemName().equals("Members object")) {
                 String actualName = itemManager.getItemComposition(item.getItemId()).getName();
                 item.setItemName(actualName);
+                item.getHistory().setOfferNames(actualName);
             }
         });
     }
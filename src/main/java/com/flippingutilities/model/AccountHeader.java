@@ -0,0 +1,57 @@
+package com.flippingutilities.model;
+
+import com.google.gson.annotations.SerializedName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A small summary of an account's data that is kept in memory for every account, even the ones whose full
+ * AccountData isn't loaded. It has just enough to know what is in an account without deserializing its history.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountHeader {
+    @SerializedName("v")
+    private int version;
+    @SerializedName("i")
+    private Set<Integer> itemIds = new HashSet<>();
+    @SerializedName("lA")
+    private Instant latestActivityTime = Instant.EPOCH;
+    @SerializedName("p")
+    private long totalProfit;
+    @SerializedName("lS")
+    private Instant lastStoredAt = Instant.EPOCH;
+    //the last modified time of the account's file when this header was made, used to tell if the file was written
+    //by something else (such as another client) since.
+    @SerializedName("fM")
+    private long fileLastModified;
+
+    public static AccountHeader of(AccountData accountData, long fileLastModified) {
+        Set<Integer> itemIds = new HashSet<>();
+        Instant latestActivityTime = Instant.EPOCH;
+        long totalProfit = 0;
+        for (FlippingItem item : accountData.getTrades()) {
+            itemIds.add(item.getItemId());
+            if (item.getLatestActivityTime() != null && item.getLatestActivityTime().isAfter(latestActivityTime)) {
+                latestActivityTime = item.getLatestActivityTime();
+            }
+            totalProfit += item.getHistory().getProfit();
+        }
+        int version = accountData.getVersion() == null ? 0 : accountData.getVersion();
+        return new AccountHeader(version, itemIds, latestActivityTime, totalProfit, accountData.getLastStoredAt(), fileLastModified);
+    }
+
+    /**
+     * Whether the account's file and journal are still exactly what this header was made from, in which case the
+     * account doesn't need to be loaded to know what is in it.
+     */
+    public boolean isUpToDate(long currentFileLastModified, boolean hasJournal) {
+        return version == AccountData.CURRENT_VERSION && fileLastModified == currentFileLastModified && !hasJournal;
+    }
+}
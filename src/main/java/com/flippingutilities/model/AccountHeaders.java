@@ -0,0 +1,11 @@
+package com.flippingutilities.model;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class AccountHeaders {
+    Map<String, AccountHeader> accountToHeader = new HashMap<>();
+}
@@ -9,6 +9,8 @@ import java.util.Map;
 @Data
 public class BackupCheckpoints {
     Map<String, Instant> accountToBackupTime = new HashMap<>();
+    //checksums of each item as it was when its account was last backed up, see TradePersister.backupAccount
+    Map<String, Map<Integer, Long>> accountToItemChecksums = new HashMap<>();
 
     public boolean shouldBackup(String displayName, Instant lastUpdatedAt) {
         if (!accountToBackupTime.containsKey(displayName)) {
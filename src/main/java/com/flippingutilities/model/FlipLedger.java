@@ -0,0 +1,423 @@
+package com.flippingutilities.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the flips of an item's whole history up to date as offers come in, so they don't have to be recomputed from
+ * scratch (with HistoryManager.getFlips) every time they are looked at.
+ * <p>
+ * It runs the same algorithm as {@link HistoryManager#createFlips}, per account that made the offers, but keeps the
+ * state of it between offers: how far margin check pairing got, the buy and sell lists that are matched against each
+ * other (sorted the same way createFlips sorts them), and how far the matching of those lists got, with a checkpoint
+ * before each sell. When an offer is added, or an in progress offer is replaced by a newer one for the same trade,
+ * matching is rolled back to the first sell that could be affected and picks up from there. As offers almost always
+ * change at the end of the history, that is usually only the last sell or two. Anything else (offers being deleted
+ * or the history being changed without going through HistoryManager) makes it rebuild from the history.
+ */
+class FlipLedger
+{
+	//the same order createFlips ends up with when it stable sorts the regular offers followed by the unpaired margin
+	//checks by time.
+	private static final Comparator<Entry> ENTRY_ORDER = Comparator
+		.comparing((Entry e) -> e.offer.getTime())
+		.thenComparing(e -> e.marginCheck)
+		.thenComparingLong(e -> e.seq);
+
+	private final List<OfferEvent> offers;
+	private final Map<String, Account> accounts = new HashMap<>();
+	private long nextSeq;
+	//used to tell whether the history was changed without the ledger being told about it
+	private int syncedSize;
+	private OfferEvent lastSyncedOffer;
+	private List<Flip> flips;
+	private int flipCount = -1;
+
+	FlipLedger(List<OfferEvent> offers)
+	{
+		this.offers = offers;
+		rebuild();
+	}
+
+	boolean isInSyncWith(List<OfferEvent> offers)
+	{
+		return offers == this.offers && offers.size() == syncedSize && (syncedSize == 0 || offers.get(syncedSize - 1) == lastSyncedOffer);
+	}
+
+	/**
+	 * Should be called after the offer was added to the end of the history.
+	 */
+	void offerAdded(OfferEvent offer)
+	{
+		accounts.computeIfAbsent(offer.getMadeBy(), k -> new Account()).add(new Entry(offer, offer.isMarginCheck(), nextSeq++));
+		syncedSize++;
+		lastSyncedOffer = offer;
+		flips = null;
+		flipCount = -1;
+	}
+
+	/**
+	 * Should be called after the offer was removed from the history.
+	 */
+	void offerRemoved(OfferEvent offer)
+	{
+		Account account = accounts.get(offer.getMadeBy());
+		if (account == null || !account.remove(offer))
+		{
+			rebuild();
+			return;
+		}
+		if (account.isEmpty())
+		{
+			accounts.remove(offer.getMadeBy());
+		}
+		syncedSize--;
+		lastSyncedOffer = syncedSize == 0 ? null : offers.get(syncedSize - 1);
+		flips = null;
+		flipCount = -1;
+	}
+
+	void rebuild()
+	{
+		accounts.clear();
+		nextSeq = 0;
+		syncedSize = 0;
+		lastSyncedOffer = null;
+		flips = null;
+		flipCount = -1;
+		for (OfferEvent offer : offers)
+		{
+			offerAdded(offer);
+		}
+	}
+
+	/**
+	 * @return the same flips as HistoryManager.getFlips gives for the whole history. The list is the ledger's own,
+	 * so it shouldn't be modified.
+	 */
+	List<Flip> getFlips()
+	{
+		if (flips == null)
+		{
+			List<Flip> allFlips = new ArrayList<>();
+			for (Account account : accounts.values())
+			{
+				account.addFlipsTo(allFlips);
+			}
+			allFlips.sort(Comparator.comparing(Flip::getTime));
+			flips = allFlips;
+		}
+		return flips;
+	}
+
+	int getFlipCount()
+	{
+		if (flips != null)
+		{
+			return flips.size();
+		}
+		if (flipCount == -1)
+		{
+			flipCount = 0;
+			for (Account account : accounts.values())
+			{
+				flipCount += account.flipCount();
+			}
+		}
+		return flipCount;
+	}
+
+	private static final class Entry
+	{
+		final OfferEvent offer;
+		final boolean marginCheck;
+		//the order the offer was added to the ledger in, which is its order in the history
+		final long seq;
+
+		Entry(OfferEvent offer, boolean marginCheck, long seq)
+		{
+			this.offer = offer;
+			this.marginCheck = marginCheck;
+			this.seq = seq;
+		}
+	}
+
+	/**
+	 * The flips of the offers made by one account.
+	 */
+	private static final class Account
+	{
+		private final List<OfferEvent> marginBuys = new ArrayList<>();
+		private final List<OfferEvent> marginSells = new ArrayList<>();
+		//how far HistoryManager.pairMarginChecks got through the margin checks
+		private int marginBuyIdx;
+		private int marginSellIdx;
+		private final List<Flip> marginCheckFlips = new ArrayList<>();
+
+		//the regular offers plus the margin checks that aren't (yet) paired, in the order createFlips matches them in
+		private final List<Entry> buys = new ArrayList<>();
+		private final List<Entry> sells = new ArrayList<>();
+
+		//how far HistoryManager.combineToFlips got. A sell is only committed once the buys cover it, the one after
+		//the last committed sell is matched against whatever buys there are each time the flips are asked for.
+		private int committedSells;
+		private int buyIdx;
+		//what's left of the buy at buyIdx, or -1 if none of it was used yet
+		private int buyRemaining = -1;
+		private final List<Flip> regularFlips = new ArrayList<>();
+		//the state before each committed sell, so that matching can be rolled back to it
+		private int[] buyIdxBeforeSell = new int[16];
+		private int[] buyRemainingBeforeSell = new int[16];
+		private int[] buyIdxAfterSell = new int[16];
+		private int[] regularFlipsBeforeSell = new int[16];
+
+		boolean isEmpty()
+		{
+			return marginBuys.isEmpty() && marginSells.isEmpty() && buys.isEmpty() && sells.isEmpty();
+		}
+
+		void add(Entry entry)
+		{
+			OfferEvent offer = entry.offer;
+			//margin checks are unpaired (so matched like regular offers) until pairMarginChecks finds them a partner
+			insert(offer.isBuy() ? buys : sells, entry);
+			if (entry.marginCheck)
+			{
+				(offer.isBuy() ? marginBuys : marginSells).add(offer);
+				pairMarginChecks();
+			}
+		}
+
+		/**
+		 * Only offers that aren't margin checks can be removed, as removing a margin check could change how the
+		 * others are paired.
+		 *
+		 * @return false if the offer couldn't be removed, in which case the ledger needs to be rebuilt
+		 */
+		boolean remove(OfferEvent offer)
+		{
+			if (offer.isMarginCheck())
+			{
+				return false;
+			}
+			List<Entry> entries = offer.isBuy() ? buys : sells;
+			int idx = indexOf(entries, offer);
+			if (idx == -1)
+			{
+				return false;
+			}
+			removeAt(entries, idx);
+			return true;
+		}
+
+		/**
+		 * The same as HistoryManager.pairMarginChecks, but picking up from where it stopped the last time, as it only
+		 * ever stops because it ran out of buys or sells.
+		 */
+		private void pairMarginChecks()
+		{
+			while (marginBuyIdx < marginBuys.size() && marginSellIdx < marginSells.size())
+			{
+				OfferEvent buy = marginBuys.get(marginBuyIdx);
+				OfferEvent sell = marginSells.get(marginSellIdx);
+				long millisBetweenBuyAndSell = Duration.between(buy.getTime(), sell.getTime()).toMillis();
+				if (millisBetweenBuyAndSell >= 0 && millisBetweenBuyAndSell < 60000)
+				{
+					marginCheckFlips.add(new Flip(buy.getPrice(), sell.getPrice(), sell.getCurrentQuantityInTrade(), sell.getTime(), sell.isMarginCheck(), false));
+					removeAt(buys, indexOf(buys, buy));
+					removeAt(sells, indexOf(sells, sell));
+					marginBuyIdx++;
+					marginSellIdx++;
+				}
+				else if (millisBetweenBuyAndSell >= 0)
+				{
+					marginBuyIdx++;
+				}
+				else
+				{
+					marginSellIdx++;
+				}
+			}
+		}
+
+		private void insert(List<Entry> entries, Entry entry)
+		{
+			int idx = entries.size();
+			while (idx > 0 && ENTRY_ORDER.compare(entries.get(idx - 1), entry) > 0)
+			{
+				idx--;
+			}
+			rollBackFor(entries, idx);
+			entries.add(idx, entry);
+		}
+
+		private void removeAt(List<Entry> entries, int idx)
+		{
+			rollBackFor(entries, idx);
+			entries.remove(idx);
+		}
+
+		private static int indexOf(List<Entry> entries, OfferEvent offer)
+		{
+			for (int i = entries.size() - 1; i >= 0; i--)
+			{
+				if (entries.get(i).offer == offer)
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Rolls matching back to before the first committed sell that depends on the entry at idx of the given list.
+		 */
+		private void rollBackFor(List<Entry> entries, int idx)
+		{
+			int firstAffectedSell;
+			if (entries == sells)
+			{
+				firstAffectedSell = idx;
+			}
+			else
+			{
+				//the sells only move forward through the buys, so the first sell that got to idx is found with a
+				//binary search
+				int lo = 0;
+				int hi = committedSells;
+				while (lo < hi)
+				{
+					int mid = (lo + hi) >>> 1;
+					if (buyIdxAfterSell[mid] >= idx)
+					{
+						hi = mid;
+					}
+					else
+					{
+						lo = mid + 1;
+					}
+				}
+				firstAffectedSell = lo;
+			}
+			if (firstAffectedSell >= committedSells)
+			{
+				return;
+			}
+			buyIdx = buyIdxBeforeSell[firstAffectedSell];
+			buyRemaining = buyRemainingBeforeSell[firstAffectedSell];
+			regularFlips.subList(regularFlipsBeforeSell[firstAffectedSell], regularFlips.size()).clear();
+			committedSells = firstAffectedSell;
+		}
+
+		/**
+		 * The same as HistoryManager.combineToFlips, picking up from the last committed sell. Instead of taking items
+		 * out of cloned buy offers, what's left of the buy being used up is kept in buyRemaining.
+		 */
+		private void commitSells()
+		{
+			while (committedSells < sells.size())
+			{
+				OfferEvent sell = sells.get(committedSells).offer;
+				int sellQuantity = sell.getCurrentQuantityInTrade();
+				if (sellQuantity == 0)
+				{
+					commitSell(buyIdx, buyRemaining, null);
+					continue;
+				}
+
+				int idx = buyIdx;
+				int numBuysSeen = 0;
+				int totalRevenue = 0;
+				while (idx < buys.size())
+				{
+					OfferEvent buy = buys.get(idx).offer;
+					int buyQuantity = idx == buyIdx && buyRemaining != -1 ? buyRemaining : buy.getCurrentQuantityInTrade();
+					numBuysSeen += buyQuantity;
+					if (numBuysSeen >= sellQuantity)
+					{
+						int leftOver = numBuysSeen - sellQuantity;
+						totalRevenue += (buyQuantity - leftOver) * buy.getPrice();
+						commitSell(idx, leftOver, new Flip(totalRevenue / sellQuantity, sell.getPrice(), sellQuantity, sell.getTime(), false, !sell.isComplete()));
+						break;
+					}
+					totalRevenue += buyQuantity * buy.getPrice();
+					idx++;
+				}
+				if (idx == buys.size())
+				{
+					//the buys don't cover this sell yet
+					return;
+				}
+			}
+		}
+
+		private void commitSell(int newBuyIdx, int newBuyRemaining, Flip flip)
+		{
+			if (committedSells == buyIdxBeforeSell.length)
+			{
+				int newLength = buyIdxBeforeSell.length * 2;
+				buyIdxBeforeSell = Arrays.copyOf(buyIdxBeforeSell, newLength);
+				buyRemainingBeforeSell = Arrays.copyOf(buyRemainingBeforeSell, newLength);
+				buyIdxAfterSell = Arrays.copyOf(buyIdxAfterSell, newLength);
+				regularFlipsBeforeSell = Arrays.copyOf(regularFlipsBeforeSell, newLength);
+			}
+			buyIdxBeforeSell[committedSells] = buyIdx;
+			buyRemainingBeforeSell[committedSells] = buyRemaining;
+			buyIdxAfterSell[committedSells] = newBuyIdx;
+			regularFlipsBeforeSell[committedSells] = regularFlips.size();
+			if (flip != null)
+			{
+				regularFlips.add(flip);
+			}
+			buyIdx = newBuyIdx;
+			buyRemaining = newBuyRemaining;
+			committedSells++;
+		}
+
+		/**
+		 * @return the flip for the part of the first uncommitted sell that the buys cover, if any. combineToFlips
+		 * stops at that sell, so there are no flips after it.
+		 */
+		private Flip partialFlip()
+		{
+			if (committedSells == sells.size())
+			{
+				return null;
+			}
+			OfferEvent sell = sells.get(committedSells).offer;
+			int numBuysSeen = 0;
+			int totalRevenue = 0;
+			for (int idx = buyIdx; idx < buys.size(); idx++)
+			{
+				OfferEvent buy = buys.get(idx).offer;
+				int buyQuantity = idx == buyIdx && buyRemaining != -1 ? buyRemaining : buy.getCurrentQuantityInTrade();
+				numBuysSeen += buyQuantity;
+				totalRevenue += buyQuantity * buy.getPrice();
+			}
+			return numBuysSeen == 0 ? null : new Flip(totalRevenue / numBuysSeen, sell.getPrice(), numBuysSeen, sell.getTime(), false, true);
+		}
+
+		void addFlipsTo(List<Flip> flips)
+		{
+			commitSells();
+			flips.addAll(marginCheckFlips);
+			flips.addAll(regularFlips);
+			Flip partialFlip = partialFlip();
+			if (partialFlip != null)
+			{
+				flips.add(partialFlip);
+			}
+		}
+
+		int flipCount()
+		{
+			commitSells();
+			return marginCheckFlips.size() + regularFlips.size() + (partialFlip() == null ? 0 : 1);
+		}
+	}
+}
@@ -26,6 +26,7 @@
 
 package com.flippingutilities.model;
 
+import com.flippingutilities.utilities.CanonicalNames;
 import com.flippingutilities.utilities.Constants;
 import com.flippingutilities.utilities.GeTax;
 import com.flippingutilities.utilities.Searchable;
@@ -124,10 +125,10 @@ public class FlippingItem implements Searchable
 		this.latestInstaSell = Optional.empty();
 		this.latestBuy = Optional.empty();
 		this.latestSell = Optional.empty();
-		this.itemName = itemName;
+		this.itemName = CanonicalNames.of(itemName);
 		this.itemId = itemId;
 		this.totalGELimit = totalGeLimit;
-		this.flippedBy = flippedBy;
+		this.flippedBy = CanonicalNames.of(flippedBy);
 		this.latestActivityTime = Constants.DUMMY_ITEM.equals(flippedBy)? Instant.EPOCH : Instant.now();
 	}
 
@@ -150,16 +151,39 @@ public class FlippingItem implements Searchable
 				expand);
 	}
 
+	/**
+	 * @return a copy of the item to be written to disk off the client thread, see AccountData.snapshot
+	 */
+	public FlippingItem snapshot()
+	{
+		return new FlippingItem(
+				itemId,
+				itemName,
+				totalGELimit,
+				history.snapshot(),
+				flippedBy,
+				validFlippingPanelItem,
+				favorite,
+				favoriteCode,
+				latestInstaBuy,
+				latestInstaSell,
+				latestBuy,
+				latestSell,
+				latestActivityTime,
+				expand);
+	}
+
 	/**
 	 * This method updates the history of a FlippingItem. This history is used to calculate profits,
 	 * next ge limit refresh, and how many items were bought during this limit window.
 	 *
 	 * @param newOffer the new offer that just came in
+	 * @return the offers for the same trade that the new offer replaced
 	 */
-	public void updateHistory(OfferEvent newOffer)
+	public List<OfferEvent> updateHistory(OfferEvent newOffer)
 	{
 		newOffer.setItemName(itemName);
-		history.updateHistory(newOffer);
+		return history.updateHistory(newOffer);
 	}
 
 	/**
@@ -207,20 +231,105 @@ public class FlippingItem implements Searchable
 
 		if (item1.getLatestActivityTime().compareTo(item2.getLatestActivityTime()) >= 0)
 		{
-			item1.getHistory().getCompressedOfferEvents().addAll(item2.getHistory().getCompressedOfferEvents());
-			item1.getHistory().getCompressedOfferEvents().sort(Comparator.comparing(OfferEvent::getTime));
+			item1.getHistory().mergeOffers(item2.getHistory().getCompressedOfferEvents());
 			item1.setFavorite(item1.isFavorite() || item2.isFavorite());
 			return item1;
 		}
 		else
 		{
-			item2.getHistory().getCompressedOfferEvents().addAll(item1.getHistory().getCompressedOfferEvents());
-			item2.getHistory().getCompressedOfferEvents().sort(Comparator.comparing(OfferEvent::getTime));
+			item2.getHistory().mergeOffers(item1.getHistory().getCompressedOfferEvents());
 			item2.setFavorite(item2.isFavorite() || item1.isFavorite());
 			return item2;
 		}
 	}
 
+	/**
+	 * Does the same as reducing clones of the items with merge, except that the merged item's history shares the
+	 * offers of the items' histories instead of cloning them (see HistoryManager.merge). The merged item must not be
+	 * used to change the offers, which is why offers can't be deleted in the account wide view.
+	 *
+	 * @param items the flipping items of the same item from different accounts
+	 */
+	public static FlippingItem mergeSharingOffers(List<FlippingItem> items)
+	{
+		FlippingItem latestActiveItem = getLatestActiveItem(items);
+		List<HistoryManager> histories = new ArrayList<>(items.size());
+		histories.add(latestActiveItem.history);
+		for (FlippingItem item : items)
+		{
+			if (item != latestActiveItem)
+			{
+				histories.add(item.history);
+			}
+		}
+		FlippingItem mergedItem = new FlippingItem();
+		mergedItem.history = HistoryManager.merge(histories);
+		mergedItem.expand = latestActiveItem.expand;
+		mergedItem.takePropertiesOf(items, latestActiveItem);
+		return mergedItem;
+	}
+
+	/**
+	 * Updates an item made by mergeSharingOffers after a new offer was added to the history of one of the items it
+	 * was made from.
+	 *
+	 * @param items the items the merged item was made from
+	 * @param replacedOffers the offers the item's updateHistory returned for the new offer
+	 * @return false if the merged item couldn't be updated and has to be made again
+	 */
+	public boolean mirrorUpdate(List<FlippingItem> items, OfferEvent newOffer, List<OfferEvent> replacedOffers)
+	{
+		if (!history.mirrorUpdate(newOffer, replacedOffers))
+		{
+			return false;
+		}
+		updateMergedProperties(items);
+		return true;
+	}
+
+	/**
+	 * Sets the properties of an item made by mergeSharingOffers, other than its history's offers, to the ones of the
+	 * items it was made from, for when they were changed without a new offer coming in.
+	 */
+	public void updateMergedProperties(List<FlippingItem> items)
+	{
+		FlippingItem latestActiveItem = getLatestActiveItem(items);
+		history.copyGeLimitProperties(latestActiveItem.history);
+		takePropertiesOf(items, latestActiveItem);
+	}
+
+	/**
+	 * @return the item merge would keep the properties of, the first of the most recently active ones
+	 */
+	private static FlippingItem getLatestActiveItem(List<FlippingItem> items)
+	{
+		FlippingItem latestActiveItem = items.get(0);
+		for (FlippingItem item : items)
+		{
+			if (item.getLatestActivityTime().isAfter(latestActiveItem.getLatestActivityTime()))
+			{
+				latestActiveItem = item;
+			}
+		}
+		return latestActiveItem;
+	}
+
+	private void takePropertiesOf(List<FlippingItem> items, FlippingItem latestActiveItem)
+	{
+		itemId = latestActiveItem.itemId;
+		itemName = latestActiveItem.itemName;
+		totalGELimit = latestActiveItem.totalGELimit;
+		flippedBy = latestActiveItem.flippedBy;
+		validFlippingPanelItem = latestActiveItem.validFlippingPanelItem;
+		favorite = items.stream().anyMatch(FlippingItem::isFavorite);
+		favoriteCode = latestActiveItem.favoriteCode;
+		latestInstaBuy = latestActiveItem.latestInstaBuy;
+		latestInstaSell = latestActiveItem.latestInstaSell;
+		latestBuy = latestActiveItem.latestBuy;
+		latestSell = latestActiveItem.latestSell;
+		latestActivityTime = latestActiveItem.latestActivityTime;
+	}
+
 	public static long getProfit(List<OfferEvent> tradeList)
 	{
 		return HistoryManager.getProfit(tradeList);
@@ -246,11 +355,34 @@ public class FlippingItem implements Searchable
 		return HistoryManager.getFlips(tradeList);
 	}
 
+	/**
+	 * Gets the flips of the offers in the interval, adjusted for the parts of them that were used in recipe flips,
+	 * see HistoryManager.getFlips(Instant, Map).
+	 */
+	public List<Flip> getFlips(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		return history.getFlips(earliestTime, partialOffers);
+	}
+
+	public int getFlipCount(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		return history.getFlipCount(earliestTime, partialOffers);
+	}
+
+	/**
+	 * Gets the totals of the offers in the interval, adjusted for the parts of them that were used in recipe flips,
+	 * see HistoryManager.getIntervalTotals(Instant, Map).
+	 */
+	public OfferTotals getIntervalTotals(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		return history.getIntervalTotals(earliestTime, partialOffers);
+	}
+
 	public static List<OfferEvent> getPartialOfferAdjustedView(List<OfferEvent> offers, Map<String,PartialOffer> partialOffers) {
 		return HistoryManager.getPartialOfferAdjustedView(offers, partialOffers);
 	}
 
-	public ArrayList<OfferEvent> getIntervalHistory(Instant earliestTime)
+	public List<OfferEvent> getIntervalHistory(Instant earliestTime)
 	{
 		return history.getIntervalsHistory(earliestTime);
 	}
@@ -371,8 +503,10 @@ public class FlippingItem implements Searchable
 	 * fill those new fields with default values. I think gson should do this when deserializing already, but
 	 * I ran into some issues with it some time ago and am too lazy to re-explore...
 	 */
-	public void hydrate(int geLimit) {
-		setTotalGELimit(geLimit);
+	public void hydrate() {
+		itemName = CanonicalNames.of(itemName);
+		flippedBy = CanonicalNames.of(flippedBy);
+		history.sortOffersByTime();
 		syncState();
 		setOfferIds();
 		setOfferNames();
@@ -27,6 +27,7 @@
 
 package com.flippingutilities.model;
 
+import com.flippingutilities.utilities.CanonicalNames;
 import com.flippingutilities.utilities.ListUtils;
 import com.google.gson.annotations.SerializedName;
 import lombok.*;
@@ -38,17 +39,26 @@ import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Manages the history for an item. This class is responsible for figuring out how much profit a user made for
  * an item along with tracking how many items they bought since the last ge limit refresh and when the
  * next ge limit refresh for this an item will be.
+ * <p>
+ * The offers are changed on the client thread, but the statistics are worked out on the stats pipeline's thread
+ * from the same histories. The offers and the indexes kept over them are guarded by the history's lock, so the
+ * methods that read or change them are synchronized, and the ones the stats pipeline uses do all their work
+ * inside the lock instead of handing out the offers. The lists returned by getCompressedOfferEvents and
+ * getIntervalsHistory are the offers themselves, so they should only be read on the client thread or the EDT.
  */
 @Slf4j
-@AllArgsConstructor
 @NoArgsConstructor
 public class HistoryManager
 {
+	//how many offers there have to be before the flips of the different accounts are created in parallel
+	private static final int PARALLEL_FLIPS_THRESHOLD = 10_000;
+
 	@SerializedName("sO")
 	@Getter
 	@Setter
@@ -63,9 +73,34 @@ public class HistoryManager
 	private int itemsBoughtThisLimitWindow;
 
 	@SerializedName("pIB")
+	@Getter
 	private int itemsBoughtThroughCompleteOffers;
 
-	public HistoryManager clone()
+	//not persisted, it is built from the history the first time the flips are asked for
+	private transient FlipLedger flipLedger;
+
+	//not persisted, they are filled in from the history the first time the history is searched
+	private transient OfferColumns offerColumns;
+
+	//not persisted with the history, it is kept in its own file next to the account's (see TradePersister) or made
+	//from the history the first time the totals of an interval are asked for
+	private transient OfferRollups offerRollups;
+
+	//not persisted, it is built from the history when the first offer comes in
+	private transient OpenTradeIndex openTradeIndex;
+
+	//not persisted, it is built from the history the first time offers are deleted or matched
+	private transient OfferLookupIndex offerLookupIndex;
+
+	public HistoryManager(List<OfferEvent> compressedOfferEvents, Instant nextGeLimitRefresh, int itemsBoughtThisLimitWindow, int itemsBoughtThroughCompleteOffers)
+	{
+		this.compressedOfferEvents = compressedOfferEvents;
+		this.nextGeLimitRefresh = nextGeLimitRefresh;
+		this.itemsBoughtThisLimitWindow = itemsBoughtThisLimitWindow;
+		this.itemsBoughtThroughCompleteOffers = itemsBoughtThroughCompleteOffers;
+	}
+
+	public synchronized HistoryManager clone()
 	{
 		List<OfferEvent> clonedCompressedOfferEvents = compressedOfferEvents.stream().map(OfferEvent::clone).collect(Collectors.toList());
 		Instant clonedGeLimitRefresh = nextGeLimitRefresh == null ? null : Instant.ofEpochMilli(nextGeLimitRefresh.toEpochMilli());
@@ -77,18 +112,354 @@ public class HistoryManager
 		);
 	}
 
-	public void updateHistory(OfferEvent newOffer)
+	/**
+	 * @return a copy of the history to be written to disk off the client thread, see AccountData.snapshot. Its
+	 * rollups are copied along with it so that they are written too.
+	 */
+	public synchronized HistoryManager snapshot()
+	{
+		HistoryManager snapshot = new HistoryManager(
+				new ArrayList<>(compressedOfferEvents),
+				nextGeLimitRefresh,
+				itemsBoughtThisLimitWindow,
+				itemsBoughtThroughCompleteOffers
+		);
+		OfferRollups rollups = copyOfferRollups();
+		if (rollups != null)
+		{
+			snapshot.attachOfferRollups(rollups);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the offers for the same trade that the new offer replaced
+	 */
+	public synchronized List<OfferEvent> updateHistory(OfferEvent newOffer)
 	{
 		//if slot is -1 than the offer was added manually from GE history.
 		//Since we don't know when it came or its slot/it doesn't have a time or slot, there is no point in updating ge
 		//properties or trying to delete previous offers for the trade.
+		List<OfferEvent> replacedOffers = Collections.emptyList();
 		if (newOffer.getSlot() != -1)
 		{
 			updateGeLimitProperties(newOffer);
-			deletePreviousOffersForTrade(newOffer);
+			replacedOffers = deletePreviousOffersForTrade(newOffer);
+		}
+		insertOffer(newOffer);
+		return replacedOffers;
+	}
+
+	/**
+	 * Makes the same change to this history that adding the new offer made to the history of one of the accounts
+	 * whose histories were merged into this one, see {@link #merge}. Unlike updateHistory, the replaced offers aren't
+	 * worked out from the slot, as the slots of different accounts aren't the same slots.
+	 *
+	 * @param replacedOffers the offers updateHistory returned for the new offer
+	 * @return false if one of the replaced offers wasn't in this history, in which case it is not changed
+	 */
+	public synchronized boolean mirrorUpdate(OfferEvent newOffer, List<OfferEvent> replacedOffers)
+	{
+		int[] positions = new int[replacedOffers.size()];
+		for (int i = 0; i < positions.length; i++)
+		{
+			positions[i] = positionOf(replacedOffers.get(i));
+			if (positions[i] == -1)
+			{
+				return false;
+			}
+		}
+		//removed from the back so the positions of the ones still to be removed don't change
+		Arrays.sort(positions);
+		for (int i = positions.length - 1; i > -1; i--)
+		{
+			removeOffer(positions[i]);
+		}
+		//like any offer removed other than by updateHistory, the open trade index doesn't know about these
+		if (positions.length > 0)
+		{
+			openTradeIndex = null;
+		}
+		insertOffer(newOffer);
+		return true;
+	}
+
+	/**
+	 * Merges the histories of the same item from different accounts into a new history, for the account wide view.
+	 * The histories are ordered by time, so they are merged rather than concatenated and sorted, and the new history
+	 * shares their offers instead of cloning them, so it has to be treated as read only. Offers made at the same time
+	 * are in the order of the histories they are from.
+	 *
+	 * @param histories the histories to merge, the ge limit properties of the first one are kept
+	 */
+	public static HistoryManager merge(List<HistoryManager> histories)
+	{
+		int size = 0;
+		for (HistoryManager history : histories)
+		{
+			size += history.compressedOfferEvents.size();
+		}
+		List<OfferEvent> merged = new ArrayList<>(size);
+		//the next offer of each history, as {history, position} pairs ordered by the offer's time
+		PriorityQueue<int[]> nextOffers = new PriorityQueue<>(Math.max(1, histories.size()), (a, b) -> {
+			int byTime = histories.get(a[0]).compressedOfferEvents.get(a[1]).getTime()
+				.compareTo(histories.get(b[0]).compressedOfferEvents.get(b[1]).getTime());
+			return byTime != 0 ? byTime : Integer.compare(a[0], b[0]);
+		});
+		for (int i = 0; i < histories.size(); i++)
+		{
+			if (!histories.get(i).compressedOfferEvents.isEmpty())
+			{
+				nextOffers.add(new int[] {i, 0});
+			}
+		}
+		while (!nextOffers.isEmpty())
+		{
+			int[] next = nextOffers.poll();
+			List<OfferEvent> offers = histories.get(next[0]).compressedOfferEvents;
+			merged.add(offers.get(next[1]));
+			if (++next[1] < offers.size())
+			{
+				nextOffers.add(next);
+			}
+		}
+		HistoryManager first = histories.get(0);
+		return new HistoryManager(merged, first.nextGeLimitRefresh, first.itemsBoughtThisLimitWindow, first.itemsBoughtThroughCompleteOffers);
+	}
+
+	/**
+	 * Sets the ge limit properties to the other history's.
+	 */
+	public synchronized void copyGeLimitProperties(HistoryManager other)
+	{
+		nextGeLimitRefresh = other.nextGeLimitRefresh;
+		itemsBoughtThisLimitWindow = other.itemsBoughtThisLimitWindow;
+		itemsBoughtThroughCompleteOffers = other.itemsBoughtThroughCompleteOffers;
+	}
+
+	private void insertOffer(OfferEvent newOffer)
+	{
+		//offers almost always come in after the ones already in the history, but offers added from the GE history
+		//tab can be older, so they are inserted where they belong to keep the history ordered by time.
+		int insertionIndex = indexOfFirstOfferAfter(newOffer.getTime());
+		if (insertionIndex == compressedOfferEvents.size())
+		{
+			boolean ledgerInSync = isFlipLedgerInSync();
+			compressedOfferEvents.add(newOffer);
+			if (ledgerInSync)
+			{
+				flipLedger.offerAdded(newOffer);
+			}
+			if (openTradeIndex != null && openTradeIndex.isFor(compressedOfferEvents))
+			{
+				openTradeIndex.offerAdded(newOffer);
+			}
+		}
+		else
+		{
+			compressedOfferEvents.add(insertionIndex, newOffer);
+			//the ledger and the open trade index only handle offers added to the end, they are rebuilt the next time
+			//they are needed
+			flipLedger = null;
+			openTradeIndex = null;
+			offersChangedFrom(insertionIndex);
+		}
+		if (isOfferLookupIndexInSync())
+		{
+			offerLookupIndex.offerAdded(newOffer);
+		}
+	}
+
+	/**
+	 * Adds the offers of another history to this one. Both histories are ordered by time, so they are merged
+	 * instead of being concatenated and sorted. Offers from this history come before offers from the other history
+	 * made at the same time.
+	 *
+	 * @param otherOffers offers ordered by time
+	 */
+	public synchronized void mergeOffers(List<OfferEvent> otherOffers)
+	{
+		List<OfferEvent> merged = new ArrayList<>(compressedOfferEvents.size() + otherOffers.size());
+		int i = 0;
+		int j = 0;
+		while (i < compressedOfferEvents.size() && j < otherOffers.size())
+		{
+			if (otherOffers.get(j).getTime().isBefore(compressedOfferEvents.get(i).getTime()))
+			{
+				merged.add(otherOffers.get(j++));
+			}
+			else
+			{
+				merged.add(compressedOfferEvents.get(i++));
+			}
+		}
+		merged.addAll(compressedOfferEvents.subList(i, compressedOfferEvents.size()));
+		merged.addAll(otherOffers.subList(j, otherOffers.size()));
+		compressedOfferEvents = merged;
+		flipLedger = null;
+		offerColumns = null;
+		openTradeIndex = null;
+	}
+
+	/**
+	 * Histories written before the history was kept ordered by time (or put back together from a backup) might
+	 * not be in order, so this is done once when the history is loaded.
+	 */
+	public synchronized void sortOffersByTime()
+	{
+		for (int i = 1; i < compressedOfferEvents.size(); i++)
+		{
+			if (compressedOfferEvents.get(i).getTime().isBefore(compressedOfferEvents.get(i - 1).getTime()))
+			{
+				compressedOfferEvents.sort(Comparator.comparing(OfferEvent::getTime));
+				flipLedger = null;
+				offerColumns = null;
+				offerRollups = null;
+				openTradeIndex = null;
+				offerLookupIndex = null;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the first offer made after the given time, or the size of the history if there is none.
+	 */
+	private int indexOfFirstOfferAfter(Instant time)
+	{
+		return offerColumns().indexOfFirstOfferAfter(time);
+	}
+
+	/**
+	 * @return the history's columns, caught up with the offers added since they were last used
+	 */
+	private OfferColumns offerColumns()
+	{
+		if (offerColumns == null || !offerColumns.isInSyncWith(compressedOfferEvents))
+		{
+			offerColumns = new OfferColumns(compressedOfferEvents);
+		}
+		offerColumns.catchUp();
+		return offerColumns;
+	}
+
+	/**
+	 * Tells the columns and the rollups that the offer at the given index was removed or that a new one was inserted
+	 * there.
+	 */
+	private void offersChangedFrom(int index)
+	{
+		if (offerColumns != null)
+		{
+			offerColumns.offersChangedFrom(index);
+		}
+		if (offerRollups != null && offerRollups.isInSyncWith(compressedOfferEvents))
+		{
+			offerRollups.offersChangedFrom(index);
+		}
+	}
+
+	private boolean isFlipLedgerInSync()
+	{
+		return flipLedger != null && flipLedger.isInSyncWith(compressedOfferEvents);
+	}
+
+	private boolean isOfferLookupIndexInSync()
+	{
+		return offerLookupIndex != null && offerLookupIndex.isFor(compressedOfferEvents);
+	}
+
+	/**
+	 * @return whether the history has an offer with the same uuid as the given one
+	 */
+	public synchronized boolean hasOfferWithSameUuid(OfferEvent offer)
+	{
+		return offerLookupIndex().getOfferWithSameUuid(offer) != null;
+	}
+
+	private OfferLookupIndex offerLookupIndex()
+	{
+		if (!isOfferLookupIndexInSync())
+		{
+			offerLookupIndex = new OfferLookupIndex(compressedOfferEvents);
+		}
+		return offerLookupIndex;
+	}
+
+	private void removeOffer(int i)
+	{
+		boolean ledgerInSync = isFlipLedgerInSync();
+		boolean lookupIndexInSync = isOfferLookupIndexInSync();
+		OfferEvent removedOffer = compressedOfferEvents.remove(i);
+		if (ledgerInSync)
+		{
+			flipLedger.offerRemoved(removedOffer);
+		}
+		if (lookupIndexInSync)
+		{
+			offerLookupIndex.offerRemoved(removedOffer);
+		}
+		offersChangedFrom(i);
+	}
+
+	private FlipLedger flipLedger()
+	{
+		if (!isFlipLedgerInSync())
+		{
+			flipLedger = new FlipLedger(compressedOfferEvents);
+		}
+		return flipLedger;
+	}
+
+	/**
+	 * @return the flips of the whole history, which are the same as getFlips(compressedOfferEvents) but are kept up
+	 * to date as offers come in instead of being recomputed.
+	 */
+	public synchronized List<Flip> getFlips()
+	{
+		return new ArrayList<>(flipLedger().getFlips());
+	}
+
+	public synchronized int getFlipCount()
+	{
+		return flipLedger().getFlipCount();
+	}
+
+	/**
+	 * Gets the flips of the offers after the given time, adjusted for the parts of them that were used in recipe
+	 * flips. When that is the whole history and no recipe flips use its offers, the flips come from the flip ledger
+	 * instead of being recomputed.
+	 */
+	public synchronized List<Flip> getFlips(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		if (isWholeHistory(earliestTime, partialOffers))
+		{
+			return getFlips();
 		}
+		return getFlips(getPartialOfferAdjustedView(getIntervalsHistory(earliestTime), partialOffers));
+	}
 
-		compressedOfferEvents.add(newOffer);
+	public synchronized int getFlipCount(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		if (isWholeHistory(earliestTime, partialOffers))
+		{
+			return getFlipCount();
+		}
+		return getFlips(getPartialOfferAdjustedView(getIntervalsHistory(earliestTime), partialOffers)).size();
+	}
+
+	private boolean isWholeHistory(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		Instant earliestOfferTime = getEarliestOfferTime();
+		return partialOffers.isEmpty() && (earliestOfferTime == null || earliestOfferTime.isAfter(earliestTime));
+	}
+
+	/**
+	 * @return the time of the earliest offer, or null if there are no offers
+	 */
+	public synchronized Instant getEarliestOfferTime()
+	{
+		return compressedOfferEvents.isEmpty() ? null : compressedOfferEvents.get(0).getTime();
 	}
 
 	/**
@@ -149,9 +520,12 @@ public class HistoryManager
 
 	/**
 	 * Deletes previous offer events for the same trade as the given offer event so that each trade has only one
-	 * offer event representing it.
+	 * offer event representing it. Those are the in progress offers for the slot since its last complete offer (and
+	 * that complete offer if it's a cancelled offer the new offer is an update for), which the open trade index
+	 * keeps track of.
 	 *
 	 * @param newOfferEvent offer event just received
+	 * @return the offers that were deleted
 	 */
 	//TODO pretty sure this has an edge cases where we think an offer is part of the same trade but it isn't...so we delete too much.
 	//Ex:
@@ -162,52 +536,130 @@ public class HistoryManager
 	//properties of the offers match (except currentQuantityInTrade). But, there is no way to be 100% sure because all
 	//those properties could match but it could still be from a different trade if they cancel and make a trade outside of
 	//RL
-	public void deletePreviousOffersForTrade(OfferEvent newOfferEvent)
+	public synchronized List<OfferEvent> deletePreviousOffersForTrade(OfferEvent newOfferEvent)
 	{
-		for (int i = compressedOfferEvents.size() - 1; i > -1; i--)
+		if (openTradeIndex == null || !openTradeIndex.isFor(compressedOfferEvents))
 		{
-			OfferEvent aPreviousOffer = compressedOfferEvents.get(i);
-
-			// if the previous offer was cancelled while a partial offer came through, the old (now invalid quantity)
-			// cancelled offer must be deleted
-			if (newOfferEvent.isUpdateForCancelled(aPreviousOffer)) {
-				compressedOfferEvents.remove(i);
+			openTradeIndex = new OpenTradeIndex(compressedOfferEvents);
+		}
+		//the previous offers for the trade are the last ones for the slot, so they are found from the back
+		List<OfferEvent> previousOffers = openTradeIndex.takeOffersReplacedBy(newOfferEvent);
+		int i = compressedOfferEvents.size() - 1;
+		for (int j = previousOffers.size() - 1; j > -1; j--)
+		{
+			while (i > -1 && compressedOfferEvents.get(i) != previousOffers.get(j))
+			{
+				i--;
 			}
-			if (aPreviousOffer.getSlot() == newOfferEvent.getSlot() && aPreviousOffer.isBuy() == newOfferEvent.isBuy())
+			if (i == -1)
 			{
-				//if it belongs to the same slot and its complete, it must belong to a previous trade given that
-				//the most recent offer was for the same slot
-				if (aPreviousOffer.isComplete())
-				{
-					return;
-				}
-				else
-				{
-					compressedOfferEvents.remove(i);
-				}
+				//can't happen as long as the index is kept up to date, but if it isn't, it shouldn't be trusted
+				openTradeIndex = null;
+				return previousOffers.subList(j + 1, previousOffers.size());
 			}
+			removeOffer(i);
+			i--;
 		}
+		return previousOffers;
 	}
 
 	/**
-	 * Returns the history of the item that were traded between earliestTime and now.
+	 * Returns the history of the item that were traded between earliestTime and now. The history is ordered by time,
+	 * so this is a read only view of its tail rather than a copy. Like any view, it shouldn't be held on to while
+	 * offers are being added or deleted.
 	 *
 	 * @param earliestTime the earliest time that trades from the trade history are added to the resulting list.
 	 * @return A list of offers that were within the interval of earliestTime and now.
 	 */
-	public ArrayList<OfferEvent> getIntervalsHistory(Instant earliestTime)
+	public synchronized List<OfferEvent> getIntervalsHistory(Instant earliestTime)
 	{
-		ArrayList<OfferEvent> result = new ArrayList<>();
+		return Collections.unmodifiableList(
+			compressedOfferEvents.subList(indexOfFirstOfferAfter(earliestTime), compressedOfferEvents.size()));
+	}
 
-		for (OfferEvent offer : compressedOfferEvents)
+	/**
+	 * Gets the same totals as working them out from getIntervalsHistory(earliestTime), but from the hourly rollups
+	 * of the history.
+	 *
+	 * @param earliestTime offers made after this time are counted
+	 */
+	public synchronized OfferTotals getIntervalTotals(Instant earliestTime)
+	{
+		return offerRollups().totalsAfter(earliestTime);
+	}
+
+	/**
+	 * Gets the totals of the offers after the given time, adjusted for the parts of them that were used in recipe
+	 * flips. Unless some of the offers in the interval were used in recipe flips, they come from the hourly rollups
+	 * instead of a pass over the offers.
+	 */
+	public synchronized OfferTotals getIntervalTotals(Instant earliestTime, Map<String, PartialOffer> partialOffers)
+	{
+		for (PartialOffer partialOffer : partialOffers.values())
 		{
-			if (offer.getTime().isAfter(earliestTime))
+			if (partialOffer.getOffer() == null || partialOffer.getOffer().getTime().isAfter(earliestTime))
 			{
-				result.add(offer);
+				return OfferTotals.of(getPartialOfferAdjustedView(getIntervalsHistory(earliestTime), partialOffers));
 			}
 		}
+		return getIntervalTotals(earliestTime);
+	}
+
+	/**
+	 * Gets the same profit as getProfit(getCompressedOfferEvents()), read from the history's columns instead of the
+	 * offers.
+	 */
+	public synchronized long getProfit()
+	{
+		return offerColumns().totalsFrom(0).getProfit();
+	}
 
-		return result;
+	/**
+	 * Gets the same value as getTotalRevenueOrExpense(getIntervalsHistory(earliestTime), isBuy), read from the
+	 * history's columns instead of the offers.
+	 */
+	public synchronized long getIntervalTotalRevenueOrExpense(Instant earliestTime, boolean isBuy)
+	{
+		OfferColumns columns = offerColumns();
+		return columns.totalValueFrom(columns.indexOfFirstOfferAfter(earliestTime), isBuy);
+	}
+
+	/**
+	 * Uses rollups read back from disk for this history, if they were made from it.
+	 *
+	 * @return whether they were
+	 */
+	public synchronized boolean attachOfferRollups(OfferRollups rollups)
+	{
+		if (!rollups.attachTo(compressedOfferEvents))
+		{
+			return false;
+		}
+		offerRollups = rollups;
+		return true;
+	}
+
+	/**
+	 * @return a copy of the history's rollups to be written to disk, or null if it has none that are in sync with it.
+	 * They aren't made just to be written, as that would mean going through every history of the account.
+	 */
+	public synchronized OfferRollups copyOfferRollups()
+	{
+		OfferRollups rollups = offerRollups;
+		return rollups != null && rollups.isInSyncWith(compressedOfferEvents) ? rollups.copy() : null;
+	}
+
+	/**
+	 * @return the history's rollups, caught up with the offers added since they were last used
+	 */
+	private OfferRollups offerRollups()
+	{
+		if (offerRollups == null || !offerRollups.isInSyncWith(compressedOfferEvents))
+		{
+			offerRollups = new OfferRollups(compressedOfferEvents);
+		}
+		offerRollups.catchUp();
+		return offerRollups;
 	}
 
 	/**
@@ -216,7 +668,7 @@ public class HistoryManager
 	 * so this method wouldn't be needed, but there is no guarantee the user buys the item again after the
 	 * limit refreshes. This method should be called periodically to ensure no old values will remain.
 	 */
-	public void validateGeProperties()
+	public synchronized void validateGeProperties()
 	{
 		if (nextGeLimitRefresh == null)
 		{
@@ -230,12 +682,12 @@ public class HistoryManager
 		}
 	}
 
-	public boolean hasValidOffers()
+	public synchronized boolean hasValidOffers()
 	{
 		return compressedOfferEvents.size() > 0;
 	}
 
-	public boolean hasOfferInInterval(Instant earliestTime) {
+	public synchronized boolean hasOfferInInterval(Instant earliestTime) {
 		if (!hasValidOffers()) {
 			return false;
 		}
@@ -248,14 +700,88 @@ public class HistoryManager
 	 * by which offers are deleted.
 	 * @param offerList the offers being invalidated
 	 */
-	public void deleteOffers(List<OfferEvent> offerList)
+	public synchronized void deleteOffers(List<OfferEvent> offerList)
 	{
 		if (offerList.isEmpty()) {
 			return;
 		}
 
-		Set<String> idsOfOffersToBeDeleted = offerList.stream().map(OfferEvent::getUuid).collect(Collectors.toSet());
-		compressedOfferEvents.removeIf(o -> idsOfOffersToBeDeleted.contains(o.getUuid()));
+		OfferLookupIndex lookupIndex = offerLookupIndex();
+		if (lookupIndex.hasDuplicateUuids())
+		{
+			deleteOffersByScan(offerList);
+			return;
+		}
+		int[] positions = new int[offerList.size()];
+		int count = 0;
+		for (OfferEvent offer : offerList)
+		{
+			OfferEvent offerInHistory = lookupIndex.getOfferWithSameUuid(offer);
+			if (offerInHistory == null)
+			{
+				continue;
+			}
+			int position = positionOf(offerInHistory);
+			if (position == -1)
+			{
+				deleteOffersByScan(offerList);
+				return;
+			}
+			positions[count++] = position;
+		}
+		if (count == 0)
+		{
+			return;
+		}
+		Arrays.sort(positions, 0, count);
+
+		//the offers after the first deleted one are shifted down in one pass instead of removing them one by one
+		int firstDeleted = positions[0];
+		int write = firstDeleted;
+		int p = 0;
+		for (int read = firstDeleted; read < compressedOfferEvents.size(); read++)
+		{
+			OfferEvent offer = compressedOfferEvents.get(read);
+			if (p < count && positions[p] == read)
+			{
+				//the same offer can be given more than once
+				while (p < count && positions[p] == read)
+				{
+					p++;
+				}
+				lookupIndex.offerRemoved(offer);
+				continue;
+			}
+			compressedOfferEvents.set(write++, offer);
+		}
+		compressedOfferEvents.subList(write, compressedOfferEvents.size()).clear();
+		offersChangedFrom(firstDeleted);
+		openTradeIndex = null;
+	}
+
+	private void deleteOffersByScan(List<OfferEvent> offerList)
+	{
+		Set<Object> idsOfOffersToBeDeleted = offerList.stream().map(OfferEvent::getUuidKey).collect(Collectors.toSet());
+		compressedOfferEvents.removeIf(o -> idsOfOffersToBeDeleted.contains(o.getUuidKey()));
+		offerColumns = null;
+		offerRollups = null;
+		openTradeIndex = null;
+		offerLookupIndex = null;
+	}
+
+	/**
+	 * @return the position of the offer in the history, found by its time, or -1 if it isn't there
+	 */
+	private int positionOf(OfferEvent offer)
+	{
+		for (int i = indexOfFirstOfferAfter(offer.getTime()) - 1; i > -1 && compressedOfferEvents.get(i).getTime().equals(offer.getTime()); i--)
+		{
+			if (compressedOfferEvents.get(i) == offer)
+			{
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
@@ -268,35 +794,18 @@ public class HistoryManager
 	 * @return offers that could potentially be duplicates of the given offer event.
 	 * @param limit max amount of potentially duplicate offers to find.
 	 */
-	public List<OfferEvent> getOfferMatches(OfferEvent offer, int limit)
+	public synchronized List<OfferEvent> getOfferMatches(OfferEvent offer, int limit)
 	{
-		List<OfferEvent> matches = new ArrayList<>();
-		int count = 0;
-		//look from the back to get the N most recent matches where N = limit.
-		for (int i = compressedOfferEvents.size() - 1; i > -1; i--)
-		{
-			OfferEvent pastOffer = compressedOfferEvents.get(i);
-			//don't just compare state because the scraped offer will only be of state BOUGHT/SOLD, whereas the offer in history
-			//might be CANCELLED_BUY/CANCELLED_SELL
-			if (offer.getPrice() == pastOffer.getPrice() && offer.getCurrentQuantityInTrade() == pastOffer.getCurrentQuantityInTrade()
-				&& offer.isBuy() == pastOffer.isBuy() && pastOffer.isComplete())
-			{
-				matches.add(pastOffer);
-				count++;
-				if (count == limit)
-				{
-					break;
-				}
-			}
-		}
-		return matches;
+		//complete offers are matched whatever their state because the scraped offer will only be of state BOUGHT/SOLD,
+		//whereas the offer in history might be CANCELLED_BUY/CANCELLED_SELL
+		return offerLookupIndex().getMatches(offer, limit);
 	}
 
 	/**
 	 * Gets the YOUNGEST offer that matches some arbitrary conditions
 	 * @param predicate conditions
 	 */
-	public Optional<OfferEvent> getLatestOfferThatMatchesPredicate(Predicate<OfferEvent> predicate)
+	public synchronized Optional<OfferEvent> getLatestOfferThatMatchesPredicate(Predicate<OfferEvent> predicate)
 	{
 		for (int i = compressedOfferEvents.size() - 1; i > -1; i--)
 		{
@@ -312,25 +821,30 @@ public class HistoryManager
 	 * Because we don't persist the itemName field in an OfferEvent, we need to hydrate every
 	 * OfferEvent with it
 	 */
-	public void setOfferNames(String itemName) {
-		compressedOfferEvents.forEach(o -> o.setItemName(itemName));
+	public synchronized void setOfferNames(String itemName) {
+		String canonicalItemName = CanonicalNames.of(itemName);
+		compressedOfferEvents.forEach(o -> o.setItemName(canonicalItemName));
 	}
 
 	/**
 	 * We don't persist the madeBy field, so it has to be hydrated.
 	 */
-	public void setOfferMadeBy(String name) {
-		compressedOfferEvents.forEach(o -> o.setMadeBy(name));
+	public synchronized void setOfferMadeBy(String name) {
+		String canonicalName = CanonicalNames.of(name);
+		compressedOfferEvents.forEach(o -> o.setMadeBy(canonicalName));
+		//the flips are worked out per account that made the offers
+		flipLedger = null;
 	}
 
 	/**
 	 * Every new offer event created nowadays has a uuid associated with it. However, the old
 	 * offer events that have already been persisted need their uuids' set.
 	 */
-	public void setOfferIds() {
+	public synchronized void setOfferIds() {
 		compressedOfferEvents.forEach(o -> {
-			if (o.getUuid() == null) {
-				o.setUuid(UUID.randomUUID().toString());
+			if (!o.hasUuid()) {
+				UUID uuid = UUID.randomUUID();
+				o.setUuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
 			}
 		});
 	}
@@ -448,11 +962,15 @@ public class HistoryManager
 	 * in the recipe flips
 	 */
 	static List<OfferEvent> getPartialOfferAdjustedView(List<OfferEvent> offers, Map<String, PartialOffer> partialOffers) {
+		if (partialOffers.isEmpty()) {
+			return new ArrayList<>(offers);
+		}
+		//looked up by uuid key so that the uuid of every offer doesn't have to be rendered as a string
+		Map<Object, PartialOffer> uuidKeyToPartialOffer = new HashMap<>(partialOffers.size() * 2);
+		partialOffers.forEach((uuid, partialOffer) -> uuidKeyToPartialOffer.put(OfferEvent.uuidKeyOf(uuid), partialOffer));
 		return offers.stream().map(o -> {
-			if (partialOffers.containsKey(o.getUuid())) {
-				return partialOffers.get(o.getUuid()).toRemainingOfferEvent();
-			}
-			return o;
+			PartialOffer partialOffer = uuidKeyToPartialOffer.get(o.getUuidKey());
+			return partialOffer == null ? o : partialOffer.toRemainingOfferEvent();
 		}).collect(Collectors.toList());
 	}
 
@@ -470,9 +988,13 @@ public class HistoryManager
 
 		Map<String, List<OfferEvent>> groupedOffers = tradeList.stream().collect(Collectors.groupingBy(OfferEvent::getMadeBy));
 
-		//take each offer list and create flips out of them, then put those flips into one list.
-		List<Flip> flips = new ArrayList<>();
-		groupedOffers.values().forEach(offers -> flips.addAll(createFlips(offers)));
+		//take each offer list and create flips out of them, then put those flips into one list. The accounts' flips
+		//don't depend on each other, so for big enough histories (the account wide view of items traded by several
+		//accounts) they are created in parallel. They are still put together in the same order, so the result is the
+		//same either way.
+		Stream<List<OfferEvent>> offerGroups = tradeList.size() >= PARALLEL_FLIPS_THRESHOLD && groupedOffers.size() > 1 ?
+			groupedOffers.values().parallelStream() : groupedOffers.values().stream();
+		List<Flip> flips = offerGroups.map(HistoryManager::createFlips).collect(ArrayList::new, List::addAll, List::addAll);
 
 		flips.sort(Comparator.comparing(Flip::getTime));
 
@@ -481,7 +1003,7 @@ public class HistoryManager
 
 	/**
 	 * Creates flips out of a list of offers. It does this by first pairing margin check offers together and then
-	 * pairing regular offers together.
+	 * pairing regular offers together. The offers are only read, so they don't need to be copied.
 	 *
 	 * @param offers the offer list
 	 * @return flips
@@ -489,7 +1011,7 @@ public class HistoryManager
 	public static List<Flip> createFlips(List<OfferEvent> offers)
 	{
 		List<OfferEvent>[] subLists = ListUtils.partition(
-			offers.stream().map(OfferEvent::clone).collect(Collectors.toList()),
+			offers,
 			o -> o.isMarginCheck() && o.isBuy(),
 			o -> o.isMarginCheck() && !o.isBuy(),
 			o -> !o.isMarginCheck() && o.isBuy(),
@@ -599,7 +1121,8 @@ public class HistoryManager
 	/**
 	 * Creates flips based on the buy and sell list. It does this by going through the sell list and the buy list
 	 * and only moving onto the next sell offer when the current sell offer is exhausted (seen more items bought than it
-	 * has items sold). This ensures that a flip is only created on a completed sell offer
+	 * has items sold). This ensures that a flip is only created on a completed sell offer. A buy can be split across
+	 * sells, so how much of each buy is left to be matched is kept track of separately instead of changing the offers.
 	 *
 	 * @param buys  the buy offers
 	 * @param sells the sell offers
@@ -609,7 +1132,10 @@ public class HistoryManager
 	{
 		ArrayList<Flip> flips = new ArrayList<>();
 
+		//only the buy being matched can be partly used up, the ones before it are used up and the ones after it
+		//haven't been touched, so only its remaining quantity has to be kept.
 		int buyIdx = 0;
+		int buyRemaining = buys.isEmpty() ? 0 : buys.get(0).getCurrentQuantityInTrade();
 		for (OfferEvent sell : sells)
 		{
 			if (sell.getCurrentQuantityInTrade() == 0) {
@@ -620,21 +1146,22 @@ public class HistoryManager
 			while (buyIdx < buys.size())
 			{
 				OfferEvent buy = buys.get(buyIdx);
-				numBuysSeen += buy.getCurrentQuantityInTrade();
+				numBuysSeen += buyRemaining;
 
 				if (numBuysSeen >= sell.getCurrentQuantityInTrade())
 				{
 					int leftOver = numBuysSeen - sell.getCurrentQuantityInTrade();
-					int amountTaken = buy.getCurrentQuantityInTrade() - leftOver;
+					int amountTaken = buyRemaining - leftOver;
 					totalRevenue += amountTaken * buy.getPrice();
-					buy.setCurrentQuantityInTrade(leftOver);
+					buyRemaining = leftOver;
 					flips.add(new Flip(totalRevenue / sell.getCurrentQuantityInTrade(), sell.getPrice(), sell.getCurrentQuantityInTrade(), sell.getTime(), false, !sell.isComplete()));
 					break;
 				}
 				else
 				{
-					totalRevenue += buy.getCurrentQuantityInTrade() * buy.getPrice();
+					totalRevenue += buyRemaining * buy.getPrice();
 					buyIdx++;
+					buyRemaining = buyIdx < buys.size() ? buys.get(buyIdx).getCurrentQuantityInTrade() : 0;
 				}
 			}
 
@@ -0,0 +1,82 @@
+package com.flippingutilities.model;
+
+import com.flippingutilities.ui.widgets.SlotActivityTimer;
+import com.google.gson.annotations.SerializedName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A single entry in an account's offer journal ({displayName}.journal). The journal is an append only log of the
+ * changes made to an account since its last full snapshot, so that saving doesn't have to rewrite the account's
+ * entire history every time a new offer comes in.
+ * <p>
+ * There are two kinds of records: offer records, which hold an offer that made it through the offer pipeline, and
+ * session state records, which hold the small bits of account state (last offers for each slot, slot timers, session
+ * time) that change alongside offers but aren't part of any item's history.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalRecord
+{
+	public static final String OFFER = "o";
+	public static final String SESSION_STATE = "s";
+
+	@SerializedName("q")
+	private long seq;
+	@SerializedName("k")
+	private String kind;
+	@SerializedName("o")
+	private OfferEvent offer;
+	//the item name isn't persisted on the offer event itself, but we need it if the offer is for an item that
+	//isn't in the snapshot's trade list yet.
+	@SerializedName("n")
+	private String itemName;
+	@SerializedName("lO")
+	private Map<Integer, OfferEvent> lastOffers;
+	@SerializedName("sT")
+	private List<SlotActivityTimer> slotTimers;
+	@SerializedName("aST")
+	private long accumulatedSessionTimeMillis;
+
+	public static JournalRecord offer(long seq, OfferEvent offer)
+	{
+		return new JournalRecord(seq, OFFER, offer, offer.getItemName(), null, null, 0);
+	}
+
+	/**
+	 * Has to be called on the client thread, the record holds copies of the session state so it can be written from
+	 * any thread.
+	 */
+	public static JournalRecord sessionState(long seq, AccountData accountData)
+	{
+		Map<Integer, OfferEvent> lastOffers = new HashMap<>();
+		accountData.getLastOffers().forEach((slot, offer) -> lastOffers.put(slot, offer.clone()));
+		List<SlotActivityTimer> slotTimers = accountData.getSlotTimers() == null ? null :
+			accountData.getSlotTimers().stream().map(SlotActivityTimer::snapshot).collect(Collectors.toList());
+		return new JournalRecord(
+			seq,
+			SESSION_STATE,
+			null,
+			null,
+			lastOffers,
+			slotTimers,
+			accountData.getAccumulatedSessionTimeMillis());
+	}
+
+	public boolean isOfferRecord()
+	{
+		return OFFER.equals(kind) && offer != null;
+	}
+
+	public boolean isSessionStateRecord()
+	{
+		return SESSION_STATE.equals(kind);
+	}
+}
@@ -0,0 +1,246 @@
+package com.flippingutilities.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The fields of an item's offers that the scans over its history read (time, post tax price, quantity, tax paid and
+ * whether the offer is a buy), copied into primitive columns. Going through the columns instead of the offers means
+ * no pointer chasing to the offer and its Instant for every offer looked at. The offers themselves are still the
+ * history, the columns are only a faster way to read them. The totals and the value of the flipped items that the
+ * profit of the history is worked out from are read from the columns too, the list versions of those in
+ * HistoryManager are left for lists that aren't a history, like the views of it adjusted for recipe flips.
+ * <p>
+ * The columns are stored in fixed size chunks so that growing them never copies what is already there. Like
+ * {@link OfferRollups}, offers added to the end of the history are picked up by {@link #catchUp()}, and when the
+ * history is changed anywhere else HistoryManager tells the columns where, and they drop everything from there on.
+ */
+class OfferColumns
+{
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private static final byte BUY = 1;
+
+	private final List<OfferEvent> offers;
+	//nanoseconds since the epoch
+	private long[][] times = new long[1][];
+	private int[][] prices = new int[1][];
+	private int[][] quantities = new int[1][];
+	private int[][] taxesPaid = new int[1][];
+	private byte[][] flags = new byte[1][];
+	private int chunks;
+	private int size;
+	private OfferEvent lastOffer;
+
+	OfferColumns(List<OfferEvent> offers)
+	{
+		this.offers = offers;
+	}
+
+	/**
+	 * @return whether the offers the columns were filled from are still the start of the given history
+	 */
+	boolean isInSyncWith(List<OfferEvent> offers)
+	{
+		return offers == this.offers && offers.size() >= size && (size == 0 || offers.get(size - 1) == lastOffer);
+	}
+
+	/**
+	 * Should be called when the offer at the given index was removed or a new one was inserted there.
+	 */
+	void offersChangedFrom(int index)
+	{
+		if (index < size)
+		{
+			size = index;
+			lastOffer = size == 0 ? null : offers.get(size - 1);
+		}
+	}
+
+	/**
+	 * Fills the columns in for the offers added to the end of the history since the last time.
+	 */
+	void catchUp()
+	{
+		for (; size < offers.size(); size++)
+		{
+			int chunk = size >>> CHUNK_BITS;
+			if (chunk == chunks)
+			{
+				addChunk();
+			}
+			int i = size & CHUNK_MASK;
+			OfferEvent offer = offers.get(size);
+			times[chunk][i] = toNanos(offer.getTime());
+			prices[chunk][i] = offer.getPrice();
+			quantities[chunk][i] = offer.getCurrentQuantityInTrade();
+			taxesPaid[chunk][i] = offer.getTaxPaid();
+			flags[chunk][i] = offer.isBuy() ? BUY : 0;
+			lastOffer = offer;
+		}
+	}
+
+	private void addChunk()
+	{
+		if (chunks == times.length)
+		{
+			times = Arrays.copyOf(times, chunks * 2);
+			prices = Arrays.copyOf(prices, chunks * 2);
+			quantities = Arrays.copyOf(quantities, chunks * 2);
+			taxesPaid = Arrays.copyOf(taxesPaid, chunks * 2);
+			flags = Arrays.copyOf(flags, chunks * 2);
+		}
+		times[chunks] = new long[CHUNK_SIZE];
+		prices[chunks] = new int[CHUNK_SIZE];
+		quantities[chunks] = new int[CHUNK_SIZE];
+		taxesPaid[chunks] = new int[CHUNK_SIZE];
+		flags[chunks] = new byte[CHUNK_SIZE];
+		chunks++;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	long getTime(int index)
+	{
+		return times[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/**
+	 * @return the post tax price, the same as OfferEvent.getPrice
+	 */
+	int getPrice(int index)
+	{
+		return prices[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	int getQuantity(int index)
+	{
+		return quantities[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	int getTaxPaid(int index)
+	{
+		return taxesPaid[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	boolean isBuy(int index)
+	{
+		return (flags[index >>> CHUNK_BITS][index & CHUNK_MASK] & BUY) != 0;
+	}
+
+	/**
+	 * @return the index of the first offer made after the given time, or the size if there is none. The offers have
+	 * to be ordered by time.
+	 */
+	int indexOfFirstOfferAfter(Instant time)
+	{
+		long nanos = toNanos(time);
+		int low = 0;
+		int high = size;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (getTime(mid) > nanos)
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the same totals as OfferTotals.of for the offers from the given index on.
+	 */
+	OfferTotals totalsFrom(int from)
+	{
+		long quantityBought = 0;
+		long quantitySold = 0;
+		long taxPaid = 0;
+		for (int i = from; i < size; i++)
+		{
+			if (isBuy(i))
+			{
+				quantityBought += getQuantity(i);
+			}
+			else
+			{
+				quantitySold += getQuantity(i);
+			}
+			taxPaid += getTaxPaid(i);
+		}
+		long flipQuantity = Math.min(quantityBought, quantitySold);
+		return new OfferTotals(
+			quantityBought,
+			quantitySold,
+			valueOfFlippedItems(from, flipQuantity, true),
+			valueOfFlippedItems(from, flipQuantity, false),
+			taxPaid
+		);
+	}
+
+	/**
+	 * Same as HistoryManager.getTotalRevenueOrExpense for the offers from the given index on.
+	 */
+	long totalValueFrom(int from, boolean buy)
+	{
+		long value = 0;
+		for (int i = from; i < size; i++)
+		{
+			if (isBuy(i) == buy)
+			{
+				value += getQuantity(i) * getPrice(i);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Same as HistoryManager.getValueOfOffersUpToLimit for the buys (or sells) from the given index on: the value of
+	 * the offers before the one that reaches the flip quantity, plus the part of that one that is needed to reach it.
+	 */
+	private long valueOfFlippedItems(int from, long flipQuantity, boolean buy)
+	{
+		long itemsSeen = 0;
+		long value = 0;
+		for (int i = from; i < size; i++)
+		{
+			if (isBuy(i) != buy)
+			{
+				continue;
+			}
+			int quantity = getQuantity(i);
+			if (itemsSeen + quantity >= flipQuantity)
+			{
+				value += (flipQuantity - itemsSeen) * getPrice(i);
+				break;
+			}
+			//the value of an offer is worked out the same way as in HistoryManager.getValueOfOffersUpToLimit
+			value += quantity * getPrice(i);
+			itemsSeen += quantity;
+		}
+		return value;
+	}
+
+	private static long toNanos(Instant time)
+	{
+		try
+		{
+			return Math.addExact(Math.multiplyExact(time.getEpochSecond(), 1_000_000_000L), time.getNano());
+		}
+		catch (ArithmeticException e)
+		{
+			//only for times hundreds of years away, which can't be offer times but can be the start of an interval
+			return time.getEpochSecond() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+	}
+}
@@ -30,16 +30,18 @@ package com.flippingutilities.model;
 import com.flippingutilities.utilities.Constants;
 import com.flippingutilities.utilities.GeTax;
 import com.google.gson.annotations.SerializedName;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import net.runelite.api.GrandExchangeOffer;
 import net.runelite.api.GrandExchangeOfferState;
 import net.runelite.api.events.GrandExchangeOfferChanged;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -49,12 +51,25 @@ import java.util.UUID;
  * belonging to the same trade as it.
  */
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class OfferEvent
 {
-	@Getter
-	private String uuid;
+	//the uuid is kept as its two halves rather than as a string, which takes several times the memory, and is only
+	//rendered as a string when asked for. It is still persisted as a string under "uuid" (see ModelTypeAdapterFactory).
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private transient long uuidMostSignificantBits;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private transient long uuidLeastSignificantBits;
+	//whether the uuid is held in the two halves above. Old offers can have uuids that aren't in the canonical form,
+	//those are kept as they are in nonCanonicalUuid so that they round trip exactly.
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private transient boolean uuidAsLongs;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private transient String nonCanonicalUuid;
 	@SerializedName("b")
 	private boolean buy;
 	@SerializedName("id")
@@ -97,6 +112,133 @@ public class OfferEvent
 	private transient int listedPrice;
 	private transient int spent;
 
+	public OfferEvent(String uuid, boolean buy, int itemId, int currentQuantityInTrade, int price, Instant time, int slot,
+					  GrandExchangeOfferState state, int tickArrivedAt, int ticksSinceFirstOffer, int totalQuantityInTrade,
+					  Instant tradeStartedAt, boolean beforeLogin, String madeBy, String itemName, int listedPrice, int spent)
+	{
+		setUuid(uuid);
+		this.buy = buy;
+		this.itemId = itemId;
+		this.currentQuantityInTrade = currentQuantityInTrade;
+		this.price = price;
+		this.time = time;
+		this.slot = slot;
+		this.state = state;
+		this.tickArrivedAt = tickArrivedAt;
+		this.ticksSinceFirstOffer = ticksSinceFirstOffer;
+		this.totalQuantityInTrade = totalQuantityInTrade;
+		this.tradeStartedAt = tradeStartedAt;
+		this.beforeLogin = beforeLogin;
+		this.madeBy = madeBy;
+		this.itemName = itemName;
+		this.listedPrice = listedPrice;
+		this.spent = spent;
+	}
+
+	/**
+	 * @return the uuid in its string form. This renders a new string on every call, so code that compares lots of
+	 * uuids should use {@link #hasSameUuid} instead.
+	 */
+	public String getUuid()
+	{
+		return uuidAsLongs ? new UUID(uuidMostSignificantBits, uuidLeastSignificantBits).toString() : nonCanonicalUuid;
+	}
+
+	public void setUuid(String uuid)
+	{
+		UUID parsed = parseCanonicalUuid(uuid);
+		if (parsed == null)
+		{
+			uuidAsLongs = false;
+			nonCanonicalUuid = uuid;
+		}
+		else
+		{
+			setUuid(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+		}
+	}
+
+	public void setUuid(long mostSignificantBits, long leastSignificantBits)
+	{
+		uuidMostSignificantBits = mostSignificantBits;
+		uuidLeastSignificantBits = leastSignificantBits;
+		uuidAsLongs = true;
+		nonCanonicalUuid = null;
+	}
+
+	public boolean hasUuid()
+	{
+		return uuidAsLongs || nonCanonicalUuid != null;
+	}
+
+	/**
+	 * @return whether the uuid is held as two longs, in which case it can be read with
+	 * {@link #getUuidMostSignificantBits} and {@link #getUuidLeastSignificantBits} without rendering it.
+	 */
+	public boolean hasUuidAsLongs()
+	{
+		return uuidAsLongs;
+	}
+
+	public long getUuidMostSignificantBits()
+	{
+		return uuidMostSignificantBits;
+	}
+
+	public long getUuidLeastSignificantBits()
+	{
+		return uuidLeastSignificantBits;
+	}
+
+	/**
+	 * @return a key that is equal for offers with the same uuid, see {@link #hasSameUuid}. Unlike getUuid, it doesn't
+	 * render the uuid as a string, so maps and sets of offers by uuid should be keyed by it.
+	 */
+	public Object getUuidKey()
+	{
+		return uuidAsLongs ? new UUID(uuidMostSignificantBits, uuidLeastSignificantBits) : nonCanonicalUuid;
+	}
+
+	/**
+	 * @return the key {@link #getUuidKey} gives for an offer with the given uuid
+	 */
+	public static Object uuidKeyOf(String uuid)
+	{
+		UUID parsed = parseCanonicalUuid(uuid);
+		return parsed == null ? uuid : parsed;
+	}
+
+	public boolean hasSameUuid(OfferEvent other)
+	{
+		if (uuidAsLongs != other.uuidAsLongs)
+		{
+			return false;
+		}
+		return uuidAsLongs ?
+			uuidMostSignificantBits == other.uuidMostSignificantBits && uuidLeastSignificantBits == other.uuidLeastSignificantBits :
+			Objects.equals(nonCanonicalUuid, other.nonCanonicalUuid);
+	}
+
+	/**
+	 * @return the uuid if the string is a uuid in its canonical form (so that it round trips exactly), otherwise null
+	 */
+	private static UUID parseCanonicalUuid(String s)
+	{
+		if (s == null || s.length() != 36)
+		{
+			return null;
+		}
+		try
+		{
+			UUID uuid = UUID.fromString(s);
+			return uuid.toString().equals(s) ? uuid : null;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
 	/**
 	 * @return post tax values
 	 */
@@ -203,8 +345,8 @@ public class OfferEvent
 
 	public OfferEvent clone()
 	{
-		return new OfferEvent(
-				uuid,
+		OfferEvent clone = new OfferEvent(
+				null,
 				buy,
 				itemId,
 				currentQuantityInTrade,
@@ -222,6 +364,11 @@ public class OfferEvent
 				listedPrice,
 				spent
 		);
+		clone.uuidMostSignificantBits = uuidMostSignificantBits;
+		clone.uuidLeastSignificantBits = uuidLeastSignificantBits;
+		clone.uuidAsLongs = uuidAsLongs;
+		clone.nonCanonicalUuid = nonCanonicalUuid;
+		return clone;
 	}
 
 	public boolean equals(Object other)
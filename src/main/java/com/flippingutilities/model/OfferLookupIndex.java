@@ -0,0 +1,144 @@
+package com.flippingutilities.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks offers in an item's history up by uuid, for deleting offers, and looks complete offers up by price,
+ * quantity and whether they are buys, for finding the possible duplicates of offers added from the GE history tab.
+ * <p>
+ * The offers with the same price, quantity and side are kept in the order they are in the history, which is ordered
+ * by time, so the most recent ones are at the end. It is built the first time it is needed, and HistoryManager tells
+ * it about every offer added to or removed from the history after that, wherever it is. Anything else drops it.
+ */
+class OfferLookupIndex
+{
+	private final List<OfferEvent> offers;
+	private final Map<Object, OfferEvent> offersByUuid = new HashMap<>();
+	private final Map<MatchKey, List<OfferEvent>> completeOffersByMatchKey = new HashMap<>();
+	//offers from before every offer had its own uuid could share one, deleting by uuid then deletes all of them
+	private boolean duplicateUuids;
+
+	OfferLookupIndex(List<OfferEvent> offers)
+	{
+		this.offers = offers;
+		offers.forEach(this::offerAdded);
+	}
+
+	/**
+	 * @return whether the index was built from the given history
+	 */
+	boolean isFor(List<OfferEvent> offers)
+	{
+		return offers == this.offers;
+	}
+
+	boolean hasDuplicateUuids()
+	{
+		return duplicateUuids;
+	}
+
+	/**
+	 * Should be called after the offer was added to the history, wherever it was added.
+	 */
+	void offerAdded(OfferEvent offer)
+	{
+		if (offersByUuid.putIfAbsent(offer.getUuidKey(), offer) != null)
+		{
+			duplicateUuids = true;
+		}
+		if (offer.isComplete())
+		{
+			List<OfferEvent> matches = completeOffersByMatchKey.computeIfAbsent(MatchKey.of(offer), k -> new ArrayList<>());
+			matches.add(indexOfFirstOfferAfter(matches, offer.getTime()), offer);
+		}
+	}
+
+	/**
+	 * Should be called after the offer was removed from the history.
+	 */
+	void offerRemoved(OfferEvent offer)
+	{
+		offersByUuid.remove(offer.getUuidKey(), offer);
+		if (offer.isComplete())
+		{
+			MatchKey key = MatchKey.of(offer);
+			List<OfferEvent> matches = completeOffersByMatchKey.get(key);
+			if (matches != null)
+			{
+				for (int i = matches.size() - 1; i > -1; i--)
+				{
+					if (matches.get(i) == offer)
+					{
+						matches.remove(i);
+						break;
+					}
+				}
+				if (matches.isEmpty())
+				{
+					completeOffersByMatchKey.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the offer in the history with the same uuid as the given offer, or null if there is none
+	 */
+	OfferEvent getOfferWithSameUuid(OfferEvent offer)
+	{
+		return offersByUuid.get(offer.getUuidKey());
+	}
+
+	/**
+	 * @return the complete offers with the same price, quantity and side as the given offer, most recent first
+	 */
+	List<OfferEvent> getMatches(OfferEvent offer, int limit)
+	{
+		List<OfferEvent> matches = completeOffersByMatchKey.getOrDefault(MatchKey.of(offer), Collections.emptyList());
+		List<OfferEvent> mostRecentMatches = new ArrayList<>(Math.min(limit, matches.size()));
+		for (int i = matches.size() - 1; i > -1 && mostRecentMatches.size() < limit; i--)
+		{
+			mostRecentMatches.add(matches.get(i));
+		}
+		return mostRecentMatches;
+	}
+
+	private static int indexOfFirstOfferAfter(List<OfferEvent> offers, Instant time)
+	{
+		int low = 0;
+		int high = offers.size();
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (offers.get(mid).getTime().isAfter(time))
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	@Value
+	private static class MatchKey
+	{
+		int price;
+		int quantity;
+		boolean buy;
+
+		static MatchKey of(OfferEvent offer)
+		{
+			return new MatchKey(offer.getPrice(), offer.getCurrentQuantityInTrade(), offer.isBuy());
+		}
+	}
+}
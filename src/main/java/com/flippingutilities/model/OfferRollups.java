@@ -0,0 +1,387 @@
+package com.flippingutilities.model;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hourly rollups of an item's history: for every hour the item was traded in, the quantity bought and sold, the
+ * value of what was bought and sold and the tax paid by the end of that hour. The history is ordered by time, so the
+ * totals of an interval that ends now are the totals of the whole history minus the totals up to where it starts,
+ * and the totals up to any offer are the totals up to the hour it is in plus the offers before it in that hour. Only
+ * the offers in the hour the interval starts in and in the hour the amount flipped is reached in are read, so a
+ * history of years of offers costs about as much as one of a few hours.
+ * <p>
+ * Unlike the history's other indexes, the rollups are also written to their own file next to the account's, see
+ * TradePersister, so they don't have to be made from the whole history every time the client starts. They remember
+ * how many offers they cover and what the last of those was, and are only attached to a history they match. Offers
+ * added to the end of the history are picked up the next time totals are asked for. When the history is changed
+ * anywhere else, HistoryManager tells the rollups where, and they drop the hours from there on.
+ */
+public class OfferRollups
+{
+	private static final long SECONDS_PER_HOUR = 3600;
+
+	//the offers at the start of the history that the rollups cover
+	@SerializedName("c")
+	private int offerCount;
+
+	@SerializedName("lU")
+	private String lastOfferUuid;
+
+	@SerializedName("lT")
+	private Instant lastOfferTime;
+
+	//ordered by hour, only hours with offers in them have a bucket
+	@SerializedName("b")
+	private List<Bucket> buckets = new ArrayList<>();
+
+	//not persisted, the history the rollups were attached to
+	private transient List<OfferEvent> offers;
+
+	//not persisted, used to tell that the history the rollups were attached to was changed behind their back
+	private transient OfferEvent lastOffer;
+
+	//for gson
+	OfferRollups()
+	{
+	}
+
+	OfferRollups(List<OfferEvent> offers)
+	{
+		this.offers = offers;
+	}
+
+	/**
+	 * Attaches rollups that were read back from disk to the history they were made from.
+	 *
+	 * @return false if the history isn't the one the rollups were made from (anymore), in which case they can't be
+	 * used for it
+	 */
+	synchronized boolean attachTo(List<OfferEvent> offers)
+	{
+		if (offerCount > offers.size() || buckets == null)
+		{
+			return false;
+		}
+		if (offerCount > 0)
+		{
+			OfferEvent offer = offers.get(offerCount - 1);
+			if (!Objects.equals(offer.getUuid(), lastOfferUuid) || !offer.getTime().equals(lastOfferTime))
+			{
+				return false;
+			}
+		}
+		else if (!buckets.isEmpty())
+		{
+			return false;
+		}
+		this.offers = offers;
+		lastOffer = offerCount == 0 ? null : offers.get(offerCount - 1);
+		return true;
+	}
+
+	/**
+	 * @return whether the offers the rollups were made from are still the start of the given history
+	 */
+	synchronized boolean isInSyncWith(List<OfferEvent> offers)
+	{
+		return offers == this.offers && offers.size() >= offerCount && (offerCount == 0 || offers.get(offerCount - 1) == lastOffer);
+	}
+
+	/**
+	 * Should be called when the offer at the given index was removed or a new one was inserted there. The hour of
+	 * the offer before it might have had other offers after it, so that hour is dropped too.
+	 */
+	synchronized void offersChangedFrom(int index)
+	{
+		if (index >= offerCount)
+		{
+			return;
+		}
+		if (index == 0)
+		{
+			buckets.clear();
+			setOfferCount(0);
+			return;
+		}
+		long hour = hourOf(offers.get(index - 1).getTime());
+		while (!buckets.isEmpty() && buckets.get(buckets.size() - 1).hour >= hour)
+		{
+			buckets.remove(buckets.size() - 1);
+		}
+		setOfferCount(indexOfFirstOfferInHour(hour, index));
+	}
+
+	/**
+	 * Rolls up the offers added to the end of the history since the last time.
+	 */
+	synchronized void catchUp()
+	{
+		for (int i = offerCount; i < offers.size(); i++)
+		{
+			OfferEvent offer = offers.get(i);
+			long hour = hourOf(offer.getTime());
+			Bucket last = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+			if (last == null || last.hour != hour)
+			{
+				last = last == null ? new Bucket(hour) : new Bucket(hour, last);
+				buckets.add(last);
+			}
+			last.add(offer);
+		}
+		setOfferCount(offers.size());
+	}
+
+	/**
+	 * Gets the same totals as HistoryManager.getIntervalTotals. The rollups have to be caught up.
+	 *
+	 * @param earliestTime offers made after this time are counted
+	 */
+	synchronized OfferTotals totalsAfter(Instant earliestTime)
+	{
+		Bucket end = buckets.isEmpty() ? new Bucket(0) : buckets.get(buckets.size() - 1);
+		Bucket start = totalsBefore(indexOfFirstOfferAfter(earliestTime));
+		long bought = end.quantityBought - start.quantityBought;
+		long sold = end.quantitySold - start.quantitySold;
+		long flipQuantity = Math.min(bought, sold);
+		return new OfferTotals(
+			bought,
+			sold,
+			valueOfFlippedItems(start, flipQuantity, true),
+			valueOfFlippedItems(start, flipQuantity, false),
+			end.taxPaid - start.taxPaid
+		);
+	}
+
+	/**
+	 * @return a copy of the rollups to be written to disk, made while no offers are being rolled up
+	 */
+	synchronized OfferRollups copy()
+	{
+		OfferRollups copy = new OfferRollups();
+		copy.offerCount = offerCount;
+		copy.lastOfferUuid = lastOfferUuid;
+		copy.lastOfferTime = lastOfferTime;
+		for (Bucket bucket : buckets)
+		{
+			copy.buckets.add(new Bucket(bucket.hour, bucket));
+		}
+		return copy;
+	}
+
+	/**
+	 * Same as HistoryManager.getValueOfOffersUpToLimit for the buys (or sells) from start on: the value of the
+	 * offers before the one that reaches the flip quantity, plus the part of that one that is needed to reach it.
+	 *
+	 * @param start the totals of the offers before the interval
+	 */
+	private long valueOfFlippedItems(Bucket start, long flipQuantity, boolean buy)
+	{
+		if (flipQuantity == 0)
+		{
+			return 0;
+		}
+		long target = (buy ? start.quantityBought : start.quantitySold) + flipQuantity;
+		//the first hour by the end of which the flip quantity is reached, the offer that reaches it is in that hour
+		int low = 0;
+		int high = buckets.size() - 1;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			Bucket bucket = buckets.get(mid);
+			if ((buy ? bucket.quantityBought : bucket.quantitySold) >= target)
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		Bucket totals = low == 0 ? new Bucket(0) : new Bucket(0, buckets.get(low - 1));
+		for (int i = indexOfFirstOfferInHour(buckets.get(low).hour, offerCount); ; i++)
+		{
+			OfferEvent offer = offers.get(i);
+			if (offer.isBuy() == buy)
+			{
+				long quantity = buy ? totals.quantityBought : totals.quantitySold;
+				if (quantity + offer.getCurrentQuantityInTrade() >= target)
+				{
+					long value = buy ? totals.valueBought : totals.valueSold;
+					long startValue = buy ? start.valueBought : start.valueSold;
+					return value - startValue + (target - quantity) * offer.getPrice();
+				}
+			}
+			totals.add(offer);
+		}
+	}
+
+	/**
+	 * @return the totals of the offers before the given index
+	 */
+	private Bucket totalsBefore(int index)
+	{
+		if (index == offerCount)
+		{
+			return buckets.isEmpty() ? new Bucket(0) : new Bucket(0, buckets.get(buckets.size() - 1));
+		}
+		long hour = hourOf(offers.get(index).getTime());
+		int bucket = indexOfBucket(hour);
+		Bucket totals = bucket == 0 ? new Bucket(0) : new Bucket(0, buckets.get(bucket - 1));
+		for (int i = indexOfFirstOfferInHour(hour, index); i < index; i++)
+		{
+			totals.add(offers.get(i));
+		}
+		return totals;
+	}
+
+	/**
+	 * @return the index of the bucket of the given hour, or of the first one after it if there is none
+	 */
+	private int indexOfBucket(long hour)
+	{
+		int low = 0;
+		int high = buckets.size();
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (buckets.get(mid).hour >= hour)
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first offer made in or after the given hour, searching the offers before end
+	 */
+	private int indexOfFirstOfferInHour(long hour, int end)
+	{
+		Instant startOfHour = Instant.ofEpochSecond(hour * SECONDS_PER_HOUR);
+		int low = 0;
+		int high = end;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (!offers.get(mid).getTime().isBefore(startOfHour))
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first offer made after the given time, or the offer count if there is none
+	 */
+	private int indexOfFirstOfferAfter(Instant time)
+	{
+		int low = 0;
+		int high = offerCount;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (offers.get(mid).getTime().isAfter(time))
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	private void setOfferCount(int offerCount)
+	{
+		this.offerCount = offerCount;
+		lastOffer = offerCount == 0 ? null : offers.get(offerCount - 1);
+		lastOfferUuid = lastOffer == null ? null : lastOffer.getUuid();
+		lastOfferTime = lastOffer == null ? null : lastOffer.getTime();
+	}
+
+	private static long hourOf(Instant time)
+	{
+		return Math.floorDiv(time.getEpochSecond(), SECONDS_PER_HOUR);
+	}
+
+	/**
+	 * The totals of the offers up to the end of an hour.
+	 */
+	private static class Bucket
+	{
+		//hours since the epoch
+		@SerializedName("h")
+		private long hour;
+
+		@SerializedName("qB")
+		private long quantityBought;
+
+		@SerializedName("vB")
+		private long valueBought;
+
+		@SerializedName("qS")
+		private long quantitySold;
+
+		@SerializedName("vS")
+		private long valueSold;
+
+		@SerializedName("t")
+		private long taxPaid;
+
+		//for gson
+		Bucket()
+		{
+		}
+
+		Bucket(long hour)
+		{
+			this.hour = hour;
+		}
+
+		/**
+		 * A bucket for the given hour that starts off with the totals of the previous one.
+		 */
+		Bucket(long hour, Bucket previous)
+		{
+			this.hour = hour;
+			quantityBought = previous.quantityBought;
+			valueBought = previous.valueBought;
+			quantitySold = previous.quantitySold;
+			valueSold = previous.valueSold;
+			taxPaid = previous.taxPaid;
+		}
+
+		void add(OfferEvent offer)
+		{
+			int quantity = offer.getCurrentQuantityInTrade();
+			//the value of an offer is worked out the same way as in HistoryManager.getValueOfOffersUpToLimit
+			long value = quantity * offer.getPrice();
+			if (offer.isBuy())
+			{
+				quantityBought += quantity;
+				valueBought += value;
+			}
+			else
+			{
+				quantitySold += quantity;
+				valueSold += value;
+			}
+			taxPaid += offer.getTaxPaid();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.flippingutilities.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The totals the stats panel and the item sorts show for the offers of an item in an interval. The expense and
+ * revenue only count the items that were flipped, like {@link HistoryManager#getValueOfMatchedOffers} does.
+ */
+@Data
+@AllArgsConstructor
+public class OfferTotals
+{
+	long quantityBought;
+	long quantitySold;
+	long expense;
+	long revenue;
+	long taxPaid;
+
+	public long getFlipQuantity()
+	{
+		return Math.min(quantityBought, quantitySold);
+	}
+
+	public long getProfit()
+	{
+		return revenue - expense;
+	}
+
+	/**
+	 * Works the totals out from the offers themselves, for when they can't be taken from the history's running
+	 * totals (when some of the offers were used in recipe flips).
+	 */
+	public static OfferTotals of(List<OfferEvent> offers)
+	{
+		long quantityBought = 0;
+		long quantitySold = 0;
+		long taxPaid = 0;
+		for (OfferEvent offer : offers)
+		{
+			if (offer.isBuy())
+			{
+				quantityBought += offer.getCurrentQuantityInTrade();
+			}
+			else
+			{
+				quantitySold += offer.getCurrentQuantityInTrade();
+			}
+			taxPaid += offer.getTaxPaid();
+		}
+		return new OfferTotals(
+			quantityBought,
+			quantitySold,
+			HistoryManager.getValueOfMatchedOffers(offers, true),
+			HistoryManager.getValueOfMatchedOffers(offers, false),
+			taxPaid
+		);
+	}
+}
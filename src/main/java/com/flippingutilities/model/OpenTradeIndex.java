@@ -0,0 +1,126 @@
+package com.flippingutilities.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the trade each GE slot is on, for buys and sells separately: the latest complete offer in the
+ * history for the slot, and the in progress offers after it. Those are exactly the offers
+ * HistoryManager.deletePreviousOffersForTrade used to find by walking back through the history until it got to a
+ * complete offer for the slot, so they can be looked up instead.
+ * <p>
+ * The index is built from the history and told about every offer added to the end of it. HistoryManager drops it
+ * whenever the history is changed in any other way, and it is rebuilt the next time it is needed.
+ */
+class OpenTradeIndex
+{
+	private final List<OfferEvent> offers;
+	private final Map<Integer, SlotTrade> slotTrades = new HashMap<>();
+
+	OpenTradeIndex(List<OfferEvent> offers)
+	{
+		this.offers = offers;
+		offers.forEach(this::offerAdded);
+	}
+
+	/**
+	 * @return whether the index was built from the given history
+	 */
+	boolean isFor(List<OfferEvent> offers)
+	{
+		return offers == this.offers;
+	}
+
+	/**
+	 * Should be called after the offer was added to the end of the history.
+	 */
+	void offerAdded(OfferEvent offer)
+	{
+		//offers added from the GE history tab don't have a slot, so they aren't part of a slot's trade
+		if (offer.getSlot() == -1)
+		{
+			return;
+		}
+		SlotTrade trade = slotTrades.computeIfAbsent(key(offer), k -> new SlotTrade());
+		if (offer.isComplete())
+		{
+			trade.lastCompleteOffer = offer;
+			trade.inProgressOffers.clear();
+		}
+		else
+		{
+			trade.inProgressOffers.add(offer);
+		}
+	}
+
+	/**
+	 * Gets the offers the given offer replaces, in the order they are in the history, and forgets about them as the
+	 * caller is expected to remove them from the history. Those are the in progress offers for its slot, and the
+	 * latest complete offer for its slot if it is a cancelled offer that the given offer is an update for.
+	 */
+	List<OfferEvent> takeOffersReplacedBy(OfferEvent newOffer)
+	{
+		SlotTrade trade = slotTrades.get(key(newOffer));
+		if (trade == null)
+		{
+			return Collections.emptyList();
+		}
+		List<OfferEvent> replacedOffers = new ArrayList<>(trade.inProgressOffers.size() + 1);
+		boolean replacesCancelledOffer = trade.lastCompleteOffer != null && newOffer.isUpdateForCancelled(trade.lastCompleteOffer);
+		if (replacesCancelledOffer)
+		{
+			replacedOffers.add(trade.lastCompleteOffer);
+		}
+		replacedOffers.addAll(trade.inProgressOffers);
+		trade.inProgressOffers.clear();
+		if (replacesCancelledOffer)
+		{
+			rewindToBefore(trade, trade.lastCompleteOffer);
+		}
+		return replacedOffers;
+	}
+
+	/**
+	 * Sets the slot's trade to what it was before the given complete offer came in. This only happens when a
+	 * cancelled offer is replaced, which is rare enough that walking back through the history for it is fine.
+	 */
+	private void rewindToBefore(SlotTrade trade, OfferEvent completeOffer)
+	{
+		int i = offers.size() - 1;
+		while (i > -1 && offers.get(i) != completeOffer)
+		{
+			i--;
+		}
+		trade.lastCompleteOffer = null;
+		List<OfferEvent> inProgressOffers = new ArrayList<>();
+		for (i--; i > -1; i--)
+		{
+			OfferEvent offer = offers.get(i);
+			if (offer.getSlot() == completeOffer.getSlot() && offer.isBuy() == completeOffer.isBuy())
+			{
+				if (offer.isComplete())
+				{
+					trade.lastCompleteOffer = offer;
+					break;
+				}
+				inProgressOffers.add(offer);
+			}
+		}
+		Collections.reverse(inProgressOffers);
+		trade.inProgressOffers.addAll(inProgressOffers);
+	}
+
+	private static int key(OfferEvent offer)
+	{
+		return offer.getSlot() * 2 + (offer.isBuy() ? 1 : 0);
+	}
+
+	private static class SlotTrade
+	{
+		private OfferEvent lastCompleteOffer;
+		private final List<OfferEvent> inProgressOffers = new ArrayList<>();
+	}
+}
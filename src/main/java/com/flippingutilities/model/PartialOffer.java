@@ -46,9 +46,12 @@ public class PartialOffer {
         );
     }
 
-    public void hydrateOffer(Map<String, OfferEvent> offersByUuid) {
+    /**
+     * @param offersByUuid keyed by OfferEvent.getUuidKey
+     */
+    public void hydrateOffer(Map<Object, OfferEvent> offersByUuid) {
         if (offerUuid != null && offer == null) {
-            offer = offersByUuid.get(offerUuid);
+            offer = offersByUuid.get(OfferEvent.uuidKeyOf(offerUuid));
         } else if (offer != null && offerUuid == null) {
             offerUuid = offer.getUuid();
         }
@@ -0,0 +1,135 @@
+package com.flippingutilities.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The partial offers of all the recipe flips in a list of recipe flip groups, by item id and offer uuid. Since an
+ * offer can be referenced by several partial offers, from recipe flips in the same group or in different groups, the
+ * partial offer kept for an offer is a cumulative one, consuming as much of the offer as all of them put together.
+ * <p>
+ * It is built from the groups once, and RecipeHandler tells it about every recipe flip added to or removed from them
+ * after that. Like AccountData's item index, it remembers which list of groups it was built from and how many groups
+ * there were, so that a list that was replaced or changed some other way is noticed and the index is built again.
+ */
+public class PartialOfferIndex {
+    private final List<RecipeFlipGroup> recipeFlipGroups;
+    private int groupCount;
+    //keyed by OfferEvent.getUuidKey so that looking an offer up doesn't render its uuid
+    private final Map<Integer, Map<Object, CumulativePartialOffer>> itemIdToPartialOffers = new HashMap<>();
+    //what getOfferIdToPartialOffer returned for each item, dropped when one of the item's partial offers changes
+    private final Map<Integer, Map<String, PartialOffer>> itemIdToView = new HashMap<>();
+
+    public PartialOfferIndex(List<RecipeFlipGroup> recipeFlipGroups) {
+        this.recipeFlipGroups = recipeFlipGroups;
+        for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups) {
+            recipeFlipGroup.getRecipeFlips().forEach(this::addPartialOffers);
+        }
+        groupCount = recipeFlipGroups.size();
+    }
+
+    /**
+     * @return whether the index was built from the given groups and they weren't changed behind its back since
+     */
+    public boolean isFor(List<RecipeFlipGroup> recipeFlipGroups) {
+        return recipeFlipGroups == this.recipeFlipGroups && recipeFlipGroups.size() == groupCount;
+    }
+
+    /**
+     * Should be called after the recipe flip was added to one of the groups, or after a group containing it was.
+     */
+    public void recipeFlipAdded(RecipeFlip recipeFlip) {
+        addPartialOffers(recipeFlip);
+        groupCount = recipeFlipGroups.size();
+    }
+
+    /**
+     * Should be called after the recipe flip was removed from its group.
+     */
+    public void recipeFlipRemoved(RecipeFlip recipeFlip) {
+        forEachPartialOffer(recipeFlip, (itemId, partialOffer) -> {
+            Map<Object, CumulativePartialOffer> partialOffers = itemIdToPartialOffers.get(itemId);
+            Object uuidKey = OfferEvent.uuidKeyOf(partialOffer.getOfferUuid());
+            CumulativePartialOffer cumulativePartialOffer = partialOffers == null ? null : partialOffers.get(uuidKey);
+            if (cumulativePartialOffer == null) {
+                return;
+            }
+            cumulativePartialOffer.amountConsumed -= partialOffer.amountConsumed;
+            cumulativePartialOffer.references--;
+            if (cumulativePartialOffer.references == 0) {
+                partialOffers.remove(uuidKey);
+                if (partialOffers.isEmpty()) {
+                    itemIdToPartialOffers.remove(itemId);
+                }
+            }
+            itemIdToView.remove(itemId);
+        });
+        groupCount = recipeFlipGroups.size();
+    }
+
+    /**
+     * @return whether any of the recipe flips reference the offer
+     */
+    public boolean isReferenced(OfferEvent offer) {
+        Map<Object, CumulativePartialOffer> partialOffers = itemIdToPartialOffers.get(offer.getItemId());
+        return partialOffers != null && partialOffers.containsKey(offer.getUuidKey());
+    }
+
+    /**
+     * Gets a map of offer id to the cumulative partial offer for that offer, for the offers of the item that are
+     * referenced by recipe flips. The map isn't changed afterwards, changes to the recipe flips make a new one.
+     */
+    public Map<String, PartialOffer> getOfferIdToPartialOffer(int itemId) {
+        Map<String, PartialOffer> view = itemIdToView.get(itemId);
+        if (view != null) {
+            return view;
+        }
+        Map<Object, CumulativePartialOffer> partialOffers = itemIdToPartialOffers.get(itemId);
+        if (partialOffers == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, PartialOffer> offerIdToPartialOffer = new HashMap<>(partialOffers.size() * 2);
+        partialOffers.values().forEach(cumulativePartialOffer -> {
+            PartialOffer partialOffer = new PartialOffer(cumulativePartialOffer.offerUuid, cumulativePartialOffer.amountConsumed);
+            partialOffer.setOffer(cumulativePartialOffer.offer);
+            offerIdToPartialOffer.put(cumulativePartialOffer.offerUuid, partialOffer);
+        });
+        view = Collections.unmodifiableMap(offerIdToPartialOffer);
+        itemIdToView.put(itemId, view);
+        return view;
+    }
+
+    private void addPartialOffers(RecipeFlip recipeFlip) {
+        forEachPartialOffer(recipeFlip, (itemId, partialOffer) -> {
+            CumulativePartialOffer cumulativePartialOffer = itemIdToPartialOffers
+                .computeIfAbsent(itemId, k -> new HashMap<>())
+                .computeIfAbsent(OfferEvent.uuidKeyOf(partialOffer.getOfferUuid()), k -> new CumulativePartialOffer(partialOffer.getOfferUuid()));
+            if (cumulativePartialOffer.offer == null) {
+                cumulativePartialOffer.offer = partialOffer.getOffer();
+            }
+            cumulativePartialOffer.amountConsumed += partialOffer.amountConsumed;
+            cumulativePartialOffer.references++;
+            itemIdToView.remove(itemId);
+        });
+    }
+
+    private static void forEachPartialOffer(RecipeFlip recipeFlip, BiConsumer<Integer, PartialOffer> consumer) {
+        recipeFlip.getOutputs().forEach((itemId, partialOffers) -> partialOffers.values().forEach(po -> consumer.accept(itemId, po)));
+        recipeFlip.getInputs().forEach((itemId, partialOffers) -> partialOffers.values().forEach(po -> consumer.accept(itemId, po)));
+    }
+
+    private static class CumulativePartialOffer {
+        private final String offerUuid;
+        private OfferEvent offer;
+        private int amountConsumed;
+        //how many of the recipe flips' partial offers this is made of, it is removed when that gets to 0
+        private int references;
+
+        private CumulativePartialOffer(String offerUuid) {
+            this.offerUuid = offerUuid;
+        }
+    }
+}
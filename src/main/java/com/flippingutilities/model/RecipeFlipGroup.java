@@ -11,6 +11,7 @@ import lombok.NoArgsConstructor;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -71,6 +72,17 @@ public class RecipeFlipGroup implements Searchable {
         }
     }
 
+    /**
+     * @return a copy of the group to be written to disk off the client thread, see AccountData.snapshot. The recipe
+     * flips are shared with it as they aren't changed once they are in a group.
+     */
+    public RecipeFlipGroup snapshot() {
+        RecipeFlipGroup snapshot = new RecipeFlipGroup(recipeKey);
+        snapshot.recipe = recipe;
+        snapshot.recipeFlips = new ArrayList<>(recipeFlips);
+        return snapshot;
+    }
+
     public RecipeFlipGroup clone() {
         RecipeFlipGroup cloned = new RecipeFlipGroup(recipeKey);
         cloned.recipe = recipe;
@@ -105,31 +117,6 @@ public class RecipeFlipGroup implements Searchable {
         return r.isInRecipe(itemId);
     }
 
-    /**
-     * Gets a map of offer id to partial offer. Since an offer can be referenced by multiple partial offers (each
-     * consuming part of the offer), we need to sum up the amount consumed by each of the partial offers referencing
-     * that one offer to get the final partial offer corresponding to that offer id.
-     */
-    public Map<String, PartialOffer> getOfferIdToPartialOffer(int itemId) {
-        Map<String, PartialOffer>  offerIdToPartialOffer = new HashMap<>();
-        for (RecipeFlip recipeFlip : recipeFlips) {
-            List<PartialOffer> partialOffers = recipeFlip.getPartialOffers(itemId);
-            partialOffers.forEach(po -> {
-                String offerId = po.getOfferUuid();
-                if (offerIdToPartialOffer.containsKey(offerId)) {
-                    PartialOffer otherPartialOffer = offerIdToPartialOffer.get(offerId);
-                    PartialOffer clonedPartialOffer = po.clone();
-                    clonedPartialOffer.amountConsumed += otherPartialOffer.amountConsumed;
-                    offerIdToPartialOffer.put(offerId, clonedPartialOffer);
-                }
-                else {
-                    offerIdToPartialOffer.put(offerId, po);
-                }
-            });
-        }
-        return offerIdToPartialOffer;
-    }
-
     public List<PartialOffer> getPartialOffers() {
         return recipeFlips.stream().flatMap(rf -> rf.getPartialOffers().stream()).collect(Collectors.toList());
     }
@@ -151,17 +138,38 @@ public class RecipeFlipGroup implements Searchable {
             .collect(Collectors.toList());
     }
 
-    public void deleteFlips(Instant startOfInterval) {
-        recipeFlips.removeIf(rf -> rf.getTimeOfCreation().isAfter(startOfInterval));
+    /**
+     * @return the recipe flips that were deleted
+     */
+    public List<RecipeFlip> deleteFlips(Instant startOfInterval) {
+        return deleteFlipsMatching(rf -> rf.getTimeOfCreation().isAfter(startOfInterval));
     }
 
-    public void deleteFlip(RecipeFlip recipeFlip) {
-        recipeFlips.removeIf(rf -> rf.equals(recipeFlip));
+    /**
+     * @return the recipe flips that were deleted
+     */
+    public List<RecipeFlip> deleteFlip(RecipeFlip recipeFlip) {
+        return deleteFlipsMatching(rf -> rf.equals(recipeFlip));
     }
 
-    public void deleteFlipsWithDeletedOffers(List<OfferEvent> offers) {
+    /**
+     * @return the recipe flips that were deleted
+     */
+    public List<RecipeFlip> deleteFlipsWithDeletedOffers(List<OfferEvent> offers) {
         Set<String> offerIds = offers.stream().map(OfferEvent::getUuid).collect(Collectors.toSet());
-        recipeFlips.removeIf(rf -> rf.getPartialOffers().stream().anyMatch(po -> offerIds.contains(po.getOfferUuid())));
+        return deleteFlipsMatching(rf -> rf.getPartialOffers().stream().anyMatch(po -> offerIds.contains(po.getOfferUuid())));
+    }
+
+    private List<RecipeFlip> deleteFlipsMatching(Predicate<RecipeFlip> shouldDelete) {
+        List<RecipeFlip> deletedFlips = new ArrayList<>();
+        recipeFlips.removeIf(rf -> {
+            if (shouldDelete.test(rf)) {
+                deletedFlips.add(rf);
+                return true;
+            }
+            return false;
+        });
+        return deletedFlips;
     }
 
     @Override
@@ -97,6 +97,7 @@ public class CustomizationPanel extends JPanel {
 
     private void onSectionChange() {
         rebuild(sections);
+        plugin.getFlippingPanel().discardItemPanels();
         plugin.getFlippingPanel().rebuild(plugin.viewItemsForCurrentView());
         plugin.getDataHandler().markDataAsHavingChanged(FlippingPlugin.ACCOUNT_WIDE);
     }
@@ -58,6 +58,9 @@ import java.util.List;
 /**
  * Represents an instance of one of the many panels on the FlippingPanel. It is used to display information such as
  * the margin check prices of the flipping item, the ge limit left, when the ge limit will refresh, the ROI, etc.
+ * <p>
+ * The FlippingPanel reuses its item panels from one rebuild to the next, binding them to whatever items are on the
+ * page, so a panel's components are only made once and everything that depends on the item is set in {@link #bind}.
  */
 @Slf4j
 public class FlippingItemPanel extends JPanel
@@ -65,7 +68,7 @@ public class FlippingItemPanel extends JPanel
 	private static final String NUM_FORMAT = "%,d";
 
 	@Getter
-	private final FlippingItem flippingItem;
+	private FlippingItem flippingItem;
 	private FlippingPlugin plugin;
 
 	//All the labels that hold the actual values for these properties.
@@ -104,9 +107,17 @@ public class FlippingItemPanel extends JPanel
 
 	JPanel itemInfo;
 
+	JLabel itemIconLabel;
+	Icon itemIcon;
+	JLabel itemNameLabel;
+	JLabel favoriteIcon;
 	JLabel searchCodeLabel;
 	JLabel refreshIconLabel = new JLabel();
 
+	//each one puts a part of the panel that can be changed by clicking on it (an editor, a section) back the way a new
+	//panel has it, so that nothing carries over from the item the panel was bound to before
+	private final List<Runnable> resetsOnBind = new ArrayList<>();
+
 	WikiRequestWrapper wikiRequestWrapper;
 	Instant timeOfRequestCompletion;
 
@@ -114,45 +125,59 @@ public class FlippingItemPanel extends JPanel
 
 	FlippingItemPanel(final FlippingPlugin plugin, AsyncBufferedImage itemImage, final FlippingItem flippingItem)
 	{
-		this.flippingItem = flippingItem;
 		this.plugin = plugin;
-		flippingItem.validateGeProperties();
 		setBackground(CustomColors.DARK_GRAY);
 		setLayout(new BorderLayout());
 		setBorder(new CompoundBorder(
 				new MatteBorder(2, 2, 2, 2, ColorScheme.DARKER_GRAY_COLOR.darker()),
 				new EmptyBorder(10,5,0,0)));
 
-		setToolTipText("Flipped by " + flippingItem.getFlippedBy());
-
 		styleDescriptionLabels();
 		styleValueLabels();
-		setValueLabels();
-		updateTimerDisplays();
 
-		JPanel titlePanel = createTitlePanel(createItemIcon(itemImage), createItemNameLabel(), createFavoriteIcon());
+		JPanel titlePanel = createTitlePanel(createItemIcon(), createItemNameLabel(), createFavoriteIcon());
 		itemInfo = createItemInfoPanel();
 		add(titlePanel, BorderLayout.NORTH);
 		add(itemInfo, BorderLayout.CENTER);
 		add(createBottomPanel(), BorderLayout.SOUTH);
 
-		//if it is enabled, the itemInfo panel is visible by default so no reason to check it
-		if (!plugin.getConfig().verboseViewEnabled())
+		bind(flippingItem, itemImage);
+	}
+
+	/**
+	 * Shows the given item on this panel instead of the one it was showing.
+	 *
+	 * @param itemImage the image of the item as given by the ItemManager, can be null if the panel was showing an
+	 *                  item with the same id
+	 */
+	void bind(FlippingItem flippingItem, AsyncBufferedImage itemImage)
+	{
+		this.flippingItem = flippingItem;
+		flippingItem.validateGeProperties();
+		setToolTipText("Flipped by " + flippingItem.getFlippedBy());
+
+		if (itemImage != null)
 		{
-			collapse();
+			itemIcon = new ImageIcon(itemImage);
+			itemIconLabel.setIcon(itemIcon);
 		}
+		itemNameLabel.setText(flippingItem.getItemName());
+		favoriteIcon.setIcon(flippingItem.isFavorite() ? Icons.STAR_ON_ICON : Icons.STAR_OFF_ICON);
+		updateSearchCodeLabel();
+		updateGeLimitText();
+		setValueLabels();
+		updateTimerDisplays();
+		resetsOnBind.forEach(Runnable::run);
 
 		//if user has "overridden" the config option by expanding/collapsing that item, use what they set instead of the config value.
-		if (flippingItem.getExpand() != null)
+		boolean expanded = flippingItem.getExpand() != null ? flippingItem.getExpand() : plugin.getConfig().verboseViewEnabled();
+		if (expanded)
 		{
-			if (flippingItem.getExpand())
-			{
-				expand();
-			}
-			else
-			{
-				collapse();
-			}
+			expand();
+		}
+		else
+		{
+			collapse();
 		}
 	}
 
@@ -195,6 +220,11 @@ public class FlippingItemPanel extends JPanel
 		}
 
 		sectionPanel.add(sectionItemsPanel, BorderLayout.CENTER);
+		resetsOnBind.add(() -> {
+			sectionItemsPanel.setVisible(section.isDefaultExpanded());
+			arrowIconLabel.setIcon(section.isDefaultExpanded()? Icons.OPEN_ICON : Icons.CLOSE_ICON);
+			arrowIconLabel.setText(section.isDefaultExpanded()? "" : section.getName());
+		});
 		arrowIconLabel.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mousePressed(MouseEvent e) {
@@ -353,13 +383,7 @@ public class FlippingItemPanel extends JPanel
 		searchCodePanel.setBorder(new EmptyBorder(0,0,0,4));
 		searchCodePanel.setBackground(CustomColors.DARK_GRAY);
 		searchCodePanel.setPreferredSize(new Dimension(0,20));
-		searchCodeLabel = new JLabel("<html> quick search code: " + UIUtilities.colorText(flippingItem.getFavoriteCode(), ColorScheme.GRAND_EXCHANGE_ALCH) + "</html>", JLabel.CENTER);
-		if (flippingItem.isFavorite()) {
-			searchCodeLabel.setText("<html> quick search code: " + UIUtilities.colorText(flippingItem.getFavoriteCode(), ColorScheme.GRAND_EXCHANGE_PRICE) + "</html>");
-		}
-		else {
-			searchCodeLabel.setText("<html> quick search code: " + UIUtilities.colorText("N/A", ColorScheme.GRAND_EXCHANGE_ALCH) + "</html>");
-		}
+		searchCodeLabel = new JLabel("", JLabel.CENTER);
 		searchCodeLabel.setToolTipText("<html>If you have favorited this item, you can type the search code when you are <br>" +
 				"searching for items in the ge to populate your ge results with any item with this code</html>");
 		searchCodeLabel.setFont(FontManager.getRunescapeSmallFont());
@@ -402,8 +426,14 @@ public class FlippingItemPanel extends JPanel
 		searchCodePanel.addMouseListener(l);
 		searchCodeLabel.addMouseListener(l);
 
+		resetsOnBind.add(() -> {
+			isHighlighted[0] = false;
+			searchCodePanel.remove(searchCodeTextField);
+			searchCodePanel.add(searchCodeLabel);
+			searchCodeTextField.setText(flippingItem.getFavoriteCode());
+		});
+
 		searchCodeTextField.setBackground(ColorScheme.DARK_GRAY_COLOR);
-		searchCodeTextField.setText(flippingItem.getFavoriteCode());
 		searchCodeTextField.addActionListener(e -> {
 			isHighlighted[0] = false;
 			if (plugin.getAccountCurrentlyViewed().equals(FlippingPlugin.ACCOUNT_WIDE)) {
@@ -444,9 +474,15 @@ public class FlippingItemPanel extends JPanel
 		final boolean[] isHighlighted = {false};
 		TextField textField = new TextField(10);
 		textField.setBackground(ColorScheme.DARK_GRAY_COLOR);
-		String currentText = valueLabel.getText();
-		String textWithoutGp = currentText.substring(0, currentText.length()-3);
-		textField.setText(textWithoutGp);
+		//the value labels are set before this is run
+		resetsOnBind.add(() -> {
+			isHighlighted[0] = false;
+			propertyPanel.remove(textField);
+			propertyPanel.add(valueLabel, BorderLayout.EAST);
+			String currentText = valueLabel.getText();
+			String textWithoutGp = currentText.substring(0, currentText.length()-3);
+			textField.setText(textWithoutGp);
+		});
 		textField.addActionListener((e1 -> {
 			isHighlighted[0] = false;
 			try {
@@ -583,12 +619,26 @@ public class FlippingItemPanel extends JPanel
 		wikiProfitEachText.setToolTipText("The profit margin according to the wiki insta buy and insta sell prices, after tax");
 		marginCheckProfitEachText.setToolTipText("The profit margin according to your last insta buy and insta sell price, after tax");
 		wikiPotentialProfitText.setToolTipText("The potential profit according to the wiki profit margin and the item's limit");
-		geLimitText.setToolTipText("Remaining ge limit");
+	}
 
+	private void updateGeLimitText() {
 		if (flippingItem.getTotalGELimit() <= 0) {
 			geLimitText.setText("Bought:");
 			geLimitText.setToolTipText("Item has unknown limit, so this just displays how many you have bought in a 4 hour window");
 		}
+		else {
+			geLimitText.setText("GE limit:");
+			geLimitText.setToolTipText("Remaining ge limit");
+		}
+	}
+
+	private void updateSearchCodeLabel() {
+		if (flippingItem.isFavorite()) {
+			searchCodeLabel.setText("<html> quick search code: " + UIUtilities.colorText(flippingItem.getFavoriteCode(), ColorScheme.GRAND_EXCHANGE_PRICE) + "</html>");
+		}
+		else {
+			searchCodeLabel.setText("<html> quick search code: " + UIUtilities.colorText("N/A", ColorScheme.GRAND_EXCHANGE_ALCH) + "</html>");
+		}
 	}
 
 	/**
@@ -642,15 +692,13 @@ public class FlippingItemPanel extends JPanel
 	}
 
 	/**
-	 * Creates the image icon located on the title panel
+	 * Creates the image icon located on the title panel, the image is set when the panel is bound to an item
 	 *
-	 * @param itemImage the image of the item as given by the ItemManager
 	 * @return
 	 */
-	private JLabel createItemIcon(AsyncBufferedImage itemImage)
+	private JLabel createItemIcon()
 	{
-		Icon itemIcon = new ImageIcon(itemImage);
-		JLabel itemIconLabel = new JLabel(itemIcon);
+		itemIconLabel = new JLabel();
 		itemIconLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 		itemIconLabel.setPreferredSize(Icons.ICON_SIZE);
 
@@ -686,7 +734,7 @@ public class FlippingItemPanel extends JPanel
 	 */
 	private JLabel createItemNameLabel()
 	{
-		JLabel itemNameLabel = new JLabel(flippingItem.getItemName(), SwingConstants.CENTER);
+		itemNameLabel = new JLabel("", SwingConstants.CENTER);
 		itemNameLabel.setFont(FontManager.getRunescapeBoldFont());
 		itemNameLabel.setPreferredSize(new Dimension(0, 0)); //Make sure the item name fits
 		itemNameLabel.addMouseListener(new MouseAdapter()
@@ -734,8 +782,7 @@ public class FlippingItemPanel extends JPanel
 	 * @return
 	 */
 	private JLabel createFavoriteIcon() {
-		JLabel favoriteIcon = new JLabel();
-		favoriteIcon.setIcon(flippingItem.isFavorite() ? Icons.STAR_ON_ICON : Icons.STAR_OFF_ICON);
+		favoriteIcon = new JLabel();
 		favoriteIcon.setAlignmentX(Component.RIGHT_ALIGNMENT);
 		favoriteIcon.setPreferredSize(new Dimension(24, 24));
 		favoriteIcon.addMouseListener(new MouseAdapter()
@@ -764,13 +811,7 @@ public class FlippingItemPanel extends JPanel
 				}
 
 				favoriteIcon.setIcon(flippingItem.isFavorite()? Icons.STAR_ON_ICON:Icons.STAR_OFF_ICON);
-
-				if (flippingItem.isFavorite()) {
-					searchCodeLabel.setText("<html> quick search code: " + UIUtilities.colorText(flippingItem.getFavoriteCode(), ColorScheme.GRAND_EXCHANGE_PRICE) + "</html>");
-				}
-				else {
-					searchCodeLabel.setText("<html> quick search code: " + UIUtilities.colorText("N/A", ColorScheme.GRAND_EXCHANGE_ALCH) + "</html>");
-				}
+				updateSearchCodeLabel();
 			}
 
 			@Override
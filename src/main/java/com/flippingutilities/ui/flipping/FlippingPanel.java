@@ -74,6 +74,10 @@ public class FlippingPanel extends JPanel
 	//Keeps track of all items currently displayed on the panel.
 	private ArrayList<FlippingItemPanel> activePanels = new ArrayList<>();
 
+	//Every item panel made so far. Making one builds dozens of components, so they are bound to the items of the
+	//current page instead of being made again on every rebuild, and there are never more of them than fit on a page.
+	private final List<FlippingItemPanel> panelPool = new ArrayList<>();
+
 	@Getter
 	@Setter
 	private boolean itemHighlighted = false;
@@ -172,7 +176,7 @@ public class FlippingPanel extends JPanel
 			List<FlippingItem> itemsThatShouldHavePanels = itemsToDisplay.stream().filter(item -> item.getValidFlippingPanelItem()).collect(Collectors.toList());
 			paginator.updateTotalPages(itemsThatShouldHavePanels.size());
 			List<FlippingItem> itemsOnCurrentPage = paginator.getCurrentPageItems(itemsThatShouldHavePanels);
-			List<FlippingItemPanel> newPanels = itemsOnCurrentPage.stream().map(item -> new FlippingItemPanel(plugin, itemManager.getImage(item.getItemId()), item)).collect(Collectors.toList());
+			List<FlippingItemPanel> newPanels = bindPanels(itemsOnCurrentPage);
 			flippingItemsPanel.add(Box.createVerticalStrut(vGap));
 			UIUtilities.stackPanelsVertically((List) newPanels, flippingItemsPanel, vGap);
 			flippingItemsPanel.add(Box.createVerticalStrut(vGap));
@@ -196,6 +200,39 @@ public class FlippingPanel extends JPanel
 
 	}
 
+	/**
+	 * Binds the pooled item panels to the items, making new ones only if there aren't enough of them.
+	 */
+	private List<FlippingItemPanel> bindPanels(List<FlippingItem> items)
+	{
+		List<FlippingItemPanel> panels = new ArrayList<>(items.size());
+		for (int i = 0; i < items.size(); i++)
+		{
+			FlippingItem item = items.get(i);
+			if (i == panelPool.size())
+			{
+				panelPool.add(new FlippingItemPanel(plugin, itemManager.getImage(item.getItemId()), item));
+			}
+			else
+			{
+				FlippingItemPanel panel = panelPool.get(i);
+				boolean sameImage = panel.getFlippingItem().getItemId() == item.getItemId();
+				panel.bind(item, sameImage ? null : itemManager.getImage(item.getItemId()));
+			}
+			panels.add(panelPool.get(i));
+		}
+		return panels;
+	}
+
+	/**
+	 * Drops the pooled item panels, so that the next rebuild makes new ones. Has to be called when something the
+	 * layout of the item panels depends on, such as their sections, is changed.
+	 */
+	public void discardItemPanels()
+	{
+		SwingUtilities.invokeLater(panelPool::clear);
+	}
+
 	/**
 	 * Handles rebuilding the flipping panel when a new offer event comes in. There are several cases
 	 * where we don't want to rebuildItemsDisplay either because it is unnecessary or visually annoying for a user.
@@ -289,7 +289,7 @@ public class RecipeOfferSelectionPanel extends JPanel {
         itemIdToItem.forEach((itemId, item) -> {
             List<PartialOffer> partialOffers = item.map(fitem -> {
                 Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(itemId);
-                List<OfferEvent> offers = itemId == sourceOffer.getItemId()? new ArrayList<>(Arrays.asList(sourceOffer)): fitem.getIntervalHistory(startOfInterval);
+                List<OfferEvent> offers = itemId == sourceOffer.getItemId()? new ArrayList<>(Arrays.asList(sourceOffer)): new ArrayList<>(fitem.getIntervalHistory(startOfInterval));
                 Collections.reverse(offers);
 
                 return offers.stream().filter(o -> o.isBuy() == recipe.isInput(itemId) && o.isComplete()).
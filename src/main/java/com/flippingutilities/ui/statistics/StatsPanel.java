@@ -34,7 +34,6 @@ import com.flippingutilities.ui.statistics.recipes.RecipeFlipGroupPanel;
 import com.flippingutilities.ui.statistics.recipes.RecipeGroupContainerPanel;
 import com.flippingutilities.ui.uiutilities.*;
 import com.flippingutilities.utilities.SORT;
-import com.flippingutilities.utilities.Searchable;
 import com.google.common.base.Strings;
 import net.runelite.client.ui.components.TitleCaseListCellRenderer;
 import lombok.Getter;
@@ -60,7 +59,6 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Slf4j
@@ -126,6 +124,7 @@ public class StatsPanel extends JPanel
 	private IconTextField searchBar;
 	private FlippingItemContainerPanel flippingItemContainerPanel;
 	private RecipeGroupContainerPanel recipeGroupContainerPanel;
+	private StatsPipeline statsPipeline;
 	/**
 	 * The statistics panel shows various stats about trades the user has made over a selectable time interval.
 	 * This represents the front-end Statistics Tab.
@@ -143,6 +142,7 @@ public class StatsPanel extends JPanel
 		searchBar = createSearchBar();
 		flippingItemContainerPanel = new FlippingItemContainerPanel(plugin);
 		recipeGroupContainerPanel = new RecipeGroupContainerPanel(plugin);
+		statsPipeline = new StatsPipeline(plugin, this::publishRebuild);
 
 		JPanel mainDisplay = new JPanel();
 		FastTabGroup tabGroup = createTabGroup(mainDisplay, flippingItemContainerPanel, recipeGroupContainerPanel);
@@ -231,26 +231,78 @@ public class StatsPanel extends JPanel
 		recipeGroupContainerPanel.resetPaginator();
 	}
 
+	/**
+	 * The filtering, sorting and totals are worked out by the stats pipeline off the EDT, see {@link StatsPipeline}.
+	 * Rebuilding the items and then the recipes straight after, which is what most callers do, only works the totals
+	 * out once.
+	 */
 	public void rebuildItemsDisplay(List<FlippingItem> flippingItems) {
-		SwingUtilities.invokeLater(() -> {
-			List<FlippingItem> itemsToDisplay = getItemsToDisplay(flippingItems);
-			flippingItemContainerPanel.rebuild(itemsToDisplay);
-			updateCumulativeDisplays(itemsToDisplay, getRecipeFlipGroupsToDisplay(plugin.viewRecipeFlipGroupsForCurrentView()));
-			if (itemsToDisplay.isEmpty() && currentlySearching) flippingItemContainerPanel.showPanel(createEmptySearchPanel());
-			revalidate();
-			repaint();
-		});
+		SwingUtilities.invokeLater(() -> rebuild(StatsPipeline.ITEMS | StatsPipeline.TOTALS, flippingItems, plugin.viewRecipeFlipGroupsForCurrentView()));
 	}
 
 	public void rebuildRecipesDisplay(List<RecipeFlipGroup> recipeFlipGroups) {
-		SwingUtilities.invokeLater(() -> {
-			List<RecipeFlipGroup> recipeFlipGroupsToDisplay = getRecipeFlipGroupsToDisplay(recipeFlipGroups);
-			recipeGroupContainerPanel.rebuild(recipeFlipGroupsToDisplay);
-			updateCumulativeDisplays(getItemsToDisplay(plugin.viewItemsForCurrentView()), recipeFlipGroupsToDisplay);
-			if (recipeFlipGroupsToDisplay.isEmpty() && currentlySearching) recipeGroupContainerPanel.showPanel(createEmptySearchPanel());
-			revalidate();
-			repaint();
-		});
+		SwingUtilities.invokeLater(() -> rebuild(StatsPipeline.RECIPES | StatsPipeline.TOTALS, plugin.viewItemsForCurrentView(), recipeFlipGroups));
+	}
+
+	/**
+	 * Rebuilds the items display for the page it is on now, used when the page is changed. The totals stay the same.
+	 */
+	public void rebuildItemsPage() {
+		rebuild(StatsPipeline.ITEMS, plugin.viewItemsForCurrentView(), plugin.viewRecipeFlipGroupsForCurrentView());
+	}
+
+	/**
+	 * Rebuilds the recipes display for the page it is on now, used when the page is changed.
+	 */
+	public void rebuildRecipesPage() {
+		rebuild(StatsPipeline.RECIPES, plugin.viewItemsForCurrentView(), plugin.viewRecipeFlipGroupsForCurrentView());
+	}
+
+	/**
+	 * Takes the snapshot of the view for the stats pipeline. Has to be called on the EDT.
+	 */
+	private void rebuild(int parts, List<FlippingItem> flippingItems, List<RecipeFlipGroup> recipeFlipGroups) {
+		String lookup = searchBar.getText().toLowerCase();
+		Paginator itemsPaginator = flippingItemContainerPanel.getPaginator();
+		Paginator recipesPaginator = recipeGroupContainerPanel.getPaginator();
+		StatsPipeline.Snapshot snapshot = new StatsPipeline.Snapshot(
+			flippingItems == null ? new ArrayList<>() : new ArrayList<>(flippingItems),
+			recipeFlipGroups == null ? new ArrayList<>() : new ArrayList<>(recipeFlipGroups),
+			startOfInterval,
+			selectedSort,
+			currentlySearching && !Strings.isNullOrEmpty(lookup) ? lookup : null,
+			itemsPaginator.getPageNumber(),
+			itemsPaginator.getPageSize(),
+			recipesPaginator.getPageNumber(),
+			recipesPaginator.getPageSize());
+		statsPipeline.rebuild(parts, snapshot);
+	}
+
+	/**
+	 * Stops the stats pipeline's thread. Called when the plugin is shut down.
+	 */
+	public void shutdown() {
+		statsPipeline.shutdown();
+	}
+
+	/**
+	 * Shows what the stats pipeline worked out. Called on the EDT.
+	 */
+	private void publishRebuild(StatsPipeline.Result result) {
+		boolean searching = result.getSnapshot().getSearchLookup() != null;
+		if (result.isFor(StatsPipeline.ITEMS)) {
+			flippingItemContainerPanel.rebuild(result.getItemsOnPage(), result.getItemCount());
+			if (result.getItemCount() == 0 && searching) flippingItemContainerPanel.showPanel(createEmptySearchPanel());
+		}
+		if (result.isFor(StatsPipeline.RECIPES)) {
+			recipeGroupContainerPanel.rebuild(result.getRecipeFlipGroupsOnPage(), result.getRecipeFlipGroupCount());
+			if (result.getRecipeFlipGroupCount() == 0 && searching) recipeGroupContainerPanel.showPanel(createEmptySearchPanel());
+		}
+		if (result.isFor(StatsPipeline.TOTALS)) {
+			updateCumulativeDisplays(result.getTotals());
+		}
+		revalidate();
+		repaint();
 	}
 
 	/**
@@ -293,34 +345,6 @@ public class StatsPanel extends JPanel
 		this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
 	}
 
-	private <T extends Searchable> List<T> getSearchResults(List<T> objs, String lookup) {
-		return objs.stream().filter(
-			obj ->
-				obj.getNameForSearch().toLowerCase().contains(lookup) && obj.isInInterval(startOfInterval)).
-			collect(Collectors.toList());
-	}
-
-	/**
-	 * Filters the items based on what is currently being searched for. If nothing is being searched
-	 * for, it just returns the original list
-	 * @param objs all the objs (flipping item or recipe flip group) that could be in the current view
-	 */
-	private <T extends Searchable> List<T> getResultsForCurrentSearchQuery(List<T> objs) {
-		String lookup = searchBar.getText().toLowerCase();
-		if (currentlySearching && !Strings.isNullOrEmpty(lookup)) {
-			return getSearchResults(objs, lookup);
-		}
-		return objs;
-	}
-
-	public List<FlippingItem> getItemsToDisplay(List<FlippingItem> items) {
-		return plugin.sortItems(getResultsForCurrentSearchQuery(getObjsInInterval(items)), selectedSort, startOfInterval);
-	}
-
-	public List<RecipeFlipGroup> getRecipeFlipGroupsToDisplay(List<RecipeFlipGroup> recipeFlipGroups) {
-		return plugin.sortRecipeFlipGroups(getResultsForCurrentSearchQuery(getObjsInInterval(recipeFlipGroups)), selectedSort, startOfInterval);
-	}
-
 	private IconTextField createSearchBar() {
 		IconTextField searchBar = UIUtilities.createSearchBar(plugin.getExecutor(), this::updateSearch);
 		searchBar.setBorder(BorderFactory.createMatteBorder(1,1,1,1, ColorScheme.DARKER_GRAY_COLOR.darker()));
@@ -361,7 +385,7 @@ public class StatsPanel extends JPanel
 		return timeIntervalDropdown;
 	}
 
-	public void updateCumulativeDisplays(List<FlippingItem> tradesList, List<RecipeFlipGroup> recipeFlipGroups)
+	private void updateCumulativeDisplays(StatsPipeline.Totals totals)
 	{
 		subInfoPanel.remove(autoSavePanel);
 
@@ -375,46 +399,16 @@ public class StatsPanel extends JPanel
 			subInfoPanel.add(hourlyProfitPanel);
 		}
 
-		long totalProfit = 0;
-		long totalExpenses = 0;
-		long totalFlips = 0;
-		long taxPaid = 0;
-
-		for (FlippingItem item : tradesList)
-		{
-			Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-			List<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-			if (intervalHistory.isEmpty()) {
-				continue;
-			}
-
-			List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-
-			taxPaid += adjustedOffers.stream().mapToLong(OfferEvent::getTaxPaid).sum();
-			totalProfit += FlippingItem.getProfit(adjustedOffers);
-			totalExpenses += FlippingItem.getValueOfMatchedOffers(adjustedOffers, true);
-			totalFlips += FlippingItem.getFlips(adjustedOffers).size();
-		}
-
-		for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups) {
-			List<RecipeFlip> recipeFlips = recipeFlipGroup.getFlipsInInterval(startOfInterval);
-			if (recipeFlips.isEmpty()) continue;
-			taxPaid += recipeFlips.stream().mapToLong(RecipeFlip::getTaxPaid).sum();
-			totalProfit += recipeFlips.stream().mapToLong(RecipeFlip::getProfit).sum();
-			totalExpenses += recipeFlips.stream().mapToLong(RecipeFlip::getExpense).sum();
-			totalFlips += recipeFlips.size();
-		}
-
-		updateTotalProfitDisplay(totalProfit);
+		updateTotalProfitDisplay(totals.getProfit());
 		if (Objects.equals(timeIntervalDropdown.getSelectedItem(), "Session"))
 		{
 			Duration accumulatedTime = plugin.viewAccumulatedTimeForCurrentView();
 			updateSessionTimeDisplay(accumulatedTime);
-			updateHourlyProfitDisplay(totalProfit, accumulatedTime);
+			updateHourlyProfitDisplay(totals.getProfit(), accumulatedTime);
 		}
-		updateRoiDisplay(totalProfit, totalExpenses);
-		updateTotalFlipsDisplay(totalFlips);
-		updateTaxPaidDisplay(taxPaid);
+		updateRoiDisplay(totals.getProfit(), totals.getExpenses());
+		updateTotalFlipsDisplay(totals.getFlips());
+		updateTaxPaidDisplay(totals.getTaxPaid());
 		updateAutoSaveDisplay();
 	}
 
@@ -547,15 +541,13 @@ public class StatsPanel extends JPanel
 	 */
 	public void deleteItemPanel(FlippingItemPanel itemPanel) {
 		FlippingItem item = itemPanel.getItem();
-		plugin.deleteOffers(item.getIntervalHistory(startOfInterval), item);
+		plugin.deleteOffers(new ArrayList<>(item.getIntervalHistory(startOfInterval)), item);
 		this.rebuildItemsDisplay(plugin.viewItemsForCurrentView());
 		this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
 	}
 
 	public void deleteRecipeFlipGroupPanel(RecipeFlipGroupPanel recipeFlipGroupPanel) {
-		recipeFlipGroupPanel.getRecipeFlipGroup().deleteFlips(startOfInterval);
-		plugin.setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
-		plugin.markAccountTradesAsHavingChanged(plugin.getAccountCurrentlyViewed());
+		plugin.deleteRecipeFlips(recipeFlipGroupPanel.getRecipeFlipGroup(), startOfInterval);
 		this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
 		this.rebuildItemsDisplay(plugin.viewItemsForCurrentView());
 	}
@@ -626,14 +618,6 @@ public class StatsPanel extends JPanel
 		}
 	}
 
-	private <T extends Searchable> List<T> getObjsInInterval(List<T> objs) {
-		if (objs == null) {
-			return new ArrayList<>();
-			}
-
-		return objs.stream().filter(obj -> obj != null && obj.isInInterval(startOfInterval)).collect(Collectors.toList());
-	}
-
 	private JLabel createResetButton() {
 		JLabel resetIcon = new JLabel(Icons.TRASH_ICON_OFF);
 		resetIcon.setBorder(new EmptyBorder(0,12,0,0));
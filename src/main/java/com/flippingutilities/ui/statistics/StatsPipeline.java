@@ -0,0 +1,285 @@
+package com.flippingutilities.ui.statistics;
+
+import com.flippingutilities.controller.FlippingPlugin;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.OfferTotals;
+import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.model.RecipeFlip;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.flippingutilities.ui.uiutilities.Paginator;
+import com.flippingutilities.utilities.SORT;
+import com.flippingutilities.utilities.Searchable;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Works out what the statistics tab shows without blocking the EDT. A rebuild goes through three stages:
+ * <ol>
+ * <li>a {@link Snapshot} of the view is taken on the EDT: the items and recipe flip groups in it, and the interval,
+ * sort, search and pages they are shown with</li>
+ * <li>the items and groups to display are filtered, the totals are worked out and the current pages are sorted on
+ * the pipeline's own thread</li>
+ * <li>the {@link Result} is handed back to the EDT, which only has to make the panels for it</li>
+ * </ol>
+ * Only the latest rebuild is published. Requesting one while another is still being worked out cancels that one, and
+ * the new one also does the parts of the display the cancelled one would have done.
+ */
+@Slf4j
+class StatsPipeline
+{
+	//the parts of the display a rebuild is for
+	static final int ITEMS = 1;
+	static final int RECIPES = 2;
+	static final int TOTALS = 4;
+
+	private final FlippingPlugin plugin;
+	private final Consumer<Result> publisher;
+	private final ExecutorService worker = Executors.newSingleThreadExecutor(r ->
+	{
+		Thread thread = new Thread(r, "flipping-utilities-statistics");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	//only used on the EDT
+	private Future<?> inFlightRebuild;
+	private int inFlightParts;
+	//written on the EDT, read by the worker to notice that the rebuild it is working on was cancelled
+	private volatile long latestRebuild;
+
+	StatsPipeline(FlippingPlugin plugin, Consumer<Result> publisher)
+	{
+		this.plugin = plugin;
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Starts a rebuild of the given parts of the display from the snapshot. Has to be called on the EDT.
+	 */
+	void rebuild(int parts, Snapshot snapshot)
+	{
+		//the rebuild in flight might already be done, but it won't be published either way
+		if (inFlightRebuild != null)
+		{
+			inFlightRebuild.cancel(false);
+			parts |= inFlightParts;
+		}
+		long rebuild = ++latestRebuild;
+		int rebuildParts = parts;
+		inFlightParts = parts;
+		try
+		{
+			inFlightRebuild = worker.submit(() -> work(rebuild, rebuildParts, snapshot));
+		}
+		catch (RejectedExecutionException e)
+		{
+			//the pipeline was shut down with the plugin, there is nothing left to show the statistics in
+			inFlightRebuild = null;
+			inFlightParts = 0;
+		}
+	}
+
+	/**
+	 * Stops the pipeline's thread, a rebuild still in flight isn't published. Called when the plugin is shut down.
+	 */
+	void shutdown()
+	{
+		worker.shutdownNow();
+	}
+
+	private void work(long rebuild, int parts, Snapshot snapshot)
+	{
+		Result result;
+		try
+		{
+			result = compute(rebuild, parts, snapshot);
+		}
+		catch (Exception e)
+		{
+			log.warn("could not compute the statistics", e);
+			return;
+		}
+		if (result != null && !worker.isShutdown())
+		{
+			SwingUtilities.invokeLater(() -> publish(rebuild, result));
+		}
+	}
+
+	private void publish(long rebuild, Result result)
+	{
+		//a newer rebuild was requested after this one was done, that one will publish instead
+		if (rebuild != latestRebuild)
+		{
+			return;
+		}
+		inFlightRebuild = null;
+		inFlightParts = 0;
+		publisher.accept(result);
+	}
+
+	private boolean isCancelled(long rebuild)
+	{
+		return rebuild != latestRebuild;
+	}
+
+	/**
+	 * @return the result, or null if the rebuild was cancelled before it was done
+	 */
+	private Result compute(long rebuild, int parts, Snapshot snapshot)
+	{
+		Instant startOfInterval = snapshot.getStartOfInterval();
+		List<FlippingItem> items = getObjsToDisplay(snapshot.getItems(), snapshot);
+		List<RecipeFlipGroup> recipeFlipGroups = getObjsToDisplay(snapshot.getRecipeFlipGroups(), snapshot);
+
+		Totals totals = null;
+		if ((parts & TOTALS) != 0)
+		{
+			totals = computeTotals(rebuild, items, recipeFlipGroups, startOfInterval);
+			if (totals == null)
+			{
+				return null;
+			}
+		}
+
+		List<FlippingItem> itemsOnPage = null;
+		if ((parts & ITEMS) != 0)
+		{
+			if (isCancelled(rebuild))
+			{
+				return null;
+			}
+			//only the items up to the end of the current page have to be sorted
+			int pageSize = snapshot.getItemsPageSize();
+			List<FlippingItem> sortedItems = plugin.sortItems(items, snapshot.getSort(), startOfInterval,
+				snapshot.getItemsPageNumber() * pageSize);
+			itemsOnPage = Paginator.getPageItems(sortedItems, snapshot.getItemsPageNumber(), pageSize);
+		}
+
+		List<RecipeFlipGroup> recipeFlipGroupsOnPage = null;
+		if ((parts & RECIPES) != 0)
+		{
+			if (isCancelled(rebuild))
+			{
+				return null;
+			}
+			List<RecipeFlipGroup> sortedRecipeFlipGroups = plugin.sortRecipeFlipGroups(recipeFlipGroups, snapshot.getSort(), startOfInterval);
+			recipeFlipGroupsOnPage = Paginator.getPageItems(sortedRecipeFlipGroups, snapshot.getRecipesPageNumber(), snapshot.getRecipesPageSize());
+		}
+
+		return new Result(parts, snapshot, itemsOnPage, items.size(), recipeFlipGroupsOnPage, recipeFlipGroups.size(), totals);
+	}
+
+	private Totals computeTotals(long rebuild, List<FlippingItem> items, List<RecipeFlipGroup> recipeFlipGroups, Instant startOfInterval)
+	{
+		long totalProfit = 0;
+		long totalExpenses = 0;
+		long totalFlips = 0;
+		long taxPaid = 0;
+
+		for (FlippingItem item : items)
+		{
+			if (isCancelled(rebuild))
+			{
+				return null;
+			}
+			Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
+			OfferTotals totals = item.getIntervalTotals(startOfInterval, offerIdToPartialOffer);
+
+			taxPaid += totals.getTaxPaid();
+			totalProfit += totals.getProfit();
+			totalExpenses += totals.getExpense();
+			totalFlips += item.getFlipCount(startOfInterval, offerIdToPartialOffer);
+		}
+
+		for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups)
+		{
+			List<RecipeFlip> recipeFlips = recipeFlipGroup.getFlipsInInterval(startOfInterval);
+			if (recipeFlips.isEmpty()) continue;
+			taxPaid += recipeFlips.stream().mapToLong(RecipeFlip::getTaxPaid).sum();
+			totalProfit += recipeFlips.stream().mapToLong(RecipeFlip::getProfit).sum();
+			totalExpenses += recipeFlips.stream().mapToLong(RecipeFlip::getExpense).sum();
+			totalFlips += recipeFlips.size();
+		}
+
+		return new Totals(totalProfit, totalExpenses, totalFlips, taxPaid);
+	}
+
+	/**
+	 * @return the objs (flipping items or recipe flip groups) in the interval that match the search, if there is one
+	 */
+	private static <T extends Searchable> List<T> getObjsToDisplay(List<T> objs, Snapshot snapshot)
+	{
+		List<T> objsToDisplay = new ArrayList<>();
+		String lookup = snapshot.getSearchLookup();
+		for (T obj : objs)
+		{
+			if (obj != null && obj.isInInterval(snapshot.getStartOfInterval())
+				&& (lookup == null || obj.getNameForSearch().toLowerCase().contains(lookup)))
+			{
+				objsToDisplay.add(obj);
+			}
+		}
+		return objsToDisplay;
+	}
+
+	/**
+	 * What is needed to work out a rebuild, taken on the EDT. The lists are copies of the view's lists, so items
+	 * being added to or removed from the view afterwards doesn't affect the rebuild. The items themselves are still
+	 * the ones offers are being added to on the client thread, the pipeline only reads their histories through the
+	 * HistoryManager methods that hold the history's lock while they work.
+	 */
+	@Value
+	static class Snapshot
+	{
+		List<FlippingItem> items;
+		List<RecipeFlipGroup> recipeFlipGroups;
+		Instant startOfInterval;
+		SORT sort;
+		//null when nothing is being searched for
+		String searchLookup;
+		int itemsPageNumber;
+		int itemsPageSize;
+		int recipesPageNumber;
+		int recipesPageSize;
+	}
+
+	@Value
+	static class Result
+	{
+		int parts;
+		Snapshot snapshot;
+		//null if the rebuild wasn't for the items
+		List<FlippingItem> itemsOnPage;
+		int itemCount;
+		//null if the rebuild wasn't for the recipes
+		List<RecipeFlipGroup> recipeFlipGroupsOnPage;
+		int recipeFlipGroupCount;
+		//null if the rebuild wasn't for the totals
+		Totals totals;
+
+		boolean isFor(int part)
+		{
+			return (parts & part) != 0;
+		}
+	}
+
+	@Value
+	static class Totals
+	{
+		long profit;
+		long expenses;
+		long flips;
+		long taxPaid;
+	}
+}
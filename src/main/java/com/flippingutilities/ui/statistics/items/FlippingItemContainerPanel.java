@@ -2,9 +2,9 @@ package com.flippingutilities.ui.statistics.items;
 
 import com.flippingutilities.controller.FlippingPlugin;
 import com.flippingutilities.model.FlippingItem;
-import com.flippingutilities.ui.statistics.StatsPanel;
 import com.flippingutilities.ui.uiutilities.Paginator;
 import com.flippingutilities.ui.uiutilities.UIUtilities;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.ui.ColorScheme;
 
@@ -12,8 +12,6 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
 import java.awt.*;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -23,6 +21,7 @@ public class FlippingItemContainerPanel extends JPanel {
 
     private JPanel flippingItemPanelsContainer;
     private List<FlippingItemPanel> activePanels = new ArrayList<>();
+    @Getter
     private Paginator paginator;
     private FlippingPlugin plugin;
 
@@ -43,13 +42,16 @@ public class FlippingItemContainerPanel extends JPanel {
         paginator.setPageNumber(1);
     }
 
-    public void rebuild(List<FlippingItem> flippingItems) {
+    /**
+     * @param itemsOnCurrentPage the items on the page the paginator is on, already sorted
+     * @param totalItems         how many items there are to display over all the pages
+     */
+    public void rebuild(List<FlippingItem> itemsOnCurrentPage, int totalItems) {
         activePanels.clear();
         flippingItemPanelsContainer.removeAll();
-        paginator.updateTotalPages(flippingItems.size());
+        paginator.updateTotalPages(totalItems);
 
-        if (!flippingItems.isEmpty()) {
-            List<FlippingItem> itemsOnCurrentPage = paginator.getCurrentPageItems(flippingItems);
+        if (totalItems != 0) {
             List<FlippingItemPanel> newPanels = itemsOnCurrentPage.stream().map(item -> new FlippingItemPanel(plugin, item)).collect(Collectors.toList());
             UIUtilities.stackPanelsVertically((List) newPanels, flippingItemPanelsContainer, 5);
             activePanels.addAll(newPanels);
@@ -95,14 +97,7 @@ public class FlippingItemContainerPanel extends JPanel {
     }
 
     private Paginator createPaginator() {
-        paginator = new Paginator(() -> SwingUtilities.invokeLater(() -> {
-            StatsPanel statsPanel = plugin.getStatPanel();
-            Instant rebuildStart = Instant.now();
-            rebuild(statsPanel.getItemsToDisplay(plugin.viewItemsForCurrentView()));
-            revalidate();
-            repaint();
-            log.debug("page change took {}", Duration.between(rebuildStart, Instant.now()).toMillis());
-        }));
+        paginator = new Paginator(() -> plugin.getStatPanel().rebuildItemsPage());
         paginator.setBackground(ColorScheme.DARK_GRAY_COLOR);
         paginator.setBorder(new MatteBorder(1,0,0,0, ColorScheme.DARK_GRAY_COLOR.darker()));
         return paginator;
@@ -100,10 +100,9 @@ public class FlippingItemPanel extends JPanel
 		this.item = item;
 		this.statsPanel = plugin.getStatPanel();
 
-		List<OfferEvent> offers = item.getIntervalHistory(statsPanel.getStartOfInterval());
+		List<OfferEvent> offers = new ArrayList<>(item.getIntervalHistory(statsPanel.getStartOfInterval()));
 		Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-		List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(offers, offerIdToPartialOffer);
-		List<Flip> flips = FlippingItem.getFlips(adjustedOffers);
+		List<Flip> flips = item.getFlips(statsPanel.getStartOfInterval(), offerIdToPartialOffer);
 
 		this.flipPaginator = createPaginator(() -> buildAllFlipsPanel(flips));
 		this.offerPaginator = createPaginator(() -> buildAllOffersPanels(offers));
@@ -126,7 +125,7 @@ public class FlippingItemPanel extends JPanel
 		JPanel subInfoAndHistoryContainer = createSubInfoAndHistoryContainer(subInfoPanel, tradeHistoryPanel);
         JPanel titlePanel = createTitlePanel(createIconPanel(plugin.getItemManager()), createNameAndProfitPanel(), createCollapseIcon(), subInfoAndHistoryContainer);
 
-        updateLabels(offers, adjustedOffers);
+        updateLabels(offers, offerIdToPartialOffer);
 
         add(titlePanel, BorderLayout.NORTH);
         add(subInfoAndHistoryContainer, BorderLayout.CENTER);
@@ -448,7 +447,7 @@ public class FlippingItemPanel extends JPanel
 		return collapseIconLabel;
 	}
 
-	public void updateLabels(List<OfferEvent> offers, List<OfferEvent> adjustedOffers)
+	public void updateLabels(List<OfferEvent> offers, Map<String, PartialOffer> offerIdToPartialOffer)
 	{
         quantityFlipped.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
         avgBuyPriceValLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
@@ -470,12 +469,13 @@ public class FlippingItemPanel extends JPanel
 			}
 		}
 
-		int itemCountFlipped = FlippingItem.countFlipQuantity(adjustedOffers);
-		long revenueFromFlippedItems = FlippingItem.getValueOfMatchedOffers(adjustedOffers, false);
-		long expenseFromFlippedItems = FlippingItem.getValueOfMatchedOffers(adjustedOffers, true);
-		long totalRevenue = FlippingItem.getTotalRevenueOrExpense(offers, false);
-		long totalExpense = FlippingItem.getTotalRevenueOrExpense(offers, true);
-		long profit = revenueFromFlippedItems - expenseFromFlippedItems;
+		OfferTotals flipped = item.getIntervalTotals(statsPanel.getStartOfInterval(), offerIdToPartialOffer);
+		int itemCountFlipped = (int) flipped.getFlipQuantity();
+		long revenueFromFlippedItems = flipped.getRevenue();
+		long expenseFromFlippedItems = flipped.getExpense();
+		long totalRevenue = item.getHistory().getIntervalTotalRevenueOrExpense(statsPanel.getStartOfInterval(), false);
+		long totalExpense = item.getHistory().getIntervalTotalRevenueOrExpense(statsPanel.getStartOfInterval(), true);
+		long profit = flipped.getProfit();
 
 		updateTitleLabels(profit, itemCountFlipped);
 		updateFlippingLabels(expenseFromFlippedItems, revenueFromFlippedItems, itemCountFlipped);
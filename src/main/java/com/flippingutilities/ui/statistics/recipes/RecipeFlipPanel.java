@@ -234,9 +234,7 @@ public class RecipeFlipPanel extends JPanel {
                         null, new String[]{"Yes", "No"}, "No");
 
                 if (result == JOptionPane.YES_OPTION) {
-                    recipeFlipGroup.deleteFlip(recipeFlip);
-                    plugin.setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
-                    plugin.markAccountTradesAsHavingChanged(plugin.getAccountCurrentlyViewed());
+                    plugin.deleteRecipeFlip(recipeFlipGroup, recipeFlip);
                     plugin.getStatPanel().rebuildItemsDisplay(plugin.viewItemsForCurrentView());
                     plugin.getStatPanel().rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
                 }
@@ -2,11 +2,11 @@ package com.flippingutilities.ui.statistics.recipes;
 
 import com.flippingutilities.controller.FlippingPlugin;
 import com.flippingutilities.model.RecipeFlipGroup;
-import com.flippingutilities.ui.statistics.StatsPanel;
 import com.flippingutilities.ui.statistics.recipes.customrecipes.CustomRecipeManagerPanel;
 import com.flippingutilities.ui.uiutilities.Icons;
 import com.flippingutilities.ui.uiutilities.Paginator;
 import com.flippingutilities.ui.uiutilities.UIUtilities;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.DynamicGridLayout;
@@ -15,8 +15,6 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
 import java.awt.*;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -25,6 +23,7 @@ import java.util.stream.Collectors;
 public class RecipeGroupContainerPanel extends JPanel {
     private JPanel recipeGroupContainer;
     private List<RecipeFlipGroupPanel> activePanels = new ArrayList<>();
+    @Getter
     private Paginator paginator;
     private FlippingPlugin plugin;
 
@@ -46,14 +45,17 @@ public class RecipeGroupContainerPanel extends JPanel {
         paginator.setPageNumber(1);
     }
 
-    public void rebuild(List<RecipeFlipGroup> recipeFlipGroups) {
+    /**
+     * @param recipeFlipGroupsOnCurrentPage the groups on the page the paginator is on, already sorted
+     * @param totalRecipeFlipGroups         how many groups there are to display over all the pages
+     */
+    public void rebuild(List<RecipeFlipGroup> recipeFlipGroupsOnCurrentPage, int totalRecipeFlipGroups) {
         activePanels.clear();
         recipeGroupContainer.removeAll();
-        paginator.updateTotalPages(recipeFlipGroups.size());
+        paginator.updateTotalPages(totalRecipeFlipGroups);
 
-        if (!recipeFlipGroups.isEmpty()) {
-            List<RecipeFlipGroup> itemsOnCurrentPage = paginator.getCurrentPageItems(recipeFlipGroups);
-            List<RecipeFlipGroupPanel> newPanels = itemsOnCurrentPage.stream().map(rfg -> new RecipeFlipGroupPanel(plugin, rfg)).collect(Collectors.toList());
+        if (totalRecipeFlipGroups != 0) {
+            List<RecipeFlipGroupPanel> newPanels = recipeFlipGroupsOnCurrentPage.stream().map(rfg -> new RecipeFlipGroupPanel(plugin, rfg)).collect(Collectors.toList());
             UIUtilities.stackPanelsVertically((List) newPanels, recipeGroupContainer, 5);
             activePanels.addAll(newPanels);
         }
@@ -117,14 +119,7 @@ public class RecipeGroupContainerPanel extends JPanel {
     }
 
     private Paginator createPaginator() {
-        paginator = new Paginator(() -> SwingUtilities.invokeLater(() -> {
-            StatsPanel statsPanel = plugin.getStatPanel();
-            Instant rebuildStart = Instant.now();
-            rebuild(statsPanel.getRecipeFlipGroupsToDisplay(plugin.viewRecipeFlipGroupsForCurrentView()));
-            revalidate();
-            repaint();
-            log.debug("page change took {}", Duration.between(rebuildStart, Instant.now()).toMillis());
-        }));
+        paginator = new Paginator(() -> plugin.getStatPanel().rebuildRecipesPage());
         paginator.setBackground(ColorScheme.DARK_GRAY_COLOR);
         paginator.setBorder(new MatteBorder(1,0,0,0, ColorScheme.DARK_GRAY_COLOR.darker()));
         return paginator;
@@ -29,6 +29,7 @@ public class Paginator extends JPanel
 	@Setter
 	private JLabel arrowLeft;
 	Runnable onPageChange;
+	@Getter
 	@Setter
 	private int pageSize = 20;
 
@@ -208,6 +209,11 @@ public class Paginator extends JPanel
 	}
 
 	public <T> List<T> getCurrentPageItems(List<T> items)
+	{
+		return getPageItems(items, pageNumber, pageSize);
+	}
+
+	public static <T> List<T> getPageItems(List<T> items, int pageNumber, int pageSize)
 	{
 		List<T> pageItems = new ArrayList<>();
 		int startIndex = (pageNumber - 1) * pageSize;
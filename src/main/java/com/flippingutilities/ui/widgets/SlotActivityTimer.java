@@ -81,6 +81,19 @@ public class SlotActivityTimer
 		this.slotIndex = slotIndex;
 	}
 
+	/**
+	 * @return a copy of the timer's persisted state, to be written to disk off the client thread
+	 */
+	public SlotActivityTimer snapshot()
+	{
+		SlotActivityTimer snapshot = new SlotActivityTimer(plugin, client, slotIndex);
+		snapshot.lastUpdate = lastUpdate;
+		snapshot.tradeStartTime = tradeStartTime;
+		snapshot.currentOffer = currentOffer == null ? null : currentOffer.clone();
+		snapshot.offerOccurredAtUnknownTime = offerOccurredAtUnknownTime;
+		return snapshot;
+	}
+
 	public void setWidget(Widget slotWidget)
 	{
 		this.slotWidget = slotWidget;
@@ -0,0 +1,25 @@
+package com.flippingutilities.utilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds a single instance of every item and account name. Every offer event references the name of its item and
+ * the account that made it, and names read from disk (or copied when the account wide list is built) are otherwise
+ * separate but equal strings, which adds up with large histories. There are only as many names as there are items
+ * and accounts, so they are never evicted.
+ */
+public class CanonicalNames {
+    private static final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * @return the one instance of the given name, or null if the name is null
+     */
+    public static String of(String name) {
+        if (name == null) {
+            return null;
+        }
+        String existing = names.putIfAbsent(name, name);
+        return existing == null ? name : existing;
+    }
+}
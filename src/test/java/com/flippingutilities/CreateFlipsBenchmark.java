@@ -0,0 +1,138 @@
+package com.flippingutilities;
+
+import com.flippingutilities.model.Flip;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.utilities.ListUtils;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the throughput and allocation of {@link HistoryManager#createFlips}, which only reads the offers, with
+ * the previous implementation, which cloned every offer because matching used up the quantity of the buys. Both are
+ * run on the same synthetic history and have to produce the same flips. Run it like PluginRunner, from the main
+ * method.
+ */
+public class CreateFlipsBenchmark
+{
+	private static final int OFFERS = 100_000;
+	private static final int WARMUP_ROUNDS = 10;
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args)
+	{
+		List<OfferEvent> offers = generateOffers();
+
+		if (!cloningCreateFlips(offers).equals(HistoryManager.createFlips(offers)))
+		{
+			throw new IllegalStateException("createFlips doesn't produce the same flips as the previous implementation");
+		}
+
+		System.out.printf("%d offers%n", OFFERS);
+		report("cloning", () -> cloningCreateFlips(offers));
+		report("current", () -> HistoryManager.createFlips(offers));
+	}
+
+	private static void report(String name, Supplier<List<Flip>> round)
+	{
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+		{
+			round.get();
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++)
+		{
+			round.get();
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / ROUNDS;
+		double allocatedMb = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / 1e6 / ROUNDS;
+		System.out.printf("%-8s %8.2f ms/call %10.2f MB allocated/call%n", name, millis, allocatedMb);
+	}
+
+	private static List<OfferEvent> generateOffers()
+	{
+		Random random = new Random(42);
+		Instant start = Instant.ofEpochSecond(1600000000);
+		List<OfferEvent> offers = new ArrayList<>();
+		for (int i = 0; i < OFFERS; i++)
+		{
+			boolean buy = random.nextBoolean();
+			//some of the offers are margin checks, a single item bought or sold within a couple of ticks
+			boolean marginCheck = random.nextInt(10) == 0;
+			int totalQuantity = marginCheck ? 1 : 1 + random.nextInt(1000);
+			int quantity = marginCheck ? 1 : 1 + random.nextInt(totalQuantity);
+			GrandExchangeOfferState state = buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD;
+			offers.add(new OfferEvent(UUID.randomUUID().toString(), buy, 1, quantity, 100 + random.nextInt(100),
+				start.plusSeconds(i * 30L), random.nextInt(8), state, 0, marginCheck ? 1 : 10, totalQuantity, null,
+				false, "benchmark", null, 0, 0));
+		}
+		return offers;
+	}
+
+	/**
+	 * HistoryManager.createFlips as it was before it stopped cloning the offers. HistoryManagerTest checks the flips
+	 * created in parallel against it too.
+	 */
+	static List<Flip> cloningCreateFlips(List<OfferEvent> offers)
+	{
+		List<OfferEvent>[] subLists = ListUtils.partition(
+			offers.stream().map(OfferEvent::clone).collect(Collectors.toList()),
+			o -> o.isMarginCheck() && o.isBuy(),
+			o -> o.isMarginCheck() && !o.isBuy(),
+			o -> !o.isMarginCheck() && o.isBuy(),
+			o -> !o.isMarginCheck() && !o.isBuy());
+
+		List<OfferEvent> nonMarginCheckBuys = subLists[2];
+		List<OfferEvent> nonMarginCheckSells = subLists[3];
+
+		List<OfferEvent> unPairedMarginChecks = new ArrayList<>();
+		List<Flip> flips = new ArrayList<>(HistoryManager.pairMarginChecks(subLists[0], subLists[1], unPairedMarginChecks));
+		unPairedMarginChecks.forEach(offer -> (offer.isBuy() ? nonMarginCheckBuys : nonMarginCheckSells).add(offer));
+		nonMarginCheckBuys.sort(Comparator.comparing(OfferEvent::getTime));
+		nonMarginCheckSells.sort(Comparator.comparing(OfferEvent::getTime));
+
+		int buyIdx = 0;
+		for (OfferEvent sell : nonMarginCheckSells)
+		{
+			if (sell.getCurrentQuantityInTrade() == 0)
+			{
+				continue;
+			}
+			int numBuysSeen = 0;
+			int totalRevenue = 0;
+			while (buyIdx < nonMarginCheckBuys.size())
+			{
+				OfferEvent buy = nonMarginCheckBuys.get(buyIdx);
+				numBuysSeen += buy.getCurrentQuantityInTrade();
+				if (numBuysSeen >= sell.getCurrentQuantityInTrade())
+				{
+					int leftOver = numBuysSeen - sell.getCurrentQuantityInTrade();
+					totalRevenue += (buy.getCurrentQuantityInTrade() - leftOver) * buy.getPrice();
+					buy.setCurrentQuantityInTrade(leftOver);
+					flips.add(new Flip(totalRevenue / sell.getCurrentQuantityInTrade(), sell.getPrice(), sell.getCurrentQuantityInTrade(), sell.getTime(), false, !sell.isComplete()));
+					break;
+				}
+				totalRevenue += buy.getCurrentQuantityInTrade() * buy.getPrice();
+				buyIdx++;
+			}
+			if (buyIdx == nonMarginCheckBuys.size() && numBuysSeen != 0)
+			{
+				flips.add(new Flip(totalRevenue / numBuysSeen, sell.getPrice(), numBuysSeen, sell.getTime(), false, true));
+				break;
+			}
+		}
+		return flips;
+	}
+}
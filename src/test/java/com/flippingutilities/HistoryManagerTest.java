@@ -30,6 +30,8 @@ package com.flippingutilities;
 import com.flippingutilities.model.Flip;
 import com.flippingutilities.model.HistoryManager;
 import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferRollups;
+import com.flippingutilities.model.OfferTotals;
 import net.runelite.api.GrandExchangeOfferState;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,10 +39,19 @@ import org.junit.Test;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class HistoryManagerTest
 {
@@ -123,6 +134,229 @@ public class HistoryManagerTest
 		assertEquals(0, historyManager.getProfit(tradesList));
 	}
 
+	@Test
+	public void offersAddedFromGeHistoryAreInsertedByTimeTest()
+	{
+		//offers added from the ge history tab have no slot and can be older than the offers already in the history
+		OfferEvent oldBuy = Utils.offer(true, 5, 100, baseTime.minus(50, ChronoUnit.MINUTES), -1, GrandExchangeOfferState.BOUGHT, 5);
+		OfferEvent olderBuy = Utils.offer(true, 5, 100, baseTime.minus(2, ChronoUnit.HOURS), -1, GrandExchangeOfferState.BOUGHT, 5);
+		historyManager.updateHistory(oldBuy);
+		historyManager.updateHistory(olderBuy);
+
+		List<OfferEvent> offers = historyManager.getCompressedOfferEvents();
+		assertEquals(olderBuy, offers.get(0));
+		assertEquals(oldBuy, offers.get(1));
+		for (int i = 1; i < offers.size(); i++)
+		{
+			assertFalse(offers.get(i).getTime().isBefore(offers.get(i - 1).getTime()));
+		}
+
+		assertEquals(offers.subList(1, offers.size()), historyManager.getIntervalsHistory(baseTime.minus(1, ChronoUnit.HOURS)));
+		assertEquals(offers, historyManager.getIntervalsHistory(baseTime.minus(3, ChronoUnit.HOURS)));
+		assertTrue(historyManager.getIntervalsHistory(baseTime).isEmpty());
+		assertEquals(HistoryManager.getFlips(offers), historyManager.getFlips());
+	}
+
+	@Test
+	public void intervalTotalsMatchTotalsOfIntervalHistoryTest()
+	{
+		for (int minutes = 0; minutes <= 60; minutes++)
+		{
+			Instant startOfInterval = baseTime.minus(minutes, ChronoUnit.MINUTES);
+			assertEquals(OfferTotals.of(historyManager.getIntervalsHistory(startOfInterval)), historyManager.getIntervalTotals(startOfInterval));
+		}
+
+		//a partial offer replacing an earlier one for the same trade and an offer added from the ge history
+		historyManager.updateHistory(Utils.offer(true, 5, 100, baseTime.minus(3, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.BUYING, 10));
+		historyManager.updateHistory(Utils.offer(true, 10, 100, baseTime.minus(2, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.BOUGHT, 10));
+		historyManager.updateHistory(Utils.offer(false, 8, 110, baseTime.minus(25, ChronoUnit.MINUTES), -1, GrandExchangeOfferState.SOLD, 8));
+		Instant startOfInterval = baseTime.minus(1, ChronoUnit.HOURS);
+		OfferTotals totals = historyManager.getIntervalTotals(startOfInterval);
+		assertEquals(OfferTotals.of(historyManager.getIntervalsHistory(startOfInterval)), totals);
+		assertEquals(HistoryManager.getProfit(historyManager.getIntervalsHistory(startOfInterval)), totals.getProfit());
+	}
+
+	@Test
+	public void offerMatchesAndDeletesTest()
+	{
+		//a duplicate of the complete 30 item sell from the GE history tab, added out of order
+		OfferEvent geHistoryOffer = Utils.offer(false, 30, 105, baseTime.minus(50, ChronoUnit.MINUTES), -1, GrandExchangeOfferState.SOLD, 30);
+		List<OfferEvent> matches = historyManager.getOfferMatches(geHistoryOffer, 5);
+		assertEquals(1, matches.size());
+		assertEquals(baseTime.minus(4, ChronoUnit.MINUTES), matches.get(0).getTime());
+
+		historyManager.updateHistory(geHistoryOffer);
+		matches = historyManager.getOfferMatches(geHistoryOffer, 5);
+		assertEquals(2, matches.size());
+		assertEquals(geHistoryOffer, matches.get(1));
+		assertEquals(1, historyManager.getOfferMatches(geHistoryOffer, 1).size());
+
+		//offers are deleted by uuid, so copies of them (like the ones in the account wide view) delete them too
+		List<OfferEvent> expectedOffers = new ArrayList<>(historyManager.getCompressedOfferEvents());
+		OfferEvent firstBuy = expectedOffers.get(1);
+		OfferEvent lastSell = expectedOffers.get(expectedOffers.size() - 1);
+		historyManager.deleteOffers(Arrays.asList(lastSell.clone(), firstBuy, firstBuy));
+		expectedOffers.remove(lastSell);
+		expectedOffers.remove(firstBuy);
+		assertEquals(expectedOffers, historyManager.getCompressedOfferEvents());
+		assertEquals(Collections.singletonList(geHistoryOffer), historyManager.getOfferMatches(geHistoryOffer, 5));
+		assertEquals(HistoryManager.getFlips(expectedOffers), historyManager.getFlips());
+	}
+
+	/**
+	 * Tests that what is read from the history's columns is what reading the offers themselves gives, as offers come
+	 * in, are inserted in the middle, are deleted and the history is reloaded.
+	 */
+	@Test
+	public void offerColumnsMatchOffersTest()
+	{
+		Random random = new Random(3);
+		HistoryManager history = new HistoryManager();
+		for (int i = 0; i < 3000; i++)
+		{
+			history = changeHistoryRandomly(history, random);
+			List<OfferEvent> offers = history.getCompressedOfferEvents();
+			assertEquals(HistoryManager.getProfit(offers), history.getProfit());
+			for (Instant startOfInterval : intervalStarts(offers, random))
+			{
+				List<OfferEvent> intervalOffers = offersAfter(offers, startOfInterval);
+				assertEquals(intervalOffers, history.getIntervalsHistory(startOfInterval));
+				assertEquals(HistoryManager.getTotalRevenueOrExpense(intervalOffers, true), history.getIntervalTotalRevenueOrExpense(startOfInterval, true));
+				assertEquals(HistoryManager.getTotalRevenueOrExpense(intervalOffers, false), history.getIntervalTotalRevenueOrExpense(startOfInterval, false));
+			}
+		}
+	}
+
+	/**
+	 * Tests that the totals of intervals, which come from the history's hourly rollups, are the totals of the offers
+	 * in them, as offers come in, are inserted in the middle, are deleted and the history is reloaded with the
+	 * rollups it had.
+	 */
+	@Test
+	public void intervalTotalsMatchOffersAfterChangesTest()
+	{
+		Random random = new Random(13);
+		HistoryManager history = new HistoryManager();
+		for (int i = 0; i < 3000; i++)
+		{
+			history = changeHistoryRandomly(history, random);
+			List<OfferEvent> offers = history.getCompressedOfferEvents();
+			for (Instant startOfInterval : intervalStarts(offers, random))
+			{
+				assertEquals(OfferTotals.of(offersAfter(offers, startOfInterval)), history.getIntervalTotals(startOfInterval));
+			}
+		}
+	}
+
+	/**
+	 * Tests that rollups read back for a history are only used if the history still starts with the offers they
+	 * were made from.
+	 */
+	@Test
+	public void staleRollupsAreNotAttachedTest()
+	{
+		Instant startOfInterval = baseTime.minus(1, ChronoUnit.HOURS);
+		historyManager.getIntervalTotals(startOfInterval);
+		List<OfferEvent> offers = historyManager.getCompressedOfferEvents();
+		OfferEvent lastOffer = offers.get(offers.size() - 1);
+
+		//offers added after the ones the rollups were made from are rolled up when the totals are asked for
+		HistoryManager longerHistory = historyManager.clone();
+		longerHistory.updateHistory(Utils.offer(true, 5, 100, baseTime.minus(2, ChronoUnit.MINUTES), 3, GrandExchangeOfferState.BOUGHT, 5));
+		assertTrue(longerHistory.attachOfferRollups(historyManager.copyOfferRollups()));
+
+		HistoryManager shorterHistory = historyManager.clone();
+		shorterHistory.deleteOffers(Collections.singletonList(lastOffer));
+
+		List<OfferEvent> otherOffers = historyManager.clone().getCompressedOfferEvents();
+		otherOffers.set(otherOffers.size() - 1, Utils.offer(false, 30, 105, lastOffer.getTime(), 1, GrandExchangeOfferState.SOLD, 30));
+		HistoryManager otherLastOfferHistory = new HistoryManager(otherOffers, null, 0, 0);
+
+		List<OfferEvent> movedOffers = historyManager.clone().getCompressedOfferEvents();
+		movedOffers.get(movedOffers.size() - 1).setTime(lastOffer.getTime().plusSeconds(1));
+		HistoryManager movedLastOfferHistory = new HistoryManager(movedOffers, null, 0, 0);
+
+		for (HistoryManager staleHistory : Arrays.asList(shorterHistory, otherLastOfferHistory, movedLastOfferHistory))
+		{
+			OfferRollups rollups = historyManager.copyOfferRollups();
+			assertFalse(staleHistory.attachOfferRollups(rollups));
+			assertNull(staleHistory.copyOfferRollups());
+		}
+
+		for (HistoryManager history : Arrays.asList(longerHistory, shorterHistory, otherLastOfferHistory, movedLastOfferHistory))
+		{
+			assertEquals(OfferTotals.of(history.getIntervalsHistory(startOfInterval)), history.getIntervalTotals(startOfInterval));
+		}
+	}
+
+	/**
+	 * Tests that the offers an incoming offer replaces, which come from the open trade index, are the ones walking
+	 * back through the history for the slot's last complete offer finds, whatever happened to the history before.
+	 */
+	@Test
+	public void openTradeIndexMatchesWalkingBackThroughHistoryTest()
+	{
+		Random random = new Random(5);
+		HistoryManager history = new HistoryManager();
+		for (int i = 0; i < 3000; i++)
+		{
+			if (random.nextInt(3) == 0)
+			{
+				history = changeHistoryRandomly(history, random);
+				continue;
+			}
+			List<OfferEvent> offers = history.getCompressedOfferEvents();
+			OfferEvent newOffer = nextSlotOffer(offers, random);
+			List<OfferEvent> expectedReplacedOffers = previousOffersForTrade(offers, newOffer);
+			List<OfferEvent> expectedOffers = new ArrayList<>(offers);
+			expectedOffers.removeIf(o -> expectedReplacedOffers.stream().anyMatch(replaced -> replaced == o));
+			expectedOffers.add(newOffer);
+
+			List<OfferEvent> replacedOffers = history.updateHistory(newOffer);
+			assertEquals(expectedReplacedOffers.size(), replacedOffers.size());
+			for (int j = 0; j < replacedOffers.size(); j++)
+			{
+				assertSame(expectedReplacedOffers.get(j), replacedOffers.get(j));
+			}
+			assertEquals(expectedOffers, history.getCompressedOfferEvents());
+		}
+	}
+
+	/**
+	 * Tests that the flips of a history big enough to have its accounts' flips created in parallel (40k offers, the
+	 * threshold is 10k) are the same, every time, as the ones createFlips made before it stopped cloning the offers,
+	 * run one account after the other over the whole history like getFlips used to. Several offers from different
+	 * accounts are made at the same time, so the flips have ties in time that have to stay in the same order.
+	 */
+	@Test
+	public void parallelFlipsMatchSequentialFlipsTest()
+	{
+		Random random = new Random(7);
+		String[] accounts = {"gooby", "zezima", "durial321", "b0aty"};
+		List<OfferEvent> offers = new ArrayList<>();
+		for (int i = 0; i < 40000; i++)
+		{
+			boolean buy = random.nextBoolean();
+			boolean marginCheck = random.nextInt(10) == 0;
+			int totalQuantity = marginCheck ? 1 : 1 + random.nextInt(100);
+			OfferEvent offer = Utils.offer(buy, 1 + random.nextInt(totalQuantity), 100 + random.nextInt(20),
+				baseTime.plusSeconds(i / 4 * 30L), random.nextInt(8),
+				buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, totalQuantity, marginCheck ? 1 : 10);
+			offer.setMadeBy(accounts[random.nextInt(accounts.length)]);
+			offers.add(offer);
+		}
+
+		Map<String, List<OfferEvent>> offersByAccount = offers.stream().collect(Collectors.groupingBy(OfferEvent::getMadeBy));
+		List<Flip> expectedFlips = new ArrayList<>();
+		offersByAccount.values().forEach(accountOffers -> expectedFlips.addAll(CreateFlipsBenchmark.cloningCreateFlips(accountOffers)));
+		expectedFlips.sort(Comparator.comparing(Flip::getTime));
+
+		for (int i = 0; i < 5; i++)
+		{
+			assertEquals(expectedFlips, HistoryManager.getFlips(offers));
+		}
+	}
+
 	@Test
 	public void gePropertiesCorrectnessTest()
 	{
@@ -390,4 +624,248 @@ public class HistoryManagerTest
 
 		assertEquals(historyManager.getCompressedOfferEvents(), expectedCompressedEvents);
 	}
+
+	/**
+	 * Tests that the flips the history keeps up to date as offers come in (with in progress offers being replaced,
+	 * margin checks being paired, offers arriving out of order and offers being deleted) are always the same as the
+	 * flips recomputed from scratch.
+	 */
+	@Test
+	public void incrementalFlipsMatchRecomputedFlipsTest()
+	{
+		HistoryManager historyManager = new HistoryManager();
+		Random random = new Random(7);
+		Instant time = baseTime;
+		int[] quantityInSlot = new int[8];
+
+		for (int i = 0; i < 2000; i++)
+		{
+			time = time.plusSeconds(random.nextInt(90));
+			int slot = random.nextInt(8);
+			boolean buy = slot % 2 == 0;
+			OfferEvent offer;
+			if (random.nextInt(10) == 0)
+			{
+				//a margin check
+				GrandExchangeOfferState state = buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD;
+				offer = Utils.offer(buy, 1, 100 + random.nextInt(10), time, slot, state, 0, random.nextInt(3), 1);
+			}
+			else
+			{
+				quantityInSlot[slot] += 1 + random.nextInt(20);
+				boolean complete = quantityInSlot[slot] >= 50 || random.nextInt(4) == 0;
+				GrandExchangeOfferState state = buy ?
+					(complete ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.BUYING) :
+					(complete ? GrandExchangeOfferState.SOLD : GrandExchangeOfferState.SELLING);
+				//now and again an offer comes in with an older time, like an offer that happened before login
+				Instant offerTime = random.nextInt(50) == 0 ? time.minusSeconds(random.nextInt(3600)) : time;
+				offer = Utils.offer(buy, Math.min(quantityInSlot[slot], 50), 100 + random.nextInt(10), offerTime, slot, state, 50, 10);
+				if (complete)
+				{
+					quantityInSlot[slot] = 0;
+				}
+			}
+			historyManager.updateHistory(offer);
+
+			if (random.nextInt(200) == 0)
+			{
+				List<OfferEvent> offers = historyManager.getCompressedOfferEvents();
+				historyManager.deleteOffers(Collections.singletonList(offers.get(random.nextInt(offers.size()))));
+			}
+			if (random.nextInt(5) == 0)
+			{
+				assertEquals(HistoryManager.getFlips(historyManager.getCompressedOfferEvents()), historyManager.getFlips());
+				assertEquals(HistoryManager.getFlips(historyManager.getCompressedOfferEvents()).size(), historyManager.getFlipCount());
+			}
+		}
+		assertEquals(HistoryManager.getFlips(historyManager.getCompressedOfferEvents()), historyManager.getFlips());
+	}
+
+	/**
+	 * Tests that a history merged from the histories of two accounts, which use the same slots, stays the same as
+	 * merging them again when the offers added to the accounts' histories are mirrored to it.
+	 */
+	@Test
+	public void mirroredMergedHistoryMatchesMergingAgainTest()
+	{
+		List<HistoryManager> accountHistories = Arrays.asList(new HistoryManager(), new HistoryManager());
+		HistoryManager mergedHistory = HistoryManager.merge(accountHistories);
+		Random random = new Random(11);
+		Instant time = baseTime;
+		int[][] quantityInSlot = new int[2][8];
+
+		for (int i = 0; i < 1000; i++)
+		{
+			//offers from different accounts made at the same time can be in either order
+			time = time.plusSeconds(1 + random.nextInt(60));
+			int account = random.nextInt(2);
+			int slot = random.nextInt(8);
+			boolean buy = slot % 2 == 0;
+			quantityInSlot[account][slot] += 1 + random.nextInt(20);
+			boolean complete = quantityInSlot[account][slot] >= 50 || random.nextInt(4) == 0;
+			GrandExchangeOfferState state = buy ?
+				(complete ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.BUYING) :
+				(complete ? GrandExchangeOfferState.SOLD : GrandExchangeOfferState.SELLING);
+			OfferEvent offer = Utils.offer(buy, Math.min(quantityInSlot[account][slot], 50), 100 + random.nextInt(10), time, slot, state, 50, 10);
+			offer.setMadeBy("account" + account);
+			if (complete)
+			{
+				quantityInSlot[account][slot] = 0;
+			}
+
+			List<OfferEvent> replacedOffers = accountHistories.get(account).updateHistory(offer);
+			assertTrue(mergedHistory.mirrorUpdate(offer, replacedOffers));
+
+			if (random.nextInt(20) == 0)
+			{
+				HistoryManager mergedAgain = HistoryManager.merge(accountHistories);
+				assertEquals(mergedAgain.getCompressedOfferEvents(), mergedHistory.getCompressedOfferEvents());
+				assertEquals(mergedAgain.getFlips(), mergedHistory.getFlips());
+			}
+		}
+	}
+
+	/**
+	 * Makes one of the changes a history's indexes have to keep up with: an offer coming in for one of the slots, an
+	 * older offer added from the ge history tab, deleting some of the offers or reloading the history.
+	 *
+	 * @return the history, which is a new one if it was reloaded
+	 */
+	private static HistoryManager changeHistoryRandomly(HistoryManager history, Random random)
+	{
+		List<OfferEvent> offers = history.getCompressedOfferEvents();
+		int change = random.nextInt(10);
+		if (change < 6 || offers.isEmpty())
+		{
+			history.updateHistory(nextSlotOffer(offers, random));
+		}
+		else if (change < 8)
+		{
+			history.updateHistory(geHistoryOffer(offers, random));
+		}
+		else if (change < 9)
+		{
+			List<OfferEvent> deletedOffers = new ArrayList<>();
+			for (int i = random.nextInt(3); i > -1; i--)
+			{
+				//offers are deleted by uuid, so a copy of one deletes it too
+				OfferEvent offer = offers.get(random.nextInt(offers.size()));
+				deletedOffers.add(random.nextBoolean() ? offer : offer.clone());
+			}
+			history.deleteOffers(deletedOffers);
+		}
+		else
+		{
+			//like TradePersister, the rollups written along with the history are attached to it when it is loaded
+			HistoryManager reloadedHistory = history.clone();
+			OfferRollups rollups = history.copyOfferRollups();
+			if (rollups != null)
+			{
+				assertTrue(reloadedHistory.attachOfferRollups(rollups));
+			}
+			return reloadedHistory;
+		}
+		return history;
+	}
+
+	/**
+	 * @return an offer for one of the slots made at the time of the last offer in the history or later. If the last
+	 * offer was cancelled, it is sometimes the update for it that comes in after the cancel.
+	 */
+	private static OfferEvent nextSlotOffer(List<OfferEvent> offers, Random random)
+	{
+		OfferEvent lastOffer = offers.isEmpty() ? null : offers.get(offers.size() - 1);
+		Instant time = (lastOffer == null ? baseTime : lastOffer.getTime()).plusSeconds(random.nextInt(4) * 300);
+		if (lastOffer != null && lastOffer.isCancelled() && lastOffer.getSlot() != -1 && random.nextBoolean())
+		{
+			return Utils.offer(lastOffer.isBuy(), lastOffer.getCurrentQuantityInTrade() + 1, lastOffer.getPrice(), time,
+				lastOffer.getSlot(), lastOffer.isBuy() ? GrandExchangeOfferState.BUYING : GrandExchangeOfferState.SELLING,
+				lastOffer.getTickArrivedAt() + 1, 10, lastOffer.getTotalQuantityInTrade());
+		}
+		boolean buy = random.nextBoolean();
+		GrandExchangeOfferState[] states = buy ?
+			new GrandExchangeOfferState[] {GrandExchangeOfferState.BUYING, GrandExchangeOfferState.BOUGHT, GrandExchangeOfferState.CANCELLED_BUY} :
+			new GrandExchangeOfferState[] {GrandExchangeOfferState.SELLING, GrandExchangeOfferState.SOLD, GrandExchangeOfferState.CANCELLED_SELL};
+		return Utils.offer(buy, 1 + random.nextInt(49), 100 + random.nextInt(20), time, random.nextInt(4),
+			states[random.nextInt(states.length)], random.nextInt(1000), 10, 50);
+	}
+
+	/**
+	 * @return a complete offer without a slot, made at the time of one of the offers in the history or at any time
+	 * from an hour before the first one to the last one
+	 */
+	private static OfferEvent geHistoryOffer(List<OfferEvent> offers, Random random)
+	{
+		Instant time;
+		if (!offers.isEmpty() && random.nextBoolean())
+		{
+			time = offers.get(random.nextInt(offers.size())).getTime();
+		}
+		else
+		{
+			Instant start = (offers.isEmpty() ? baseTime : offers.get(0).getTime()).minus(1, ChronoUnit.HOURS);
+			Instant end = offers.isEmpty() ? baseTime : offers.get(offers.size() - 1).getTime();
+			time = start.plusSeconds(random.nextInt((int) (end.getEpochSecond() - start.getEpochSecond()) + 1));
+		}
+		boolean buy = random.nextBoolean();
+		return Utils.offer(buy, 1 + random.nextInt(50), 100 + random.nextInt(20), time, -1,
+			buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, 50);
+	}
+
+	/**
+	 * @return starts of intervals to check the history with: before all of it, at a few of its offers and at a
+	 * random time in it
+	 */
+	private static List<Instant> intervalStarts(List<OfferEvent> offers, Random random)
+	{
+		List<Instant> intervalStarts = new ArrayList<>();
+		intervalStarts.add(baseTime.minus(1, ChronoUnit.DAYS));
+		for (int i = 0; i < 3 && !offers.isEmpty(); i++)
+		{
+			intervalStarts.add(offers.get(random.nextInt(offers.size())).getTime());
+		}
+		if (!offers.isEmpty())
+		{
+			intervalStarts.add(offers.get(random.nextInt(offers.size())).getTime().plusSeconds(random.nextInt(600) - 300));
+		}
+		return intervalStarts;
+	}
+
+	/**
+	 * Finds the offers the new offer replaces the way deletePreviousOffersForTrade did before the open trade index:
+	 * the in progress offers for its slot after the slot's last complete offer, and that offer too if the new one is
+	 * an update for it being cancelled.
+	 *
+	 * @return the offers, in the order they are in the history
+	 */
+	private static List<OfferEvent> previousOffersForTrade(List<OfferEvent> offers, OfferEvent newOffer)
+	{
+		List<OfferEvent> previousOffers = new ArrayList<>();
+		for (int i = offers.size() - 1; i > -1; i--)
+		{
+			OfferEvent offer = offers.get(i);
+			if (offer.getSlot() == newOffer.getSlot() && offer.isBuy() == newOffer.isBuy())
+			{
+				if (offer.isComplete())
+				{
+					if (newOffer.isUpdateForCancelled(offer))
+					{
+						previousOffers.add(offer);
+					}
+					break;
+				}
+				previousOffers.add(offer);
+			}
+		}
+		Collections.reverse(previousOffers);
+		return previousOffers;
+	}
+
+	/**
+	 * @return the offers made after the given time, found by going through all of them
+	 */
+	private static List<OfferEvent> offersAfter(List<OfferEvent> offers, Instant time)
+	{
+		return offers.stream().filter(o -> o.getTime().isAfter(time)).collect(Collectors.toList());
+	}
 }
@@ -0,0 +1,214 @@
+package com.flippingutilities;
+
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.model.PartialOfferIndex;
+import com.flippingutilities.model.RecipeFlip;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.flippingutilities.utilities.Recipe;
+import com.flippingutilities.utilities.RecipeItem;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PartialOfferIndexTest
+{
+	private static final Instant baseTime = Instant.ofEpochSecond(1600000000);
+
+	//items 1 to 4, each of them the input of one recipe and the output of another
+	private static final Recipe[] recipes = {
+		new Recipe(Arrays.asList(new RecipeItem(1, 1), new RecipeItem(2, 1)), Collections.singletonList(new RecipeItem(3, 1)), "a"),
+		new Recipe(Collections.singletonList(new RecipeItem(3, 1)), Arrays.asList(new RecipeItem(1, 1), new RecipeItem(4, 2)), "b"),
+		new Recipe(Collections.singletonList(new RecipeItem(4, 3)), Collections.singletonList(new RecipeItem(2, 1)), "c")
+	};
+
+	/**
+	 * Tests that the cumulative partial offers looked up from the index are what adding up the partial offers of
+	 * every recipe flip in every group gives, as recipe flips are added and deleted the ways RecipeHandler does it,
+	 * and that the index is built again when the groups are replaced or changed behind its back.
+	 */
+	@Test
+	public void partialOfferIndexMatchesWalkingEveryGroupTest()
+	{
+		Random random = new Random(9);
+		Map<Integer, List<OfferEvent>> itemIdToOffers = new HashMap<>();
+		for (int itemId = 1; itemId <= 4; itemId++)
+		{
+			List<OfferEvent> offers = new ArrayList<>();
+			for (int i = 0; i < 5; i++)
+			{
+				boolean buy = random.nextBoolean();
+				OfferEvent offer = Utils.offer(buy, 10, 100 + random.nextInt(20), baseTime.plusSeconds(i * 60), 1,
+					buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, 10);
+				offer.setItemId(itemId);
+				offers.add(offer);
+			}
+			itemIdToOffers.put(itemId, offers);
+		}
+
+		List<RecipeFlipGroup> recipeFlipGroups = new ArrayList<>();
+		PartialOfferIndex index = new PartialOfferIndex(recipeFlipGroups);
+		Instant time = baseTime;
+		for (int i = 0; i < 2000; i++)
+		{
+			time = time.plusSeconds(60);
+			Map<String, PartialOffer> earlierView = index.getOfferIdToPartialOffer(1);
+			Map<String, Integer> earlierAmounts = amountsConsumed(earlierView);
+
+			int change = random.nextInt(10);
+			RecipeFlipGroup group = recipeFlipGroups.isEmpty() ? null : recipeFlipGroups.get(random.nextInt(recipeFlipGroups.size()));
+			if (change < 5 || group == null)
+			{
+				Recipe recipe = recipes[random.nextInt(recipes.length)];
+				RecipeFlip recipeFlip = recipeFlip(recipe, itemIdToOffers, time, random);
+				addRecipeFlip(recipeFlipGroups, recipeFlip, recipe);
+				index.recipeFlipAdded(recipeFlip);
+			}
+			else if (change < 7)
+			{
+				if (!group.getRecipeFlips().isEmpty())
+				{
+					RecipeFlip recipeFlip = group.getRecipeFlips().get(random.nextInt(group.getRecipeFlips().size()));
+					group.deleteFlip(recipeFlip).forEach(index::recipeFlipRemoved);
+				}
+			}
+			else if (change < 8)
+			{
+				group.deleteFlips(time.minusSeconds(random.nextInt(600))).forEach(index::recipeFlipRemoved);
+			}
+			else if (change < 9)
+			{
+				//like RecipeHandler.deleteInvalidRecipeFlips, when an offer is deleted
+				int itemId = 1 + random.nextInt(4);
+				List<OfferEvent> deletedOffers = Collections.singletonList(itemIdToOffers.get(itemId).get(random.nextInt(5)));
+				for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups)
+				{
+					if (recipeFlipGroup.isInGroup(itemId))
+					{
+						recipeFlipGroup.deleteFlipsWithDeletedOffers(deletedOffers).forEach(index::recipeFlipRemoved);
+					}
+				}
+			}
+			else
+			{
+				if (random.nextBoolean())
+				{
+					//the groups of a reloaded account
+					recipeFlipGroups = recipeFlipGroups.stream().map(RecipeFlipGroup::clone).collect(Collectors.toList());
+				}
+				else
+				{
+					//a group added without going through RecipeHandler
+					Recipe recipe = recipes[random.nextInt(recipes.length)];
+					recipeFlipGroups.add(new RecipeFlipGroup(recipe,
+						new ArrayList<>(Collections.singletonList(recipeFlip(recipe, itemIdToOffers, time, random)))));
+				}
+				assertFalse(index.isFor(recipeFlipGroups));
+				index = new PartialOfferIndex(recipeFlipGroups);
+			}
+			assertTrue(index.isFor(recipeFlipGroups));
+
+			//the maps handed out before the change aren't changed by it
+			assertEquals(earlierAmounts, amountsConsumed(earlierView));
+			for (int itemId = 1; itemId <= 4; itemId++)
+			{
+				Map<String, Integer> expectedAmounts = amountsConsumed(recipeFlipGroups, itemId);
+				Map<String, PartialOffer> partialOffers = index.getOfferIdToPartialOffer(itemId);
+				assertEquals(expectedAmounts, amountsConsumed(partialOffers));
+				assertSame(partialOffers, index.getOfferIdToPartialOffer(itemId));
+				for (Map.Entry<String, PartialOffer> entry : partialOffers.entrySet())
+				{
+					assertEquals(entry.getKey(), entry.getValue().getOfferUuid());
+					assertEquals(entry.getKey(), entry.getValue().getOffer().getUuid());
+				}
+				for (OfferEvent offer : itemIdToOffers.get(itemId))
+				{
+					assertEquals(expectedAmounts.containsKey(offer.getUuid()), index.isReferenced(offer));
+				}
+			}
+		}
+	}
+
+	/**
+	 * A recipe flip using one or two of the offers of each of the recipe's items, some of them not at all.
+	 */
+	private static RecipeFlip recipeFlip(Recipe recipe, Map<Integer, List<OfferEvent>> itemIdToOffers, Instant time, Random random)
+	{
+		Map<Integer, Map<String, PartialOffer>> outputs = new HashMap<>();
+		Map<Integer, Map<String, PartialOffer>> inputs = new HashMap<>();
+		for (int itemId : recipe.getIds())
+		{
+			Map<String, PartialOffer> partialOffers = new HashMap<>();
+			for (int i = random.nextInt(2); i > -1; i--)
+			{
+				OfferEvent offer = itemIdToOffers.get(itemId).get(random.nextInt(5));
+				partialOffers.put(offer.getUuid(), new PartialOffer(offer, random.nextInt(6)));
+			}
+			(recipe.isInput(itemId) ? inputs : outputs).put(itemId, partialOffers);
+		}
+		return new RecipeFlip(time, outputs, inputs, 0);
+	}
+
+	/**
+	 * Adds the recipe flip to the recipe's group the way RecipeHandler.addRecipeFlip does.
+	 */
+	private static void addRecipeFlip(List<RecipeFlipGroup> recipeFlipGroups, RecipeFlip recipeFlip, Recipe recipe)
+	{
+		for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups)
+		{
+			if (recipe.equals(recipeFlipGroup.getRecipe()))
+			{
+				recipeFlipGroup.addRecipeFlip(recipeFlip);
+				return;
+			}
+		}
+		RecipeFlipGroup recipeFlipGroup = new RecipeFlipGroup(recipe);
+		recipeFlipGroup.addRecipeFlip(recipeFlip);
+		recipeFlipGroups.add(recipeFlipGroup);
+	}
+
+	/**
+	 * Adds up how much of each of the item's offers the recipe flips consume by going through every group, the way
+	 * RecipeHandler.getOfferIdToPartialOffer did before the index.
+	 */
+	private static Map<String, Integer> amountsConsumed(List<RecipeFlipGroup> recipeFlipGroups, int itemId)
+	{
+		Map<String, Integer> amountsConsumed = new HashMap<>();
+		for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups)
+		{
+			if (!recipeFlipGroup.isInGroup(itemId))
+			{
+				continue;
+			}
+			for (RecipeFlip recipeFlip : recipeFlipGroup.getRecipeFlips())
+			{
+				for (PartialOffer partialOffer : recipeFlip.getPartialOffers(itemId))
+				{
+					amountsConsumed.merge(partialOffer.getOfferUuid(), partialOffer.amountConsumed, Integer::sum);
+				}
+			}
+		}
+		return amountsConsumed;
+	}
+
+	private static Map<String, Integer> amountsConsumed(Map<String, PartialOffer> offerIdToPartialOffer)
+	{
+		Map<String, Integer> amountsConsumed = new HashMap<>();
+		offerIdToPartialOffer.forEach((offerId, partialOffer) -> amountsConsumed.put(offerId, partialOffer.amountConsumed));
+		return amountsConsumed;
+	}
+}
@@ -0,0 +1,143 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.Utils;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferTotals;
+import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.utilities.SORT;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FlippingItemHandlerTest
+{
+	private static final Instant baseTime = Instant.ofEpochSecond(1600000000);
+
+	//none of the items are in recipe flips
+	private final FlippingItemHandler flippingItemHandler = new FlippingItemHandler(new FlippingPlugin()
+	{
+		@Override
+		public Map<String, PartialOffer> getOfferIdToPartialOffer(int itemId)
+		{
+			return Collections.emptyMap();
+		}
+	});
+
+	/**
+	 * Tests that asking for the top items of a sort gives the same items in the same order as the start of sorting
+	 * all of them the way it was done before, highest first with tied items in the reverse of the order they were
+	 * given in. Most of the items are tied with others, as they are made from a few sets of offers.
+	 */
+	@Test
+	public void topItemsMatchFullSortTest()
+	{
+		List<FlippingItem> items = items();
+		Instant startOfInterval = baseTime.minus(2, ChronoUnit.HOURS);
+		for (SORT sort : SORT.values())
+		{
+			List<FlippingItem> sortedItems = sortLikeBefore(items, sort, startOfInterval);
+			assertSameItems(sortedItems, flippingItemHandler.sortItems(items, sort, startOfInterval));
+			for (int limit = 0; limit <= items.size() + 1; limit++)
+			{
+				assertSameItems(sortedItems.subList(0, Math.min(limit, items.size())),
+					flippingItemHandler.sortItems(items, sort, startOfInterval, limit));
+			}
+		}
+	}
+
+	/**
+	 * Items made from six sets of offers, some of them only buys and some of them made before the interval, so that
+	 * every sort has ties, including ties at the values that items without flips get.
+	 */
+	private static List<FlippingItem> items()
+	{
+		Random random = new Random(17);
+		List<List<OfferEvent>> offerSets = new ArrayList<>();
+		for (int i = 0; i < 6; i++)
+		{
+			List<OfferEvent> offers = new ArrayList<>();
+			int offerCount = 1 + random.nextInt(5);
+			for (int j = 0; j < offerCount; j++)
+			{
+				boolean buy = i == 0 || random.nextBoolean();
+				offers.add(Utils.offer(buy, 1 + random.nextInt(20), 100 + random.nextInt(20),
+					baseTime.minus(random.nextInt(180), ChronoUnit.MINUTES), -1,
+					buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, 20));
+			}
+			offerSets.add(offers);
+		}
+
+		List<FlippingItem> items = new ArrayList<>();
+		for (int itemId = 1; itemId <= 60; itemId++)
+		{
+			FlippingItem item = new FlippingItem(itemId, "item " + itemId, 100, "gooby");
+			for (OfferEvent offer : offerSets.get(random.nextInt(offerSets.size())))
+			{
+				OfferEvent itemOffer = offer.clone();
+				itemOffer.setItemId(itemId);
+				item.updateHistory(itemOffer);
+				item.updateLatestProperties(itemOffer);
+			}
+			items.add(item);
+		}
+		return items;
+	}
+
+	/**
+	 * Sorts all the items the way FlippingItemHandler.sortItems did before it only sorted the top items: a stable
+	 * sort by the key, lowest first, which is then reversed.
+	 */
+	private static List<FlippingItem> sortLikeBefore(List<FlippingItem> items, SORT sort, Instant startOfInterval)
+	{
+		List<FlippingItem> result = new ArrayList<>(items);
+		switch (sort)
+		{
+			case TIME:
+				result.sort(Comparator.comparing(FlippingItem::getLatestActivityTime));
+				break;
+			case TOTAL_PROFIT:
+				result.sort(byTotals(startOfInterval, OfferTotals::getProfit));
+				break;
+			case PROFIT_EACH:
+				result.sort(byTotals(startOfInterval, totals ->
+					totals.getFlipQuantity() == 0 ? Long.MIN_VALUE : totals.getProfit() / totals.getFlipQuantity()));
+				break;
+			case ROI:
+				result.sort(byTotals(startOfInterval, totals ->
+					totals.getExpense() == 0 ? Float.MIN_VALUE : (float) totals.getProfit() / totals.getExpense() * 100));
+				break;
+			case FLIP_COUNT:
+				result.sort(byTotals(startOfInterval, OfferTotals::getFlipQuantity));
+				break;
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	private static <K extends Comparable<? super K>> Comparator<FlippingItem> byTotals(Instant startOfInterval, Function<OfferTotals, K> key)
+	{
+		return Comparator.comparing(item -> key.apply(item.getIntervalTotals(startOfInterval, Collections.emptyMap())));
+	}
+
+	private static void assertSameItems(List<FlippingItem> expected, List<FlippingItem> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertSame(expected.get(i), actual.get(i));
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AccountDataBinaryFormatTest
+{
+	//like TradePersister's metadataGson, the trades are only in the segments
+	private static final Gson METADATA_GSON = ReflectiveModelGson.handWritten(true).newBuilder()
+		.addSerializationExclusionStrategy(new ExclusionStrategy()
+		{
+			@Override
+			public boolean shouldSkipField(FieldAttributes f)
+			{
+				return f.getDeclaringClass() == AccountData.class && f.getName().equals("trades");
+			}
+
+			@Override
+			public boolean shouldSkipClass(Class<?> clazz)
+			{
+				return false;
+			}
+		})
+		.create();
+
+	private final AccountDataBinaryFormat format = new AccountDataBinaryFormat(ReflectiveModelGson.handWritten(false), METADATA_GSON);
+
+	@Test
+	public void writeThenReadTest() throws IOException
+	{
+		//1, 129 and 257 share a segment, and the trades aren't in segment order
+		AccountData data = TestAccounts.account(20, 1, 129, 2, 500, 3, 257);
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		byte[] accountFile = write(data, segmentFiles);
+
+		assertEquals(4, segmentFiles.size());
+		TestAccounts.assertSameAccount(data, read(accountFile, segmentFiles));
+	}
+
+	@Test
+	public void legacyOffersAndEmptyHistoriesReadBackExactlyTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(3, 7, 8);
+		List<OfferEvent> offers = new ArrayList<>(data.getTrades().get(1).getHistory().getCompressedOfferEvents());
+		offers.addAll(TestAccounts.legacyOffers(8));
+		data.getTrades().set(1, TestAccounts.item(8, offers));
+		data.getTrades().add(TestAccounts.item(9, new ArrayList<>()));
+		data.getTrades().add(new FlippingItem(10, null, 0, new HistoryManager(new ArrayList<>(), null, 0, 0), null, null,
+			false, null, null, null, null, null, null, null));
+		data.setLastSessionTimeUpdate(null);
+
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		AccountData readBack = read(write(data, segmentFiles), segmentFiles);
+		TestAccounts.assertSameAccount(data, readBack);
+
+		List<OfferEvent> readBackOffers = readBack.getItem(8).getHistory().getCompressedOfferEvents();
+		//the canonical uuids of an item with a non-canonical one are written as strings, but still read back as longs
+		assertTrue(readBackOffers.get(0).hasUuidAsLongs());
+		assertFalse(readBackOffers.get(3).hasUuidAsLongs());
+		assertEquals("legacy-offer-uuid", readBackOffers.get(3).getUuid());
+		assertNull(readBackOffers.get(3).getTradeStartedAt());
+		assertFalse(readBackOffers.get(4).hasUuid());
+		assertNull(readBackOffers.get(4).getTime());
+		assertNull(readBackOffers.get(4).getState());
+		assertTrue(readBack.getItem(9).getHistory().getCompressedOfferEvents().isEmpty());
+		assertNull(readBack.getItem(10).getHistory().getNextGeLimitRefresh());
+		assertNull(readBack.getItem(10).getValidFlippingPanelItem());
+		assertNull(readBack.getLastSessionTimeUpdate());
+	}
+
+	@Test
+	public void readManifestOnlyTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 129, 2);
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		byte[] accountFile = write(data, segmentFiles);
+
+		AccountDataBinaryFormat.Manifest manifest = format.readManifestOnly(new ByteArrayInputStream(accountFile));
+		assertEquals(1, manifest.generation);
+		assertEquals(Arrays.asList(1, 129, 2), manifest.itemOrder);
+		assertEquals(Arrays.asList(1, 2), new ArrayList<>(manifest.segments.keySet()));
+		for (AccountDataBinaryFormat.SegmentEntry segment : manifest.segments.values())
+		{
+			CRC32 crc = new CRC32();
+			crc.update(segmentFiles.get(segment.fileName));
+			assertEquals(crc.getValue(), segment.checksum);
+		}
+
+		//an account that hasn't been migrated from json has no manifest
+		byte[] jsonAccountFile = ReflectiveModelGson.REFLECTIVE_WRITE.toJson(data).getBytes(StandardCharsets.UTF_8);
+		assertNull(format.readManifestOnly(new ByteArrayInputStream(jsonAccountFile)));
+	}
+
+	@Test
+	public void readManifestOnlySkipsLargeJsonSectionTest() throws IOException
+	{
+		//a json section long enough for its length to take several bytes
+		AccountData data = TestAccounts.account(5, 1, 2);
+		for (int slot = 0; slot < 8; slot++)
+		{
+			data.getLastOffers().put(slot, data.getTrades().get(0).getHistory().getCompressedOfferEvents().get(slot % 5).clone());
+		}
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		byte[] accountFile = write(data, segmentFiles);
+		assertTrue(METADATA_GSON.toJson(data).length() > 1 << 7);
+
+		AccountDataBinaryFormat.Manifest manifest = format.readManifestOnly(new ByteArrayInputStream(accountFile));
+		assertEquals(Arrays.asList(1, 2), manifest.itemOrder);
+		assertEquals(2, manifest.segments.size());
+	}
+
+	@Test
+	public void truncatedAccountFileFailsTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 129, 2);
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		byte[] accountFile = write(data, segmentFiles);
+
+		//cut anywhere after the magic and version, whether in the json section or the manifest
+		for (int length = AccountDataBinaryFormat.MAGIC.length + 4; length < accountFile.length; length++)
+		{
+			byte[] truncated = Arrays.copyOf(accountFile, length);
+			try
+			{
+				read(truncated, segmentFiles);
+				fail("read a truncated account file of " + length + " bytes");
+			}
+			catch (IOException expected)
+			{
+			}
+			try
+			{
+				format.readManifestOnly(new ByteArrayInputStream(truncated));
+				fail("read the manifest of a truncated account file of " + length + " bytes");
+			}
+			catch (IOException expected)
+			{
+			}
+		}
+	}
+
+	@Test
+	public void truncatedOrCorruptSegmentFailsTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1);
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		byte[] accountFile = write(data, segmentFiles);
+		String segmentFileName = segmentFiles.keySet().iterator().next();
+		byte[] segment = segmentFiles.get(segmentFileName);
+
+		segmentFiles.put(segmentFileName, Arrays.copyOf(segment, segment.length - 1));
+		assertReadFails(accountFile, segmentFiles);
+
+		byte[] corrupt = segment.clone();
+		corrupt[0] = 'X';
+		segmentFiles.put(segmentFileName, corrupt);
+		assertReadFails(accountFile, segmentFiles);
+	}
+
+	@Test
+	public void newerFormatVersionIsRejectedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1);
+		Map<String, byte[]> segmentFiles = new HashMap<>();
+		byte[] accountFile = write(data, segmentFiles);
+		//the version is the big endian int right after the magic
+		accountFile[AccountDataBinaryFormat.MAGIC.length + 3] = AccountDataBinaryFormat.FORMAT_VERSION + 1;
+
+		assertReadFails(accountFile, segmentFiles);
+		try
+		{
+			format.readManifestOnly(new ByteArrayInputStream(accountFile));
+			fail("read the manifest of an account file in a newer format version");
+		}
+		catch (IOException expected)
+		{
+		}
+	}
+
+	private void assertReadFails(byte[] accountFile, Map<String, byte[]> segmentFiles)
+	{
+		try
+		{
+			read(accountFile, segmentFiles);
+			fail("read an unreadable account");
+		}
+		catch (IOException expected)
+		{
+		}
+	}
+
+	/**
+	 * Writes the account the way TradePersister does, with its segments going into segmentFiles.
+	 *
+	 * @return the account file
+	 */
+	private byte[] write(AccountData data, Map<String, byte[]> segmentFiles) throws IOException
+	{
+		List<Integer> itemOrder = new ArrayList<>();
+		Map<Integer, List<FlippingItem>> itemsByBucket = new TreeMap<>();
+		for (FlippingItem item : data.getTrades())
+		{
+			itemOrder.add(item.getItemId());
+			itemsByBucket.computeIfAbsent(AccountDataBinaryFormat.bucketOf(item.getItemId()), b -> new ArrayList<>()).add(item);
+		}
+
+		Map<Integer, AccountDataBinaryFormat.SegmentEntry> segments = new TreeMap<>();
+		for (Map.Entry<Integer, List<FlippingItem>> bucket : itemsByBucket.entrySet())
+		{
+			byte[] segment = format.encodeSegment(bucket.getValue());
+			CRC32 crc = new CRC32();
+			crc.update(segment);
+			String fileName = bucket.getKey() + ".1.seg";
+			segmentFiles.put(fileName, segment);
+			segments.put(bucket.getKey(), new AccountDataBinaryFormat.SegmentEntry(bucket.getKey(), fileName, crc.getValue()));
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(data, new AccountDataBinaryFormat.Manifest(1, itemOrder, segments), out);
+		return out.toByteArray();
+	}
+
+	private AccountData read(byte[] accountFile, Map<String, byte[]> segmentFiles) throws IOException
+	{
+		return format.read(new ByteArrayInputStream(accountFile), fileName -> new ByteArrayInputStream(segmentFiles.get(fileName)));
+	}
+}
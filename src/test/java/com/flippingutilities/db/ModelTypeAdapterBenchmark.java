@@ -0,0 +1,107 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Compares the load and save throughput of trade histories through gson's reflective adapters and through the
+ * adapters in {@link ModelTypeAdapterFactory}, and checks that both produce the same json. Run it like PluginRunner,
+ * from the main method.
+ */
+public class ModelTypeAdapterBenchmark
+{
+	private static final int ITEMS = 200;
+	private static final int OFFERS_PER_ITEM = 1000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args)
+	{
+		Gson reflective = ReflectiveModelGson.REFLECTIVE;
+		Gson handWritten = ReflectiveModelGson.handWritten(true);
+
+		List<FlippingItem> items = generateItems();
+		Type type = new TypeToken<List<FlippingItem>>(){}.getType();
+
+		String reflectiveJson = reflective.toJson(items, type);
+		String handWrittenJson = handWritten.toJson(items, type);
+		if (!reflectiveJson.equals(handWrittenJson))
+		{
+			throw new IllegalStateException("the hand written adapters don't produce the same json as the reflective ones");
+		}
+		List<FlippingItem> readBack = handWritten.fromJson(reflectiveJson, type);
+		if (!reflective.toJson(readBack, type).equals(reflectiveJson))
+		{
+			throw new IllegalStateException("the hand written adapters don't read back what was written");
+		}
+		for (int i = 0; i < items.size(); i++)
+		{
+			List<OfferEvent> offers = items.get(i).getHistory().getCompressedOfferEvents();
+			List<OfferEvent> readBackOffers = readBack.get(i).getHistory().getCompressedOfferEvents();
+			for (int j = 0; j < offers.size(); j++)
+			{
+				if (!offers.get(j).hasSameUuid(readBackOffers.get(j)))
+				{
+					throw new IllegalStateException("the hand written adapters don't read back the uuids of the offers");
+				}
+			}
+		}
+
+		int offers = ITEMS * OFFERS_PER_ITEM;
+		System.out.printf("%d items, %d offers, %d bytes of json%n", ITEMS, offers, reflectiveJson.length());
+		report("reflective save", offers, () -> reflective.toJson(items, type));
+		report("hand written save", offers, () -> handWritten.toJson(items, type));
+		report("reflective load", offers, () -> reflective.fromJson(reflectiveJson, type));
+		report("hand written load", offers, () -> handWritten.fromJson(reflectiveJson, type));
+	}
+
+	private static void report(String name, int offers, Runnable round)
+	{
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+		{
+			round.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++)
+		{
+			round.run();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-18s %,12.0f offers/s%n", name, offers * (double) ROUNDS / seconds);
+	}
+
+	private static List<FlippingItem> generateItems()
+	{
+		Random random = new Random(42);
+		Instant start = Instant.ofEpochSecond(1600000000);
+		List<FlippingItem> items = new ArrayList<>();
+		for (int itemId = 0; itemId < ITEMS; itemId++)
+		{
+			List<OfferEvent> offers = new ArrayList<>();
+			for (int i = 0; i < OFFERS_PER_ITEM; i++)
+			{
+				boolean buy = random.nextBoolean();
+				int quantity = 1 + random.nextInt(100);
+				Instant time = start.plusSeconds(i * 60L);
+				offers.add(new OfferEvent(UUID.randomUUID().toString(), buy, itemId, quantity, 100 + random.nextInt(1000), time,
+					random.nextInt(8), buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, random.nextInt(100),
+					random.nextInt(10), quantity, time.minusSeconds(30), false, null, null, 0, 0));
+			}
+			HistoryManager history = new HistoryManager(offers, start, random.nextInt(100), random.nextInt(100));
+			items.add(new FlippingItem(itemId, "item " + itemId, 100, history, "benchmark", true, false, "1",
+				null, null, null, null, null, null));
+		}
+		return items;
+	}
+}
@@ -0,0 +1,155 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.PartialOffer;
+import com.google.gson.Gson;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the adapters in {@link ModelTypeAdapterFactory} write the same json as gson's reflective adapters and
+ * read json written by them back into the same objects.
+ */
+public class ModelTypeAdapterFactoryTest
+{
+	private static final Instant START = Instant.ofEpochSecond(1600000000);
+
+	private final Gson writeGson = ReflectiveModelGson.handWritten(true);
+	private final Gson readGson = ReflectiveModelGson.handWritten(false);
+
+	@Test
+	public void offerEventMatchesReflectiveJsonTest()
+	{
+		for (OfferEvent offer : offers())
+		{
+			String json = assertWritesLikeReflective(ReflectiveModelGson.REFLECTIVE_WRITE, offer);
+			OfferEvent readBack = assertReadsLikeReflective(json, OfferEvent.class);
+			assertTrue(offer.hasSameUuid(readBack));
+		}
+	}
+
+	@Test
+	public void offerEventReadsExplicitNullsAndUnknownFieldsTest()
+	{
+		String json = "{\"uuid\":null,\"b\":true,\"id\":5,\"cQIT\":3,\"p\":100,\"t\":null,\"s\":2,\"st\":null," +
+			"\"tAA\":1,\"tSFO\":2,\"tQIT\":10,\"tradeStartedAt\":null,\"beforeLogin\":true,\"madeBy\":\"gooby\"}";
+		OfferEvent offer = assertReadsLikeReflective(json, OfferEvent.class);
+		assertFalse(offer.hasUuid());
+		assertNull(offer.getTime());
+		assertNull(offer.getState());
+		assertNull(offer.getTradeStartedAt());
+		assertTrue(offer.isBeforeLogin());
+	}
+
+	@Test
+	public void historyManagerMatchesReflectiveJsonTest()
+	{
+		List<HistoryManager> histories = Arrays.asList(
+			new HistoryManager(offers(), START, 7, 3),
+			new HistoryManager(new ArrayList<>(), null, 0, 0),
+			new HistoryManager(null, null, 0, 0));
+		for (HistoryManager history : histories)
+		{
+			String json = assertWritesLikeReflective(ReflectiveModelGson.REFLECTIVE_WRITE, history);
+			assertReadsLikeReflective(json, HistoryManager.class);
+		}
+	}
+
+	@Test
+	public void flippingItemMatchesReflectiveJsonTest()
+	{
+		List<FlippingItem> items = Arrays.asList(
+			new FlippingItem(5, "Cannonball", 11000, new HistoryManager(offers(), START, 7, 3), "gooby", true, true, "2",
+				null, null, null, null, null, null),
+			new FlippingItem(6, null, 0, null, null, null, false, null,
+				null, null, null, null, null, null),
+			new FlippingItem(7, "Nature rune", 18000, new HistoryManager(new ArrayList<>(), null, 0, 0), "gooby", false, false, "1",
+				null, null, null, null, null, null));
+		for (FlippingItem item : items)
+		{
+			String json = assertWritesLikeReflective(ReflectiveModelGson.REFLECTIVE_WRITE, item);
+			assertReadsLikeReflective(json, FlippingItem.class);
+		}
+		//explicit nulls are read as null, missing fields keep the defaults of a new item
+		assertReadsLikeReflective("{\"id\":8,\"h\":null,\"favoriteCode\":null,\"vFPI\":null}", FlippingItem.class);
+		assertReadsLikeReflective("{\"id\":9}", FlippingItem.class);
+	}
+
+	@Test
+	public void partialOfferMatchesReflectiveJsonTest()
+	{
+		OfferEvent offer = offers().get(0);
+		List<PartialOffer> partialOffers = Arrays.asList(
+			new PartialOffer(offer, 4),
+			new PartialOffer("not-a-canonical-uuid", 2),
+			new PartialOffer((String) null, 0));
+		for (PartialOffer partialOffer : partialOffers)
+		{
+			//the offer itself is only written by the read side gson
+			assertWritesLikeReflective(ReflectiveModelGson.REFLECTIVE_WRITE, partialOffer);
+			assertEquals(ReflectiveModelGson.REFLECTIVE.toJson(partialOffer), readGson.toJson(partialOffer));
+		}
+	}
+
+	@Test
+	public void partialOfferReadsEmbeddedOfferTest()
+	{
+		OfferEvent offer = offers().get(0);
+		String json = ReflectiveModelGson.REFLECTIVE.toJson(new PartialOffer(offer, 4));
+
+		PartialOffer readBack = assertReadsLikeReflective(json, PartialOffer.class);
+		assertEquals(offer.getUuid(), readBack.getOfferUuid());
+		assertEquals(offer, readBack.getOffer());
+		assertTrue(offer.hasSameUuid(readBack.getOffer()));
+		assertEquals(4, readBack.getAmountConsumed());
+	}
+
+	/**
+	 * @return the json, so it can be read back
+	 */
+	private String assertWritesLikeReflective(Gson reflective, Object value)
+	{
+		String json = reflective.toJson(value);
+		assertEquals(json, writeGson.toJson(value));
+		return json;
+	}
+
+	/**
+	 * Reads the json with the reflective adapters and the read side hand written adapters and compares the results
+	 * field by field, through the reflective adapters.
+	 */
+	private <T> T assertReadsLikeReflective(String json, Class<T> type)
+	{
+		T expected = ReflectiveModelGson.REFLECTIVE.fromJson(json, type);
+		T actual = readGson.fromJson(json, type);
+		assertEquals(ReflectiveModelGson.REFLECTIVE.toJson(expected), ReflectiveModelGson.REFLECTIVE.toJson(actual));
+		return actual;
+	}
+
+	private static List<OfferEvent> offers()
+	{
+		Instant time = START.plusSeconds(60);
+		return Arrays.asList(
+			new OfferEvent(UUID.randomUUID().toString(), true, 5, 3, 100, time, 2, GrandExchangeOfferState.BUYING, 4,
+				7, 10, START, false, "gooby", "Cannonball", 100, 300),
+			new OfferEvent(UUID.randomUUID().toString(), false, 5, 10, 120, time.plusSeconds(60), 2,
+				GrandExchangeOfferState.SOLD, 9, 12, 10, null, true, null, null, 0, 0),
+			//an offer from before uuids were generated as canonical uuids
+			new OfferEvent("legacy-offer-uuid", false, 5, 1, 1, null, 0, null, 0, 0, 1, null, false, null, null, 0, 0),
+			new OfferEvent(null, true, 5, 0, 0, null, 0, GrandExchangeOfferState.CANCELLED_BUY, 0, 0, 0, null, false,
+				null, null, 0, 0));
+	}
+}
@@ -0,0 +1,131 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.OfferEvent;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.Expose;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * The gsons the tests and benchmarks in this package compare the persisted model against. The reflective ones
+ * serialize the model classes through gson's reflective adapters, which is the json the adapters in
+ * {@link ModelTypeAdapterFactory} have to stay compatible with.
+ */
+final class ReflectiveModelGson
+{
+	/**
+	 * Only has an adapter for Instant, gson's reflective adapter can't get at java.time's fields on newer jdks.
+	 */
+	static final Gson BASE = new GsonBuilder().registerTypeAdapter(Instant.class, new EpochMilliAdapter().nullSafe()).create();
+
+	/**
+	 * Reads and writes every persisted field reflectively, like TradePersister's gson used to.
+	 */
+	static final Gson REFLECTIVE = BASE.newBuilder().registerTypeAdapterFactory(new OfferUuidAdapterFactory()).create();
+
+	/**
+	 * Also leaves out the fields marked with @Expose(serialize = false), like TradePersister's writeGson used to.
+	 */
+	static final Gson REFLECTIVE_WRITE = REFLECTIVE.newBuilder()
+		.setExclusionStrategies(new ExclusionStrategy()
+		{
+			@Override
+			public boolean shouldSkipField(FieldAttributes f)
+			{
+				Expose expose = f.getAnnotation(Expose.class);
+				return expose != null && !expose.serialize();
+			}
+
+			@Override
+			public boolean shouldSkipClass(Class<?> clazz)
+			{
+				return false;
+			}
+		})
+		.create();
+
+	private ReflectiveModelGson()
+	{
+	}
+
+	static Gson handWritten(boolean skipNonSerializedFields)
+	{
+		return BASE.newBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory(skipNonSerializedFields)).create();
+	}
+
+	/**
+	 * OfferEvent's uuid is kept in transient fields, so the reflective adapter neither writes nor reads it. This puts
+	 * it back in front of the other fields under "uuid", which is where it was when it was a plain string field and
+	 * where the hand written adapter writes it.
+	 */
+	private static class OfferUuidAdapterFactory implements TypeAdapterFactory
+	{
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+		{
+			if (type.getRawType() != OfferEvent.class)
+			{
+				return null;
+			}
+			TypeAdapter<OfferEvent> delegate = (TypeAdapter<OfferEvent>) gson.getDelegateAdapter(this, type);
+			TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+			return (TypeAdapter<T>) new TypeAdapter<OfferEvent>()
+			{
+				@Override
+				public void write(JsonWriter out, OfferEvent offer) throws IOException
+				{
+					if (offer == null)
+					{
+						out.nullValue();
+						return;
+					}
+					JsonObject json = new JsonObject();
+					json.addProperty("uuid", offer.getUuid());
+					delegate.toJsonTree(offer).getAsJsonObject().entrySet().forEach(field -> json.add(field.getKey(), field.getValue()));
+					elementAdapter.write(out, json);
+				}
+
+				@Override
+				public OfferEvent read(JsonReader in) throws IOException
+				{
+					JsonElement json = elementAdapter.read(in);
+					if (json == null || json.isJsonNull())
+					{
+						return null;
+					}
+					OfferEvent offer = delegate.fromJsonTree(json);
+					JsonElement uuid = json.getAsJsonObject().get("uuid");
+					offer.setUuid(uuid == null || uuid.isJsonNull() ? null : uuid.getAsString());
+					return offer;
+				}
+			};
+		}
+	}
+
+	private static class EpochMilliAdapter extends TypeAdapter<Instant>
+	{
+		@Override
+		public void write(JsonWriter out, Instant value) throws IOException
+		{
+			out.value(value.toEpochMilli());
+		}
+
+		@Override
+		public Instant read(JsonReader in) throws IOException
+		{
+			return Instant.ofEpochMilli(in.nextLong());
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds accounts for the persistence tests and compares accounts with the ones they were read back as.
+ */
+final class TestAccounts
+{
+	//everything is at whole millis, as that is what is persisted
+	static final Instant START = Instant.ofEpochSecond(1600000000);
+
+	private TestAccounts()
+	{
+	}
+
+	/**
+	 * An account with an item for each of the given item ids, in that order, each with the given amount of
+	 * complete offers a minute apart.
+	 */
+	static AccountData account(int offersPerItem, int... itemIds)
+	{
+		Random random = new Random(42);
+		List<FlippingItem> trades = new ArrayList<>();
+		for (int itemId : itemIds)
+		{
+			List<OfferEvent> offers = new ArrayList<>();
+			for (int i = 0; i < offersPerItem; i++)
+			{
+				offers.add(offer(itemId, random.nextBoolean(), 1 + random.nextInt(100), 100 + random.nextInt(1000),
+					START.plusSeconds(i * 60L)));
+			}
+			trades.add(item(itemId, offers));
+		}
+
+		AccountData data = new AccountData();
+		data.setTrades(trades);
+		data.setSessionStartTime(START);
+		data.setLastSessionTimeUpdate(START.plusSeconds(60));
+		data.setLastModifiedAt(START.plusSeconds(3600));
+		data.setAccumulatedSessionTimeMillis(123456);
+		if (offersPerItem > 0 && itemIds.length > 0)
+		{
+			data.getLastOffers().put(3, trades.get(0).getHistory().getCompressedOfferEvents().get(0).clone());
+		}
+		return data;
+	}
+
+	static FlippingItem item(int itemId, List<OfferEvent> offers)
+	{
+		return new FlippingItem(itemId, "item " + itemId, 100, new HistoryManager(offers, START, 5, 2), "gooby", true,
+			false, "1", null, null, null, null, null, null);
+	}
+
+	/**
+	 * A complete offer with a canonical uuid.
+	 */
+	static OfferEvent offer(int itemId, boolean buy, int quantity, int price, Instant time)
+	{
+		return new OfferEvent(UUID.randomUUID().toString(), buy, itemId, quantity, price, time, 1,
+			buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, 0, 10, quantity, time.minusSeconds(30),
+			false, null, null, 0, 0);
+	}
+
+	/**
+	 * Offers like the ones in old histories: one with a uuid that isn't a canonical uuid, and one without a uuid,
+	 * time, state or trade start.
+	 */
+	static List<OfferEvent> legacyOffers(int itemId)
+	{
+		List<OfferEvent> offers = new ArrayList<>();
+		offers.add(new OfferEvent("legacy-offer-uuid", true, itemId, 5, 100, START.minusSeconds(60), 2,
+			GrandExchangeOfferState.BOUGHT, 3, 4, 5, null, true, null, null, 0, 0));
+		offers.add(new OfferEvent(null, false, itemId, 1, 1, null, 0, null, 0, 0, 1, null, false, null, null, 0, 0));
+		return offers;
+	}
+
+	/**
+	 * Compares every persisted field of the accounts, through the reflective adapters, and the uuids of their offers,
+	 * which have to come back in the same form (canonical uuids as longs, anything else as a string).
+	 */
+	static void assertSameAccount(AccountData expected, AccountData actual)
+	{
+		assertEquals(ReflectiveModelGson.REFLECTIVE.toJson(expected), ReflectiveModelGson.REFLECTIVE.toJson(actual));
+		assertEquals(expected.getTrades().size(), actual.getTrades().size());
+		for (int i = 0; i < expected.getTrades().size(); i++)
+		{
+			List<OfferEvent> expectedOffers = expected.getTrades().get(i).getHistory().getCompressedOfferEvents();
+			List<OfferEvent> actualOffers = actual.getTrades().get(i).getHistory().getCompressedOfferEvents();
+			assertEquals(expectedOffers.size(), actualOffers.size());
+			for (int j = 0; j < expectedOffers.size(); j++)
+			{
+				assertTrue(expectedOffers.get(j).hasSameUuid(actualOffers.get(j)));
+			}
+		}
+	}
+}
@@ -0,0 +1,595 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.BackupCheckpoints;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.JournalRecord;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferTotals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TradePersisterTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+	private TradePersister tradePersister;
+
+	@Before
+	public void setUp()
+	{
+		directory = folder.getRoot();
+		tradePersister = new TradePersister(ReflectiveModelGson.BASE, directory);
+	}
+
+	@Test
+	public void writeThenLoadAccountTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(20, 1, 129, 2, 500);
+		tradePersister.writeToFile("gooby", data);
+
+		assertTrue(new File(directory, "gooby.account").exists());
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void legacyJsonAccountIsMigratedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(20, 1, 129, 2);
+		File jsonFile = new File(directory, "gooby.json");
+		Files.write(jsonFile.toPath(), ReflectiveModelGson.REFLECTIVE_WRITE.toJson(data).getBytes(StandardCharsets.UTF_8));
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertEquals(Collections.singleton("gooby"), tradePersister.listAccountNames());
+
+		tradePersister.writeToFile("gooby", loaded);
+		assertFalse(jsonFile.exists());
+		assertTrue(new File(directory, "gooby.account").exists());
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void truncatedAccountFileLoadsFromBackupTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(20, 1, 2);
+		tradePersister.writeToFile("gooby", data);
+		tradePersister.copyToBackup("gooby");
+
+		File accountFile = new File(directory, "gooby.account");
+		byte[] bytes = Files.readAllBytes(accountFile.toPath());
+		Files.write(accountFile.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void corruptAccountWithoutBackupLoadsEmptyTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(20, 1, 2);
+		tradePersister.writeToFile("gooby", data);
+		Files.write(new File(directory, "gooby.account").toPath(), "not an account".getBytes(StandardCharsets.UTF_8));
+
+		assertTrue(tradePersister.loadAccount("gooby").getTrades().isEmpty());
+	}
+
+	@Test
+	public void missingSegmentLoadsFromBackupTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(20, 1, 2);
+		tradePersister.writeToFile("gooby", data);
+		tradePersister.copyToBackup("gooby");
+
+		for (File segment : new File(directory, "gooby").listFiles())
+		{
+			assertTrue(segment.delete());
+		}
+
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void compressionIsDetectedWhenReadingTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(20, 1, 2);
+		tradePersister.setCompressFiles(false);
+		tradePersister.writeToFile("gooby", data);
+		File accountFile = new File(directory, "gooby.account");
+		File segmentDirectory = new File(directory, "gooby");
+		assertFalse(isGzipped(accountFile));
+		assertFalse(isGzipped(new File(segmentDirectory, "1.1.seg")));
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+
+		//only the changed item's segment is rewritten, so the account is left with a plain and a gzipped segment
+		List<OfferEvent> offers = new ArrayList<>(data.getTrades().get(1).getHistory().getCompressedOfferEvents());
+		offers.add(TestAccounts.offer(2, true, 10, 100, TestAccounts.START.plusSeconds(3600)));
+		data.getTrades().set(1, TestAccounts.item(2, offers));
+		tradePersister.setCompressFiles(true);
+		tradePersister.writeToFile("gooby", data);
+		assertTrue(isGzipped(accountFile));
+		assertFalse(isGzipped(new File(segmentDirectory, "1.1.seg")));
+		assertTrue(isGzipped(new File(segmentDirectory, "2.2.seg")));
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+
+		offers.add(TestAccounts.offer(2, false, 10, 120, TestAccounts.START.plusSeconds(7200)));
+		data.getTrades().set(1, TestAccounts.item(2, offers));
+		tradePersister.setCompressFiles(false);
+		tradePersister.writeToFile("gooby", data);
+		assertFalse(isGzipped(accountFile));
+		assertFalse(isGzipped(new File(segmentDirectory, "2.3.seg")));
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void journalIsReplayedOnTopOfSnapshotTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2);
+		journalOffer(data, TestAccounts.offer(1, true, 10, 100, TestAccounts.START.plusSeconds(3600)));
+		data.markJournalCheckpoint();
+		tradePersister.writeToFile("gooby", data);
+		journalOffer(data, TestAccounts.offer(2, false, 10, 120, TestAccounts.START.plusSeconds(3660)));
+		//an item that isn't in the snapshot yet
+		journalOffer(data, TestAccounts.offer(3, true, 4, 50, TestAccounts.START.plusSeconds(3720)));
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertEquals(1, loaded.getJournalCheckpoint());
+		assertEquals(2, loaded.getJournalRecordsSinceCheckpoint());
+		//new records carry on from the last replayed record
+		assertEquals(4, loaded.nextJournalSeq());
+	}
+
+	@Test
+	public void recordsAtOrBelowCheckpointAreSkippedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2);
+		//the record is skipped by its sequence number alone, even though the snapshot doesn't have its offer
+		OfferEvent offer = TestAccounts.offer(1, true, 10, 100, TestAccounts.START.plusSeconds(3600));
+		tradePersister.appendToJournal("gooby", JournalRecord.offer(data.nextJournalSeq(), offer));
+		data.markJournalCheckpoint();
+		tradePersister.writeToFile("gooby", data);
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertEquals(1, loaded.getJournalCheckpoint());
+		assertEquals(0, loaded.getJournalRecordsSinceCheckpoint());
+	}
+
+	@Test
+	public void recordsAlreadyInSnapshotAreNotAppliedTwiceTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2);
+		//the snapshot is written after the record was appended but before the checkpoint covering it was marked
+		journalOffer(data, TestAccounts.offer(1, true, 10, 100, TestAccounts.START.plusSeconds(3600)));
+		tradePersister.writeToFile("gooby", data);
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertEquals(6, loaded.getItem(1).getHistory().getCompressedOfferEvents().size());
+	}
+
+	@Test
+	public void tornLastRecordIsSkippedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2);
+		data.markJournalCheckpoint();
+		tradePersister.writeToFile("gooby", data);
+		journalOffer(data, TestAccounts.offer(1, true, 10, 100, TestAccounts.START.plusSeconds(3600)));
+
+		//the client crashed halfway through appending a record
+		File journalFile = new File(directory, "gooby.journal");
+		JournalRecord tornRecord = JournalRecord.offer(data.nextJournalSeq(), TestAccounts.offer(2, true, 1, 1, TestAccounts.START.plusSeconds(3660)));
+		String tornRecordJson = ReflectiveModelGson.handWritten(true).toJson(tornRecord);
+		Files.write(journalFile.toPath(), tornRecordJson.substring(0, tornRecordJson.length() / 2).getBytes(StandardCharsets.UTF_8),
+			StandardOpenOption.APPEND);
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertEquals(1, tradePersister.loadJournal("gooby").size());
+
+		//records appended after the restart start on a line of their own
+		journalOffer(loaded, TestAccounts.offer(2, false, 10, 120, TestAccounts.START.plusSeconds(3720)));
+		TestAccounts.assertSameAccount(loaded, tradePersister.loadAccount("gooby"));
+		assertEquals(2, tradePersister.loadJournal("gooby").size());
+	}
+
+	@Test
+	public void sessionStateRecordsAreReplayedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2);
+		data.markJournalCheckpoint();
+		tradePersister.rememberSessionState("gooby", data);
+		tradePersister.writeToFile("gooby", data);
+		//nothing changed since the snapshot
+		assertNull(tradePersister.sessionStateRecord("gooby", data));
+
+		data.getLastOffers().put(5, TestAccounts.offer(2, false, 3, 120, TestAccounts.START.plusSeconds(3600)));
+		data.setAccumulatedSessionTimeMillis(654321);
+		JournalRecord record = tradePersister.sessionStateRecord("gooby", data);
+		tradePersister.appendToJournal("gooby", record);
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertTrue(data.getLastOffers().get(5).hasSameUuid(loaded.getLastOffers().get(5)));
+		assertEquals(record.getSeq() + 1, loaded.nextJournalSeq());
+	}
+
+	@Test
+	public void onlyChangedSegmentsAreRewrittenTest() throws IOException
+	{
+		//1 and 129 share a segment
+		AccountData data = TestAccounts.account(5, 1, 2, 3, 129);
+		tradePersister.writeToFile("gooby", data);
+		data.drainChangedItemIds();
+		assertEquals(fileNames("1.1.seg", "2.1.seg", "3.1.seg"), segmentFileNames());
+		byte[] unchangedSegment = Files.readAllBytes(new File(directory, "gooby/1.1.seg").toPath());
+
+		addOffer(data, 2, TestAccounts.START.plusSeconds(3600));
+		//marked as changed without changing, its segment is re-encoded but has the same checksum
+		data.markItemChanged(3);
+		tradePersister.writeAccountSnapshot("gooby", data);
+
+		assertEquals(fileNames("1.1.seg", "2.2.seg", "3.1.seg"), segmentFileNames());
+		assertArrayEquals(unchangedSegment, Files.readAllBytes(new File(directory, "gooby/1.1.seg").toPath()));
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void reloadedAccountOnlyRewritesChangedSegmentsTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2, 3, 129);
+		tradePersister.writeToFile("gooby", data);
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		addOffer(loaded, 129, TestAccounts.START.plusSeconds(3600));
+		tradePersister.writeAccountSnapshot("gooby", loaded);
+		assertEquals(fileNames("1.2.seg", "2.1.seg", "3.1.seg"), segmentFileNames());
+
+		AccountData reloaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(loaded, reloaded);
+		//nothing changed since it was loaded
+		tradePersister.writeAccountSnapshot("gooby", reloaded);
+		assertEquals(fileNames("1.2.seg", "2.1.seg", "3.1.seg"), segmentFileNames());
+		TestAccounts.assertSameAccount(loaded, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void previousSegmentsAreKeptUntilNewAccountFileIsWrittenTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2, 3);
+		tradePersister.writeToFile("gooby", data);
+		data.drainChangedItemIds();
+		AccountData previous = tradePersister.loadAccount("gooby");
+
+		//the account file can't be written while its temp file is taken by a directory that can't be deleted
+		File tempFile = new File(directory, "gooby.account.tmp");
+		File blocker = new File(tempFile, "blocker");
+		assertTrue(tempFile.mkdir());
+		assertTrue(blocker.createNewFile());
+		addOffer(data, 2, TestAccounts.START.plusSeconds(3600));
+		try
+		{
+			tradePersister.writeAccountSnapshot("gooby", data);
+			fail("wrote the account file over a directory");
+		}
+		catch (IOException expected)
+		{
+		}
+
+		//the new segment was written, but the one the account file still references is still there
+		assertEquals(fileNames("1.1.seg", "2.1.seg", "2.2.seg", "3.1.seg"), segmentFileNames());
+		TestAccounts.assertSameAccount(previous, tradePersister.loadAccount("gooby"));
+
+		//the changed items of the failed write are written the next time
+		assertTrue(blocker.delete());
+		assertTrue(tempFile.delete());
+		tradePersister.writeAccountSnapshot("gooby", data);
+		assertEquals(fileNames("1.1.seg", "2.2.seg", "3.1.seg"), segmentFileNames());
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void unreferencedSegmentsAreDeletedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(5, 1, 2);
+		tradePersister.writeToFile("gooby", data);
+		data.drainChangedItemIds();
+		//left behind by a write that crashed before its account file was written
+		File segmentDirectory = new File(directory, "gooby");
+		assertTrue(new File(segmentDirectory, "7.2.seg").createNewFile());
+		assertTrue(new File(segmentDirectory, "notes.txt").createNewFile());
+
+		addOffer(data, 1, TestAccounts.START.plusSeconds(3600));
+		tradePersister.writeAccountSnapshot("gooby", data);
+		assertEquals(fileNames("1.2.seg", "2.1.seg", "notes.txt"), segmentFileNames());
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	@Test
+	public void backupDeltaHoldsAddedAndRemovedOffersTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(10, 1, 2, 3, 4, 5);
+		BackupCheckpoints checkpoints = new BackupCheckpoints();
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertTrue(backupDeltaFileNames().isEmpty());
+
+		addOffer(data, 1, TestAccounts.START.plusSeconds(3600));
+		HistoryManager history = data.getItem(2).getHistory();
+		OfferEvent removedOffer = history.getCompressedOfferEvents().get(3);
+		history.deleteOffers(Collections.singletonList(removedOffer));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+
+		assertEquals(Collections.singletonList("delta.1.1"), backupDeltaFileNames());
+		BackupDelta delta = readBackupDelta("delta.1.1");
+		assertEquals(2, delta.getChangedItems().size());
+		BackupDelta.ItemDelta addedOffers = delta.getChangedItems().get(0);
+		assertFalse(addedOffers.isReplace());
+		assertEquals(1, addedOffers.getItem().getHistory().getCompressedOfferEvents().size());
+		BackupDelta.ItemDelta removedOffers = delta.getChangedItems().get(1);
+		assertFalse(removedOffers.isReplace());
+		assertTrue(removedOffers.getItem().getHistory().getCompressedOfferEvents().isEmpty());
+		assertEquals(Collections.singletonList(removedOffer.getUuid()), removedOffers.getRemovedOfferUuids());
+		assertBackupMatches(data);
+	}
+
+	@Test
+	public void reorderedHistoryReplacesItemTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(10, 1, 2, 3, 4, 5);
+		BackupCheckpoints checkpoints = new BackupCheckpoints();
+		tradePersister.backupAccount("gooby", data, checkpoints);
+
+		//an offer from before the last one in the history goes in the middle of it, so the history isn't the backed
+		//up one with offers appended anymore
+		addOffer(data, 1, TestAccounts.START.plusSeconds(90));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+
+		BackupDelta delta = readBackupDelta("delta.1.1");
+		assertEquals(1, delta.getChangedItems().size());
+		assertTrue(delta.getChangedItems().get(0).isReplace());
+		assertEquals(11, delta.getChangedItems().get(0).getItem().getHistory().getCompressedOfferEvents().size());
+		assertBackupMatches(data);
+	}
+
+	@Test
+	public void itemsRemovedBetweenDeltasTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(10, 1, 2, 3, 4, 5);
+		BackupCheckpoints checkpoints = new BackupCheckpoints();
+		tradePersister.backupAccount("gooby", data, checkpoints);
+
+		addOffer(data, 4, TestAccounts.START.plusSeconds(3600));
+		data.addItem(TestAccounts.item(6, new ArrayList<>(Collections.singletonList(
+			TestAccounts.offer(6, true, 1, 10, TestAccounts.START.plusSeconds(3600))))));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertBackupMatches(data);
+
+		//the item changed in the first delta is removed in the second
+		data.removeItems(item -> item.getItemId() == 4 || item.getItemId() == 2);
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertEquals(Arrays.asList("delta.1.1", "delta.1.2"), backupDeltaFileNames());
+		assertEquals(Arrays.asList(2, 4), sorted(readBackupDelta("delta.1.2").getRemovedItemIds()));
+		assertBackupMatches(data);
+
+		//an item that comes back is a new item as far as the backup is concerned
+		data.addItem(TestAccounts.item(4, new ArrayList<>()));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertTrue(readBackupDelta("delta.1.3").getChangedItems().get(0).isReplace());
+		assertBackupMatches(data);
+	}
+
+	@Test
+	public void backupIsCompactedAfterMaxDeltasTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(10, 1, 2, 3, 4, 5);
+		BackupCheckpoints checkpoints = new BackupCheckpoints();
+		tradePersister.backupAccount("gooby", data, checkpoints);
+
+		for (int i = 1; i <= TradePersister.MAX_BACKUP_DELTAS; i++)
+		{
+			addOffer(data, 1 + i % 5, TestAccounts.START.plusSeconds(3600 + i * 60L));
+			tradePersister.backupAccount("gooby", data, checkpoints);
+			assertEquals(i, backupDeltaFileNames().size());
+			assertBackupMatches(data);
+		}
+
+		addOffer(data, 1, TestAccounts.START.plusSeconds(7200));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertTrue(backupDeltaFileNames().isEmpty());
+		assertBackupMatches(data);
+
+		//deltas carry on on top of the new base
+		addOffer(data, 2, TestAccounts.START.plusSeconds(7260));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertEquals(Collections.singletonList("delta.2.1"), backupDeltaFileNames());
+		assertBackupMatches(data);
+	}
+
+	@Test
+	public void mostlyChangedAccountGetsFullBackupTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(10, 1, 2, 3);
+		BackupCheckpoints checkpoints = new BackupCheckpoints();
+		tradePersister.backupAccount("gooby", data, checkpoints);
+
+		addOffer(data, 1, TestAccounts.START.plusSeconds(3600));
+		addOffer(data, 2, TestAccounts.START.plusSeconds(3600));
+		tradePersister.backupAccount("gooby", data, checkpoints);
+		assertTrue(backupDeltaFileNames().isEmpty());
+		assertBackupMatches(data);
+	}
+
+	@Test
+	public void rollupsAreAttachedWhenLoadedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(100, 1, 2);
+		//only the rollups that were made are written
+		data.getItem(1).getHistory().getIntervalTotals(TestAccounts.START);
+		tradePersister.writeToFile("gooby", data);
+		assertTrue(new File(directory, "gooby" + TradePersister.ROLLUPS_SUFFIX).exists());
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		assertNotNull(loaded.getItem(1).getHistory().copyOfferRollups());
+		assertNull(loaded.getItem(2).getHistory().copyOfferRollups());
+		assertIntervalTotalsMatchOffers(loaded.getItem(1).getHistory());
+	}
+
+	@Test
+	public void staleRollupsAreNotAttachedTest() throws IOException
+	{
+		AccountData data = TestAccounts.account(100, 1, 2, 3);
+		for (FlippingItem item : data.getTrades())
+		{
+			item.getHistory().getIntervalTotals(TestAccounts.START);
+		}
+		tradePersister.writeToFile("gooby", data);
+		File rollupsFile = new File(directory, "gooby" + TradePersister.ROLLUPS_SUFFIX);
+		byte[] rollups = Files.readAllBytes(rollupsFile.toPath());
+
+		//the account file is written again without its rollups file being: item 1 lost its last offer, item 2's last
+		//offer is another offer made at the same time and item 3 only has a new offer after the ones it had
+		List<OfferEvent> offers1 = data.getItem(1).getHistory().getCompressedOfferEvents();
+		data.getItem(1).getHistory().deleteOffers(Collections.singletonList(offers1.get(offers1.size() - 1)));
+		List<OfferEvent> offers2 = data.getItem(2).getHistory().getCompressedOfferEvents();
+		OfferEvent lastOffer2 = offers2.get(offers2.size() - 1);
+		data.getItem(2).getHistory().deleteOffers(Collections.singletonList(lastOffer2));
+		data.getItem(2).updateHistory(TestAccounts.offer(2, true, 10, 100, lastOffer2.getTime()));
+		addOffer(data, 3, TestAccounts.START.plusSeconds(100 * 60));
+		tradePersister.writeToFile("gooby", data);
+		Files.write(rollupsFile.toPath(), rollups);
+
+		AccountData loaded = tradePersister.loadAccount("gooby");
+		TestAccounts.assertSameAccount(data, loaded);
+		assertNull(loaded.getItem(1).getHistory().copyOfferRollups());
+		assertNull(loaded.getItem(2).getHistory().copyOfferRollups());
+		assertNotNull(loaded.getItem(3).getHistory().copyOfferRollups());
+		for (FlippingItem item : loaded.getTrades())
+		{
+			assertIntervalTotalsMatchOffers(item.getHistory());
+		}
+	}
+
+	/**
+	 * Checks the totals of intervals starting anywhere in the history against the totals of the offers in them.
+	 */
+	private static void assertIntervalTotalsMatchOffers(HistoryManager history)
+	{
+		for (int minutes = -5; minutes <= 105; minutes += 5)
+		{
+			Instant startOfInterval = TestAccounts.START.plusSeconds(minutes * 60L);
+			assertEquals(OfferTotals.of(history.getIntervalsHistory(startOfInterval)), history.getIntervalTotals(startOfInterval));
+		}
+	}
+
+	/**
+	 * Loads the account from its backup, as its own file isn't there, and compares it with the live account.
+	 */
+	private void assertBackupMatches(AccountData data)
+	{
+		assertFalse(new File(directory, "gooby.account").exists());
+		TestAccounts.assertSameAccount(data, tradePersister.loadAccount("gooby"));
+	}
+
+	private List<String> backupDeltaFileNames()
+	{
+		List<String> fileNames = new ArrayList<>();
+		for (String fileName : new File(directory, "gooby.backup").list())
+		{
+			if (fileName.startsWith("delta."))
+			{
+				fileNames.add(fileName);
+			}
+		}
+		fileNames.sort(null);
+		return fileNames;
+	}
+
+	private BackupDelta readBackupDelta(String fileName) throws IOException
+	{
+		File deltaFile = new File(new File(directory, "gooby.backup"), fileName);
+		try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(deltaFile.toPath())), StandardCharsets.UTF_8))
+		{
+			return ReflectiveModelGson.handWritten(false).fromJson(reader, BackupDelta.class);
+		}
+	}
+
+	private static List<Integer> sorted(List<Integer> values)
+	{
+		List<Integer> sorted = new ArrayList<>(values);
+		sorted.sort(null);
+		return sorted;
+	}
+
+	private Set<String> segmentFileNames()
+	{
+		return new TreeSet<>(Arrays.asList(new File(directory, "gooby").list()));
+	}
+
+	private static Set<String> fileNames(String... fileNames)
+	{
+		return new TreeSet<>(Arrays.asList(fileNames));
+	}
+
+	/**
+	 * Adds a complete offer to one of the account's items, like the offer pipeline does.
+	 */
+	private static void addOffer(AccountData data, int itemId, Instant time)
+	{
+		OfferEvent offer = TestAccounts.offer(itemId, true, 10, 100, time);
+		data.getItem(itemId).updateHistory(offer);
+		data.markItemChanged(itemId);
+	}
+
+	/**
+	 * Adds the offer to the account like the offer pipeline does and journals it, like DataHandler does.
+	 */
+	private void journalOffer(AccountData data, OfferEvent offer) throws IOException
+	{
+		FlippingItem item = data.getItem(offer.getItemId());
+		if (item == null)
+		{
+			item = new FlippingItem(offer.getItemId(), offer.getItemName(), -1, "gooby");
+			item.setValidFlippingPanelItem(true);
+			data.addItem(item);
+		}
+		item.updateHistory(offer);
+		item.updateLatestProperties(offer);
+		tradePersister.appendToJournal("gooby", JournalRecord.offer(data.nextJournalSeq(), offer));
+	}
+
+	private static boolean isGzipped(File f) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(f.toPath());
+		return bytes.length >= 2 && (bytes[0] & 0xFF) == (GZIPInputStream.GZIP_MAGIC & 0xFF) &&
+			(bytes[1] & 0xFF) == (GZIPInputStream.GZIP_MAGIC >>> 8);
+	}
+}
@@ -0,0 +1,100 @@
+package com.flippingutilities.ui.statistics;
+
+import com.flippingutilities.controller.FlippingPlugin;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.flippingutilities.utilities.SORT;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.swing.SwingUtilities;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatsPipelineTest
+{
+	private final CountDownLatch itemsBeingSorted = new CountDownLatch(1);
+	private final CountDownLatch finishSortingItems = new CountDownLatch(1);
+	private final AtomicInteger itemSorts = new AtomicInteger();
+
+	//the first sort of the items blocks until the test lets it finish, so that the rebuild doing it is in flight
+	private final FlippingPlugin plugin = new FlippingPlugin()
+	{
+		@Override
+		public List<FlippingItem> sortItems(List<FlippingItem> items, SORT sort, Instant startOfInterval, int limit)
+		{
+			if (itemSorts.incrementAndGet() == 1)
+			{
+				itemsBeingSorted.countDown();
+				try
+				{
+					finishSortingItems.await();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			return new ArrayList<>(items);
+		}
+
+		@Override
+		public List<RecipeFlipGroup> sortRecipeFlipGroups(List<RecipeFlipGroup> recipeFlipGroups, SORT sort, Instant startOfInterval)
+		{
+			return new ArrayList<>(recipeFlipGroups);
+		}
+	};
+
+	private final List<StatsPipeline.Result> results = Collections.synchronizedList(new ArrayList<>());
+	private final CountDownLatch published = new CountDownLatch(1);
+	private final StatsPipeline statsPipeline = new StatsPipeline(plugin, result ->
+	{
+		results.add(result);
+		published.countDown();
+	});
+
+	@After
+	public void tearDown()
+	{
+		finishSortingItems.countDown();
+		statsPipeline.shutdown();
+	}
+
+	/**
+	 * Tests that a rebuild of the recipes requested while a rebuild of the items is still being worked out cancels
+	 * it and publishes a single result covering both.
+	 */
+	@Test
+	public void cancelledRebuildIsDoneByTheNextOneTest() throws Exception
+	{
+		StatsPipeline.Snapshot snapshot = new StatsPipeline.Snapshot(new ArrayList<>(), new ArrayList<>(),
+			Instant.ofEpochSecond(1600000000), SORT.TIME, null, 1, 20, 1, 20);
+
+		SwingUtilities.invokeAndWait(() -> statsPipeline.rebuild(StatsPipeline.ITEMS, snapshot));
+		assertTrue(itemsBeingSorted.await(10, TimeUnit.SECONDS));
+		SwingUtilities.invokeAndWait(() -> statsPipeline.rebuild(StatsPipeline.RECIPES, snapshot));
+		finishSortingItems.countDown();
+
+		assertTrue(published.await(10, TimeUnit.SECONDS));
+		//the cancelled rebuild's result was handed to the EDT before the one that replaced it, so it would have been
+		//published by now too
+		assertEquals(1, results.size());
+		StatsPipeline.Result result = results.get(0);
+		assertTrue(result.isFor(StatsPipeline.ITEMS));
+		assertTrue(result.isFor(StatsPipeline.RECIPES));
+		assertFalse(result.isFor(StatsPipeline.TOTALS));
+		assertNotNull(result.getItemsOnPage());
+		assertNotNull(result.getRecipeFlipGroupsOnPage());
+		assertEquals(2, itemSorts.get());
+	}
+}